@@ -28,6 +28,7 @@ import org.cloudcoder.app.client.model.QuizInProgress;
 import org.cloudcoder.app.client.model.Session;
 import org.cloudcoder.app.client.model.StatusMessage;
 import org.cloudcoder.app.client.rpc.RPC;
+import org.cloudcoder.app.client.rpc.SubmissionResultWaiter;
 import org.cloudcoder.app.client.view.ChoiceDialogBox;
 import org.cloudcoder.app.client.view.CompilerDiagnosticListView;
 import org.cloudcoder.app.client.view.DevActionsPanel2;
@@ -576,8 +577,8 @@ public class DevelopmentPage extends CloudCoderPage {
 
 				@Override
 				public void onSuccess(Void result) {
-					// Start polling for the SubmissionResult
-					checkPendingSubmissionTimer.scheduleRepeating(POLL_SUBMISSION_RESULT_INTERVAL_MS);
+					// Wait for the SubmissionResult, then retrieve it
+					waitForSubmissionResult();
 				}
 			});
 		}
@@ -830,6 +831,19 @@ public class DevelopmentPage extends CloudCoderPage {
 			flushPendingChangeEventsTimer.scheduleRepeating(FLUSH_CHANGES_INTERVAL_MS);
 		}
 		
+		private void waitForSubmissionResult() {
+			// Long-poll until the server says the SubmissionResult is ready,
+			// then retrieve it.  Polling continues if the result can't be
+			// retrieved right away (e.g., if the long-poll failed).
+			new SubmissionResultWaiter(new Runnable() {
+				@Override
+				public void run() {
+					checkPendingSubmissionTimer.scheduleRepeating(POLL_SUBMISSION_RESULT_INTERVAL_MS);
+					checkPendingSubmissionTimer.run();
+				}
+			}).start();
+		}
+		
 		private void createCheckPendingSubmissionTimer() {
 			// Create, but do not start, the timer that we will be used to
 			// poll for a pending SubmissionResult.
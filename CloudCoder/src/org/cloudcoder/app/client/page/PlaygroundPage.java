@@ -26,6 +26,7 @@ import org.cloudcoder.app.client.model.PageStack;
 import org.cloudcoder.app.client.model.Session;
 import org.cloudcoder.app.client.model.StatusMessage;
 import org.cloudcoder.app.client.rpc.RPC;
+import org.cloudcoder.app.client.rpc.SubmissionResultWaiter;
 import org.cloudcoder.app.client.view.CompilerDiagnosticListView;
 import org.cloudcoder.app.client.view.IResultsTabPanelWidget;
 import org.cloudcoder.app.client.view.PageNavPanel;
@@ -386,9 +387,9 @@ public class PlaygroundPage extends CloudCoderPage
 
                 @Override
                 public void onSuccess(Void result) {
-                    // Start polling for the SubmissionResult
+                    // Wait for the SubmissionResult, then retrieve it
                     // TODO should I re-enable the editor here?
-                    checkPendingSubmissionTimer.scheduleRepeating(POLL_SUBMISSION_RESULT_INTERVAL_MS);
+                    waitForSubmissionResult();
                 }
             });
         }
@@ -417,6 +418,19 @@ public class PlaygroundPage extends CloudCoderPage
             aceEditor.setShowPrintMargin(false);
         }
         
+        private void waitForSubmissionResult() {
+            // Long-poll until the server says the SubmissionResult is ready,
+            // then retrieve it.  Polling continues if the result can't be
+            // retrieved right away (e.g., if the long-poll failed).
+            new SubmissionResultWaiter(new Runnable() {
+                @Override
+                public void run() {
+                    checkPendingSubmissionTimer.scheduleRepeating(POLL_SUBMISSION_RESULT_INTERVAL_MS);
+                    checkPendingSubmissionTimer.run();
+                }
+            }).start();
+        }
+        
         private void createCheckPendingSubmissionTimer() {
             // Create, but do not start, the timer that we will be used to
             // poll for a pending SubmissionResult.
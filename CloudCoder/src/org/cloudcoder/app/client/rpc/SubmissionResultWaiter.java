@@ -0,0 +1,85 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.client.rpc;
+
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.http.client.Request;
+import com.google.gwt.http.client.RequestBuilder;
+import com.google.gwt.http.client.RequestCallback;
+import com.google.gwt.http.client.RequestException;
+import com.google.gwt.http.client.Response;
+
+/**
+ * Wait for a pending submission (or run) to complete using long-poll
+ * requests to the SubmissionResultWait servlet.  Once the server
+ * says the result is ready (or if the long-poll fails for any reason),
+ * the callback is run: it should retrieve the result using the
+ * usual RPC call, falling back to periodic polling if necessary.
+ *
+ * @author David Hovemeyer
+ */
+public class SubmissionResultWaiter {
+	/**
+	 * Client-side timeout for a single long-poll request.
+	 * This is longer than the server-side wait, so normally the server
+	 * responds first.
+	 */
+	private static final int REQUEST_TIMEOUT_MS = 40000;
+
+	private final Runnable onReady;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param onReady callback to run when the result is ready, or when
+	 *                waiting fails and the caller should fall back to polling
+	 */
+	public SubmissionResultWaiter(Runnable onReady) {
+		this.onReady = onReady;
+	}
+
+	/**
+	 * Start waiting.
+	 */
+	public void start() {
+		RequestBuilder builder = new RequestBuilder(RequestBuilder.GET, GWT.getModuleBaseURL() + "submissionResultWait");
+		builder.setTimeoutMillis(REQUEST_TIMEOUT_MS);
+		try {
+			builder.sendRequest(null, new RequestCallback() {
+				@Override
+				public void onResponseReceived(Request request, Response response) {
+					if (response.getStatusCode() == Response.SC_OK && response.getText().trim().equals("pending")) {
+						// Still waiting: ask again
+						start();
+					} else {
+						onReady.run();
+					}
+				}
+
+				@Override
+				public void onError(Request request, Throwable exception) {
+					GWT.log("Long-poll for submission result failed", exception);
+					onReady.run();
+				}
+			});
+		} catch (RequestException e) {
+			GWT.log("Could not send long-poll request for submission result", e);
+			onReady.run();
+		}
+	}
+}
@@ -17,13 +17,10 @@
 
 package org.cloudcoder.app.server.rpc;
 
-import java.util.List;
-
 import org.cloudcoder.app.client.rpc.EditCodeService;
+import org.cloudcoder.app.server.persist.CurrentTextCache;
 import org.cloudcoder.app.server.persist.Database;
-import org.cloudcoder.app.shared.model.ApplyChangeToTextDocument;
 import org.cloudcoder.app.shared.model.Change;
-import org.cloudcoder.app.shared.model.ChangeType;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.Pair;
 import org.cloudcoder.app.shared.model.Problem;
@@ -32,7 +29,6 @@ import org.cloudcoder.app.shared.model.Quiz;
 import org.cloudcoder.app.shared.model.QuizEndedException;
 import org.cloudcoder.app.shared.model.StartedQuiz;
 import org.cloudcoder.app.shared.model.SubmissionReceipt;
-import org.cloudcoder.app.shared.model.TextDocument;
 import org.cloudcoder.app.shared.model.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -110,7 +106,7 @@ public class EditCodeServiceImpl extends RemoteServiceServlet implements EditCod
     		// Can't load current text unless a Problem has been loaded
     		throw new CloudCoderAuthenticationException();
     	}
-
+    	
     	ProblemText text = doLoadCurrentText(user, problem);
     	
     	// Check to see if current problem is a quiz
@@ -123,9 +119,11 @@ public class EditCodeServiceImpl extends RemoteServiceServlet implements EditCod
     }
 
 	protected ProblemText doLoadCurrentText(User user, Problem problem) {
-    	Change mostRecent = Database.getInstance().getMostRecentChange(user, problem.getProblemId());
+		// Get the current text from the cache: this also makes sure that
+		// any buffered changes have been stored
+		String text = CurrentTextCache.getInstance().getCurrentText(user, problem.getProblemId());
 
-    	if (mostRecent == null) {
+    	if (text == null) {
     		// Presumably, user has never worked on this problem.
     		logger.debug("No changes recorded for user " + user.getId() + ", problem " + problem.getProblemId());
     		
@@ -135,50 +133,9 @@ public class EditCodeServiceImpl extends RemoteServiceServlet implements EditCod
     		ProblemText initialProblemText = new ProblemText(initialText, true);
     		
     		return initialProblemText;
-    	} else {
-    		Change change = mostRecent; // result.get(0);
-
-    		// If the Change is a full text change, great.
-    		if (change.getType() == ChangeType.FULL_TEXT) {
-    			return new ProblemText(change.getText(), false);
-    		}
-
-    		// Otherwise, find the last full-text change (if any) and
-    		// apply all later changes.
-    		
-    		// Find the most recent full-text change.
-    		Change fullText = Database.getInstance().getMostRecentFullTextChange(user, problem.getProblemId());
-    		
-    		// Text doc to accumulate changes.
-    		TextDocument textDocument = new TextDocument();
-    		
-    		// Find the base revision (event id) that the deltas are relative to, if any.
-    		int baseRev;
-    		if (fullText != null) {
-    			// found a full-text change to use as a base revision
-    			textDocument.setText(fullText.getText());
-    			baseRev = fullText.getEventId();
-    		} else {
-    			// no full-text change exists: base revision is implicitly the empty document
-    			baseRev = -1;
-    		}
-    		
-    		// Get all deltas that follow the base revision.
-    		List<Change> deltaList = Database.getInstance().getAllChangesNewerThan(user, problem.getProblemId(), baseRev);
-    		
-    		// Apply the deltas to the base revision.
-    		try {
-        		ApplyChangeToTextDocument applicator = new ApplyChangeToTextDocument();
-	    		for (Change delta : deltaList) {
-	    			applicator.apply(delta, textDocument);
-	    		}
-	    		return new ProblemText(textDocument.getText(), false);
-    		} catch (RuntimeException e) {
-    			// FIXME: should do something smarter than this 
-    			logger.warn("Exception applying deltas to program text", e);
-    			return new ProblemText(fullText != null ? fullText.getText() : "", false);
-    		}
     	}
+    	
+    	return new ProblemText(text, false);
 	}
 
 	@Override
@@ -237,8 +194,10 @@ public class EditCodeServiceImpl extends RemoteServiceServlet implements EditCod
 			change.getEvent().setTimestamp(orig + clientServerTimeDelta);
 		}
 
-		// Insert changes
-		Database.getInstance().storeChanges(changeList);
+		// Insert changes (or add them to the write-behind buffer, if enabled),
+		// keeping the cached current text up to date, and storing a
+		// full-text checkpoint if there have been many changes since the last one
+		CurrentTextCache.getInstance().storeChanges(user, changeList);
 		
 		return true;
 	}
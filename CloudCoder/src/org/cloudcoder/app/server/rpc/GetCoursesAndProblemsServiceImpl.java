@@ -41,6 +41,7 @@ import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.cloudcoder.app.client.rpc.GetCoursesAndProblemsService;
 import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.persist.ProblemCache;
 import org.cloudcoder.app.shared.dto.ShareExercisesResult;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.ConfigurationSetting;
@@ -194,7 +195,18 @@ public class GetCoursesAndProblemsServiceImpl extends RemoteServiceServlet
 		// Make sure user is authenticated
 		User user = ServletUtil.checkClientIsAuthenticated(getThreadLocalRequest(), GetCoursesAndProblemsServiceImpl.class);
 
-		return Database.getInstance().getTestCasesForProblem(user, true, problemId);
+		// Only an instructor in the problem's course may see the test cases
+		Problem problem = ProblemCache.getInstance().getProblem(problemId);
+		if (problem == null) {
+			return new TestCase[0];
+		}
+		CourseRegistrationList regList = Database.getInstance().findCourseRegistrations(user, problem.getCourseId());
+		if (!regList.isInstructor()) {
+			return new TestCase[0];
+		}
+
+		List<TestCase> testCaseList = ProblemCache.getInstance().getTestCasesForProblem(problemId);
+		return testCaseList.toArray(new TestCase[testCaseList.size()]);
 	}
 	
 	@Override
@@ -22,7 +22,9 @@ import java.util.List;
 import javax.servlet.http.HttpSession;
 
 import org.cloudcoder.app.client.rpc.SubmitService;
+import org.cloudcoder.app.server.persist.ChangeWriteBehindBuffer;
 import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.persist.ProblemCache;
 import org.cloudcoder.app.server.submitsvc.DefaultSubmitService;
 import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
 import org.cloudcoder.app.server.submitsvc.ISubmitService;
@@ -84,6 +86,13 @@ public class SubmitServiceImpl extends RemoteServiceServlet implements SubmitSer
 			}
 		}
 
+		// Make sure that any buffered changes are stored before the
+		// full-text change, so that it is the most recent change
+		ChangeWriteBehindBuffer changeBuffer = ChangeWriteBehindBuffer.getInstance();
+		if (changeBuffer != null) {
+			changeBuffer.flush();
+		}
+
 		// Insert a full-text change into the database.
 		Change fullTextChange = new Change(
 				ChangeType.FULL_TEXT,
@@ -93,8 +102,8 @@ public class SubmitServiceImpl extends RemoteServiceServlet implements SubmitSer
 				programText);
 		Database.getInstance().storeChanges(new Change[]{fullTextChange});
 		
-		// Get test cases.  (TODO: cache them?)
-		List<TestCase> testCaseList = Database.getInstance().getTestCasesForProblem(problemId);
+		// Get test cases
+		List<TestCase> testCaseList = ProblemCache.getInstance().getTestCasesForProblem(problemId);
 		
 		ISubmitService submitService = DefaultSubmitService.getInstance();
 
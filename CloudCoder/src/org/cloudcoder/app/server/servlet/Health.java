@@ -19,6 +19,8 @@
 package org.cloudcoder.app.server.servlet;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -26,7 +28,17 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.cloudcoder.app.server.model.HealthDataSingleton;
+import org.cloudcoder.app.server.persist.ChangeWriteBehindBuffer;
+import org.cloudcoder.app.server.persist.CurrentTextCache;
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.persist.IConnectionPool;
+import org.cloudcoder.app.server.persist.IDatabase;
+import org.cloudcoder.app.server.persist.JDBCDatabase;
+import org.cloudcoder.app.server.persist.ProblemCache;
+import org.cloudcoder.app.shared.model.BuildStepStatistics;
 import org.cloudcoder.app.shared.model.HealthData;
+import org.cloudcoder.app.shared.model.LatencyHistogram;
+import org.cloudcoder.app.shared.model.ProblemType;
 import org.cloudcoder.app.shared.model.json.JSONConversion;
 import org.json.simple.JSONValue;
 
@@ -42,9 +54,74 @@ public class Health extends HttpServlet {
 	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
 		HealthData healthData = HealthDataSingleton.getInstance().getHealthData();
 		
+		IDatabase db = Database.getInstance();
+		if (db instanceof JDBCDatabase) {
+			IConnectionPool connectionPool = ((JDBCDatabase) db).getConnectionPool();
+			healthData.setDbConnectionCheckouts(connectionPool.getNumCheckouts());
+			healthData.setDbConnectionCheckoutTimeMillis(connectionPool.getTotalCheckoutTimeMillis());
+			healthData.setDbConnectionsBusy(connectionPool.getNumBusyConnections());
+			healthData.setDbConnectionsIdle(connectionPool.getNumIdleConnections());
+		}
+		
 		resp.setStatus(HttpServletResponse.SC_OK);
 		resp.setContentType("application/json");
-		Object jsonValue = JSONConversion.convertModelObjectToJSON(healthData, healthData.getSchema());
+		Map<String, Object> jsonValue = JSONConversion.convertModelObjectToJSON(healthData, healthData.getSchema());
+		jsonValue.put("buildStepTimes", convertBuildStepStatisticsToJSON(
+				HealthDataSingleton.getInstance().getBuildStepStatistics()));
+		ChangeWriteBehindBuffer changeBuffer = ChangeWriteBehindBuffer.getInstance();
+		if (changeBuffer != null) {
+			Map<String, Object> changeBufferValue = new LinkedHashMap<String, Object>();
+			changeBufferValue.put("droppedChanges", changeBuffer.getNumDroppedChanges());
+			jsonValue.put("changeWriteBehindBuffer", changeBufferValue);
+		}
+		jsonValue.put("currentTextCache", convertCurrentTextCacheToJSON(CurrentTextCache.getInstance()));
+		jsonValue.put("problemCache", convertProblemCacheToJSON(ProblemCache.getInstance()));
 		JSONValue.writeJSONString(jsonValue, resp.getWriter());
 	}
+
+	/**
+	 * Convert the {@link CurrentTextCache} hit/miss and checkpoint counters to JSON.
+	 */
+	private static Map<String, Object> convertCurrentTextCacheToJSON(CurrentTextCache cache) {
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("hits", cache.getNumHits());
+		result.put("partialReplays", cache.getNumPartialReplays());
+		result.put("misses", cache.getNumMisses());
+		result.put("checkpoints", cache.getNumCheckpoints());
+		result.put("mismatches", cache.getNumMismatches());
+		return result;
+	}
+
+	/**
+	 * Convert the {@link ProblemCache} hit/miss counters to JSON.
+	 */
+	private static Map<String, Object> convertProblemCacheToJSON(ProblemCache cache) {
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("hits", cache.getNumHits());
+		result.put("misses", cache.getNumMisses());
+		return result;
+	}
+
+	/**
+	 * Convert {@link BuildStepStatistics} to JSON: for each {@link ProblemType}
+	 * and build step, the count and the 50th, 95th, and 99th percentile
+	 * times in microseconds.
+	 */
+	private static Map<String, Object> convertBuildStepStatisticsToJSON(BuildStepStatistics statistics) {
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		for (ProblemType problemType : statistics.getProblemTypes()) {
+			Map<String, Object> steps = new LinkedHashMap<String, Object>();
+			for (String stepName : statistics.getStepNames(problemType)) {
+				LatencyHistogram histogram = statistics.getHistogram(problemType, stepName);
+				Map<String, Object> step = new LinkedHashMap<String, Object>();
+				step.put("count", histogram.getCount());
+				step.put("p50Micros", histogram.getPercentile(50));
+				step.put("p95Micros", histogram.getPercentile(95));
+				step.put("p99Micros", histogram.getPercentile(99));
+				steps.put(stepName, step);
+			}
+			result.put(problemType.name(), steps);
+		}
+		return result;
+	}
 }
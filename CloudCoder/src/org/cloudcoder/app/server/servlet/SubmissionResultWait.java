@@ -0,0 +1,118 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.cloudcoder.app.server.rpc.ServletUtil;
+import org.cloudcoder.app.server.rpc.SessionAttributeKeys;
+import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
+import org.cloudcoder.app.shared.model.SubmissionException;
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationSupport;
+
+/**
+ * Long-poll servlet allowing the client to wait for the result of
+ * a pending submission (or run) without repeatedly polling
+ * the Submit/Run RPC services.  The request is suspended (without
+ * tying up a server thread) until the session's
+ * {@link IFutureSubmissionResult} completes, or until
+ * {@link IFutureSubmissionResult#LONG_POLL_WAIT_MS} elapses.
+ * The response body is one of:
+ * <ul>
+ * <li><code>ready</code>: the result is available, and should be
+ *     retrieved using the usual RPC call</li>
+ * <li><code>pending</code>: the result is not available yet, and the client
+ *     should issue another wait request</li>
+ * <li><code>none</code>: there is no pending submission</li>
+ * </ul>
+ *
+ * @author David Hovemeyer
+ */
+public class SubmissionResultWait extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+		try {
+			ServletUtil.checkClientIsAuthenticated(req, SubmissionResultWait.class);
+		} catch (CloudCoderAuthenticationException e) {
+			resp.sendError(HttpServletResponse.SC_FORBIDDEN, "Not logged in (session timeout?)");
+			return;
+		}
+
+		IFutureSubmissionResult future =
+				(IFutureSubmissionResult) req.getSession().getAttribute(SessionAttributeKeys.FUTURE_SUBMISSION_RESULT_KEY);
+		if (future == null) {
+			sendResponse(resp, "none");
+			return;
+		}
+
+		if (isReady(future)) {
+			sendResponse(resp, "ready");
+			return;
+		}
+
+		final Continuation continuation = ContinuationSupport.getContinuation(req);
+		if (continuation.isExpired()) {
+			sendResponse(resp, "pending");
+			return;
+		}
+
+		// Suspend before registering the listener, so that a result
+		// arriving in between can't resume a request that isn't suspended yet.
+		// When resumed (or expired), the request is redispatched to this method.
+		continuation.setTimeout(IFutureSubmissionResult.LONG_POLL_WAIT_MS);
+		continuation.suspend();
+		future.addCompletionListener(new Runnable() {
+			@Override
+			public void run() {
+				if (continuation.isSuspended()) {
+					continuation.resume();
+				}
+			}
+		});
+	}
+
+	private static boolean isReady(IFutureSubmissionResult future) throws ServletException {
+		try {
+			return future.waitFor(0L) != null;
+		} catch (SubmissionException e) {
+			// The submission failed: the RPC call will report the error
+			return true;
+		} catch (InterruptedException e) {
+			throw new ServletException("Interrupted checking submission result", e);
+		}
+	}
+
+	private static void sendResponse(HttpServletResponse resp, String message) throws IOException {
+		resp.setStatus(HttpServletResponse.SC_OK);
+		resp.setContentType("text/plain");
+		resp.setHeader("Cache-Control", "no-cache");
+		PrintWriter out = resp.getWriter();
+		out.print(message);
+		out.flush();
+	}
+}
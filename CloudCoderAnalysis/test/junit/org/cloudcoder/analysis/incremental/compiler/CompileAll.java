@@ -90,6 +90,10 @@ public class CompileAll
             public String getPortStr() {
                 return ":8889";
             }
+            @Override
+            public String getProperty(String name, String defaultValue) {
+                return defaultValue;
+            }
         });
     }
     
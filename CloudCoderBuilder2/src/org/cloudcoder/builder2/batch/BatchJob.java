@@ -0,0 +1,76 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2013, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2013, David H. Hovemeyer <david.hovemeyer@gmail.com>
+// Copyright (C) 2013-2014, York College of Pennsylvania
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+package org.cloudcoder.builder2.batch;
+
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+
+/**
+ * A single submission to be tested in batch mode: an exercise
+ * and a source file containing the submitted program text.
+ * 
+ * @author David Hovemeyer
+ */
+public class BatchJob {
+	private final int index;
+	private final String exerciseFile;
+	private final ProblemAndTestCaseList exercise;
+	private final String sourceFile;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param index         index of the job (jobs are numbered in the order they are read)
+	 * @param exerciseFile  the exercise JSON file the exercise was read from
+	 * @param exercise      the exercise (Problem and TestCases)
+	 * @param sourceFile    the source file to test
+	 */
+	public BatchJob(int index, String exerciseFile, ProblemAndTestCaseList exercise, String sourceFile) {
+		this.index = index;
+		this.exerciseFile = exerciseFile;
+		this.exercise = exercise;
+		this.sourceFile = sourceFile;
+	}
+	
+	/**
+	 * @return index of the job
+	 */
+	public int getIndex() {
+		return index;
+	}
+	
+	/**
+	 * @return the exercise JSON file the exercise was read from
+	 */
+	public String getExerciseFile() {
+		return exerciseFile;
+	}
+	
+	/**
+	 * @return the exercise (Problem and TestCases)
+	 */
+	public ProblemAndTestCaseList getExercise() {
+		return exercise;
+	}
+	
+	/**
+	 * @return the source file to test
+	 */
+	public String getSourceFile() {
+		return sourceFile;
+	}
+}
@@ -19,22 +19,28 @@
 package org.cloudcoder.builder2.batch;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.apache.log4j.varia.NullAppender;
 import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.Language;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
 import org.cloudcoder.app.shared.model.SubmissionResult;
@@ -44,29 +50,49 @@ import org.cloudcoder.app.shared.model.TestResult;
 import org.cloudcoder.app.shared.model.json.JSONConversion;
 import org.cloudcoder.app.shared.model.json.ReflectionFactory;
 import org.cloudcoder.builder2.server.Builder2;
+import org.cloudcoder.builder2.server.Global;
 import org.cloudcoder.daemon.IOUtil;
+import org.json.simple.JSONValue;
 
 /**
  * Front-end for batch-mode testing.
+ * Submissions for any number of exercises can be tested, either by
+ * specifying a single exercise and a source file list (or a directory
+ * of source files), or by specifying a manifest file, each line of which
+ * names an exercise JSON file and a source file or directory.
+ * Submissions are tested in parallel by a pool of worker threads,
+ * and results can be written as JSON lines as they complete.
  * 
  * @author David Hovemeyer
  */
 public class BatchMain {
+	/** How often progress is reported (in milliseconds). */
+	private static final long PROGRESS_INTERVAL_MS = 5000L;
+	
 	private static class Result {
-		final String sourceFile;
+		final BatchJob job;
 		final SubmissionResult submissionResult;
+		final String error;
+		final long latencyMillis;
 		
-		public Result(String sourceFile, SubmissionResult submissionResult) {
-			this.sourceFile = sourceFile;
+		public Result(BatchJob job, SubmissionResult submissionResult, String error, long latencyMillis) {
+			this.job = job;
 			this.submissionResult = submissionResult;
+			this.error = error;
+			this.latencyMillis = latencyMillis;
 		}
 	}
 	
-	private ProblemAndTestCaseList exercise;
-	private List<String> sourceFileList;
-	private LinkedBlockingQueue<String> sourceQueue;
+	private List<BatchJob> jobList;
+	private int numWorkers;
+	private boolean jsonOutput;
+	private boolean showProgress;
+	private LinkedBlockingQueue<BatchJob> jobQueue;
 	private LinkedBlockingQueue<Result> resultQueue;
 	private Builder2 builder2;
+	private final PrintStream out;
+	private final PrintStream err;
+	private final Object javaLock;
 	
 	private class Worker implements Runnable {
 		volatile boolean done = false;
@@ -74,10 +100,11 @@ public class BatchMain {
 		public void run() {
 			while (!done && !Thread.interrupted()) {
 				try {
-					String sourceFile = sourceQueue.take();
+					BatchJob job = jobQueue.take();
+					long start = System.nanoTime();
 					// Read source text
 					try {
-						FileReader fileReader = new FileReader(sourceFile);
+						FileReader fileReader = new FileReader(job.getSourceFile());
 						String programText;
 						try {
 							programText = IOUtils.toString(fileReader);
@@ -86,13 +113,26 @@ public class BatchMain {
 						}
 						
 						// Test the submission
-						SubmissionResult result =
-								builder2.testSubmission(exercise.getProblem(), exercise.getTestCaseData(), programText);
+						ProblemAndTestCaseList exercise = job.getExercise();
+						SubmissionResult result;
+						if (isJava(job)) {
+							// JVMKillableTaskManager's redirection of System.out and
+							// System.err isn't reentrant, so Java submissions
+							// are tested one at a time
+							synchronized (javaLock) {
+								result = builder2.testSubmission(exercise.getProblem(), exercise.getTestCaseData(), programText);
+							}
+						} else {
+							result = builder2.testSubmission(exercise.getProblem(), exercise.getTestCaseData(), programText);
+						}
 						
-						resultQueue.put(new Result(sourceFile, result));
+						resultQueue.put(new Result(job, result, null, (System.nanoTime() - start) / 1000000L));
 					} catch (IOException e) {
-						System.err.println("Could not read " + sourceFile);
-						resultQueue.put(new Result(sourceFile, null));
+						err.println("Could not read " + job.getSourceFile());
+						resultQueue.put(new Result(job, null, "Could not read source file", (System.nanoTime() - start) / 1000000L));
+					} catch (RuntimeException e) {
+						err.println("Error testing " + job.getSourceFile() + ": " + e);
+						resultQueue.put(new Result(job, null, "Error testing submission: " + e, (System.nanoTime() - start) / 1000000L));
 					}
 				} catch (InterruptedException e) {
 					break;
@@ -101,11 +141,111 @@ public class BatchMain {
 		}
 	}
 	
-	public BatchMain(ProblemAndTestCaseList exercise, List<String> sourceFileList) {
-		this.exercise = exercise;
-		this.sourceFileList = sourceFileList;
-		this.sourceQueue = new LinkedBlockingQueue<String>();
+	/**
+	 * Constructor.
+	 * 
+	 * The current {@link System#out} and {@link System#err} streams
+	 * are used for results and progress reports.
+	 * 
+	 * @param jobList the {@link BatchJob}s to test
+	 */
+	public BatchMain(List<BatchJob> jobList) {
+		this.jobList = jobList;
+		this.numWorkers = getDefaultNumWorkers(jobList);
+		this.jsonOutput = false;
+		this.showProgress = true;
+		this.jobQueue = new LinkedBlockingQueue<BatchJob>();
 		this.resultQueue = new LinkedBlockingQueue<BatchMain.Result>();
+		this.out = System.out;
+		this.err = System.err;
+		this.javaLock = new Object();
+	}
+	
+	/**
+	 * Set the number of worker threads.
+	 * 
+	 * @param numWorkers the number of worker threads
+	 */
+	public void setNumWorkers(int numWorkers) {
+		this.numWorkers = numWorkers;
+	}
+	
+	/**
+	 * Set whether results should be written as JSON lines,
+	 * in the order in which they complete.  Otherwise,
+	 * a one-line text summary is written for each
+	 * submission once all submissions have been tested.
+	 * 
+	 * @param jsonOutput true if results should be written as JSON lines
+	 */
+	public void setJsonOutput(boolean jsonOutput) {
+		this.jsonOutput = jsonOutput;
+	}
+	
+	/**
+	 * Set whether progress (throughput and latency percentiles)
+	 * should be reported periodically on stderr.
+	 * 
+	 * @param showProgress true if progress should be reported
+	 */
+	public void setShowProgress(boolean showProgress) {
+		this.showProgress = showProgress;
+	}
+	
+	/**
+	 * Get the number of submissions of a {@link Language} that can be
+	 * tested in parallel per available core.  Submissions in C and C++
+	 * spend much of their time waiting for the compiler and for test
+	 * processes, so the cores can be oversubscribed.  Java, Python, and Ruby
+	 * submissions are compiled and tested by threads in the builder's JVM,
+	 * so there should be at most one per core.  (Java submissions are
+	 * also tested one at a time: see {@link #isJava(BatchJob)}.)
+	 * 
+	 * @param language the {@link Language}
+	 * @return number of submissions that can be tested per core
+	 */
+	private static int getWorkersPerCore(Language language) {
+		switch (language) {
+		case C:
+		case CPLUSPLUS:
+			return 2;
+		default:
+			return 1;
+		}
+	}
+	
+	private static int getDefaultNumWorkers(List<BatchJob> jobList) {
+		// Only one Java submission is tested at a time, so if all of
+		// the exercises are in Java, more workers wouldn't help
+		boolean allJava = true;
+		for (BatchJob job : jobList) {
+			allJava = allJava && isJava(job);
+		}
+		if (allJava) {
+			return 1;
+		}
+		
+		// Use the most conservative per-language cost of all of the exercises
+		int workersPerCore = 2;
+		for (BatchJob job : jobList) {
+			Language language = job.getExercise().getProblem().getProblemType().getLanguage();
+			workersPerCore = Math.min(workersPerCore, getWorkersPerCore(language));
+		}
+		return Math.max(1, Runtime.getRuntime().availableProcessors() * workersPerCore);
+	}
+	
+	/**
+	 * Check whether a {@link BatchJob}'s exercise is in Java.
+	 * Java submissions are tested one at a time, because
+	 * {@link org.cloudcoder.builder2.javasandbox.JVMKillableTaskManager}
+	 * replaces {@link System#out} and {@link System#err} while
+	 * tests are running, and doesn't support doing so concurrently.
+	 * 
+	 * @param job the {@link BatchJob}
+	 * @return true if the job's exercise is in Java
+	 */
+	private static boolean isJava(BatchJob job) {
+		return job.getExercise().getProblem().getProblemType().getLanguage() == Language.JAVA;
 	}
 	
 	public static void main(String[] args) throws IOException, InterruptedException {
@@ -113,14 +253,110 @@ public class BatchMain {
 		Logger.getRootLogger().removeAllAppenders();
 		Logger.getRootLogger().addAppender(new NullAppender());
 		
-		if (args.length != 2) {
-			System.err.println("Usage: java -jar cloudcoderBuilder.jar batch <exercise JSON> <source file list>");
-			System.exit(1);
+		int numWorkers = -1;
+		boolean jsonOutput = false;
+		boolean showProgress = true;
+		String manifest = null;
+		
+		List<String> argList = new ArrayList<String>(Arrays.asList(args));
+		while (!argList.isEmpty() && argList.get(0).startsWith("-")) {
+			String opt = argList.remove(0);
+			if (opt.equals("-t") && !argList.isEmpty()) {
+				numWorkers = Integer.parseInt(argList.remove(0));
+			} else if (opt.equals("-m") && !argList.isEmpty()) {
+				manifest = argList.remove(0);
+			} else if (opt.equals("-j")) {
+				jsonOutput = true;
+			} else if (opt.equals("-q")) {
+				showProgress = false;
+			} else {
+				usage();
+			}
+		}
+		
+		if ((manifest == null && argList.size() != 2) || (manifest != null && !argList.isEmpty())) {
+			usage();
+		}
+		
+		Map<String, ProblemAndTestCaseList> exerciseMap = new HashMap<String, ProblemAndTestCaseList>();
+		List<BatchJob> jobList = new ArrayList<BatchJob>();
+		
+		if (manifest != null) {
+			// Each line of the manifest is an exercise JSON file and
+			// a source file or directory
+			BufferedReader r = null;
+			try {
+				r = new BufferedReader(new FileReader(manifest));
+				while (true) {
+					String line = r.readLine();
+					if (line == null) {
+						break;
+					}
+					line = line.trim();
+					if (line.equals("") || line.startsWith("#")) {
+						continue;
+					}
+					String[] fields = line.split("\\s+", 2);
+					if (fields.length != 2) {
+						System.err.println("Invalid manifest line: " + line);
+						System.exit(1);
+					}
+					addJobs(jobList, exerciseMap, fields[0], fields[1], false);
+				}
+			} finally {
+				IOUtil.closeQuietly(r);
+			}
+		} else {
+			// The second argument is either a directory containing
+			// source files or a file listing source files
+			addJobs(jobList, exerciseMap, argList.get(0), argList.get(1), true);
+		}
+		
+		BatchMain batchMain = new BatchMain(jobList);
+		if (numWorkers > 0) {
+			batchMain.setNumWorkers(numWorkers);
+		}
+		batchMain.setJsonOutput(jsonOutput);
+		batchMain.setShowProgress(showProgress);
+		batchMain.execute();
+	}
+
+	private static void usage() {
+		System.err.println("Usage: java -jar cloudcoderBuilder.jar batch [options] <exercise JSON> <source file list or directory>");
+		System.err.println("       java -jar cloudcoderBuilder.jar batch [options] -m <manifest>");
+		System.err.println("Each line of a manifest is an exercise JSON file and a source file or directory.");
+		System.err.println("Options:");
+		System.err.println("  -t <n>  use n worker threads (default depends on cores and languages)");
+		System.err.println("  -j      write results as JSON lines, as they complete");
+		System.err.println("  -q      don't report progress on stderr");
+		System.exit(1);
+	}
+
+	private static void addJobs(List<BatchJob> jobList, Map<String, ProblemAndTestCaseList> exerciseMap,
+			String exerciseJSON, String source, boolean sourceIsFileList) throws IOException {
+		// Each exercise is read only once
+		ProblemAndTestCaseList exercise = exerciseMap.get(exerciseJSON);
+		if (exercise == null) {
+			exercise = readExercise(exerciseJSON);
+			exerciseMap.put(exerciseJSON, exercise);
+		}
+		
+		List<String> sourceFileList = new ArrayList<String>();
+		File sourceFile = new File(source);
+		if (sourceFile.isDirectory()) {
+			findSourceFiles(sourceFile, sourceFileList);
+		} else if (sourceIsFileList) {
+			readSourceFileList(source, sourceFileList);
+		} else {
+			sourceFileList.add(source);
 		}
 		
-		String exerciseJSON = args[0];
-		String sourceFileListFilename = args[1];
+		for (String file : sourceFileList) {
+			jobList.add(new BatchJob(jobList.size(), exerciseJSON, exercise, file));
+		}
+	}
 
+	private static ProblemAndTestCaseList readExercise(String exerciseJSON) throws IOException {
 		ProblemAndTestCaseList exercise = new ProblemAndTestCaseList();
 		
 		// Read the exercise (Problem and TestCases)
@@ -138,8 +374,11 @@ public class BatchMain {
 			}
 		}
 		
+		return exercise;
+	}
+
+	private static void readSourceFileList(String sourceFileListFilename, List<String> sourceFileList) throws IOException {
 		// Read the list of source files to test
-		List<String> sourceFileList = new ArrayList<String>();
 		BufferedReader r2 = null;
 		try {
 			r2 = new BufferedReader(new FileReader(sourceFileListFilename));
@@ -153,9 +392,25 @@ public class BatchMain {
 		} finally {
 			IOUtil.closeQuietly(r2);
 		}
-		
-		BatchMain batchMain = new BatchMain(exercise, sourceFileList);
-		batchMain.execute();
+	}
+
+	private static void findSourceFiles(File dir, List<String> sourceFileList) {
+		// Find all (non-hidden) files in the directory tree, in a predictable order
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files);
+		for (File file : files) {
+			if (file.getName().startsWith(".")) {
+				continue;
+			}
+			if (file.isDirectory()) {
+				findSourceFiles(file, sourceFileList);
+			} else {
+				sourceFileList.add(file.getPath());
+			}
+		}
 	}
 	
 	public void execute() throws IOException, InterruptedException {
@@ -167,38 +422,66 @@ public class BatchMain {
 		config.setProperty("cloudcoder.submitsvc.oop.easysandbox.heapsize", "8388608");
 		config.setProperty("cloudcoder.builder2.tmpdir", "/tmp");
 		
-		builder2 = new Builder2(config);
+		// Results are only written to the original stdout.  Anything else
+		// written to System.out while testing (including output from
+		// tests that isn't captured) goes to stderr, so it can't be
+		// mixed in with the results.
+		System.setOut(err);
 		
-		Map<String, String> resultMap = new HashMap<String, String>();
+		Global.setup(config);
+		builder2 = new Builder2(config);
 		
-		TestCase[] testCaseList = exercise.getTestCaseList();
+		String[] resultList = new String[jobList.size()];
+		BatchStatistics stats = new BatchStatistics();
 		
-		Worker[] workers = new Worker[/*Runtime.getRuntime().availableProcessors() * 2*/1];
+		Worker[] workers = new Worker[numWorkers];
 		Thread[] threads = new Thread[workers.length];
 		
+		if (showProgress) {
+			err.println("Testing " + jobList.size() + " submissions using " + numWorkers + " worker threads");
+		}
+		
 		try {
 			// Start workers
 			for (int i = 0; i < workers.length; i++) {
 				workers[i] = new Worker();
-				threads[i] = new Thread(workers[i]);
+				threads[i] = new Thread(workers[i], "BatchWorker" + i);
 				threads[i].start();
 			}			
 			
-			// Add files to source queue
+			// Add jobs to job queue
 			int submissionCount = 0;
-			for (String sourceFile : sourceFileList) {
-				sourceQueue.put(sourceFile);
+			for (BatchJob job : jobList) {
+				jobQueue.put(job);
 				submissionCount++;
 			}
 			
 			// Wait for finished Results to come back
+			long nextProgressReport = System.currentTimeMillis() + PROGRESS_INTERVAL_MS;
 			int finishCount = 0;
 			while (finishCount < submissionCount) {
-				Result r = resultQueue.take();
+				if (showProgress && System.currentTimeMillis() >= nextProgressReport) {
+					err.println("Progress: " + stats.format(submissionCount));
+					nextProgressReport += PROGRESS_INTERVAL_MS;
+				}
+				
+				Result r = resultQueue.poll(Math.max(1L, nextProgressReport - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				if (r == null) {
+					continue;
+				}
 				finishCount++;
+				stats.addLatency(r.latencyMillis);
 				
-				String sourceFile = r.sourceFile;
+				BatchJob job = r.job;
 				SubmissionResult result = r.submissionResult;
+				TestCase[] testCaseList = job.getExercise().getTestCaseList();
+				
+				if (jsonOutput) {
+					// Write the result immediately
+					out.println(JSONValue.toJSONString(convertResultToJSON(r, testCaseList)));
+					out.flush();
+					continue;
+				}
 				
 				if (result == null) {
 					continue;
@@ -208,7 +491,7 @@ public class BatchMain {
 				StringWriter sw = new StringWriter();
 				PrintWriter pw = new PrintWriter(sw);
 				
-				pw.print(sourceFile);
+				pw.print(job.getSourceFile());
 				pw.print(":");
 				pw.print(result.getCompilationResult().getOutcome());
 				TestResult[] testResults = result.getTestResults();
@@ -229,24 +512,29 @@ public class BatchMain {
 				}
 				pw.flush();
 				
-				resultMap.put(sourceFile, sw.toString());
+				resultList[job.getIndex()] = sw.toString();
 				
 				// If the submission did not pass all tests,
 				// write failure report to stderr.
 				if (!allPassed) {
-					writeFailureReport(sourceFile, result, testCaseList);
+					writeFailureReport(job.getSourceFile(), result, testCaseList);
 				}
 			
 			}
 			
-			// Print results, in the order of the source files in the source file list.
-			for (String sourceFile : sourceFileList) {
-				String result = resultMap.get(sourceFile);
-				if (result != null) {
-					System.out.println(result);
+			// Print results, in the order of the jobs in the job list.
+			if (!jsonOutput) {
+				for (String result : resultList) {
+					if (result != null) {
+						out.println(result);
+					}
 				}
 			}
 			
+			if (showProgress) {
+				err.println("Finished: " + stats.format(submissionCount));
+			}
+			
 		} finally {
 			// Shut down workers and wait for threads to finish
 			for (int i = 0; i < workers.length; i++) {
@@ -256,18 +544,59 @@ public class BatchMain {
 					threads[i].join();
 				}
 			}
+			
+			Global.cleanup(config);
+			System.setOut(out);
+		}
+	}
+
+	private static Map<String, Object> convertResultToJSON(Result r, TestCase[] testCaseList) {
+		Map<String, Object> obj = new LinkedHashMap<String, Object>();
+		obj.put("exercise", r.job.getExerciseFile());
+		obj.put("sourceFile", r.job.getSourceFile());
+		obj.put("latencyMs", r.latencyMillis);
+		
+		SubmissionResult result = r.submissionResult;
+		if (result == null) {
+			obj.put("error", r.error);
+			return obj;
+		}
+		
+		obj.put("compilationOutcome", result.getCompilationResult().getOutcome().toString());
+		
+		TestResult[] testResults = result.getTestResults();
+		List<Object> tests = new ArrayList<Object>();
+		int numPassed = 0;
+		for (int i = 0; i < testCaseList.length; i++) {
+			Map<String, Object> test = new LinkedHashMap<String, Object>();
+			test.put("name", testCaseList[i].getTestCaseName());
+			if (i >= testResults.length) {
+				test.put("outcome", null);
+			} else {
+				test.put("outcome", testResults[i].getOutcome().toString());
+				test.put("message", testResults[i].getMessage());
+				if (testResults[i].getOutcome() == TestOutcome.PASSED) {
+					numPassed++;
+				}
+			}
+			tests.add(test);
 		}
+		obj.put("numPassed", numPassed);
+		obj.put("numTests", testCaseList.length);
+		obj.put("tests", tests);
+		
+		return obj;
 	}
 
-	private static void writeFailureReport(String sourceFile, SubmissionResult result, TestCase[] testCaseList) {
-		System.err.println("File: " + sourceFile);
+	private void writeFailureReport(String sourceFile, SubmissionResult result, TestCase[] testCaseList) {
+		err.println("File: " + sourceFile);
 		if (result.getCompilationResult().getOutcome() != CompilationOutcome.SUCCESS){
-			System.err.println("Did not compile");
+			err.println("Did not compile");
 		}
 		TestResult[] testResults = result.getTestResults();
 		for (int i = 0; i < testResults.length; i++) {
-			System.err.println(testCaseList[i].getTestCaseName());
-			System.err.println(testResults[i].getStdout());
+			err.println(testCaseList[i].getTestCaseName());
+			err.println(testResults[i].getStdout());
 		}
 	}
 }
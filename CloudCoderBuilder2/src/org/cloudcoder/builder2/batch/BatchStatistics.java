@@ -0,0 +1,111 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2013, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2013, David H. Hovemeyer <david.hovemeyer@gmail.com>
+// Copyright (C) 2013-2014, York College of Pennsylvania
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+package org.cloudcoder.builder2.batch;
+
+import java.util.Arrays;
+
+/**
+ * Throughput and latency statistics for a batch run.
+ * Latencies are recorded by the thread collecting results,
+ * so this class is not thread-safe.
+ * 
+ * @author David Hovemeyer
+ */
+public class BatchStatistics {
+	private final long startTime;
+	private long[] latencies;
+	private int count;
+	
+	/**
+	 * Constructor.  The start time of the batch run is the time
+	 * the object is created.
+	 */
+	public BatchStatistics() {
+		this.startTime = System.nanoTime();
+		this.latencies = new long[1024];
+		this.count = 0;
+	}
+	
+	/**
+	 * Record the latency of a completed submission.
+	 * 
+	 * @param latencyMillis time taken to test the submission, in milliseconds
+	 */
+	public void addLatency(long latencyMillis) {
+		if (count == latencies.length) {
+			latencies = Arrays.copyOf(latencies, latencies.length * 2);
+		}
+		latencies[count++] = latencyMillis;
+	}
+	
+	/**
+	 * @return number of completed submissions
+	 */
+	public int getCount() {
+		return count;
+	}
+	
+	/**
+	 * @return milliseconds elapsed since the batch run started
+	 */
+	public long getElapsedMillis() {
+		return (System.nanoTime() - startTime) / 1000000L;
+	}
+	
+	/**
+	 * @return completed submissions per second since the batch run started
+	 */
+	public double getThroughput() {
+		long elapsed = getElapsedMillis();
+		return elapsed > 0 ? count * 1000.0 / elapsed : 0.0;
+	}
+	
+	/**
+	 * Get latency percentiles.
+	 * 
+	 * @param percentiles the percentiles to compute (e.g., 50, 95, 99)
+	 * @return the latency (in milliseconds) at each percentile, or
+	 *         all zeroes if no submissions have completed
+	 */
+	public long[] getLatencyPercentiles(int... percentiles) {
+		long[] result = new long[percentiles.length];
+		if (count == 0) {
+			return result;
+		}
+		long[] sorted = Arrays.copyOf(latencies, count);
+		Arrays.sort(sorted);
+		for (int i = 0; i < percentiles.length; i++) {
+			// Nearest-rank method
+			int rank = (int) Math.ceil(percentiles[i] / 100.0 * count);
+			result[i] = sorted[Math.max(0, Math.min(count - 1, rank - 1))];
+		}
+		return result;
+	}
+	
+	/**
+	 * Format a one-line summary of the statistics.
+	 * 
+	 * @param total total number of submissions in the batch run
+	 * @return the summary
+	 */
+	public String format(int total) {
+		long[] p = getLatencyPercentiles(50, 95, 99);
+		return String.format("%d/%d submissions, %.1f/s, latency p50=%d ms p95=%d ms p99=%d ms, elapsed %.1f s",
+				count, total, getThroughput(), p[0], p[1], p[2], getElapsedMillis() / 1000.0);
+	}
+}
@@ -19,10 +19,13 @@ package org.cloudcoder.builder2.ccompiler;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -31,6 +34,8 @@ import java.util.Properties;
 import org.apache.commons.io.IOUtils;
 import org.cloudcoder.app.shared.model.CompilerDiagnostic;
 import org.cloudcoder.app.shared.model.Language;
+import org.cloudcoder.builder2.compilationcache.CompilationCache;
+import org.cloudcoder.builder2.model.InvariantSource;
 import org.cloudcoder.builder2.model.WrapperMode;
 import org.cloudcoder.builder2.process.ProcessRunner;
 import org.slf4j.Logger;
@@ -43,6 +48,15 @@ import org.slf4j.LoggerFactory;
  * can be called to set the language to C or C++.
  * (The default is C.)
  * 
+ * <p>Modules whose code is the same for every submission (for example,
+ * the main function of the test scaffolding for a C_FUNCTION problem,
+ * see {@link InvariantSource}) may be added using
+ * {@link #addInvariantModule(String, String)}.
+ * These are compiled separately to object files, which are kept in the
+ * {@link CompilationCache} (keyed by the compiler's {@link CompilerIdentity},
+ * the compiler command, and the code),
+ * so that normally only the submission's own code is compiled.
+ * 
  * @author David Hovemeyer
  * @author Jaime Spacco
  */
@@ -81,10 +95,12 @@ public class Compiler {
 	private List<String> flags;
 	private List<String> endFlags;
 	private List<Module> modules;
+	private List<Module> invariantModules;
 	private String statusMessage;
 	private List<String> compilerOutput;
 	private WrapperMode wrapperMode;
 	private Language language;
+	private boolean cacheable;
 
 	/**
 	 * Constructor for programs compiled from a single source file.
@@ -114,10 +130,12 @@ public class Compiler {
 		this.flags = new ArrayList<String>();
 		this.endFlags = new ArrayList<String>();
 		this.modules = new ArrayList<Module>();
+		this.invariantModules = new ArrayList<Module>();
 		this.statusMessage = "";
 		this.compilerOutput = new LinkedList<String>();
 		this.wrapperMode = WrapperMode.SCRIPT; // safe default
 		this.language = Language.C;
+		this.cacheable = true;
 	}
 	
 	/**
@@ -167,6 +185,31 @@ public class Compiler {
 	public List<Module> getModules() {
 		return Collections.unmodifiableList(modules);
 	}
+	
+	/**
+	 * Add a module whose code does not depend on the submission.
+	 * It will be compiled separately to an object file, which will
+	 * be reused for later compilations using the same compiler flags.
+	 * Diagnostics from compiling the module are not reported.
+	 * 
+	 * @param sourceFileName the source file name (which must end in ".c")
+	 * @param code           the code
+	 */
+	public void addInvariantModule(String sourceFileName, String code) {
+		if (!sourceFileName.endsWith(".c")) {
+			throw new IllegalArgumentException("Invalid source file name: " + sourceFileName);
+		}
+		this.invariantModules.add(new Module(sourceFileName, code));
+	}
+	
+	/**
+	 * Get (read-only) list of invariant {@link Module}s.
+	 * 
+	 * @return (read-only) list of invariant {@link Module}s
+	 */
+	public List<Module> getInvariantModules() {
+		return Collections.unmodifiableList(invariantModules);
+	}
 
 	/**
 	 * Attempt to compile the program.
@@ -177,16 +220,13 @@ public class Compiler {
 		
 		for (Module m : modules) {
 			// copy source file(s) into .c file(s) in the temporary directory
-			File sourceFile = new File(workDir, m.sourceFileName);
-			OutputStream out = null;
-			try {
-				out = new BufferedOutputStream(new FileOutputStream(sourceFile));
-				IOUtils.write(m.code, out);
-			} catch (IOException e) {
-				logger.error("Could not create source file", e);
-				statusMessage = "Could not create source file: " + e.getMessage();
-			} finally {
-				IOUtils.closeQuietly(out);
+			writeSourceFile(m);
+		}
+		
+		// Get object files for invariant modules
+		for (Module m : invariantModules) {
+			if (!createObjectFile(m)) {
+				return false;
 			}
 		}
 
@@ -199,6 +239,88 @@ public class Compiler {
 		return true;
 	}
 	
+	private void writeSourceFile(Module m) {
+		File sourceFile = new File(workDir, m.sourceFileName);
+		OutputStream out = null;
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(sourceFile));
+			IOUtils.write(m.code, out);
+		} catch (IOException e) {
+			logger.error("Could not create source file", e);
+			statusMessage = "Could not create source file: " + e.getMessage();
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+	
+	/**
+	 * Create the object file for an invariant module in the work directory,
+	 * either by retrieving it from the {@link CompilationCache} or by
+	 * compiling it.
+	 * 
+	 * @param m the invariant module
+	 * @return true if successful, false if not
+	 */
+	private boolean createObjectFile(Module m) {
+		String objectFileName = getObjectFileName(m);
+		File objectFile = new File(workDir, objectFileName);
+		String[] cmd = getObjectCompileCmd(m);
+		
+		CompilationCache cache = CompilationCache.getInstance(config);
+		String compilerIdentity = getCompilerIdentity();
+		String cacheKey = null;
+		if (cache.isEnabled() && compilerIdentity != null) {
+			CompilationCache.KeyBuilder keyBuilder = new CompilationCache.KeyBuilder();
+			keyBuilder.add("cobj");
+			keyBuilder.add(compilerIdentity);
+			for (String arg : cmd) {
+				keyBuilder.add(arg);
+			}
+			keyBuilder.add(m.code);
+			cacheKey = keyBuilder.build();
+			
+			CompilationCache.Entry cached = cache.get(cacheKey);
+			byte[] object = (cached != null) ? cached.getFiles().get(objectFileName) : null;
+			if (object != null) {
+				OutputStream out = null;
+				try {
+					out = new FileOutputStream(objectFile);
+					out.write(object);
+					return true;
+				} catch (IOException e) {
+					logger.warn("Could not restore cached object file, compiling instead", e);
+				} finally {
+					IOUtils.closeQuietly(out);
+				}
+			}
+		}
+		
+		writeSourceFile(m);
+		ProcessRunner runner = new ProcessRunner(config);
+		runner.setWrapperMode(wrapperMode);
+		if (!runner.runSynchronous(workDir, cmd) || runner.getExitCode() != 0) {
+			// This shouldn't happen, since the code doesn't depend on the submission
+			logger.error("Could not compile {}: {}", m.sourceFileName, runner.getStderr());
+			statusMessage = "Could not compile " + m.sourceFileName;
+			return false;
+		}
+		
+		if (cacheKey != null) {
+			InputStream in = null;
+			try {
+				in = new FileInputStream(objectFile);
+				byte[] object = IOUtils.toByteArray(in);
+				cache.put(cacheKey, new CompilationCache.Entry(
+						Collections.singletonMap(objectFileName, object), Collections.<String>emptyList()));
+			} catch (IOException e) {
+				logger.warn("Could not read object file for caching", e);
+			} finally {
+				IOUtils.closeQuietly(in);
+			}
+		}
+		return true;
+	}
+	
 	/**
 	 * Get {@link CompilerDiagnostic}s resulting from attempting
 	 * (successfully or unsuccessfully) to compile the program.
@@ -217,6 +339,29 @@ public class Compiler {
 		return result.toArray(new CompilerDiagnostic[result.size()]);
 	}		
 
+	/**
+	 * Record the compiler output of an earlier successful compilation
+	 * of the same modules using the same compiler command, instead of
+	 * calling {@link #compile()}.  The caller is responsible for
+	 * placing the compiled executable in the work directory.
+	 * 
+	 * @param compilerOutput the compiler output from the earlier compilation
+	 */
+	public void setCachedCompilerOutput(List<String> compilerOutput) {
+		this.compilerOutput.clear();
+		this.compilerOutput.addAll(compilerOutput);
+		statusMessage = "Compilation succeeded";
+	}
+
+	/**
+	 * Get the command that will be used to compile the program.
+	 * 
+	 * @return the compiler command
+	 */
+	public List<String> getCompileCommand() {
+		return Collections.unmodifiableList(Arrays.asList(getCompileCmd()));
+	}
+
 	private String[] getCompileCmd() {
 		List<String> cmd = new ArrayList<String>();
 		cmd.add(getCompilerExe());
@@ -227,10 +372,39 @@ public class Compiler {
 		for (Module m : modules) {
 			cmd.add(m.sourceFileName);
 		}
+		for (Module m : invariantModules) {
+			cmd.add(getObjectFileName(m));
+		}
 		cmd.addAll(endFlags);
 		return cmd.toArray(new String[cmd.size()]);
 	}
 	
+	private String[] getObjectCompileCmd(Module m) {
+		List<String> cmd = new ArrayList<String>();
+		cmd.add(getCompilerExe());
+		cmd.add("-Wall");
+		cmd.addAll(flags);
+		cmd.add("-c");
+		cmd.add("-o");
+		cmd.add(getObjectFileName(m));
+		cmd.add(m.sourceFileName);
+		return cmd.toArray(new String[cmd.size()]);
+	}
+	
+	private static String getObjectFileName(Module m) {
+		return m.sourceFileName.substring(0, m.sourceFileName.length() - 2) + ".o";
+	}
+	
+	/**
+	 * Get the {@link CompilerIdentity} of the compiler that will be used.
+	 * Compiled code should only be cached if this is not null.
+	 * 
+	 * @return the compiler identity, or null if it is not known
+	 */
+	public String getCompilerIdentity() {
+		return CompilerIdentity.getInstance().get(getCompilerExe());
+	}
+	
 	private String getCompilerExe() {
 		switch (language) {
 		case C:
@@ -295,6 +469,23 @@ public class Compiler {
 		this.progName = progname;
 	}
 
+	/**
+	 * Set whether or not the compiled executable may be cached and reused
+	 * for later compilations of the same code.  The default is true.
+	 * 
+	 * @param cacheable true if the compiled executable may be cached, false if not
+	 */
+	public void setCacheable(boolean cacheable) {
+		this.cacheable = cacheable;
+	}
+
+	/**
+	 * @return true if the compiled executable may be cached, false if not
+	 */
+	public boolean isCacheable() {
+		return cacheable;
+	}
+
 	/**
 	 * Set the {@link WrapperMode} to be used when executing the compiler
 	 * in a {@link ProcessRunner}.
@@ -0,0 +1,132 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.ccompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.cloudcoder.builder2.compilationcache.CompilationCache;
+import org.cloudcoder.builder2.util.ProcessUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Identify the C and C++ compilers (their paths and versions), so that
+ * code compiled by one compiler isn't retrieved from the
+ * {@link CompilationCache} after the compiler has been upgraded or replaced.
+ * The compilers are identified once, when the singleton instance is created.
+ *
+ * @author David Hovemeyer
+ */
+public class CompilerIdentity {
+	private static final Logger logger = LoggerFactory.getLogger(CompilerIdentity.class);
+
+	private static final String[] COMPILER_EXES = { "gcc", "g++" };
+
+	private static final CompilerIdentity instance = new CompilerIdentity();
+
+	/**
+	 * @return the singleton instance
+	 */
+	public static CompilerIdentity getInstance() {
+		return instance;
+	}
+
+	private Map<String, String> identityMap;
+
+	private CompilerIdentity() {
+		identityMap = new HashMap<String, String>();
+		for (String exe : COMPILER_EXES) {
+			String identity = identify(exe);
+			if (identity != null) {
+				logger.info("Using {}: {}", exe, identity);
+				identityMap.put(exe, identity);
+			}
+		}
+	}
+
+	/**
+	 * Get a string identifying the path and version of given compiler.
+	 *
+	 * @param exe the compiler executable ("gcc" or "g++")
+	 * @return the identity of the compiler, or null if it could not be
+	 *         determined (in which case code compiled with it should not be cached)
+	 */
+	public String get(String exe) {
+		return identityMap.get(exe);
+	}
+
+	private static String identify(String exe) {
+		String path = findExecutable(exe);
+		if (path == null) {
+			logger.warn("Could not find {} on the PATH", exe);
+			return null;
+		}
+
+		InputStream in = null;
+		try {
+			Process proc = Runtime.getRuntime().exec(new String[]{ path, "--version" }, ProcessUtil.getEnvArray());
+			proc.getOutputStream().close();
+			proc.getErrorStream().close();
+			in = proc.getInputStream();
+			// The first line of the output has the version,
+			// the rest is the copyright notice
+			String version = IOUtils.toString(in).trim();
+			int eol = version.indexOf('\n');
+			if (eol >= 0) {
+				version = version.substring(0, eol).trim();
+			}
+			if (proc.waitFor() != 0 || version.equals("")) {
+				logger.warn("Could not determine version of {}", path);
+				return null;
+			}
+			return path + " " + version;
+		} catch (IOException e) {
+			logger.warn("Could not determine version of " + path, e);
+			return null;
+		} catch (InterruptedException e) {
+			logger.warn("Interrupted while determining version of {}", path);
+			return null;
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private static String findExecutable(String exe) {
+		String pathVar = System.getenv("PATH");
+		if (pathVar == null) {
+			return null;
+		}
+		for (String dir : pathVar.split(File.pathSeparator)) {
+			File file = new File(dir.equals("") ? "." : dir, exe);
+			if (file.isFile() && file.canExecute()) {
+				try {
+					// Resolve symlinks (e.g., /usr/bin/gcc -> gcc-12)
+					return file.getCanonicalPath();
+				} catch (IOException e) {
+					return file.getAbsolutePath();
+				}
+			}
+		}
+		return null;
+	}
+}
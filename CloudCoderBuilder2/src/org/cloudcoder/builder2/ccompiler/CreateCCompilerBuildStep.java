@@ -27,6 +27,7 @@ import org.cloudcoder.builder2.model.BuilderSubmission;
 import org.cloudcoder.builder2.model.DeleteDirectoryCleanupAction;
 import org.cloudcoder.builder2.model.IBuildStep;
 import org.cloudcoder.builder2.model.InternalBuilderException;
+import org.cloudcoder.builder2.model.InvariantSource;
 import org.cloudcoder.builder2.model.NativeExecutable;
 import org.cloudcoder.builder2.model.ProgramSource;
 import org.cloudcoder.builder2.util.FileUtil;
@@ -75,6 +76,14 @@ public class CreateCCompilerBuildStep implements IBuildStep {
 		Compiler compiler = new Compiler(programSource.getProgramText(), tempDir, DEFAULT_PROG_NAME, config);
 		compiler.setLanguage(problem.getProblemType().getLanguage());
 		
+		// Source files that don't depend on the submission (e.g., test scaffolding)
+		InvariantSource[] invariantSourceList = submission.getArtifact(InvariantSource[].class);
+		if (invariantSourceList != null) {
+			for (InvariantSource invariantSource : invariantSourceList) {
+				compiler.addInvariantModule(invariantSource.getSourceFileName(), invariantSource.getProgramText());
+			}
+		}
+		
 		// Make sure -std=gnu++0x is passed for C++ submissions.
 		if (problem.getProblemType().getLanguage() == Language.CPLUSPLUS) {
 			compiler.addFlag("-std=gnu++0x");
@@ -18,25 +18,42 @@
 
 package org.cloudcoder.builder2.ccompiler;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Properties;
 
+import org.apache.commons.io.IOUtils;
 import org.cloudcoder.app.shared.model.CompilationOutcome;
 import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.builder2.compilationcache.CompilationCache;
 import org.cloudcoder.builder2.model.BuilderSubmission;
 import org.cloudcoder.builder2.model.IBuildStep;
 import org.cloudcoder.builder2.model.InternalBuilderException;
 import org.cloudcoder.builder2.model.NativeExecutable;
 import org.cloudcoder.builder2.model.ProgramSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Build step to execute the {@link Compiler} created by a previous
  * {@link CreateCCompilerBuildStep}.  If successful produces a
  * {@link NativeExecutable} artifact.
+ * If the same code has been compiled before using the same compiler
+ * (see {@link CompilerIdentity}) and compiler command, the executable
+ * is retrieved from the {@link CompilationCache}.
  * 
  * @author David Hovemeyer
  * @author Jaime Spacco
  */
 public class ExecuteCCompilerBuildStep implements IBuildStep {
+	private static final Logger logger = LoggerFactory.getLogger(ExecuteCCompilerBuildStep.class);
+
 	@Override
 	public void execute(BuilderSubmission submission, Properties config) {
 		// Get ProgramSource list
@@ -50,7 +67,18 @@ public class ExecuteCCompilerBuildStep implements IBuildStep {
 
 		Compiler compiler = submission.requireArtifact(this.getClass(), Compiler.class);
 		
-		if (!compiler.compile()) {
+		// If the same code was compiled before using the same
+		// compiler and compiler command, use the cached executable
+		CompilationCache cache = CompilationCache.getInstance(config);
+		String cacheKey = null;
+		boolean compiled = false;
+		if (compiler.isCacheable() && cache.isEnabled() && compiler.getCompilerIdentity() != null) {
+			cacheKey = computeCacheKey(compiler);
+			CompilationCache.Entry cached = cache.get(cacheKey);
+			compiled = cached != null && restoreFromCache(compiler, cached);
+		}
+
+		if (!compiled && !compiler.compile()) {
 			// Compilation failed
 			submission.addArtifact(CUtil.createSubmissionResultFromFailedCompile(
 					compiler,
@@ -58,6 +86,9 @@ public class ExecuteCCompilerBuildStep implements IBuildStep {
 					programSource.getEpilogueLength()));
 		} else {
 			// Compilation succeeded
+			if (!compiled && cacheKey != null) {
+				addToCache(cache, cacheKey, compiler);
+			}
 			
 			// Annotate with CompilationResult
 			CompilationResult compilationResult = new CompilationResult();
@@ -72,4 +103,60 @@ public class ExecuteCCompilerBuildStep implements IBuildStep {
 			submission.addArtifact(new NativeExecutable(compiler.getWorkDir(), CreateCCompilerBuildStep.DEFAULT_PROG_NAME));
 		}
 	}
+
+	private static String computeCacheKey(Compiler compiler) {
+		CompilationCache.KeyBuilder keyBuilder = new CompilationCache.KeyBuilder();
+		keyBuilder.add("c");
+		keyBuilder.add(compiler.getCompilerIdentity());
+		for (String arg : compiler.getCompileCommand()) {
+			keyBuilder.add(arg);
+		}
+		for (Compiler.Module module : compiler.getModules()) {
+			keyBuilder.add(module.sourceFileName);
+			keyBuilder.add(module.code);
+		}
+		for (Compiler.Module module : compiler.getInvariantModules()) {
+			keyBuilder.add(module.sourceFileName);
+			keyBuilder.add(module.code);
+		}
+		return keyBuilder.build();
+	}
+
+	private static boolean restoreFromCache(Compiler compiler, CompilationCache.Entry cached) {
+		for (Map.Entry<String, byte[]> entry : cached.getFiles().entrySet()) {
+			File file = new File(compiler.getWorkDir(), entry.getKey());
+			OutputStream out = null;
+			try {
+				out = new FileOutputStream(file);
+				out.write(entry.getValue());
+				out.close();
+				out = null;
+				if (!file.setExecutable(true)) {
+					throw new IOException("Could not make " + file.getPath() + " executable");
+				}
+			} catch (IOException e) {
+				logger.warn("Could not restore cached executable, compiling instead", e);
+				return false;
+			} finally {
+				IOUtils.closeQuietly(out);
+			}
+		}
+		compiler.setCachedCompilerOutput(cached.getCompilerOutput());
+		return true;
+	}
+
+	private static void addToCache(CompilationCache cache, String cacheKey, Compiler compiler) {
+		String exeName = CreateCCompilerBuildStep.DEFAULT_PROG_NAME;
+		InputStream in = null;
+		try {
+			in = new FileInputStream(new File(compiler.getWorkDir(), exeName));
+			byte[] exe = IOUtils.toByteArray(in);
+			cache.put(cacheKey, new CompilationCache.Entry(
+					Collections.singletonMap(exeName, exe), compiler.getCompilerOutput()));
+		} catch (IOException e) {
+			logger.warn("Could not read compiled executable for caching", e);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
 }
@@ -25,6 +25,7 @@ import org.cloudcoder.app.shared.model.TestCase;
 import org.cloudcoder.builder2.model.BuilderSubmission;
 import org.cloudcoder.builder2.model.IBuildStep;
 import org.cloudcoder.builder2.model.InternalBuilderException;
+import org.cloudcoder.builder2.model.InvariantSource;
 import org.cloudcoder.builder2.model.ProgramSource;
 import org.cloudcoder.builder2.util.StringUtil;
 
@@ -37,10 +38,20 @@ import org.cloudcoder.builder2.util.StringUtil;
  * submissions.  It works by replacing the {@link ProgramSource}
  * submission artifact with the scaffolded version.
  * 
+ * <p>Each test case becomes a function in the scaffolded version, since
+ * calling the submitted function requires its prototype.  The main
+ * function, which only depends on the problem's test cases, is added
+ * as a separate {@link InvariantSource}, so that it can be compiled
+ * once and reused for later submissions.
+ * 
  * @author David Hovemeyer
  * @author Jaime Spacco
  */
 public class AddCFunctionScaffoldingBuildStep implements IBuildStep {
+	/**
+	 * Name of the source file containing the main function.
+	 */
+	private static final String MAIN_SOURCE_FILE_NAME = "cctestmain.c";
 
 	@Override
 	public void execute(BuilderSubmission submission, Properties config) {
@@ -77,30 +88,15 @@ public class AddCFunctionScaffoldingBuildStep implements IBuildStep {
 		test.append("#undef eq\n");
 		test.append("#define eq(a,b) ((a) == (b))\n");
 
-		// Generate a main() function which can run all of the test cases.
-		// argv[1] specifies the test case to execute by name.
-		// argv[2] and argv[3] specify the exit values to use to indicate
-		// whether or not the tested function's return value matched the
-		// expected value.
-		test.append("int main(int argc, char ** argv) {\n");
-		test.append("  int rcIfEqual = atoi(argv[2]);\n");
-		test.append("  int rcIfNotEqual = atoi(argv[3]);\n");
-		// Make it a bit harder to steal the exit codes
-		test.append("  argv[2] = 0;\n");
-		test.append("  argv[3] = 0;\n");
-
-		// Generate calls to execute test cases.
-		for (TestCase t : testCaseList) {
-			test.append("  if (strcmp(argv[1], \"" +t.getTestCaseName()+"\")==0) {\n");
-			test.append("    return eq("+problem.getTestname()+
-					"("+t.getInput()+"), ("+t.getOutput()+")) ? rcIfEqual : rcIfNotEqual;\n");
-			test.append("  }\n");
+		// Generate a function for each test case, returning nonzero
+		// if the tested function's return value matched the expected value.
+		for (int i = 0; i < testCaseList.length; i++) {
+			TestCase t = testCaseList[i];
+			test.append("int " + getTestFunctionName(i) + "(void) {\n");
+			test.append("  return eq("+problem.getTestname()+
+					"("+t.getInput()+"), ("+t.getOutput()+"));\n");
+			test.append("}\n");
 		}
-
-		// We return 99 if an invalid test case was provided: shouldn't
-		// happen in practice.
-		test.append("  return 99;\n");
-		test.append("}\n");
 		String result = test.toString();
 		System.out.println(result);
 
@@ -109,6 +105,49 @@ public class AddCFunctionScaffoldingBuildStep implements IBuildStep {
 		// Create new ProgramSource artifact with scaffolded source
 		ProgramSource scaffoldedProgramSource = new ProgramSource(result, prologueLength, epilogueLength);
 		submission.addArtifact(new ProgramSource[]{scaffoldedProgramSource});
+		
+		submission.addArtifact(new InvariantSource[]{
+				new InvariantSource(MAIN_SOURCE_FILE_NAME, createMain(testCaseList))});
+	}
+	
+	private static String getTestFunctionName(int i) {
+		return "cloudcoder_test_" + i;
+	}
+	
+	/**
+	 * Generate a main() function which can run all of the test cases.
+	 * argv[1] specifies the test case to execute by name.
+	 * argv[2] and argv[3] specify the exit values to use to indicate
+	 * whether or not the tested function's return value matched the
+	 * expected value.
+	 */
+	private static String createMain(TestCase[] testCaseList) {
+		StringBuilder main = new StringBuilder();
+		main.append("#include <string.h>\n");
+		main.append("#include <stdlib.h>\n");
+		for (int i = 0; i < testCaseList.length; i++) {
+			main.append("int " + getTestFunctionName(i) + "(void);\n");
+		}
+		
+		main.append("int main(int argc, char ** argv) {\n");
+		main.append("  int rcIfEqual = atoi(argv[2]);\n");
+		main.append("  int rcIfNotEqual = atoi(argv[3]);\n");
+		// Make it a bit harder to steal the exit codes
+		main.append("  argv[2] = 0;\n");
+		main.append("  argv[3] = 0;\n");
+
+		// Generate calls to execute test cases.
+		for (int i = 0; i < testCaseList.length; i++) {
+			main.append("  if (strcmp(argv[1], \"" +testCaseList[i].getTestCaseName()+"\")==0) {\n");
+			main.append("    return " + getTestFunctionName(i) + "() ? rcIfEqual : rcIfNotEqual;\n");
+			main.append("  }\n");
+		}
+
+		// We return 99 if an invalid test case was provided: shouldn't
+		// happen in practice.
+		main.append("  return 99;\n");
+		main.append("}\n");
+		return main.toString();
 	}
 
 }
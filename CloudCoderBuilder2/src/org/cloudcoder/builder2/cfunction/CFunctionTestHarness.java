@@ -0,0 +1,339 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.cfunction;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.builder2.ccompiler.Compiler;
+import org.cloudcoder.builder2.model.Command;
+import org.cloudcoder.builder2.model.CommandExecutionPreferences;
+import org.cloudcoder.builder2.model.CommandLimit;
+import org.cloudcoder.builder2.model.CommandResult;
+import org.cloudcoder.builder2.model.NativeExecutable;
+import org.cloudcoder.builder2.model.ProcessStatus;
+import org.cloudcoder.builder2.model.WrapperMode;
+import org.cloudcoder.builder2.util.DeleteDirectoryRecursively;
+import org.cloudcoder.builder2.util.FileUtil;
+import org.cloudcoder.builder2.util.ProcessUtil;
+import org.cloudcoder.builder2.util.PropertyUtil;
+import org.cloudcoder.builder2.util.SingletonHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single-process test harness for {@link ProblemType#C_FUNCTION} submissions.
+ * Rather than executing the scaffolded executable once per test case
+ * from the builder, a small launcher program is run once, and
+ * forks a child process for each test case.  Each child sets the same
+ * limits as a separately-executed test process, and then executes the
+ * scaffolded executable with the same arguments, so the exit codes
+ * reported for the children are checked against the
+ * {@link SecretSuccessAndFailureCodes} exactly as before.
+ * 
+ * <p>The launcher is compiled once (this is a singleton object that
+ * can be used by many threads), and is never linked with submitted code:
+ * the launcher itself needs to be able to fork, so no submitted code
+ * may run in it.  Some code in the overall process should guarantee that
+ * the {@link #cleanup()} method is called on the singleton instance
+ * (if it was created) before the process exits.
+ * 
+ * <p>The harness is enabled by setting <code>cloudcoder.builder2.cfunction.harness</code>
+ * to <code>true</code>.  Because forking is not possible in a process
+ * sandboxed by EasySandbox, and because gcov needs a separate coverage
+ * data directory for each test, the harness is only used when EasySandbox
+ * and gcov are both disabled.
+ * 
+ * @author David Hovemeyer
+ */
+public class CFunctionTestHarness {
+	private static final Logger logger = LoggerFactory.getLogger(CFunctionTestHarness.class);
+	
+	/**
+	 * Limit on processes for the launcher process.  (Each test process
+	 * sets its own limit to 0 before the scaffolded executable is
+	 * loaded.)  Note that the process limit applies to all processes run
+	 * by the builder's user, so this is not an exact limit on the number
+	 * of test processes.
+	 */
+	private static final int HARNESS_MAX_PROCESSES = 4096;
+	
+	/** Maximum overhead per line of output reported by the harness. */
+	private static final int LINE_OVERHEAD = 24;
+	
+	private static SingletonHolder<CFunctionTestHarness, Properties> holder = new SingletonHolder<CFunctionTestHarness, Properties>() {
+		@Override
+		protected CFunctionTestHarness onCreate(Properties arg) {
+			return new CFunctionTestHarness(arg);
+		}
+	};
+	
+	/**
+	 * Get the singleton instance.  The launcher is compiled when
+	 * the instance is created.
+	 * 
+	 * @param config the builder configuration properties
+	 * @return the singleton instance
+	 */
+	public static CFunctionTestHarness getInstance(Properties config) {
+		return holder.get(config);
+	}
+	
+	/**
+	 * Check whether or not the singleton instance was created.
+	 * 
+	 * @return true if the singleton instance was created, false if not
+	 */
+	public static boolean isCreated() {
+		return holder.isCreated();
+	}
+
+	/**
+	 * Check whether the test harness is enabled.
+	 * 
+	 * @param config the builder configuration properties
+	 * @return true if the test harness is enabled
+	 */
+	public static boolean isEnabled(Properties config) {
+		return PropertyUtil.isEnabled(config, "cloudcoder.builder2.cfunction.harness");
+	}
+	
+	/**
+	 * Check whether the test harness can be used to execute tests
+	 * with the given {@link CommandExecutionPreferences}.
+	 * 
+	 * @param config the builder configuration properties
+	 * @param prefs  the {@link CommandExecutionPreferences} for the test commands
+	 * @return true if the test harness can be used
+	 */
+	public static boolean canUse(Properties config, CommandExecutionPreferences prefs) {
+		if (!isEnabled(config) || prefs == null) {
+			return false;
+		}
+		if (PropertyUtil.isEnabled(config, "cloudcoder.builder2.cprog.gcov")) {
+			return false;
+		}
+		if (prefs.isSet(CommandLimit.ENABLE_SANDBOX) && prefs.getLimit(CommandLimit.ENABLE_SANDBOX) != 0) {
+			return false;
+		}
+		return prefs.isSet(CommandLimit.CPU_TIME_SEC)
+				&& prefs.isSet(CommandLimit.OUTPUT_MAX_BYTES)
+				&& prefs.isSet(CommandLimit.OUTPUT_MAX_LINES)
+				&& prefs.isSet(CommandLimit.OUTPUT_LINE_MAX_CHARS)
+				&& getInstance(config).getLauncherPath() != null;
+	}
+	
+	// Fields
+	private File tempDir;
+	private String launcherPath;
+	
+	/**
+	 * Constructor.
+	 */
+	private CFunctionTestHarness(Properties config) {
+		try {
+			build(config);
+		} catch (Exception e) {
+			logger.error("Could not build C_FUNCTION test harness", e);
+		}
+	}
+	
+	private void build(Properties config) throws IOException {
+		String source = ProcessUtil.resourceToString("org/cloudcoder/builder2/cfunction/res/cFunctionTestHarness.c");
+		
+		this.tempDir = FileUtil.makeTempDir(config);
+		
+		Compiler compiler = new Compiler(source, tempDir, "cctestharness", config);
+		compiler.setWrapperMode(WrapperMode.SCRIPT); // safe default, native exe wrapper might not be available
+		
+		if (!compiler.compile()) {
+			for (String err : compiler.getCompilerOutput()) {
+				logger.error("Compile error: {}", err);
+			}
+			throw new IOException("Error compiling C_FUNCTION test harness");
+		}
+		
+		launcherPath = tempDir.getAbsolutePath() + "/cctestharness";
+	}
+	
+	/**
+	 * Get the path of the launcher executable.
+	 * 
+	 * @return the path of the launcher executable, or null if the launcher is not available
+	 */
+	public String getLauncherPath() {
+		return launcherPath;
+	}
+	
+	/**
+	 * Clean up.
+	 */
+	public void cleanup() {
+		if (tempDir != null) {
+			new DeleteDirectoryRecursively(tempDir).delete();
+		}
+	}
+	
+	/**
+	 * Create the {@link Command} to run all tests using the harness.
+	 * 
+	 * @param nativeExe    the scaffolded executable
+	 * @param codes        the {@link SecretSuccessAndFailureCodes}
+	 * @param testCaseList the test cases
+	 * @param prefs        the {@link CommandExecutionPreferences} for the individual test commands
+	 * @return the {@link Command}
+	 */
+	public Command createCommand(NativeExecutable nativeExe, SecretSuccessAndFailureCodes codes,
+			TestCase[] testCaseList, CommandExecutionPreferences prefs) {
+		int cpuTimeSec = prefs.getLimit(CommandLimit.CPU_TIME_SEC);
+		List<String> args = new ArrayList<String>();
+		args.add(launcherPath);
+		args.add(String.valueOf(codes.getSuccessCode()));
+		args.add(String.valueOf(codes.getFailureCode()));
+		args.add(String.valueOf(cpuTimeSec));
+		// Same wall clock limit as CommandExecutor uses
+		args.add(String.valueOf(cpuTimeSec * 2 * 1000L));
+		args.add(String.valueOf(prefs.getLimit(CommandLimit.OUTPUT_MAX_BYTES)));
+		args.add(String.valueOf(prefs.getLimit(CommandLimit.OUTPUT_MAX_LINES)));
+		args.add(String.valueOf(prefs.getLimit(CommandLimit.OUTPUT_LINE_MAX_CHARS)));
+		args.add("./" + nativeExe.getExeFileName());
+		for (TestCase testCase : testCaseList) {
+			args.add(testCase.getTestCaseName());
+		}
+		return new Command(nativeExe.getDir(), args);
+	}
+	
+	/**
+	 * Create {@link CommandExecutionPreferences} for the harness process.
+	 * These allow the harness to fork, allow a bit more time than
+	 * a single test process, and allow enough output for all of the tests.
+	 * 
+	 * @param prefs    the {@link CommandExecutionPreferences} for the individual test commands
+	 * @param numTests the number of test cases
+	 * @return the {@link CommandExecutionPreferences} for the harness process
+	 */
+	public static CommandExecutionPreferences createPreferences(CommandExecutionPreferences prefs, int numTests) {
+		CommandExecutionPreferences harnessPrefs = new CommandExecutionPreferences();
+		for (CommandLimit limit : prefs.getMap().keySet()) {
+			harnessPrefs.setLimit(limit, prefs.getLimit(limit));
+		}
+		harnessPrefs.setWrapperMode(prefs.getWrapperMode());
+		
+		int maxBytes = prefs.getLimit(CommandLimit.OUTPUT_MAX_BYTES);
+		int maxLines = prefs.getLimit(CommandLimit.OUTPUT_MAX_LINES);
+		int maxChars = prefs.getLimit(CommandLimit.OUTPUT_LINE_MAX_CHARS);
+		long harnessMaxBytes = (long) numTests * (2L * (maxBytes + (maxLines + 1L) * LINE_OVERHEAD) + LINE_OVERHEAD);
+		long harnessMaxLines = (long) numTests * (2L * (maxLines + 1L) + 1L);
+		
+		harnessPrefs.setLimit(CommandLimit.PROCESSES, HARNESS_MAX_PROCESSES);
+		harnessPrefs.setLimit(CommandLimit.CPU_TIME_SEC, prefs.getLimit(CommandLimit.CPU_TIME_SEC) + 1);
+		harnessPrefs.setLimit(CommandLimit.OUTPUT_MAX_BYTES, (int) Math.min(harnessMaxBytes, Integer.MAX_VALUE));
+		harnessPrefs.setLimit(CommandLimit.OUTPUT_MAX_LINES, (int) Math.min(harnessMaxLines, Integer.MAX_VALUE));
+		harnessPrefs.setLimit(CommandLimit.OUTPUT_LINE_MAX_CHARS, maxChars + LINE_OVERHEAD);
+		
+		return harnessPrefs;
+	}
+	
+	/**
+	 * Get a {@link CommandResult} for each test case from the output
+	 * of the harness.  The result for a test case is null if the harness
+	 * did not report its exit status (for example, because the test
+	 * process could not be started, or the harness itself failed.)
+	 * 
+	 * @param harnessResult the {@link CommandResult} of the harness process
+	 * @param numTests      the number of test cases
+	 * @return array of {@link CommandResult}s (one per test case)
+	 */
+	public static CommandResult[] getCommandResults(CommandResult harnessResult, int numTests) {
+		List<List<String>> stdout = new ArrayList<List<String>>();
+		List<List<String>> stderr = new ArrayList<List<String>>();
+		for (int i = 0; i < numTests; i++) {
+			stdout.add(new ArrayList<String>());
+			stderr.add(new ArrayList<String>());
+		}
+		
+		CommandResult[] result = new CommandResult[numTests];
+		
+		for (String line : harnessResult.getStdout()) {
+			int space1 = line.indexOf(' ');
+			int space2 = (space1 >= 0) ? line.indexOf(' ', space1 + 1) : -1;
+			if (space2 < 0) {
+				continue;
+			}
+			String tag = line.substring(0, space1);
+			int index;
+			try {
+				index = Integer.parseInt(line.substring(space1 + 1, space2));
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			if (index < 0 || index >= numTests) {
+				continue;
+			}
+			String rest = line.substring(space2 + 1);
+			
+			if (tag.equals("CCOUT")) {
+				stdout.get(index).add(rest);
+			} else if (tag.equals("CCERR")) {
+				stderr.get(index).add(rest);
+			} else if (tag.equals("CCEND")) {
+				result[index] = createCommandResult(rest, stdout.get(index), stderr.get(index));
+			}
+		}
+		
+		return result;
+	}
+
+	private static CommandResult createCommandResult(String status, List<String> stdout, List<String> stderr) {
+		String[] fields = status.split(" ");
+		if (fields.length != 2) {
+			return null;
+		}
+		int code;
+		try {
+			code = Integer.parseInt(fields[1]);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		
+		if (fields[0].equals("exited")) {
+			return new CommandResult(ProcessStatus.EXITED, "Process exited", code, stdout, stderr);
+		} else if (fields[0].equals("timeout")) {
+			return new CommandResult(ProcessStatus.TIMED_OUT, "Process timed out");
+		} else if (fields[0].equals("signal")) {
+			// Interpret signals the same way as ProcessRunner does
+			if (code == 9 || code == 24) {
+				return new CommandResult(ProcessStatus.TIMED_OUT, "Process timed out", code,
+						stdout, Collections.<String>emptyList());
+			} else if (code == 25) {
+				return new CommandResult(ProcessStatus.FILE_SIZE_LIMIT_EXCEEDED, "File size limit exceeded", code,
+						stdout, Collections.<String>emptyList());
+			} else {
+				return new CommandResult(ProcessStatus.KILLED_BY_SIGNAL,
+						"Process crashed (terminated by signal " + code + ")", code, stdout, stderr);
+			}
+		}
+		return null;
+	}
+}
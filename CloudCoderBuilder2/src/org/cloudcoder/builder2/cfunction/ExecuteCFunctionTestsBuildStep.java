@@ -0,0 +1,104 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.cfunction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.builder2.commandrunner.CommandExecutor;
+import org.cloudcoder.builder2.commandrunner.ExecuteCommandForEachCommandInputBuildStep;
+import org.cloudcoder.builder2.model.BuilderSubmission;
+import org.cloudcoder.builder2.model.Command;
+import org.cloudcoder.builder2.model.CommandExecutionPreferences;
+import org.cloudcoder.builder2.model.CommandInput;
+import org.cloudcoder.builder2.model.CommandResult;
+import org.cloudcoder.builder2.model.IBuildStep;
+import org.cloudcoder.builder2.model.NativeExecutable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Execute the tests for a {@link ProblemType#C_FUNCTION} submission,
+ * producing an array of {@link CommandResult}s (one per test case).
+ * If possible, all of the tests are run by a single process using the
+ * {@link CFunctionTestHarness}: otherwise, this step behaves exactly like
+ * {@link ExecuteCommandForEachCommandInputBuildStep}.  Any test whose
+ * result wasn't reported by the harness is executed separately.
+ * 
+ * @author David Hovemeyer
+ */
+public class ExecuteCFunctionTestsBuildStep implements IBuildStep {
+	private static final Logger logger = LoggerFactory.getLogger(ExecuteCFunctionTestsBuildStep.class);
+	
+	private final ExecuteCommandForEachCommandInputBuildStep executeEachCommand =
+			new ExecuteCommandForEachCommandInputBuildStep();
+
+	@Override
+	public void execute(BuilderSubmission submission, Properties config) {
+		CommandExecutionPreferences prefs = submission.getArtifact(CommandExecutionPreferences.class);
+		if (!CFunctionTestHarness.canUse(config, prefs)) {
+			executeEachCommand.execute(submission, config);
+			return;
+		}
+		
+		TestCase[] testCaseList = submission.requireArtifact(this.getClass(), TestCase[].class);
+		NativeExecutable nativeExe = submission.requireArtifact(this.getClass(), NativeExecutable.class);
+		SecretSuccessAndFailureCodes codes = submission.requireArtifact(this.getClass(), SecretSuccessAndFailureCodes.class);
+		Command[] commandList = submission.requireArtifact(this.getClass(), Command[].class);
+		CommandInput[] commandInputList = submission.requireArtifact(this.getClass(), CommandInput[].class);
+		
+		// Run all of the tests in the harness
+		CommandExecutor harness = new CommandExecutor(
+				CFunctionTestHarness.getInstance(config).createCommand(nativeExe, codes, testCaseList, prefs),
+				new CommandInput(""),
+				config);
+		harness.setPrefs(CFunctionTestHarness.createPreferences(prefs, testCaseList.length));
+		harness.run();
+		CommandResult harnessResult = harness.getCommandResult();
+		CommandResult[] commandResultList = CFunctionTestHarness.getCommandResults(harnessResult, testCaseList.length);
+		
+		// Execute any tests the harness didn't report results for
+		List<Integer> rerun = new ArrayList<Integer>();
+		for (int i = 0; i < commandResultList.length; i++) {
+			if (commandResultList[i] == null) {
+				rerun.add(i);
+			}
+		}
+		if (!rerun.isEmpty()) {
+			logger.warn("Test harness did not report {} of {} tests (status={}, exit code={}): running them separately",
+					new Object[]{ rerun.size(), testCaseList.length, harnessResult.getStatus(), harnessResult.getExitCode() });
+			CommandExecutor[] commandExecutorList = new CommandExecutor[rerun.size()];
+			for (int i = 0; i < commandExecutorList.length; i++) {
+				int index = rerun.get(i);
+				commandExecutorList[i] = new CommandExecutor(commandList[index], commandInputList[index], config);
+				commandExecutorList[i].setPrefs(prefs);
+				commandExecutorList[i].start();
+			}
+			for (int i = 0; i < commandExecutorList.length; i++) {
+				commandExecutorList[i].join();
+				commandResultList[rerun.get(i)] = commandExecutorList[i].getCommandResult();
+			}
+		}
+		
+		submission.addArtifact(commandResultList);
+	}
+
+}
@@ -0,0 +1,268 @@
+// CloudCoder C_FUNCTION test harness.
+// This is a standalone program, compiled once by the builder, which is
+// never linked with submitted code.  It runs each test case by forking
+// a child process, which sets the same limits as a separately-executed
+// test process and then executes the scaffolded executable for the test
+// case.  It reports each child's output and exit status on stdout:
+//
+//   CCOUT <index> <line>          a line of the test's standard output
+//   CCERR <index> <line>          a line of the test's standard error
+//   CCEND <index> <how> <code>    exit status: how is exited, signal, or timeout
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <errno.h>
+#include <poll.h>
+#include <signal.h>
+#include <sys/resource.h>
+#include <sys/time.h>
+#include <sys/types.h>
+#include <sys/wait.h>
+#include <unistd.h>
+
+struct cc_stream {
+	int cc_fd;          // read end of the pipe, -1 once closed
+	long cc_nbytes;     // number of bytes read so far
+	int cc_nlines;      // number of lines reported so far
+	int cc_len;         // length of current line
+	char *cc_line;      // current line
+};
+
+struct cc_test {
+	pid_t cc_pid;       // child process id, -1 if not running
+	int cc_status;      // child's wait status
+	int cc_timed_out;   // set if child was killed for exceeding wall clock limit
+	long cc_deadline;   // wall clock deadline (ms)
+	struct cc_stream cc_out, cc_err;
+};
+
+static long cc_max_bytes, cc_max_lines, cc_max_chars;
+
+static long cc_now_ms(void) {
+	struct timeval tv;
+	gettimeofday(&tv, 0);
+	return tv.tv_sec * 1000L + tv.tv_usec / 1000L;
+}
+
+static void cc_emit_line(int index, const char *tag, struct cc_stream *s) {
+	if (s->cc_nlines < cc_max_lines) {
+		printf("%s %d ", tag, index);
+		fwrite(s->cc_line, 1, (size_t) s->cc_len, stdout);
+		fputc('\n', stdout);
+	}
+	s->cc_nlines++;
+	s->cc_len = 0;
+}
+
+// Read available output from a test's stdout or stderr pipe.
+static void cc_read_stream(int index, const char *tag, struct cc_stream *s) {
+	char buf[4096];
+	ssize_t n = read(s->cc_fd, buf, sizeof(buf));
+	if (n < 0 && (errno == EINTR || errno == EAGAIN)) {
+		return;
+	}
+	if (n <= 0) {
+		// End of file: report partial line, if any
+		if (s->cc_len > 0) {
+			cc_emit_line(index, tag, s);
+		}
+		close(s->cc_fd);
+		s->cc_fd = -1;
+		return;
+	}
+	for (ssize_t i = 0; i < n && s->cc_nbytes < cc_max_bytes; i++) {
+		s->cc_nbytes++;
+		if (buf[i] == '\n') {
+			cc_emit_line(index, tag, s);
+		} else if (s->cc_len <= cc_max_chars) {
+			s->cc_line[s->cc_len++] = buf[i];
+		}
+	}
+}
+
+static void cc_run_child(char **exe_argv, int out_fd, int err_fd, long cpu_sec) {
+	struct rlimit rl;
+
+	// Output goes to the pipes, and no other file descriptors are available
+	// to the test: in particular, not the harness's stdout
+	dup2(out_fd, 1);
+	dup2(err_fd, 2);
+	long max_fd = sysconf(_SC_OPEN_MAX);
+	if (max_fd < 0 || max_fd > 4096) {
+		max_fd = 4096;
+	}
+	for (int fd = 3; fd < max_fd; fd++) {
+		close(fd);
+	}
+
+	// Same limits as a separately-executed test process.  These are set
+	// before the scaffolded executable is loaded, so none of the submitted
+	// code (including static initializers) runs without them.
+	rl.rlim_cur = rl.rlim_max = (rlim_t) cpu_sec;
+	setrlimit(RLIMIT_CPU, &rl);
+	rl.rlim_cur = rl.rlim_max = 0;
+	setrlimit(RLIMIT_NPROC, &rl);
+
+	execv(exe_argv[0], exe_argv);
+	_exit(127);
+}
+
+static int cc_start_test(char **exe_argv, struct cc_test *t, long cpu_sec, long wall_ms) {
+	int out_pipe[2], err_pipe[2];
+
+	if (pipe(out_pipe) != 0) {
+		return -1;
+	}
+	if (pipe(err_pipe) != 0) {
+		close(out_pipe[0]);
+		close(out_pipe[1]);
+		return -1;
+	}
+
+	pid_t pid = fork();
+	if (pid == 0) {
+		close(out_pipe[0]);
+		close(err_pipe[0]);
+		cc_run_child(exe_argv, out_pipe[1], err_pipe[1], cpu_sec);
+	}
+	close(out_pipe[1]);
+	close(err_pipe[1]);
+	if (pid < 0) {
+		close(out_pipe[0]);
+		close(err_pipe[0]);
+		return -1;
+	}
+
+	t->cc_pid = pid;
+	t->cc_deadline = cc_now_ms() + wall_ms;
+	t->cc_out.cc_fd = out_pipe[0];
+	t->cc_err.cc_fd = err_pipe[0];
+	return 0;
+}
+
+static void cc_report_status(int index, struct cc_test *t) {
+	if (t->cc_timed_out) {
+		printf("CCEND %d timeout 0\n", index);
+	} else if (WIFSIGNALED(t->cc_status)) {
+		printf("CCEND %d signal %d\n", index, WTERMSIG(t->cc_status));
+	} else {
+		printf("CCEND %d exited %d\n", index, WEXITSTATUS(t->cc_status));
+	}
+}
+
+// argv: program, success exit code, failure exit code, CPU seconds,
+// wall clock milliseconds, max bytes, lines, and characters per line
+// of output per test, path of the scaffolded executable, and then
+// the name of each test case
+int main(int argc, char **argv) {
+	if (argc < 9) {
+		return 1;
+	}
+	char *rc_eq = argv[1];
+	char *rc_ne = argv[2];
+	long cpu_sec = atol(argv[3]);
+	long wall_ms = atol(argv[4]);
+	cc_max_bytes = atol(argv[5]);
+	cc_max_lines = atol(argv[6]);
+	cc_max_chars = atol(argv[7]);
+	char *exe = argv[8];
+	int ntests = argc - 9;
+
+	struct cc_test *tests = (struct cc_test *) calloc((size_t) ntests, sizeof(struct cc_test));
+	struct pollfd *fds = (struct pollfd *) calloc((size_t) ntests * 2 + 1, sizeof(struct pollfd));
+	if (tests == 0 || fds == 0) {
+		return 1;
+	}
+
+	// Don't let buffered output be inherited by the test processes
+	fflush(stdout);
+	fflush(stderr);
+
+	// Start all tests.  Tests that can't be started are not reported.
+	int running = 0;
+	for (int i = 0; i < ntests; i++) {
+		struct cc_test *t = &tests[i];
+		t->cc_pid = -1;
+		t->cc_out.cc_fd = t->cc_err.cc_fd = -1;
+		t->cc_out.cc_line = (char *) malloc((size_t) cc_max_chars + 2);
+		t->cc_err.cc_line = (char *) malloc((size_t) cc_max_chars + 2);
+		// Same arguments as a separately-executed test process
+		char *exe_argv[] = { exe, argv[9 + i], rc_eq, rc_ne, 0 };
+		if (t->cc_out.cc_line != 0 && t->cc_err.cc_line != 0
+				&& cc_start_test(exe_argv, t, cpu_sec, wall_ms) == 0) {
+			running++;
+		}
+	}
+
+	while (running > 0) {
+		long now = cc_now_ms();
+		int nfds = 0;
+		int timeout = 1000;
+
+		for (int i = 0; i < ntests; i++) {
+			struct cc_test *t = &tests[i];
+			if (t->cc_pid < 0) {
+				continue;
+			}
+
+			// Kill tests that have exceeded the wall clock limit
+			if (!t->cc_timed_out && now >= t->cc_deadline) {
+				kill(t->cc_pid, SIGKILL);
+				t->cc_timed_out = 1;
+			}
+
+			if (t->cc_out.cc_fd < 0 && t->cc_err.cc_fd < 0) {
+				// Output is complete: see if the test process has exited
+				pid_t rc = waitpid(t->cc_pid, &t->cc_status, WNOHANG);
+				if (rc == t->cc_pid || (rc < 0 && errno != EINTR)) {
+					cc_report_status(i, t);
+					t->cc_pid = -1;
+					running--;
+				} else {
+					timeout = 10;
+				}
+				continue;
+			}
+
+			if (t->cc_out.cc_fd >= 0) {
+				fds[nfds].fd = t->cc_out.cc_fd;
+				fds[nfds].events = POLLIN;
+				nfds++;
+			}
+			if (t->cc_err.cc_fd >= 0) {
+				fds[nfds].fd = t->cc_err.cc_fd;
+				fds[nfds].events = POLLIN;
+				nfds++;
+			}
+			long remaining = t->cc_timed_out ? 10 : t->cc_deadline - now;
+			if (remaining < timeout) {
+				timeout = (int) remaining;
+			}
+		}
+
+		if (running == 0) {
+			break;
+		}
+
+		if (poll(fds, (nfds_t) nfds, timeout) <= 0) {
+			continue;
+		}
+
+		for (int i = 0; i < ntests; i++) {
+			struct cc_test *t = &tests[i];
+			for (int j = 0; j < nfds; j++) {
+				if (fds[j].revents == 0) {
+					continue;
+				}
+				if (fds[j].fd == t->cc_out.cc_fd) {
+					cc_read_stream(i, "CCOUT", &t->cc_out);
+				} else if (fds[j].fd == t->cc_err.cc_fd) {
+					cc_read_stream(i, "CCERR", &t->cc_err);
+				}
+			}
+		}
+	}
+
+	fflush(stdout);
+	return 0;
+}
@@ -48,15 +48,10 @@ public class CommandExecutor implements Runnable {
 	private Properties config;
 	private CommandExecutionPreferences prefs;
 	
-	private Thread thread;
+	private ProcessRunner processRunner;
+	private long deadline;
 	private CommandResult commandResult;
 
-	/**
-	 * Number of milliseconds between polls to see if a test case
-	 * process has completed.
-	 */
-	public static final int POLL_INTERVAL_IN_MILLIS = 500;
-
 	/**
 	 * Maximum number of seconds (wall time) to allow a command process to run
 	 * by default.
@@ -97,9 +92,18 @@ public class CommandExecutor implements Runnable {
 	 */
 	@Override
 	public void run() {
+		start();
+		join();
+	}
+
+	/**
+	 * Start executing the {@link Command}.
+	 * The process runs asynchronously: call {@link #join()}
+	 * to wait for it to complete.
+	 */
+	public void start() {
 		int maxWaitTimeSec;
 		
-		ProcessRunner processRunner;
 		if (prefs != null) {
 			LimitedProcessRunner processRunner_ = new LimitedProcessRunner(config);
 			processRunner_.setPreferences(prefs);
@@ -117,55 +121,22 @@ public class CommandExecutor implements Runnable {
 		processRunner.getEnv().putAll(command.getEnv());
 
 		String[] cmd = ArrayUtil.toArray(command.getArgs(), String.class);
+		deadline = System.currentTimeMillis() + maxWaitTimeSec * 1000L;
 		processRunner.runAsynchronous(command.getDir(), cmd);
-
-		int elapsed = 0;
-		while (processRunner.isRunning() && elapsed < maxWaitTimeSec * 1000) {
-			try {
-				Thread.sleep(CommandExecutor.POLL_INTERVAL_IN_MILLIS);
-			} catch (InterruptedException e) {
-				// can't happen
-			}
-
-			elapsed += CommandExecutor.POLL_INTERVAL_IN_MILLIS;
-		}
-
-		if (processRunner.isRunning()) {
-			// timed out!
-			processRunner.killProcess();
-			commandResult = new CommandResult(ProcessStatus.TIMED_OUT, processRunner.getStatusMessage());
-		} else {
-			// Either completed normally or killed by signal
-			commandResult = new CommandResult(
-					processRunner.getStatus(),
-					processRunner.getStatusMessage(),
-					processRunner.getExitCode(),
-					processRunner.getStdoutAsList(),
-					processRunner.getStderrAsList());
-		}
-		
-		if (commandResult == null) {
-			logger.error("CommandExecutor thread finishing with a null commandResult");
-		}
 	}
 
 	/**
-	 * Start executing the {@link Command}.
-	 */
-	public void start() {
-		thread = new Thread(this);
-		thread.start();
-	}
-
-	/**
-	 * Wait for the {@link Command} to complete.
+	 * Wait for the {@link Command} to complete, killing it if it
+	 * runs past its deadline.  Returns as soon as the process completes.
 	 */
 	public void join() {
+		boolean completed = false;
 		boolean done = false;
 		int numAttempts = 0;
 		while (!done && numAttempts < MAX_TEST_EXECUTOR_JOIN_ATTEMPTS) {
 			try {
-				thread.join();
+				long remaining = Math.max(0L, deadline - System.currentTimeMillis());
+				completed = processRunner.waitForCompletion(remaining);
 				done = true;
 			} catch (InterruptedException e) {
 				logger.error("test executor interrupted unexpectedly");
@@ -176,12 +147,23 @@ public class CommandExecutor implements Runnable {
 			logger.error(
 					"could not join test executor after {} attempts - giving up",
 					MAX_TEST_EXECUTOR_JOIN_ATTEMPTS);
+			processRunner.killProcess();
 			commandResult = new CommandResult(ProcessStatus.COULD_NOT_START, "Command executor did not finish");
-		}
-		
-		if (commandResult == null) {
-			// This absolutely should not happen.
-			logger.error("commandResult is still null as CommandExecutor is exiting?");
+		} else if (!completed) {
+			// timed out!
+			processRunner.killProcess();
+			commandResult = new CommandResult(ProcessStatus.TIMED_OUT, processRunner.getStatusMessage());
+		} else {
+			// Either completed normally or killed by signal
+			commandResult = new CommandResult(
+					processRunner.getStatus(),
+					processRunner.getStatusMessage(),
+					processRunner.getExitCode(),
+					processRunner.getStdoutAsList(),
+					processRunner.getStderrAsList());
+			commandResult.setResourceUsage(processRunner.getCpuTimeMillis(), processRunner.getMaxRssKb());
+			logger.debug("Command used {} ms CPU, {} KB max RSS",
+					processRunner.getCpuTimeMillis(), processRunner.getMaxRssKb());
 		}
 	}
 	
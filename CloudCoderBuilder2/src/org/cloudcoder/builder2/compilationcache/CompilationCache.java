@@ -0,0 +1,481 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.compilationcache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+import org.cloudcoder.app.shared.model.ConvertBytesToHex;
+import org.cloudcoder.builder2.util.SingletonHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Singleton content-addressed cache of compilation outputs, shared
+ * by all of the builder threads.  Students frequently resubmit
+ * identical code, and since the scaffolded source code and the
+ * compiler options determine the result of a compilation, there is no
+ * need to compile the same code twice.
+ * 
+ * <p>Entries are keyed by a hash (computed using a {@link KeyBuilder})
+ * of everything that affects the compilation: the compiler, the options,
+ * and the full text of each source file.  Each {@link Entry} contains
+ * the output files (e.g., class files or an executable) and the compiler's
+ * output (so that warnings can be reported).  Only successful compilations
+ * are cached.
+ * 
+ * <p>There are two levels of caching, each with a maximum total size
+ * in bytes and least-recently-used eviction:
+ * <ul>
+ * <li>Memory: maximum size set by <code>cloudcoder.builder2.compilationcache.memsize</code>.
+ *     Setting this to 0 disables the cache.</li>
+ * <li>Disk: entries evicted from memory are written to the
+ *     directory set by <code>cloudcoder.builder2.compilationcache.dir</code>
+ *     (by default, a subdirectory of the builder's temporary directory),
+ *     with a maximum size set by <code>cloudcoder.builder2.compilationcache.disksize</code>.
+ *     Setting the disk size to 0 disables the disk cache.  Entries already in
+ *     the directory when the builder starts are reused.</li>
+ * </ul>
+ * 
+ * @author David Hovemeyer
+ */
+public class CompilationCache {
+	private static final Logger logger = LoggerFactory.getLogger(CompilationCache.class);
+
+	/** Default maximum total size (in bytes) of entries kept in memory. */
+	public static final long DEFAULT_MEMORY_SIZE = 32L * 1024L * 1024L;
+
+	/** Default maximum total size (in bytes) of entries kept on disk. */
+	public static final long DEFAULT_DISK_SIZE = 256L * 1024L * 1024L;
+
+	private static final int MAGIC = 0xCC0C0C01;
+	private static final String ENTRY_FILE_SUFFIX = ".bin";
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+	private static SingletonHolder<CompilationCache, Properties> holder = new SingletonHolder<CompilationCache, Properties>() {
+		protected CompilationCache onCreate(Properties arg) {
+			return new CompilationCache(arg);
+		}
+	};
+
+	/**
+	 * Get the singleton instance.
+	 * 
+	 * @param config configuration properties
+	 * @return the singleton instance
+	 */
+	public static CompilationCache getInstance(Properties config) {
+		return holder.get(config);
+	}
+
+	/**
+	 * Compute a cache key from a sequence of strings.
+	 * Each string is length-prefixed before being hashed,
+	 * so distinct sequences of strings produce distinct keys.
+	 */
+	public static class KeyBuilder {
+		private MessageDigest md;
+
+		/**
+		 * Constructor.
+		 */
+		public KeyBuilder() {
+			try {
+				md = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("SHA-256 is not supported", e);
+			}
+		}
+
+		/**
+		 * Add a string to the key.
+		 * 
+		 * @param value the string to add (may be null)
+		 * @return this object
+		 */
+		public KeyBuilder add(String value) {
+			if (value == null) {
+				updateInt(-1);
+			} else {
+				byte[] bytes = toUTF8(value);
+				updateInt(bytes.length);
+				md.update(bytes);
+			}
+			return this;
+		}
+
+		/**
+		 * @return the key, which is a string of hex digits
+		 */
+		public String build() {
+			return new ConvertBytesToHex(md.digest()).convert();
+		}
+
+		private void updateInt(int value) {
+			md.update((byte) (value >>> 24));
+			md.update((byte) (value >>> 16));
+			md.update((byte) (value >>> 8));
+			md.update((byte) value);
+		}
+	}
+
+	/**
+	 * A cache entry: the output files produced by a successful compilation,
+	 * and the lines of output produced by the compiler.
+	 * Entries are immutable.
+	 */
+	public static class Entry {
+		private final Map<String, byte[]> files;
+		private final List<String> compilerOutput;
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param files           map of file names to file contents: the contents must not be modified
+		 * @param compilerOutput  lines of compiler output
+		 */
+		public Entry(Map<String, byte[]> files, List<String> compilerOutput) {
+			this.files = Collections.unmodifiableMap(new TreeMap<String, byte[]>(files));
+			this.compilerOutput = Collections.unmodifiableList(new ArrayList<String>(compilerOutput));
+		}
+
+		/**
+		 * @return map of file names to file contents: the contents must not be modified
+		 */
+		public Map<String, byte[]> getFiles() {
+			return files;
+		}
+
+		/**
+		 * @return lines of compiler output
+		 */
+		public List<String> getCompilerOutput() {
+			return compilerOutput;
+		}
+
+		/**
+		 * @return the approximate size of the entry in bytes
+		 */
+		public long getSize() {
+			long size = 0L;
+			for (Map.Entry<String, byte[]> e : files.entrySet()) {
+				size += e.getKey().length() * 2 + e.getValue().length;
+			}
+			for (String line : compilerOutput) {
+				size += line.length() * 2;
+			}
+			return size;
+		}
+	}
+
+	private final long maxMemorySize;
+	private long maxDiskSize;
+	private File dir;
+	private Object lock;
+	private LinkedHashMap<String, Entry> memoryMap;
+	private LinkedHashMap<String, Long> diskMap;
+	private long memorySize;
+	private long diskSize;
+	private long numHits;
+	private long numMisses;
+
+	private CompilationCache(Properties config) {
+		this.maxMemorySize = Long.parseLong(config.getProperty(
+				"cloudcoder.builder2.compilationcache.memsize", String.valueOf(DEFAULT_MEMORY_SIZE)));
+		this.maxDiskSize = Long.parseLong(config.getProperty(
+				"cloudcoder.builder2.compilationcache.disksize", String.valueOf(DEFAULT_DISK_SIZE)));
+		this.lock = new Object();
+
+		// Access-ordered maps, so that the eldest entry is the least recently used
+		this.memoryMap = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		this.diskMap = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+		if (maxMemorySize <= 0) {
+			maxDiskSize = 0;
+		}
+		if (maxDiskSize > 0) {
+			String defaultDir = new File(config.getProperty("cloudcoder.builder2.tmpdir",
+					System.getProperty("java.io.tmpdir")), "compilationcache").getPath();
+			dir = new File(config.getProperty("cloudcoder.builder2.compilationcache.dir", defaultDir));
+			if (!dir.isDirectory() && !dir.mkdirs()) {
+				logger.warn("Could not create compilation cache directory {}, disk cache disabled", dir.getPath());
+				maxDiskSize = 0;
+			} else {
+				loadDiskIndex();
+			}
+		}
+
+		logger.info("Compilation cache memory size is {}, disk size is {}", maxMemorySize, maxDiskSize);
+	}
+
+	/**
+	 * @return true if the cache is enabled, false if not
+	 */
+	public boolean isEnabled() {
+		return maxMemorySize > 0;
+	}
+
+	/**
+	 * Look up the result of an earlier compilation.
+	 * 
+	 * @param key the key (computed using a {@link KeyBuilder})
+	 * @return the cached {@link Entry}, or null if there is no such entry
+	 */
+	public Entry get(String key) {
+		if (!isEnabled()) {
+			return null;
+		}
+		synchronized (lock) {
+			Entry entry = memoryMap.get(key);
+			if (entry == null && diskMap.get(key) != null) {
+				entry = readFromDisk(key);
+				if (entry != null) {
+					addToMemory(key, entry);
+				}
+			}
+			if (entry == null) {
+				numMisses++;
+				return null;
+			}
+			numHits++;
+			if (logger.isDebugEnabled()) {
+				logger.debug("Compilation cache hit (hits={}, misses={})", numHits, numMisses);
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * Add the result of a successful compilation to the cache.
+	 * 
+	 * @param key    the key (computed using a {@link KeyBuilder})
+	 * @param entry  the {@link Entry}
+	 */
+	public void put(String key, Entry entry) {
+		if (!isEnabled()) {
+			return;
+		}
+		synchronized (lock) {
+			if (!memoryMap.containsKey(key)) {
+				addToMemory(key, entry);
+			}
+		}
+	}
+
+	/**
+	 * @return number of successful lookups
+	 */
+	public long getNumHits() {
+		synchronized (lock) {
+			return numHits;
+		}
+	}
+
+	/**
+	 * @return number of unsuccessful lookups
+	 */
+	public long getNumMisses() {
+		synchronized (lock) {
+			return numMisses;
+		}
+	}
+
+	// Must be called with the lock held.
+	private void addToMemory(String key, Entry entry) {
+		memoryMap.put(key, entry);
+		memorySize += entry.getSize();
+
+		// Evict least recently used entries, writing them to disk
+		Iterator<Map.Entry<String, Entry>> i = memoryMap.entrySet().iterator();
+		while (memorySize > maxMemorySize && i.hasNext()) {
+			Map.Entry<String, Entry> eldest = i.next();
+			i.remove();
+			memorySize -= eldest.getValue().getSize();
+			writeToDisk(eldest.getKey(), eldest.getValue());
+		}
+	}
+
+	// Must be called with the lock held.
+	// Note that disk I/O is done while holding the lock: entries are
+	// small, and this keeps the memory and disk maps consistent.
+	private void writeToDisk(String key, Entry entry) {
+		if (maxDiskSize <= 0 || diskMap.containsKey(key)) {
+			return;
+		}
+
+		File tmpFile = new File(dir, key + TEMP_FILE_SUFFIX);
+		File file = new File(dir, key + ENTRY_FILE_SUFFIX);
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			out.writeInt(MAGIC);
+			out.writeInt(entry.getFiles().size());
+			for (Map.Entry<String, byte[]> e : entry.getFiles().entrySet()) {
+				writeString(out, e.getKey());
+				out.writeInt(e.getValue().length);
+				out.write(e.getValue());
+			}
+			out.writeInt(entry.getCompilerOutput().size());
+			for (String line : entry.getCompilerOutput()) {
+				writeString(out, line);
+			}
+			out.close();
+			out = null;
+			if (!tmpFile.renameTo(file)) {
+				throw new IOException("Could not rename " + tmpFile.getPath() + " to " + file.getPath());
+			}
+		} catch (IOException e) {
+			logger.warn("Could not write compilation cache entry", e);
+			tmpFile.delete();
+			return;
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+
+		addToDiskIndex(key, file.length());
+	}
+
+	// Must be called with the lock held.
+	private Entry readFromDisk(String key) {
+		File file = new File(dir, key + ENTRY_FILE_SUFFIX);
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Invalid compilation cache entry " + file.getPath());
+			}
+			Map<String, byte[]> files = new TreeMap<String, byte[]>();
+			int numFiles = in.readInt();
+			for (int i = 0; i < numFiles; i++) {
+				String name = readString(in, file.length());
+				byte[] data = new byte[readLength(in, file.length())];
+				in.readFully(data);
+				files.put(name, data);
+			}
+			List<String> compilerOutput = new ArrayList<String>();
+			int numLines = in.readInt();
+			for (int i = 0; i < numLines; i++) {
+				compilerOutput.add(readString(in, file.length()));
+			}
+			return new Entry(files, compilerOutput);
+		} catch (IOException e) {
+			logger.warn("Could not read compilation cache entry", e);
+			Long size = diskMap.remove(key);
+			if (size != null) {
+				diskSize -= size;
+			}
+			file.delete();
+			return null;
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	// Must be called with the lock held.
+	private void addToDiskIndex(String key, long size) {
+		diskMap.put(key, size);
+		diskSize += size;
+
+		Iterator<Map.Entry<String, Long>> i = diskMap.entrySet().iterator();
+		while (diskSize > maxDiskSize && i.hasNext()) {
+			Map.Entry<String, Long> eldest = i.next();
+			i.remove();
+			diskSize -= eldest.getValue();
+			new File(dir, eldest.getKey() + ENTRY_FILE_SUFFIX).delete();
+		}
+	}
+
+	private void loadDiskIndex() {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+
+		// Least recently modified entries are considered least recently used
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File o1, File o2) {
+				long t1 = o1.lastModified(), t2 = o2.lastModified();
+				return t1 < t2 ? -1 : (t1 > t2 ? 1 : 0);
+			}
+		});
+
+		synchronized (lock) {
+			for (File file : files) {
+				String name = file.getName();
+				if (name.endsWith(ENTRY_FILE_SUFFIX)) {
+					addToDiskIndex(name.substring(0, name.length() - ENTRY_FILE_SUFFIX.length()), file.length());
+				} else if (name.endsWith(TEMP_FILE_SUFFIX)) {
+					// Partially-written entry
+					file.delete();
+				}
+			}
+		}
+		if (!diskMap.isEmpty()) {
+			logger.info("Found {} existing compilation cache entries in {}", diskMap.size(), dir.getPath());
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = toUTF8(s);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static int readLength(DataInputStream in, long max) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > max) {
+			throw new IOException("Invalid length " + length + " in compilation cache entry");
+		}
+		return length;
+	}
+
+	private static String readString(DataInputStream in, long max) throws IOException {
+		byte[] bytes = new byte[readLength(in, max)];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private static byte[] toUTF8(String s) {
+		try {
+			return s.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is not supported", e);
+		}
+	}
+}
@@ -45,6 +45,11 @@ public class GCovCCompilerBuildStep implements IBuildStep {
 		// See: https://gcc.gnu.org/onlinedocs/gcc/Invoking-Gcov.html
 		compiler.addFlag("-fprofile-arcs");
 		compiler.addFlag("-ftest-coverage");
+		
+		// The instrumented executable records the absolute path of the
+		// work directory (where the coverage data files are written),
+		// so it can't be reused by another submission
+		compiler.setCacheable(false);
 	}
 
 }
@@ -18,9 +18,8 @@
 
 package org.cloudcoder.builder2.javacompiler;
 
-import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -29,16 +28,19 @@ import javax.tools.DiagnosticCollector;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaCompiler.CompilationTask;
 import javax.tools.JavaFileObject;
-import javax.tools.ToolProvider;
+import javax.tools.StandardJavaFileManager;
 
 import org.cloudcoder.app.shared.model.CompilationOutcome;
 import org.cloudcoder.app.shared.model.CompilationResult;
 import org.cloudcoder.app.shared.model.CompilerDiagnostic;
+import org.cloudcoder.builder2.model.InternalBuilderException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Compile Java source code into class files (bytecode) in memory.
+ * The compiler and the file manager used to find classes on the
+ * classpath are shared with other compilations: see {@link JavaCompilerService}.
  * 
  * @author Jaime Spacco
  */
@@ -56,8 +58,7 @@ public class InMemoryJavaCompiler
 	 * Constructor.
 	 */
 	public InMemoryJavaCompiler() {
-		compiler = ToolProvider.getSystemJavaCompiler();
-		fm = new MemoryFileManager(compiler.getStandardFileManager(null, null, null));
+		compiler = JavaCompilerService.getInstance().getCompiler();
 		sources = new ArrayList<JavaFileObject>();
 	}
 	
@@ -91,19 +92,37 @@ public class InMemoryJavaCompiler
 	public boolean compile() {
 		DiagnosticCollector<JavaFileObject> collector= new DiagnosticCollector<JavaFileObject>();
 		
-		// Prepare compiler options.
-		// We use this opportunity to set the classpath.
-		StringBuilder fullClasspath = new StringBuilder();
-		fullClasspath.append(System.getProperty("java.class.path"));
-		if (extraClasspath != null) {
-			fullClasspath.append(File.pathSeparatorChar);
-			fullClasspath.append(extraClasspath);
+		// Get a file manager whose classpath is the system classpath
+		// plus the extra classpath, if any.  The file manager is shared
+		// with other compilations, so the classpath does not need
+		// to be re-indexed for every submission.
+		JavaCompilerService service = JavaCompilerService.getInstance();
+		StandardJavaFileManager standardFm;
+		try {
+			standardFm = service.acquireFileManager(extraClasspath);
+		} catch (IOException e) {
+			throw new InternalBuilderException(InMemoryJavaCompiler.class, "Could not set classpath for compilation", e);
 		}
-		List<String> options = Arrays.asList("-classpath", fullClasspath.toString());
+		fm = new MemoryFileManager(standardFm);
 		
-		CompilationTask task = compiler.getTask(null, fm, collector, options, null, sources);
+		CompilationTask task = compiler.getTask(null, fm, collector, null, null, sources);
 		
-		if (!task.call()) {
+		boolean success;
+		try {
+			success = task.call();
+		} catch (RuntimeException e) {
+			// The compiler failed unexpectedly: don't reuse the file manager,
+			// since its state is unknown
+			try {
+				standardFm.close();
+			} catch (IOException ex) {
+				logger.warn("Error closing file manager", ex);
+			}
+			throw e;
+		}
+		service.releaseFileManager(extraClasspath, standardFm);
+		
+		if (!success) {
 			// Compiler error
 			compileResult=new CompilationResult(CompilationOutcome.FAILURE);
 			List<CompilerDiagnostic> diagnosticList=new LinkedList<CompilerDiagnostic>();
@@ -126,7 +145,10 @@ public class InMemoryJavaCompiler
 
 	/**
 	 * Get the {@link MemoryFileManager} that is keeping track of sources
-	 * and compiled classes.
+	 * and compiled classes.  Only valid after {@link #compile()} has been
+	 * called.  Note that the file manager's delegate will have been
+	 * returned to the {@link JavaCompilerService}, so the only
+	 * operation that should be used is {@link MemoryFileManager#getClasses()}.
 	 * 
 	 * @return the {@link MemoryFileManager}
 	 */
@@ -18,11 +18,13 @@
 package org.cloudcoder.builder2.javacompiler;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.builder2.compilationcache.CompilationCache;
 import org.cloudcoder.builder2.model.BuilderSubmission;
 import org.cloudcoder.builder2.model.Bytecode;
 import org.cloudcoder.builder2.model.ExternalLibrary;
@@ -39,6 +41,8 @@ import org.cloudcoder.builder2.util.SubmissionResultUtil;
  * artifact.  Also produces an array of {@link FindJavaPackageAndClassNames} objects
  * that record the name of the package and class name in the
  * source file(s), one for each {@link ProgramSource}.
+ * If the same source code has been compiled before, the
+ * class files are retrieved from the {@link CompilationCache}.
  * 
  * @author David Hovemeyer
  * @author Jaime Spacco
@@ -66,6 +70,25 @@ public class JavaCompilerBuildStep implements IBuildStep {
 		
 		submission.addArtifact(packageAndClassNamesList);
 
+		// If the same source code was compiled before (with the same
+		// external library and Java version), use the cached class files
+		CompilationCache cache = CompilationCache.getInstance(config);
+		ExternalLibrary extlib = submission.getArtifact(ExternalLibrary.class);
+		CompilationCache.KeyBuilder keyBuilder = new CompilationCache.KeyBuilder()
+			.add("java")
+			.add(System.getProperty("java.version"))
+			.add(extlib != null ? extlib.getUrl() + ":" + extlib.getMd5() : null);
+		for (int i = 0; i < programSourceList.length; i++) {
+			keyBuilder.add(packageAndClassNamesList[i].getFullyQualifiedClassName());
+			keyBuilder.add(programSourceList[i].getProgramText());
+		}
+		String cacheKey = keyBuilder.build();
+		CompilationCache.Entry cached = cache.get(cacheKey);
+		if (cached != null) {
+			addBytecodeArtifact(submission, cached.getFiles());
+			return;
+		}
+
 		// Attempt to compile the program
 		InMemoryJavaCompiler compiler = getJavaCompiler(submission);
 		for (int i = 0; i < programSourceList.length; i++) {
@@ -77,8 +100,13 @@ public class JavaCompilerBuildStep implements IBuildStep {
 			return;
 		}
 		
-		// Create Bytecode artifacts for each compiled class
 		Map<String, byte[]> compiledClasses = compiler.getFileManager().getClasses();
+		cache.put(cacheKey, new CompilationCache.Entry(compiledClasses, Collections.<String>emptyList()));
+		addBytecodeArtifact(submission, compiledClasses);
+	}
+
+	private void addBytecodeArtifact(BuilderSubmission submission, Map<String, byte[]> compiledClasses) {
+		// Create Bytecode artifacts for each compiled class
 		List<Bytecode> bytecodeList = new ArrayList<Bytecode>();
 		for (Map.Entry<String, byte[]> entry : compiledClasses.entrySet()) {
 			String clsName = entry.getKey();
@@ -0,0 +1,181 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.javacompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Long-lived Java compiler shared by all of the builder threads.
+ * Creating a <code>StandardJavaFileManager</code> and handing it the
+ * builder classpath is expensive: javac has to open and index the platform
+ * classes and every jar file on the classpath.  This class keeps
+ * file managers whose classpath has already been set, and hands them out
+ * for use by {@link InMemoryJavaCompiler}, which layers a per-submission
+ * {@link MemoryFileManager} on top.  Because javac file managers are
+ * not thread-safe, a file manager is only used by one compilation
+ * at a time.
+ * 
+ * <p>File managers are keyed by the extra classpath (i.e., the
+ * external library jarfile, if any) used by the compilation.
+ * External library jarfiles are stored in directories named using
+ * their MD5 checksums, so a given path always refers to the same jarfile.
+ * 
+ * @author David Hovemeyer
+ */
+public class JavaCompilerService {
+	private static final Logger logger = LoggerFactory.getLogger(JavaCompilerService.class);
+
+	/** Maximum number of idle file managers kept for each classpath. */
+	private static final int MAX_IDLE_FILE_MANAGERS = 16;
+
+	private static final JavaCompilerService instance = new JavaCompilerService();
+
+	/**
+	 * @return the singleton instance
+	 */
+	public static JavaCompilerService getInstance() {
+		return instance;
+	}
+
+	private final JavaCompiler compiler;
+	private Object lock;
+	private Map<String, LinkedList<StandardJavaFileManager>> idleFileManagers;
+
+	private JavaCompilerService() {
+		this.compiler = ToolProvider.getSystemJavaCompiler();
+		this.lock = new Object();
+		this.idleFileManagers = new HashMap<String, LinkedList<StandardJavaFileManager>>();
+	}
+
+	/**
+	 * @return the {@link JavaCompiler}
+	 */
+	public JavaCompiler getCompiler() {
+		return compiler;
+	}
+
+	/**
+	 * Get a file manager whose classpath is the builder's classpath plus
+	 * the given extra classpath entries.  The file manager must be returned
+	 * by calling {@link #releaseFileManager(String, StandardJavaFileManager)}
+	 * when the compilation is finished.
+	 * 
+	 * @param extraClasspath extra classpath entries, or null if there are none
+	 * @return the file manager
+	 * @throws IOException if the classpath can't be set
+	 */
+	public StandardJavaFileManager acquireFileManager(String extraClasspath) throws IOException {
+		String key = extraClasspath != null ? extraClasspath : "";
+		synchronized (lock) {
+			LinkedList<StandardJavaFileManager> idle = idleFileManagers.get(key);
+			if (idle != null && !idle.isEmpty()) {
+				return idle.removeFirst();
+			}
+		}
+
+		// Create a new file manager.
+		// This is done without holding the lock, since it can be slow.
+		StandardJavaFileManager fm = compiler.getStandardFileManager(null, null, null);
+		StringBuilder fullClasspath = new StringBuilder();
+		fullClasspath.append(System.getProperty("java.class.path"));
+		if (extraClasspath != null) {
+			fullClasspath.append(File.pathSeparatorChar);
+			fullClasspath.append(extraClasspath);
+		}
+		fm.setLocation(StandardLocation.CLASS_PATH, toFileList(fullClasspath.toString()));
+		logger.debug("Created file manager for classpath {}", fullClasspath);
+		return fm;
+	}
+
+	/**
+	 * Return a file manager obtained from {@link #acquireFileManager(String)}
+	 * so that it can be used by another compilation.
+	 * 
+	 * @param extraClasspath the extra classpath entries the file manager was acquired with
+	 * @param fm             the file manager
+	 */
+	public void releaseFileManager(String extraClasspath, StandardJavaFileManager fm) {
+		String key = extraClasspath != null ? extraClasspath : "";
+		synchronized (lock) {
+			LinkedList<StandardJavaFileManager> idle = idleFileManagers.get(key);
+			if (idle == null) {
+				idle = new LinkedList<StandardJavaFileManager>();
+				idleFileManagers.put(key, idle);
+			}
+			if (idle.size() < MAX_IDLE_FILE_MANAGERS) {
+				idle.addFirst(fm);
+				return;
+			}
+		}
+
+		// Too many idle file managers
+		try {
+			fm.close();
+		} catch (IOException e) {
+			logger.warn("Error closing file manager", e);
+		}
+	}
+
+	/**
+	 * Compile a trivial class, so that the javac classes are loaded
+	 * and the platform classes and builder classpath are indexed
+	 * before the first submission arrives.
+	 */
+	public void warmUp() {
+		long start = System.currentTimeMillis();
+		InMemoryJavaCompiler warmUpCompiler = new InMemoryJavaCompiler();
+		warmUpCompiler.addSourceFile("WarmUp",
+				"import java.util.*;\n" +
+				"public class WarmUp {\n" +
+				"	public static int sum(List<Integer> list) {\n" +
+				"		int sum = 0;\n" +
+				"		for (Integer i : list) { sum += i; }\n" +
+				"		return sum;\n" +
+				"	}\n" +
+				"}\n");
+		if (!warmUpCompiler.compile()) {
+			logger.warn("Java compiler warm-up failed: {}", warmUpCompiler.getCompileResult());
+			return;
+		}
+		logger.info("Java compiler warmed up in {} ms", System.currentTimeMillis() - start);
+	}
+
+	private static List<File> toFileList(String classpath) {
+		List<File> result = new ArrayList<File>();
+		for (String entry : classpath.split(File.pathSeparator)) {
+			if (!entry.equals("")) {
+				result.add(new File(entry));
+			}
+		}
+		return result;
+	}
+}
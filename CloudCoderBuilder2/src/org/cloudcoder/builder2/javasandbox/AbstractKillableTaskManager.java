@@ -22,6 +22,8 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,7 +54,6 @@ public abstract class AbstractKillableTaskManager<T>
     /** List of Outcomes; essentially placeholders objects where tasks will put their results */
     private List<Outcome<T>> results;
     private long maxRunTime;
-    private int numPauses = 5;
 
     protected ThreadedPrintStreamMonitor stdOutMonitor;
     protected ThreadedPrintStreamMonitor stdErrMonitor;
@@ -63,7 +64,6 @@ public abstract class AbstractKillableTaskManager<T>
     private TimeoutHandler<T> timeoutHandler;
     /** All threads will be in a thread group of worker threads */
     public static final ThreadGroup WORKER_THREAD_GROUP = new ThreadGroup("WorkerThreads");
-    public int numThreads = 1;
     protected String threadNamePrefix;
 
     /**
@@ -128,30 +128,33 @@ public abstract class AbstractKillableTaskManager<T>
         // that will buffer the outputs for each thread
         redirectStandardOutputStreams();
 
-        Thread[] pool=new Thread[tasks.size()];
+        // Each task runner counts down the latch when its task completes
+        CountDownLatch done=new CountDownLatch(tasks.size());
+        SandboxThreadPool threadPool=SandboxThreadPool.getInstance();
+        SandboxThreadPool.SandboxThread[] pool=new SandboxThreadPool.SandboxThread[tasks.size()];
         for (int i=0; i<tasks.size(); i++) {
             IsolatedTask<T> task=tasks.get(i);
-            pool[i]=new WorkerThread<T>(task, results.get(i));
-            pool[i].setDaemon(true);
-            pool[i].start();
+            pool[i]=threadPool.acquire(threadNamePrefix);
+            pool[i].execute(new TaskRunner<T>(task, results.get(i), done));
         }
 
-        // now pause a couple of times
-        for (int i=1; i<=numPauses; i++) {
-            if (!pauseAndPoll(maxRunTime/numPauses, pool)) {
-                // we can stop pausing
-                break;
-            }
+        // Wait until either all of the tasks have completed,
+        // or the time limit is reached
+        try {
+            done.await(maxRunTime, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // should never happen; any threads that are still
+            // running will be killed
+            logger.warn("Interrupted waiting for tasks to complete");
         }
 
         // Go through and kill any threads that haven't finished yet
         // Also put the buffered output from stdout/stderr into the map
         for (int i=0; i<pool.length; i++) {
-            Thread t=pool[i];
-            if (t.isAlive()) {
-                //XXX Yes, I know that stop() is deprecated.  
-                //But this is a necessary use of stop!
-                t.stop();
+            SandboxThreadPool.SandboxThread t=pool[i];
+            if (!results.get(i).completed) {
+                // Stop the thread: it won't be reused
+                threadPool.retire(t);
 
                 //TODO Log that a thread is being stopped
 
@@ -167,6 +170,11 @@ public abstract class AbstractKillableTaskManager<T>
             }
             stdOutMap.put(i, stdOutMonitor.getBufferedOutput(t));
             stdErrMap.put(i, stdErrMonitor.getBufferedOutput(t));
+
+            if (results.get(i).completed) {
+                // The thread is idle, and can be reused
+                threadPool.release(t);
+            }
         }
         // return the original stdout/stderr
         // how to do this varies between Java, Python/Jython
@@ -191,31 +199,6 @@ public abstract class AbstractKillableTaskManager<T>
      */
     public abstract void redirectStandardOutputStreams();
 
-    /**
-     * Pause for a certain amount of time.  Return true if any
-     * of the threads in the given threadpool are still alive,
-     * and false if they are all finished.
-     * @param time
-     * @param pool
-     * @return
-     */
-    private boolean pauseAndPoll(long time, Thread[] pool) {
-        try {
-            Thread.sleep(time);
-            for (Thread t : pool) {
-                if (t.isAlive()) {
-                    return true;
-                }
-            }
-        } catch (InterruptedException e) {
-            // should never happen; to be safe, assume a thread may
-            // still be running.
-            return true;
-        }
-        // no threads are alive, so we can stop waiting
-        return false;
-    }
-
     /**
      * Install the security manager needed by {@link AbstractKillableTaskManager}.
      */
@@ -245,7 +228,9 @@ public abstract class AbstractKillableTaskManager<T>
 
     /**
      * Simple container for a result of type T and whether the task
-     * producing T finished normally.
+     * producing T finished normally.  The completed flag is set
+     * when the task's worker thread is done executing the task,
+     * whether or not it finished normally.
      * 
      * @author jspacco
      *
@@ -255,47 +240,51 @@ public abstract class AbstractKillableTaskManager<T>
         //Outcome() {}
         boolean finished;
         T result;
+        volatile boolean completed;
     }
     /**
-     * Worker thread takes a given Task, calls its execute() method
+     * Task runner takes a given Task, calls its execute() method
      * to produce a result of type E, and puts the result into the 
-     * given outcome container.
+     * given outcome container.  It is executed by a
+     * {@link SandboxThreadPool.SandboxThread}.
      * 
-     * This thread is set up so that, assuming that the Task doesn't
+     * This runner is set up so that, assuming that the Task doesn't
      * access any shared resources, it is safe to use the stop() method
-     * in thread to halt this thread.
+     * in thread to halt the thread executing it.
      * 
      * @author jspacco
      *
      * @param <E>
      */
-    class WorkerThread<E> extends Thread
+    static class TaskRunner<E> implements Runnable
     {
         private IsolatedTask<E> task;
         private Outcome<E> out;
+        private CountDownLatch done;
 
         /**
-         * Create a thread that executes the given task and puts
+         * Create a runner that executes the given task and puts
          * the result of the task into the given container.
          * 
          * @param task The task to execute
          * @param out The container in which to put the result of the task
+         * @param done The latch to count down when the task is done
          */
-        public WorkerThread(IsolatedTask<E> task, Outcome<E> out)
+        public TaskRunner(IsolatedTask<E> task, Outcome<E> out, CountDownLatch done)
         {
-            super(WORKER_THREAD_GROUP, threadNamePrefix+(numThreads++));
             this.task=task;
             this.out=out;
+            this.done=done;
         }
 
         /**
          * Given a task and a container, execute the task and put
          * its result in the container.  The entire run method catches
-         * Throwable, so that if another thread uses stop() to kill this
-         * thread, nothing bad should happen.
+         * Throwable, so that if another thread uses stop() to kill the
+         * thread executing it, nothing bad should happen.
          * 
          * 
-         * @see java.lang.Thread#run()
+         * @see java.lang.Runnable#run()
          */
         public void run() {
             E o;
@@ -312,6 +301,8 @@ public abstract class AbstractKillableTaskManager<T>
             } finally {
                 //System.err.println(System.getSecurityManager());
                 //System.out.println(System.getSecurityManager());
+                out.completed=true;
+                done.countDown();
             }
         }
     }
@@ -0,0 +1,189 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.javasandbox;
+
+import java.util.LinkedList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of threads in {@link AbstractKillableTaskManager#WORKER_THREAD_GROUP}
+ * used to execute {@link IsolatedTask}s.  Threads are reused across
+ * submissions, avoiding the cost of creating a thread for every
+ * test case.
+ * 
+ * <p>A thread is acquired by an {@link AbstractKillableTaskManager}
+ * for the duration of one run, and released when the run is done.
+ * A thread whose task did not finish in time is retired rather than
+ * released: it is stopped, and will exit rather than accepting another task.
+ * Idle threads are created as needed, so retired threads are
+ * replaced automatically.
+ * 
+ * <p>Note that threads in the worker thread group are not allowed to
+ * create threads, so new threads are always created by the thread
+ * calling {@link #acquire(String)}.
+ * 
+ * @author David Hovemeyer
+ */
+public class SandboxThreadPool {
+	private static final Logger logger = LoggerFactory.getLogger(SandboxThreadPool.class);
+
+	/** Maximum number of idle threads kept in the pool. */
+	private static final int MAX_IDLE_THREADS = 64;
+
+	/**
+	 * Maximum number of tasks a thread will execute before being
+	 * retired.  This limits how long any per-thread state left behind by
+	 * student code (such as ThreadLocal values) can be retained.
+	 */
+	private static final int MAX_TASKS_PER_THREAD = 1000;
+
+	private static final SandboxThreadPool instance = new SandboxThreadPool();
+
+	/**
+	 * @return the singleton instance
+	 */
+	public static SandboxThreadPool getInstance() {
+		return instance;
+	}
+
+	/**
+	 * A pooled thread.  Tasks are handed to the thread using
+	 * {@link #execute(Runnable)}.
+	 */
+	public static class SandboxThread extends Thread {
+		// Note that we don't synchronize on the thread object itself,
+		// since student code could do that
+		private final LinkedBlockingQueue<Runnable> taskQueue;
+		private volatile boolean retired;
+		private volatile int numTasks;
+
+		private SandboxThread(String name) {
+			super(AbstractKillableTaskManager.WORKER_THREAD_GROUP, name);
+			this.taskQueue = new LinkedBlockingQueue<Runnable>();
+			setDaemon(true);
+		}
+
+		/**
+		 * Execute a task.  The thread must have been acquired
+		 * from the pool, and must not be executing another task.
+		 * 
+		 * @param task the task to execute
+		 */
+		public void execute(Runnable task) {
+			taskQueue.add(task);
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!retired) {
+					Runnable task = taskQueue.take();
+					if (retired) {
+						break;
+					}
+					try {
+						task.run();
+					} catch (Throwable e) {
+						// The task should catch everything: this is just to be safe
+						logger.error("Exception escaped sandbox task", e);
+					}
+					numTasks++;
+
+					// Clear the interrupted status (if any), so
+					// it doesn't affect the next task
+					Thread.interrupted();
+				}
+			} catch (InterruptedException e) {
+				logger.info("Sandbox thread {} interrupted while idle, exiting", getName());
+			}
+		}
+	}
+
+	private final Object lock;
+	private final LinkedList<SandboxThread> idleThreads;
+	private final AtomicInteger nextThreadNum;
+
+	private SandboxThreadPool() {
+		this.lock = new Object();
+		this.idleThreads = new LinkedList<SandboxThread>();
+		this.nextThreadNum = new AtomicInteger(1);
+	}
+
+	/**
+	 * Acquire a thread to execute a task.
+	 * 
+	 * @param namePrefix prefix of the name to give the thread: a unique
+	 *                   number is appended
+	 * @return the thread, which will be alive and waiting for a task
+	 */
+	public SandboxThread acquire(String namePrefix) {
+		String name = namePrefix + nextThreadNum.getAndIncrement();
+		SandboxThread thread;
+		synchronized (lock) {
+			thread = idleThreads.poll();
+		}
+		if (thread != null) {
+			thread.setName(name);
+		} else {
+			thread = new SandboxThread(name);
+			thread.start();
+		}
+		return thread;
+	}
+
+	/**
+	 * Release a thread whose task completed normally, so that it can be reused.
+	 * 
+	 * @param thread the thread to release
+	 */
+	public void release(SandboxThread thread) {
+		if (thread.numTasks < MAX_TASKS_PER_THREAD) {
+			synchronized (lock) {
+				if (idleThreads.size() < MAX_IDLE_THREADS) {
+					idleThreads.add(thread);
+					return;
+				}
+			}
+		}
+
+		// Don't keep this thread: tell it to exit
+		thread.retired = true;
+		thread.execute(new Runnable() {
+			public void run() {
+			}
+		});
+	}
+
+	/**
+	 * Retire a thread whose task did not complete in time.
+	 * The thread is stopped, and won't be reused.
+	 * 
+	 * @param thread the thread to retire
+	 */
+	@SuppressWarnings("deprecation")
+	public void retire(SandboxThread thread) {
+		thread.retired = true;
+		//XXX Yes, I know that stop() is deprecated.  
+		//But this is a necessary use of stop!
+		thread.stop();
+	}
+}
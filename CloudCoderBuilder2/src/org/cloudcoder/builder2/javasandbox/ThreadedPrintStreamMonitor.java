@@ -19,10 +19,10 @@ package org.cloudcoder.builder2.javasandbox;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
-import java.util.HashMap;
 import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * PrintStream that captures and buffers all output for however many
@@ -31,15 +31,113 @@ import java.util.Map;
  * Common case is to pass an instance of this stream to System.setOut
  * right before starting a bunch of threads that print to System.out.
  * 
+ * Each thread's output is stored in a fixed-size buffer, which is found
+ * using a ThreadLocal, so printing threads don't contend with each other.
+ * Once a thread's buffer is full, further output from that thread
+ * is discarded without being formatted, and {@link #TRUNCATION_MARKER}
+ * is appended to the buffered output.  This prevents a test that prints
+ * in an infinite loop from using a large amount of memory before
+ * it times out.
+ * 
  * @author jspacco
  *
  */
 public class ThreadedPrintStreamMonitor extends PrintStream
 {
-    /** Maps stdout and stderr for each thread */
-    private Map<String, PrintStream> printStreamMap=new HashMap<String, PrintStream>();
-    private Map<String, ByteArrayOutputStream> baosMap=
-        new HashMap<String, ByteArrayOutputStream>();
+    /** Default maximum number of bytes of output buffered for each thread. */
+    public static final int DEFAULT_MAX_BUFFERED_BYTES = 8192;
+    
+    /**
+     * Appended (on a line by itself) to a thread's buffered output
+     * if some of its output was discarded.
+     */
+    public static final String TRUNCATION_MARKER = "[output truncated]\n";
+    
+    private static volatile int maxBufferedBytes = DEFAULT_MAX_BUFFERED_BYTES;
+    
+    /**
+     * Fixed-size buffer for one thread's output.
+     * Only the owning thread writes to the buffer, so the count is
+     * published with a volatile write after the bytes are copied,
+     * allowing other threads to read the buffered output without locking.
+     */
+    private static class OutputBuffer extends OutputStream {
+        private final byte[] buf;
+        private volatile int count;
+        private volatile boolean truncated;
+        private volatile boolean closed;
+        private final PrintStream printStream;
+        
+        public OutputBuffer(int size) {
+            this.buf = new byte[size];
+            this.printStream = new PrintStream(this);
+        }
+        
+        /**
+         * Check whether more output can be buffered.
+         * If the buffer is full, the output is marked as truncated.
+         * 
+         * @return true if more output can be buffered, false if not
+         */
+        public boolean acceptsOutput() {
+            if (closed) {
+                return false;
+            }
+            if (count >= buf.length) {
+                truncated = true;
+                return false;
+            }
+            return true;
+        }
+        
+        @Override
+        public void write(int b) {
+            if (closed) {
+                return;
+            }
+            int n = count;
+            if (n < buf.length) {
+                buf[n] = (byte) b;
+                count = n + 1;
+            } else {
+                truncated = true;
+            }
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (closed) {
+                return;
+            }
+            int n = count;
+            int amount = Math.min(len, buf.length - n);
+            System.arraycopy(b, off, buf, n, amount);
+            count = n + amount;
+            if (amount < len) {
+                truncated = true;
+            }
+        }
+        
+        @Override
+        public void close() {
+            closed = true;
+        }
+        
+        @Override
+        public String toString() {
+            String output = new String(buf, 0, count);
+            if (!truncated) {
+                return output;
+            }
+            return output.endsWith("\n") ? output + TRUNCATION_MARKER : output + "\n" + TRUNCATION_MARKER;
+        }
+    }
+    
+    /** Each thread's buffer, for the thread doing the printing */
+    private final ThreadLocal<OutputBuffer> threadBuffer = new ThreadLocal<OutputBuffer>();
+    /** Each thread's buffer, for retrieving the output when the thread is done */
+    private final ConcurrentHashMap<Thread, OutputBuffer> bufferMap =
+        new ConcurrentHashMap<Thread, OutputBuffer>();
 
     public ThreadedPrintStreamMonitor(PrintStream stream) {
         // XXX Is this a reasonable constructor?
@@ -57,34 +155,53 @@ public class ThreadedPrintStreamMonitor extends PrintStream
         super(new ByteArrayOutputStream());
     }
     
-    private PrintStream getPrintStream() {
-        return getPrintStream(Thread.currentThread());
+    /**
+     * Set the maximum number of bytes of output that will be buffered
+     * for each thread.  Affects monitors created after the call.
+     * 
+     * @param maxBytes the maximum number of bytes to buffer per thread
+     */
+    public static void setMaxBufferedBytes(int maxBytes) {
+        maxBufferedBytes = maxBytes;
     }
     
-    private PrintStream getPrintStream(Thread t) {
-        String name=t.getName();
-        if (!baosMap.containsKey(name)) {
-            baosMap.put(name, new ByteArrayOutputStream());
+    private OutputBuffer getBuffer() {
+        OutputBuffer buffer = threadBuffer.get();
+        if (buffer == null) {
+            buffer = new OutputBuffer(maxBufferedBytes);
+            threadBuffer.set(buffer);
+            bufferMap.put(Thread.currentThread(), buffer);
         }
-        if (!printStreamMap.containsKey(name)) {
-            printStreamMap.put(name, new PrintStream(baosMap.get(name)));
-        }
-        return printStreamMap.get(name);
+        return buffer;
+    }
+    
+    /**
+     * Get the current thread's PrintStream.
+     * 
+     * @return the current thread's PrintStream, or null if the
+     *         thread's buffer can't accept any more output
+     */
+    private PrintStream getPrintStream() {
+        OutputBuffer buffer = getBuffer();
+        return buffer.acceptsOutput() ? buffer.printStream : null;
     }
     
     /**
-     * Given a thread, look up the backing ByteArrayOutputStream
-     * that was used to buffer that thread's output, and return
-     * it as a String.
+     * Given a thread, look up the buffer that was used to buffer
+     * that thread's output, and return it as a String.
+     * The thread's buffer is closed, and any further output
+     * from the thread is discarded.
      * 
      * @param t Thread
      * @return String containing that thread's buffered printing output.
      */
     public String getBufferedOutput(Thread t) {
-        PrintStream ps=getPrintStream(t);
-        ps.flush();
-        ps.close();
-        return baosMap.get(t.getName()).toString();
+        OutputBuffer buffer=bufferMap.get(t);
+        if (buffer == null) {
+            return "";
+        }
+        buffer.close();
+        return buffer.toString();
     }
     
     /* (non-Javadoc)
@@ -92,7 +209,10 @@ public class ThreadedPrintStreamMonitor extends PrintStream
      */
     @Override
     public void print(String s) {
-        getPrintStream().print(s);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.print(s);
+        }
     }
 
     /* (non-Javadoc)
@@ -100,201 +220,284 @@ public class ThreadedPrintStreamMonitor extends PrintStream
      */
     @Override
     public void write(int b) {
-        getPrintStream().write(b);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.write(b);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#write(byte[], int, int)
      */
     @Override
     public void write(byte[] buf, int off, int len) {
-        getPrintStream().write(buf,off,len);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.write(buf,off,len);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#print(boolean)
      */
     @Override
     public void print(boolean b) {
-        getPrintStream().print(b);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.print(b);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#print(char)
      */
     @Override
     public void print(char c) {
-        getPrintStream().print(c);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.print(c);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#print(int)
      */
     @Override
     public void print(int i) {
-        getPrintStream().print(i);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.print(i);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#print(long)
      */
     @Override
     public void print(long l) {
-        getPrintStream().print(l);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.print(l);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#print(float)
      */
     @Override
     public void print(float f) {
-        getPrintStream().print(f);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.print(f);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#print(double)
      */
     @Override
     public void print(double d) {
-        getPrintStream().print(d);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.print(d);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#print(char[])
      */
     @Override
     public void print(char[] s) {
-        getPrintStream().print(s);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.print(s);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#print(java.lang.Object)
      */
     @Override
     public void print(Object obj) {
-        getPrintStream().print(obj);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.print(obj);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#println()
      */
     @Override
     public void println() {
-        getPrintStream().println();
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.println();
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#println(boolean)
      */
     @Override
     public void println(boolean x) {
-        getPrintStream().println(x);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.println(x);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#println(char)
      */
     @Override
     public void println(char x) {
-        getPrintStream().println(x);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.println(x);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#println(int)
      */
     @Override
     public void println(int x) {
-        getPrintStream().println(x);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.println(x);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#println(long)
      */
     @Override
     public void println(long x) {
-        getPrintStream().println(x);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.println(x);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#println(float)
      */
     @Override
     public void println(float x) {
-        getPrintStream().println(x);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.println(x);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#println(double)
      */
     @Override
     public void println(double x) {
-        getPrintStream().println(x);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.println(x);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#println(char[])
      */
     @Override
     public void println(char[] x) {
-        getPrintStream().println(x);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.println(x);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#println(java.lang.String)
      */
     @Override
     public void println(String x) {
-        getPrintStream().println(x);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.println(x);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#println(java.lang.Object)
      */
     @Override
     public void println(Object x) {
-        getPrintStream().println(x);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.println(x);
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#printf(java.lang.String, java.lang.Object[])
      */
     @Override
     public PrintStream printf(String format, Object... args) {
-        return getPrintStream().printf(format, args);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.printf(format, args);
+        }
+        return this;
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#printf(java.util.Locale, java.lang.String, java.lang.Object[])
      */
     @Override
     public PrintStream printf(Locale l, String format, Object... args) {
-        return getPrintStream().printf(l, format, args);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.printf(l, format, args);
+        }
+        return this;
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#append(java.lang.CharSequence)
      */
     @Override
     public PrintStream append(CharSequence csq) {
-        return getPrintStream().append(csq);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.append(csq);
+        }
+        return this;
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#append(java.lang.CharSequence, int, int)
      */
     @Override
     public PrintStream append(CharSequence csq, int start, int end) {
-        return getPrintStream().append(csq, start, end);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.append(csq, start, end);
+        }
+        return this;
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#append(char)
      */
     @Override
     public PrintStream append(char c) {
-        return getPrintStream().append(c);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.append(c);
+        }
+        return this;
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#checkError()
      */
     @Override
     public boolean checkError() {
-        return getPrintStream().checkError();
+        return getBuffer().printStream.checkError();
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#flush()
      */
     @Override
     public void flush() {
-        getPrintStream().flush();
+        getBuffer().printStream.flush();
     }
     public void flush(Thread t) {
-        getPrintStream(t).flush();
+        OutputBuffer buffer=bufferMap.get(t);
+        if (buffer != null) {
+            buffer.printStream.flush();
+        }
     }
     public void flushAll() {
-        for (PrintStream ps : printStreamMap.values()) {
-            ps.flush();
+        for (OutputBuffer buffer : bufferMap.values()) {
+            buffer.printStream.flush();
         }
     }
     public void closeAll() {
-        for (PrintStream ps : printStreamMap.values()) {
-            ps.close();
+        for (OutputBuffer buffer : bufferMap.values()) {
+            buffer.close();
         }
     }
     /* (non-Javadoc)
@@ -302,30 +505,44 @@ public class ThreadedPrintStreamMonitor extends PrintStream
      */
     @Override
     public void close() {
-        getPrintStream().close();
+        getBuffer().close();
     }
     public void close(Thread t) {
-        getPrintStream(t).close();
+        OutputBuffer buffer=bufferMap.get(t);
+        if (buffer != null) {
+            buffer.close();
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#format(java.lang.String, java.lang.Object[])
      */
     @Override
     public PrintStream format(String format, Object... args) {
-        return getPrintStream().format(format, args);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.format(format, args);
+        }
+        return this;
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#format(java.util.Locale, java.lang.String, java.lang.Object[])
      */
     @Override
     public PrintStream format(Locale l, String format, Object... args) {
-        return getPrintStream().format(l,format,args);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.format(l,format,args);
+        }
+        return this;
     }
     /* (non-Javadoc)
      * @see java.io.FilterOutputStream#write(byte[])
      */
     @Override
     public void write(byte[] b) throws IOException {
-        getPrintStream().write(b);
+        PrintStream ps=getPrintStream();
+        if (ps != null) {
+            ps.write(b);
+        }
     }
 }
@@ -35,6 +35,8 @@ public class CommandResult {
 	private int exitCode;
 	private List<String> stdout;
 	private List<String> stderr;
+	private long cpuTimeMillis = -1L;
+	private long maxRssKb = -1L;
 	
 	/**
 	 * Constructor from a {@link ProcessStatus} indicating abnormal completion
@@ -107,4 +109,29 @@ public class CommandResult {
 	public List<String> getStderr() {
 		return stderr;
 	}
+	
+	/**
+	 * Set the resource usage of the command, if known.
+	 * 
+	 * @param cpuTimeMillis CPU time (user plus system) in milliseconds
+	 * @param maxRssKb      maximum resident set size in kilobytes
+	 */
+	public void setResourceUsage(long cpuTimeMillis, long maxRssKb) {
+		this.cpuTimeMillis = cpuTimeMillis;
+		this.maxRssKb = maxRssKb;
+	}
+	
+	/**
+	 * @return the command's CPU time in milliseconds, or -1 if not known
+	 */
+	public long getCpuTimeMillis() {
+		return cpuTimeMillis;
+	}
+	
+	/**
+	 * @return the command's maximum resident set size in kilobytes, or -1 if not known
+	 */
+	public long getMaxRssKb() {
+		return maxRssKb;
+	}
 }
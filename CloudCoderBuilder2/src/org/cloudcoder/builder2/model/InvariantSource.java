@@ -0,0 +1,57 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.model;
+
+/**
+ * Artifact with the text of a source file that is compiled along with
+ * the {@link ProgramSource}, but doesn't depend on the submission
+ * (for example, generated test scaffolding that only depends on the problem).
+ * A build step that compiles the program may compile it once and reuse
+ * the result for later submissions.
+ *
+ * @author David Hovemeyer
+ */
+public class InvariantSource {
+	private String sourceFileName;
+	private String programText;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param sourceFileName the source file name
+	 * @param programText    the source program text
+	 */
+	public InvariantSource(String sourceFileName, String programText) {
+		this.sourceFileName = sourceFileName;
+		this.programText = programText;
+	}
+
+	/**
+	 * @return the source file name
+	 */
+	public String getSourceFileName() {
+		return sourceFileName;
+	}
+
+	/**
+	 * @return the source program text
+	 */
+	public String getProgramText() {
+		return programText;
+	}
+}
@@ -40,4 +40,7 @@ public enum ProcessStatus {
 	
 	/** File size limit exceeded. */
 	FILE_SIZE_LIMIT_EXCEEDED,
+	
+	/** Process was killed because it produced too much output. */
+	OUTPUT_LIMIT_EXCEEDED,
 }
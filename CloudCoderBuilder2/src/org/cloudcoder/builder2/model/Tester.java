@@ -18,21 +18,43 @@
 package org.cloudcoder.builder2.model;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
+import org.cloudcoder.app.shared.model.BuildStepStatistics;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionResultAnnotation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A Tester executes a series of {@link IBuildStep}s on a
  * {@link BuilderSubmission}.
+ * The time taken by each build step is recorded in a
+ * {@link BuildStepStatistics} object shared by all Testers,
+ * and is added to the submission's {@link SubmissionResult}
+ * as an annotation.
  * 
  * @author David Hovemeyer
  */
 public class Tester {
 	private static final Logger logger = LoggerFactory.getLogger(Tester.class);
 	
+	private static final BuildStepStatistics statistics = new BuildStepStatistics();
+	
+	/**
+	 * Get the {@link BuildStepStatistics} recording the times taken by
+	 * build steps of all submissions tested by this builder.
+	 * 
+	 * @return the {@link BuildStepStatistics}
+	 */
+	public static BuildStepStatistics getStatistics() {
+		return statistics;
+	}
+	
 	private List<IBuildStep> buildStepList;
 	
 	/**
@@ -60,9 +82,17 @@ public class Tester {
 	public void execute(BuilderSubmission submission, Properties config) {
 		logger.debug("Executing {} build step(s)", buildStepList.size());
 		
+		Map<String, Long> stepTimes = new LinkedHashMap<String, Long>();
+		long start = System.nanoTime();
+		
 		for (IBuildStep buildStep : buildStepList) {
-			logger.debug("Executing build step: {}", buildStep.getClass().getSimpleName());
+			String stepName = buildStep.getClass().getSimpleName();
+			logger.debug("Executing build step: {}", stepName);
+			long stepStart = System.nanoTime();
 			buildStep.execute(submission, config);
+			long stepMicros = (System.nanoTime() - stepStart) / 1000L;
+			Long prev = stepTimes.get(stepName);
+			stepTimes.put(stepName, prev != null ? prev + stepMicros : stepMicros);
 			
 			// If a SubmissionResult was created, then we finish immediately,
 			// even if there are more steps remaining.  This handles, e.g.,
@@ -76,5 +106,20 @@ public class Tester {
 		if (!submission.isComplete()) {
 			throw new InternalBuilderException("Executed all build steps but submission is not complete");
 		}
+		
+		stepTimes.put(BuildStepStatistics.TOTAL, (System.nanoTime() - start) / 1000L);
+		recordStepTimes(submission, stepTimes);
+	}
+
+	private void recordStepTimes(BuilderSubmission submission, Map<String, Long> stepTimes) {
+		Problem problem = submission.getArtifact(Problem.class);
+		if (problem != null) {
+			statistics.record(problem.getProblemType(), stepTimes);
+		}
+		
+		String encodedStepTimes = BuildStepStatistics.encodeStepTimes(stepTimes);
+		logger.debug("Build step times (microseconds): {}", encodedStepTimes);
+		submission.getArtifact(SubmissionResult.class).addAnnotation(
+				new SubmissionResultAnnotation(BuildStepStatistics.ANNOTATION_KEY, encodedStepTimes));
 	}
 }
@@ -32,7 +32,7 @@ import org.apache.commons.io.IOUtils;
 public class InputSender {
 	private OutputStream outputStream;
 	private String stdin;
-	private Thread writerThread;
+	private ProcessThreadPool.Task task;
 	private OutputStreamWriter writer;
 
 	/**
@@ -53,7 +53,7 @@ public class InputSender {
 		Charset utf8 = Charset.forName("UTF-8");
 		this.writer = new OutputStreamWriter(outputStream, utf8);
 		
-		this.writerThread = new Thread(new Runnable() {
+		this.task = ProcessThreadPool.getInstance().submit(new Runnable() {
 			/* (non-Javadoc)
 			 * @see java.lang.Runnable#run()
 			 */
@@ -72,8 +72,6 @@ public class InputSender {
 				}
 			}
 		});
-		
-		this.writerThread.start();
 	}
 
 	/**
@@ -82,7 +80,7 @@ public class InputSender {
 	 * @throws InterruptedException 
 	 */
 	public void join() throws InterruptedException {
-		writerThread.join();
+		task.join();
 	}
 
 	/**
@@ -95,6 +93,6 @@ public class InputSender {
 		
 		// And, just in case the thread is blocked on some interruptable
 		// action (sleep, wait, etc.), interrupt it.
-		writerThread.interrupt();
+		task.cancel();
 	}
 }
@@ -19,8 +19,13 @@ package org.cloudcoder.builder2.process;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -33,6 +38,15 @@ import org.apache.commons.io.IOUtils;
  * tested processes from generating huge amounts of output and
  * crashing the Builder, swamping the database, etc.
  * 
+ * Output is read through a channel into a fixed-size buffer holding
+ * at most the maximum number of bytes allowed.  As soon as the
+ * process writes more than that, the collector stops reading, closes
+ * the stream, and notifies the callback set with
+ * {@link #setLimitExceededCallback(Runnable)} (so that the process
+ * can be killed).  The buffered bytes are only decoded into lines
+ * (applying the maximum number of lines and characters per line)
+ * when the collected output is actually used.
+ * 
  * @author David Hovemeyer
  */
 public class LimitedOutputCollector implements IOutputCollector {
@@ -50,8 +64,11 @@ public class LimitedOutputCollector implements IOutputCollector {
 	private int maxCharactersPerLine;
 	
 	private InputStream in;
-	private Reader reader;
-	private Thread thread;
+	private Runnable limitExceededCallback;
+	private ProcessThreadPool.Task task;
+	private ByteBuffer buf;
+	private volatile int numBytes;
+	private volatile boolean limitExceeded;
 	private List<String> collectedLines;
 	
 	/**
@@ -67,8 +84,6 @@ public class LimitedOutputCollector implements IOutputCollector {
 		this.maxCharactersPerLine = DEFAULT_MAX_CHARACTERS_PER_LINE;
 		
 		this.in = in;
-		
-		this.collectedLines = new ArrayList<String>();
 	}
 	
 	/**
@@ -91,60 +106,71 @@ public class LimitedOutputCollector implements IOutputCollector {
 	public void setMaxCharactersPerLine(int maxCharactersPerLine) {
 		this.maxCharactersPerLine = maxCharactersPerLine;
 	}
+	
+	/**
+	 * Set a callback to be run (by the collector thread) when the
+	 * process writes more than the maximum number of bytes allowed.
+	 * 
+	 * @param limitExceededCallback the callback
+	 */
+	public void setLimitExceededCallback(Runnable limitExceededCallback) {
+		this.limitExceededCallback = limitExceededCallback;
+	}
+	
+	/**
+	 * Check whether the process wrote more than the maximum
+	 * number of bytes allowed.
+	 * 
+	 * @return true if the output limit was exceeded, false otherwise
+	 */
+	public boolean isLimitExceeded() {
+		return limitExceeded;
+	}
 
 	/* (non-Javadoc)
 	 * @see org.cloudcoder.submitsvc.oop.builder.IOutputCollector#start()
 	 */
 	@Override
 	public void start() {
+		buf = ByteBuffer.allocate(Math.max(0, maxBytesAllowed));
 		Runnable runnable = new Runnable() {
 			/* (non-Javadoc)
 			 * @see java.lang.Runnable#run()
 			 */
 			@Override
 			public void run() {
-				reader = new InputStreamReader(new LimitedInputStream(in, maxBytesAllowed));
+				ReadableByteChannel channel = Channels.newChannel(in);
+				
+				// Once the buffer is full, a single byte of further
+				// output means that the limit has been exceeded.
+				ByteBuffer overflow = ByteBuffer.allocate(1);
 				
 				try {
-					int c;
-					StringBuilder line = new StringBuilder();
 					while (true) {
-						c = reader.read();
-						if (c < 0) {
-							// End of input.
-							// See if we have a partial line.
-							if (line.length() > 0 && collectedLines.size() < maxLinesAllowed) {
-								collectedLines.add(line.toString());
-							}
+						boolean full = !buf.hasRemaining();
+						int n = channel.read(full ? overflow : buf);
+						if (n < 0) {
+							// End of input
 							break;
 						}
-
-						// If we've exceeded max number of lines, ignore this character.
-						if (collectedLines.size() > maxLinesAllowed) {
-							continue;
-						}
-
-						// Reached end of line?
-						if (c == '\n') {
-							collectedLines.add(line.toString());
-							line = new StringBuilder();
-						} else {
-							// Only append the character if we haven't exceeded the max
-							// number of characters per line.
-							if (line.length() <= maxCharactersPerLine) {
-								line.append((char) c);
-							}
+						if (full && n > 0) {
+							limitExceeded = true;
+							break;
 						}
 					}
 				} catch (IOException e) {
-					// Ignore
+					// Ignore (the channel is closed if the collector is interrupted)
 				} finally {
-					IOUtils.closeQuietly(reader);
+					numBytes = buf.position();
+					IOUtils.closeQuietly(channel);
+				}
+				
+				if (limitExceeded && limitExceededCallback != null) {
+					limitExceededCallback.run();
 				}
 			}
 		};
-		thread = new Thread(runnable);
-		thread.start();
+		task = ProcessThreadPool.getInstance().submit(runnable);
 	}
 
 	/* (non-Javadoc)
@@ -152,7 +178,7 @@ public class LimitedOutputCollector implements IOutputCollector {
 	 */
 	@Override
 	public void interrupt() {
-		thread.interrupt();
+		task.cancel();
 	}
 
 	/* (non-Javadoc)
@@ -160,7 +186,7 @@ public class LimitedOutputCollector implements IOutputCollector {
 	 */
 	@Override
 	public void join() throws InterruptedException {
-		thread.join();
+		task.join();
 	}
 
 	/* (non-Javadoc)
@@ -168,6 +194,68 @@ public class LimitedOutputCollector implements IOutputCollector {
 	 */
 	@Override
 	public List<String> getCollectedOutput() {
-		return Collections.unmodifiableList(collectedLines);
+		// Lines are decoded the first time the returned list is accessed
+		return new AbstractList<String>() {
+			@Override
+			public String get(int index) {
+				return getLines().get(index);
+			}
+			
+			@Override
+			public int size() {
+				return getLines().size();
+			}
+		};
+	}
+
+	private synchronized List<String> getLines() {
+		if (collectedLines == null) {
+			collectedLines = Collections.unmodifiableList(decodeLines());
+		}
+		return collectedLines;
+	}
+
+	private List<String> decodeLines() {
+		List<String> lines = new ArrayList<String>();
+		if (buf == null) {
+			// Collector was never started
+			return lines;
+		}
+		
+		// Only the bytes published by the collector thread are decoded
+		ByteBuffer bytes = buf.duplicate();
+		bytes.position(0);
+		bytes.limit(numBytes);
+		
+		CharBuffer chars;
+		try {
+			chars = Charset.defaultCharset().newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE)
+					.decode(bytes);
+		} catch (IOException e) {
+			// Should not happen, since malformed input is replaced
+			return lines;
+		}
+		
+		StringBuilder line = new StringBuilder();
+		while (chars.hasRemaining() && lines.size() < maxLinesAllowed) {
+			char c = chars.get();
+			if (c == '\n') {
+				lines.add(line.toString());
+				line.setLength(0);
+			} else if (line.length() < maxCharactersPerLine) {
+				// Only append the character if we haven't exceeded the max
+				// number of characters per line.
+				line.append(c);
+			}
+		}
+		
+		// See if we have a partial line
+		if (line.length() > 0 && lines.size() < maxLinesAllowed) {
+			lines.add(line.toString());
+		}
+		
+		return lines;
 	}
 }
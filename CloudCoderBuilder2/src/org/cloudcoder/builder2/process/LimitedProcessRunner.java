@@ -158,6 +158,12 @@ public class LimitedProcessRunner extends ProcessRunner {
 		collector.setMaxBytesAllowed(limitMap.get(CommandLimit.OUTPUT_MAX_BYTES));
 		collector.setMaxLinesAllowed(limitMap.get(CommandLimit.OUTPUT_MAX_LINES));
 		collector.setMaxCharactersPerLine(limitMap.get(CommandLimit.OUTPUT_LINE_MAX_CHARS));
+		collector.setLimitExceededCallback(new Runnable() {
+			@Override
+			public void run() {
+				outputLimitExceeded();
+			}
+		});
 		
 		return collector;
 	}
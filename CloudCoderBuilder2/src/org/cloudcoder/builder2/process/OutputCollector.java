@@ -34,7 +34,7 @@ import org.apache.commons.io.IOUtils;
  */
 public class OutputCollector implements IOutputCollector {
 	private InputStream inputStream;
-	private Thread readerThread;
+	private ProcessThreadPool.Task task;
 	private List<String> collectedOutput;
 	
 	/* (non-Javadoc)
@@ -42,7 +42,7 @@ public class OutputCollector implements IOutputCollector {
 	 */
 	@Override
 	public void interrupt() {
-	    readerThread.interrupt();
+	    task.cancel();
 	}
 
 	public OutputCollector(InputStream inputStream) {
@@ -55,7 +55,7 @@ public class OutputCollector implements IOutputCollector {
 	 */
 	@Override
 	public void start() {
-		readerThread = new Thread(new Runnable() {
+		task = ProcessThreadPool.getInstance().submit(new Runnable() {
 			@Override
 			public void run() {
 				BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
@@ -74,8 +74,6 @@ public class OutputCollector implements IOutputCollector {
 				}
 			}
 		});
-
-		readerThread.start();
 	}
 
 	/* (non-Javadoc)
@@ -91,7 +89,7 @@ public class OutputCollector implements IOutputCollector {
 	 */
 	@Override
 	public void join() throws InterruptedException {
-		readerThread.join();
+		task.join();
 	}
 
 }
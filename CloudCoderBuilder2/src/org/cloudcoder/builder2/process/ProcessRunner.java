@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -30,6 +31,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.IOUtils;
 import org.cloudcoder.builder2.model.ProcessStatus;
@@ -48,6 +51,8 @@ import org.slf4j.LoggerFactory;
  */
 public class ProcessRunner {
 	private static final Logger logger=LoggerFactory.getLogger(ProcessRunner.class);
+	
+	private static final SecureRandom nonceGenerator = new SecureRandom();
     
 	private Properties config;
 	private WrapperMode wrapperMode;
@@ -57,13 +62,17 @@ public class ProcessRunner {
 	private boolean processStarted;
 	private int exitCode;
 	private ProcessStatus status;
+	private long cpuTimeMillis;
+	private long maxRssKb;
+	private boolean nativeWrapper;
+	private volatile boolean outputLimitExceeded;
 	
 	private volatile Process process;
-	private Thread exitValueMonitor;
+	private CountDownLatch completed;
 	private String stdin;
-	private IOutputCollector stdoutCollector;
-	private IOutputCollector stderrCollector;
-	private InputSender stdinSender;
+	private volatile IOutputCollector stdoutCollector;
+	private volatile IOutputCollector stderrCollector;
+	private volatile InputSender stdinSender;
 	
 	private Map<String,String> env;
 	
@@ -77,6 +86,8 @@ public class ProcessRunner {
 		this.wrapperMode = WrapperMode.SCRIPT;
 		env = new HashMap<String, String>(System.getenv());
 	    status = ProcessStatus.UNKNOWN;
+	    cpuTimeMillis = -1L;
+	    maxRssKb = -1L;
 	}
 	
 	/**
@@ -136,6 +147,9 @@ public class ProcessRunner {
 	}
 	
 	public String getStatusMessage() {
+		if (outputLimitExceeded) {
+			return "Process produced too much output";
+		}
 		return statusMessage;
 	}
 	
@@ -145,6 +159,9 @@ public class ProcessRunner {
 		
 		// exec command
 		logger.info("Running in {} the command: {}", workingDir.toString(), StringUtil.mergeOneLine(command));
+		if (nativeWrapper) {
+			return runWithNativeWrapper(workingDir, command);
+		}
 		try {
 			// Create a temp file in which the runProcess.sh script can save
 			// the exit status of the process.
@@ -160,40 +177,132 @@ public class ProcessRunner {
 					getEnvp("CC_PROC_STAT_FILE=" + exitStatusFile.getPath()),
 					workingDir);
 
-			// Collect process output
-			stdoutCollector = createOutputCollector(process.getInputStream());
-			stderrCollector = createOutputCollector(process.getErrorStream());
-			stdoutCollector.start();
-			stderrCollector.start();
-
-			// If stdin was provided, send it
-			if (stdin != null) {
-				//System.out.println("Creating InputSender for input: " + stdin);
-				stdinSender = new InputSender(process.getOutputStream(), stdin);
-				stdinSender.start();
-			}
-
-			// wait for process and output collector threads to finish
-			exitCode = process.waitFor();
-			stdoutCollector.join();
-			stderrCollector.join();
-			if (stdinSender != null) {
-				stdinSender.join();
-			}
+			// Collect output, send input, and wait for the process to finish
+			collectOutputAndWait(process.getErrorStream());
 			
 			// Read the process's exit status information
 			readProcessExitStatus(exitStatusFile);
 			return true;
 		} catch (IOException e) {
 			statusMessage = "Could not execute process: " + e.getMessage();
+			status = ProcessStatus.COULD_NOT_START;
 		} catch (InterruptedException e) {
 			statusMessage = "Process was interrupted (infinite loop killed?)";
 		}
 		return false;
 	}
 
+	/**
+	 * Run a command wrapped by the native exe process wrapper.
+	 * A random nonce is passed to the wrapper, which writes a status line
+	 * tagged with the nonce to stderr after the process exits.
+	 * The status line is removed from the stderr output and parsed
+	 * to determine the exit status of the process.  This avoids the need
+	 * for a temporary exit status file.
+	 * 
+	 * @param workingDir the working directory in which to run the process
+	 * @param command    the (wrapped) command to run
+	 * @return true if the process was run, false otherwise
+	 */
+	private boolean runWithNativeWrapper(File workingDir, String[] command) {
+		try {
+			String nonce = Long.toHexString(nonceGenerator.nextLong());
+			process = Runtime.getRuntime().exec(
+					command,
+					getEnvp("CC_PROC_STAT_NONCE=" + nonce),
+					workingDir);
+			
+			StatusTrailerInputStream stderr = new StatusTrailerInputStream(process.getErrorStream(), nonce);
+			collectOutputAndWait(stderr);
+			
+			String statusLine = stderr.getStatusLine();
+			if (statusLine != null) {
+				parseStatusLine(statusLine);
+			} else {
+				// The status line wasn't seen, most likely because the stderr
+				// collector stopped reading when the process produced too much
+				// output.  Use the wrapper's exit code instead.
+				decodeWrapperExitCode();
+			}
+			return true;
+		} catch (IOException e) {
+			statusMessage = "Could not execute process: " + e.getMessage();
+			status = ProcessStatus.COULD_NOT_START;
+		} catch (InterruptedException e) {
+			statusMessage = "Process was interrupted (infinite loop killed?)";
+		}
+		return false;
+	}
+
+	private void collectOutputAndWait(InputStream stderr) throws InterruptedException {
+		// Collect process output
+		stdoutCollector = createOutputCollector(process.getInputStream());
+		stderrCollector = createOutputCollector(stderr);
+		stdoutCollector.start();
+		stderrCollector.start();
+
+		// If stdin was provided, send it
+		if (stdin != null) {
+			//System.out.println("Creating InputSender for input: " + stdin);
+			stdinSender = new InputSender(process.getOutputStream(), stdin);
+			stdinSender.start();
+		}
+
+		// wait for process and output collector threads to finish
+		exitCode = process.waitFor();
+		stdoutCollector.join();
+		stderrCollector.join();
+		if (stdinSender != null) {
+			stdinSender.join();
+		}
+	}
+
+	/**
+	 * Parse the status line written by the native exe wrapper.
+	 * The format is: <i>how</i> <i>exitcode</i> <i>cpu_ms</i> <i>maxrss_kb</i>
+	 * 
+	 * @param statusLine the status line
+	 */
+	private void parseStatusLine(String statusLine) {
+		logger.debug("Read process status line: {}", statusLine);
+		String[] fields = statusLine.trim().split(" ");
+		try {
+			if (fields.length != 4) {
+				throw new NumberFormatException();
+			}
+			int exitCode = Integer.parseInt(fields[1]);
+			cpuTimeMillis = Long.parseLong(fields[2]);
+			maxRssKb = Long.parseLong(fields[3]);
+			setExitStatus(fields[0], exitCode);
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid process status line: {}", statusLine);
+			this.statusMessage = "Process status could not be determined";
+			this.status = ProcessStatus.COULD_NOT_START;
+		}
+	}
+
+	/**
+	 * Determine the process's exit status from the exit code of the
+	 * native exe wrapper, which is the process's exit code if it exited,
+	 * 128 plus the signal number if it was killed by a signal, or 127
+	 * if it could not be executed.  (This is ambiguous for processes
+	 * that exit with codes 127 or higher, so it is only used if
+	 * the status line was not received.)
+	 */
+	private void decodeWrapperExitCode() {
+		logger.debug("No process status line, wrapper exit code is {}", exitCode);
+		if (exitCode == 127) {
+			setExitStatus("failed_to_execute", exitCode);
+		} else if (exitCode > 128) {
+			setExitStatus("terminated_by_signal", exitCode - 128);
+		} else {
+			setExitStatus("exited", exitCode);
+		}
+	}
+
 	private String[] wrapCommand(String[] command) {
 		List<String> cmd = new ArrayList<String>();
+		nativeWrapper = false;
 		
 		switch (wrapperMode) {
 		case NATIVE_EXE:
@@ -201,6 +310,7 @@ public class ProcessRunner {
 			if (runProc.getNativeExePath() != null) {
 				// Native exe process wrapper exists, so use it.
 				cmd.add(runProc.getNativeExePath());
+				nativeWrapper = true;
 				break;
 			}
 			
@@ -233,6 +343,24 @@ public class ProcessRunner {
 		return new OutputCollector(inputStream);
 	}
 	
+	/**
+	 * Called by an output collector (from its own thread) when the process
+	 * has produced more output than is allowed.  The process is killed
+	 * immediately, rather than being allowed to run until it exceeds
+	 * its CPU time limit, and its status will be reported as
+	 * {@link ProcessStatus#OUTPUT_LIMIT_EXCEEDED}.  (Destroying the process
+	 * sends SIGTERM to the wrapper, which kills the process's entire
+	 * process group with SIGKILL, so the process can't ignore it.)
+	 */
+	protected void outputLimitExceeded() {
+		logger.info("Process exceeded output limit, killing it");
+		outputLimitExceeded = true;
+		Process p = process;
+		if (p != null) {
+			p.destroy();
+		}
+	}
+	
 	/**
 	 * Read the file written by the runProcess.sh script
 	 * which contains information about the process's exit status.
@@ -249,32 +377,7 @@ public class ProcessRunner {
 				logger.debug("Read process exit status file: status={}, exitCode={}", status, exitCode);
 				
 				// Second line of file should be the exit code
-				this.exitCode = Integer.parseInt(exitCode);
-				
-				if (status.equals("failed_to_execute")) {
-					// The process could not be started
-					this.processStarted = false;
-					this.statusMessage = "Process could not be started";
-					this.status = ProcessStatus.COULD_NOT_START;
-					
-					logger.debug("process stderr is {}", StringUtil.mergeOneLine(stderrCollector.getCollectedOutput()));
-				} else if (status.equals("exited")) {
-					// The process exited normally.
-					this.processStarted = true;
-					this.statusMessage = "Process exited";
-					this.status = ProcessStatus.EXITED;
-				} else if (status.equals("terminated_by_signal")) {
-					// The process was killed by a signal.
-					// The exit code is the signal that terminated the process.
-					this.processStarted = true;
-					this.statusMessage = "Process crashed (terminated by signal " + this.exitCode + ")";
-					this.status = ProcessStatus.KILLED_BY_SIGNAL;
-				} else {
-					// Should not happen.
-					logger.warn("Unknown process exit status " + status);
-					this.statusMessage = "Process status could not be determined";
-					this.status = ProcessStatus.COULD_NOT_START;
-				}
+				setExitStatus(status, Integer.parseInt(exitCode));
 			}
 		} catch (IOException e) {
 			logger.warn("IOException trying to read process status file");
@@ -290,13 +393,78 @@ public class ProcessRunner {
 		}
 	}
 
+	/**
+	 * Set the process's exit status, as reported by the process wrapper.
+	 * 
+	 * @param status   how the process terminated: "exited", "terminated_by_signal",
+	 *                 or "failed_to_execute"
+	 * @param exitCode the exit code, or the signal that terminated the process
+	 */
+	private void setExitStatus(String status, int exitCode) {
+		this.exitCode = exitCode;
+		
+		if (status.equals("failed_to_execute")) {
+			// The process could not be started
+			this.processStarted = false;
+			this.statusMessage = "Process could not be started";
+			this.status = ProcessStatus.COULD_NOT_START;
+			
+			logger.debug("process stderr is {}", StringUtil.mergeOneLine(stderrCollector.getCollectedOutput()));
+		} else if (status.equals("exited")) {
+			// The process exited normally.
+			this.processStarted = true;
+			this.statusMessage = "Process exited";
+			this.status = ProcessStatus.EXITED;
+		} else if (status.equals("terminated_by_signal")) {
+			// The process was killed by a signal.
+			// The exit code is the signal that terminated the process.
+			this.processStarted = true;
+			this.statusMessage = "Process crashed (terminated by signal " + this.exitCode + ")";
+			this.status = ProcessStatus.KILLED_BY_SIGNAL;
+		} else {
+			// Should not happen.
+			logger.warn("Unknown process exit status " + status);
+			this.statusMessage = "Process status could not be determined";
+			this.status = ProcessStatus.COULD_NOT_START;
+		}
+	}
+
+	/**
+	 * Run the process using a thread from the {@link ProcessThreadPool}.
+	 * Use {@link #waitForCompletion(long)} to wait for the process to complete.
+	 * 
+	 * @param workingDir  the working directory in which to run the process
+	 * @param command     the command to run
+	 */
 	public void runAsynchronous(final File workingDir, final String... command) {
-	    exitValueMonitor=new Thread() {
-	        public void run() {
-	            runSynchronous(workingDir, command);
-	        }
-	    };
-	    exitValueMonitor.start();
+		completed = new CountDownLatch(1);
+		ProcessThreadPool.getInstance().submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					runSynchronous(workingDir, command);
+				} catch (RuntimeException e) {
+					logger.error("Exception running process", e);
+					statusMessage = "Could not execute process: " + e.getMessage();
+					status = ProcessStatus.COULD_NOT_START;
+				} finally {
+					completed.countDown();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Wait for a process started with {@link #runAsynchronous(File, String...)}
+	 * to complete.  When this method returns true, the process has exited,
+	 * all of its output has been collected, and its exit status is available.
+	 * 
+	 * @param timeoutMillis maximum number of milliseconds to wait
+	 * @return true if the process completed, false if the timeout expired
+	 * @throws InterruptedException
+	 */
+	public boolean waitForCompletion(long timeoutMillis) throws InterruptedException {
+		return completed.await(timeoutMillis, TimeUnit.MILLISECONDS);
 	}
 	
 	/**
@@ -334,6 +502,11 @@ public class ProcessRunner {
 	 * @return the {@link ProcessStatus}
 	 */
 	public ProcessStatus getStatus() {
+		if (outputLimitExceeded) {
+			// The process was killed because it produced too much output,
+			// so its exit status is not meaningful.
+			return ProcessStatus.OUTPUT_LIMIT_EXCEEDED;
+		}
 		if (status == ProcessStatus.KILLED_BY_SIGNAL) {
 			if (exitCode == 9 || exitCode == 24) {
 				// Special case: if the process was killed by signals 9 (KILL) or 24 (XCPU),
@@ -359,6 +532,28 @@ public class ProcessRunner {
 	public int getExitCode() {
 		return exitCode;
 	}
+	
+	/**
+	 * Get the CPU time (user plus system) used by the process.
+	 * This is only available when the native exe wrapper is used.
+	 * <b>Important:</b>: don't call this unless the process is definitely not running.
+	 * 
+	 * @return CPU time in milliseconds, or -1 if not known
+	 */
+	public long getCpuTimeMillis() {
+		return cpuTimeMillis;
+	}
+	
+	/**
+	 * Get the maximum resident set size of the process.
+	 * This is only available when the native exe wrapper is used.
+	 * <b>Important:</b>: don't call this unless the process is definitely not running.
+	 * 
+	 * @return maximum resident set size in kilobytes, or -1 if not known
+	 */
+	public long getMaxRssKb() {
+		return maxRssKb;
+	}
 
 	/**
 	 * @return stdout as a single string
@@ -371,6 +566,10 @@ public class ProcessRunner {
 	 * @return the standard output written by the process as a List of strings
 	 */
 	public List<String> getStdoutAsList() {
+		if (stdoutCollector == null) {
+			// Process was never started
+			return Collections.emptyList();
+		}
 		return stdoutCollector.getCollectedOutput();
 	}
 
@@ -388,7 +587,7 @@ public class ProcessRunner {
 		// Special case: if the process was killed because it exceeded
 		// a resource limit, its stderr is probably not useful.
 		ProcessStatus status = getStatus();
-		if (status == ProcessStatus.TIMED_OUT || status == ProcessStatus.FILE_SIZE_LIMIT_EXCEEDED) {
+		if (stderrCollector == null || status == ProcessStatus.TIMED_OUT || status == ProcessStatus.FILE_SIZE_LIMIT_EXCEEDED) {
 			return Collections.emptyList();
 		} else {
 			return stderrCollector.getCollectedOutput();
@@ -422,6 +621,10 @@ public class ProcessRunner {
 	 */
 	public void killProcess() {
 		logger.info("Killing process");
+		if (process == null) {
+			// Process was never started
+			return;
+		}
 		process.destroy();
 		
 		// Important: wait for the process, otherwise we will probably create
@@ -439,10 +642,18 @@ public class ProcessRunner {
 			}
 		} while (!exited);
 		
-		stdoutCollector.interrupt();
-		stderrCollector.interrupt();
-		if (stdinSender != null) {
-			stdinSender.interrupt();
+		// The collectors and input sender may not have been created yet
+		IOutputCollector stdout = stdoutCollector;
+		if (stdout != null) {
+			stdout.interrupt();
+		}
+		IOutputCollector stderr = stderrCollector;
+		if (stderr != null) {
+			stderr.interrupt();
+		}
+		InputSender stdin = stdinSender;
+		if (stdin != null) {
+			stdin.interrupt();
 		}
 	}
 }
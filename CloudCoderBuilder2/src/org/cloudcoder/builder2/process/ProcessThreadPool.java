@@ -0,0 +1,131 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.process;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared pool of threads used to run processes and to send and
+ * receive their standard input and output.  Because process I/O
+ * is blocking, each of these tasks needs a thread of its own while it
+ * runs, so the pool is unbounded: however, threads are reused
+ * across processes (and submissions), rather than being created
+ * for each one.  Idle threads exit after one minute.
+ * 
+ * @author David Hovemeyer
+ */
+public class ProcessThreadPool {
+	private static final ProcessThreadPool instance = new ProcessThreadPool();
+	
+	/**
+	 * @return the singleton instance
+	 */
+	public static ProcessThreadPool getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * Handle for a task started by {@link ProcessThreadPool#submit(Runnable)},
+	 * which can be used to wait for or cancel the task.
+	 */
+	public static class Task {
+		private final AtomicBoolean started;
+		private final CountDownLatch finished;
+		private volatile Future<?> future;
+
+		private Task() {
+			this.started = new AtomicBoolean();
+			this.finished = new CountDownLatch(1);
+		}
+
+		private void run(Runnable runnable) {
+			if (!started.compareAndSet(false, true)) {
+				// Cancelled before it started
+				return;
+			}
+			try {
+				runnable.run();
+			} finally {
+				finished.countDown();
+			}
+		}
+
+		/**
+		 * Cancel the task, interrupting its thread if it is running.
+		 * Use {@link #join()} to wait for a running task to actually finish.
+		 */
+		public void cancel() {
+			Future<?> f = future;
+			if (f != null) {
+				f.cancel(true);
+			}
+			if (started.compareAndSet(false, true)) {
+				// The task will never run
+				finished.countDown();
+			}
+		}
+
+		/**
+		 * Wait for the task to finish.  If the task was cancelled while it
+		 * was running, this waits until it has actually stopped running,
+		 * so that any data it collected can be used safely.
+		 * 
+		 * @throws InterruptedException
+		 */
+		public void join() throws InterruptedException {
+			finished.await();
+		}
+	}
+
+	private final ExecutorService executor;
+	
+	private ProcessThreadPool() {
+		final AtomicInteger nextThreadNum = new AtomicInteger(1);
+		this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ProcessIO" + nextThreadNum.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * Execute a task using a pooled thread.
+	 * 
+	 * @param runnable the task
+	 * @return a {@link Task} which can be used to wait for or cancel the task
+	 */
+	public Task submit(final Runnable runnable) {
+		final Task task = new Task();
+		task.future = executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				task.run(runnable);
+			}
+		});
+		return task;
+	}
+}
@@ -0,0 +1,182 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.process;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An InputStream that removes the status line written to stderr by
+ * the native process wrapper (cRunProcess.c) from another input stream.
+ * The status line begins with the marker byte 0x01, followed by
+ * "CCSTAT", a nonce, and the process's exit status information,
+ * and is terminated by a newline.  The nonce is removed from the
+ * wrapped process's environment, so output that happens to look like
+ * a status line isn't mistaken for one.  (This guards against accidental
+ * collisions, not deliberate forgery: a process running as the same
+ * user could read the nonce from the wrapper's /proc/&lt;pid&gt;/environ.)
+ * Once the stream has been read to end of file,
+ * {@link #getStatusLine()} returns the status information
+ * (everything following the nonce), or null if no complete status line
+ * was seen.  An incomplete status line (with no terminating newline)
+ * is discarded.
+ * 
+ * @author David Hovemeyer
+ */
+public class StatusTrailerInputStream extends InputStream {
+	private InputStream delegate;
+	private byte[] marker;
+	private int matched;
+	private byte[] pending;
+	private int pendingPos, pendingCount;
+	private boolean inStatusLine;
+	private StringBuilder statusBuf;
+	private volatile String statusLine;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param delegate the stream to read from (the process's stderr)
+	 * @param nonce    the nonce passed to the wrapper in the
+	 *                 CC_PROC_STAT_NONCE environment variable
+	 */
+	public StatusTrailerInputStream(InputStream delegate, String nonce) {
+		this.delegate = delegate;
+		this.marker = getMarker(nonce);
+		this.pending = new byte[marker.length + 1];
+	}
+	
+	private static byte[] getMarker(String nonce) {
+		String s = "\u0001CCSTAT " + nonce + " ";
+		byte[] result = new byte[s.length()];
+		for (int i = 0; i < s.length(); i++) {
+			result[i] = (byte) s.charAt(i);
+		}
+		return result;
+	}
+	
+	/**
+	 * @return the status information from the status line (with the marker
+	 *         and nonce removed), or null if no status line was read
+	 */
+	public String getStatusLine() {
+		return statusLine;
+	}
+
+	@Override
+	public int read() throws IOException {
+		while (true) {
+			// Return bytes that were held back because they looked
+			// like the beginning of the marker, but weren't
+			if (pendingPos < pendingCount) {
+				return pending[pendingPos++] & 0xff;
+			}
+			
+			int b = delegate.read();
+			
+			if (b < 0) {
+				// A partial marker at end of file is just ordinary output
+				if (matched > 0) {
+					hold(-1);
+					continue;
+				}
+				return -1;
+			}
+			
+			if (inStatusLine) {
+				if (b == '\n') {
+					statusLine = statusBuf.toString();
+					inStatusLine = false;
+				} else if (statusBuf.length() < 256) {
+					statusBuf.append((char) b);
+				}
+				continue;
+			}
+			
+			if ((byte) b == marker[matched]) {
+				matched++;
+				if (matched == marker.length) {
+					// Found the marker: the rest of the line is the status
+					matched = 0;
+					inStatusLine = true;
+					statusBuf = new StringBuilder();
+				}
+				continue;
+			}
+			
+			if (matched == 0) {
+				return b;
+			}
+			
+			// Mismatch after a partial match.  The marker byte only
+			// occurs at the beginning of the marker, so a new match
+			// can only start with the current byte.
+			if ((byte) b == marker[0]) {
+				hold(-1);
+				matched = 1;
+			} else {
+				hold(b);
+			}
+		}
+	}
+	
+	private void hold(int extra) {
+		System.arraycopy(marker, 0, pending, 0, matched);
+		pendingCount = matched;
+		pendingPos = 0;
+		matched = 0;
+		if (extra >= 0) {
+			pending[pendingCount++] = (byte) extra;
+		}
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		
+		// Block for at most one byte, then return whatever
+		// can be read without blocking
+		int c = read();
+		if (c < 0) {
+			return -1;
+		}
+		b[off] = (byte) c;
+		int n = 1;
+		while (n < len && (pendingPos < pendingCount || delegate.available() > 0)) {
+			c = read();
+			if (c < 0) {
+				break;
+			}
+			b[off + n] = (byte) c;
+			n++;
+		}
+		return n;
+	}
+	
+	@Override
+	public int available() throws IOException {
+		return pendingCount - pendingPos;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		delegate.close();
+	}
+}
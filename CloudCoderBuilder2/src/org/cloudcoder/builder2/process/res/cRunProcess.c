@@ -20,12 +20,16 @@
 // pid of child process
 static int s_childpid = -1;
 
-// Handler for SIGTERM: if child process is running, send the
-// signal to the child proces.
+// Handler for SIGTERM: if child process is running, kill it,
+// along with any processes it started.  The builder only sends SIGTERM
+// to kill the child, which must not be able to ignore or delay it.
+// (The child might not have been put in its own process group yet,
+// so it is also killed directly.)
 static void sigterm_handler(int signo)
 {
 	if (s_childpid > 0) {
-		kill(s_childpid, SIGTERM);
+		kill(-s_childpid, SIGKILL);
+		kill(s_childpid, SIGKILL);
 	}
 }
 
@@ -116,10 +120,15 @@ static char **create_env(char **env)
 	}
 	char **new_env = malloc((n+3) * sizeof(char*));
 
-	// Copy current environment variables
+	// Copy current environment variables, except for the status nonce,
+	// so that the child's output can't accidentally match the status line
+	int count = 0;
 	for (int i = 0; i < n; i++) {
-		new_env[i] = env[i];
+		if (strncmp(env[i], "CC_PROC_STAT_NONCE=", 19) != 0) {
+			new_env[count++] = env[i];
+		}
 	}
+	n = count;
 
 	// Set LD_PRELOAD if requested
 	if (getenv("CC_LD_PRELOAD") != NULL) {
@@ -190,6 +199,10 @@ int main(int argc, char **argv, char **env)
 	if (s_childpid == 0) {
 		// in the child
 
+		// Put the child in its own process group, so that it can
+		// be killed along with any processes it starts
+		setpgid(0, 0);
+
 		// Wait for parent's signal that it is ok to proceed
 		close(pipefd[1]); // close write side of pipe
 		read_one_byte(pipefd[0]); // read exactly one byte
@@ -213,10 +226,26 @@ int main(int argc, char **argv, char **env)
 	} else {
 		// in the parent
 
-		// Close stdin, stdout, and stderr
+		// Also set the child's process group here, so that it is
+		// set regardless of which process runs first
+		setpgid(s_childpid, s_childpid);
+
+		// If a status nonce was provided, the exit status will be
+		// reported on stderr, so keep it open.  Ignore SIGPIPE, so that
+		// if the builder has stopped reading stderr (because the child
+		// produced too much output), we still exit with a meaningful
+		// exit code.
+		char *stat_nonce = getenv("CC_PROC_STAT_NONCE");
+		if (stat_nonce != NULL) {
+			signal(SIGPIPE, SIG_IGN);
+		}
+
+		// Close stdin, stdout, and (unless needed for the status) stderr
 		close(0);
 		close(1);
-		close(2);
+		if (stat_nonce == NULL) {
+			close(2);
+		}
 		
 		// Tell the child it's safe to execute the program
 		close(pipefd[0]); // close read side of pipe
@@ -225,7 +254,8 @@ int main(int argc, char **argv, char **env)
 
 		// Wait for child to exit
 		int status;
-		while (waitpid(s_childpid, &status, 0) == -1) {
+		struct rusage usage;
+		while (wait4(s_childpid, &status, 0, &usage) == -1) {
 			if (errno != EINTR) {
 				// Unexpected error waiting for child.
 				// This is pretty bad.
@@ -252,6 +282,25 @@ int main(int argc, char **argv, char **env)
 			how = "failed_to_execute";
 		}
 
+		// Report exit status and resource usage on stderr if requested.
+		// The status line is written with a single write, so it
+		// can't be interleaved with output from other processes.
+		if (stat_nonce != NULL) {
+			long cpu_ms =
+				(usage.ru_utime.tv_sec + usage.ru_stime.tv_sec) * 1000L +
+				(usage.ru_utime.tv_usec + usage.ru_stime.tv_usec) / 1000L;
+			char buf[256];
+			int len = snprintf(buf, sizeof(buf), "\001CCSTAT %s %s %d %ld %ld\n",
+				stat_nonce, how, exitcode, cpu_ms, (long) usage.ru_maxrss);
+			if (len > 0 && len < (int) sizeof(buf)) {
+				ssize_t rc;
+				do {
+					rc = write(2, buf, (size_t) len);
+				} while (rc == -1 && errno == EINTR);
+			}
+			close(2);
+		}
+
 		// Create exit status file if requested
 		char *exit_status_file = getenv("CC_PROC_STAT_FILE");
 		if (exit_status_file != NULL) {
@@ -263,7 +312,9 @@ int main(int argc, char **argv, char **env)
 			}
 		}
 
-		// Done!
-		exit(exitcode);
+		// Done!  If the child was killed by a signal, exit with
+		// 128 plus the signal number (as a shell would), so the builder
+		// can tell what happened even if it didn't get the status line.
+		exit(WIFSIGNALED(status) ? 128 + exitcode : exitcode);
 	}
 }
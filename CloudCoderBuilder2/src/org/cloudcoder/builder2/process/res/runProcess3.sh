@@ -15,18 +15,20 @@ shift
 # environment variable (to set a heap size for a sandboxed process).
 #
 # Note that the program is run asynchronously in the background,
-# so that if the parent process (i.e., the CloudCoder builder)
-# needs to kill the program, it can send a signal to this script
-# which in turn can kill the actual program.
+# in its own process group, so that if the parent process (i.e., the
+# CloudCoder builder) needs to kill the program, it can send a signal
+# to this script which in turn can kill the actual program along with
+# any processes it started.
 #
 
 
-# If this script is sent a SIGTERM signal, then pass it on to the
-# program process.
+# If this script is sent a SIGTERM signal, then kill the program
+# process group.  The builder only sends SIGTERM to kill the program,
+# which must not be able to ignore or delay it.
 program_pid=""
 on_sigterm_received() {
 	if [ ! -z "${program_pid}" ]; then
-		kill -TERM ${program_pid}
+		kill -KILL -- -${program_pid} ${program_pid} 2> /dev/null
 	fi
 }
 trap "on_sigterm_received" SIGTERM
@@ -46,7 +48,9 @@ exec 0>&-  # close the original stdin fd
 
 # Execute the actual program, creating a background process.
 # Note that the subprocess will dup the "saved" stdin fd
-# and make it the "real" stdin fd.
+# and make it the "real" stdin fd.  Job control is enabled while
+# starting the program so that it is put in its own process group.
+set -m
 ( \
 	exec 0<&8; \
 	for limit in ${CC_PROCESS_RESOURCE_LIMITS}; do ulimit $limit; done; \
@@ -55,10 +59,17 @@ exec 0>&-  # close the original stdin fd
 	exec ${prog} "$@" \
 )&
 program_pid=$!
+set +m
 
-# Wait (synchronously) for the program to exit
+# Wait (synchronously) for the program to exit.  If a signal is
+# received, wait returns early, so wait again until the program has
+# actually exited.
 wait $program_pid
 rc=$?
+while kill -0 ${program_pid} 2> /dev/null; do
+	wait $program_pid
+	rc=$?
+done
 
 if [ -z "${CC_PROC_STAT_FILE}" ]; then
 	# A process status file was not requested.
@@ -0,0 +1,73 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.pythonfunction;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.python.core.Py;
+import org.python.core.PyString;
+import org.python.core.PyStringMap;
+import org.python.core.PySystemState;
+import org.python.util.PythonInterpreter;
+
+/**
+ * Pool of {@link PythonInterpreter}s, with one interpreter per builder thread.
+ * Rather than creating a new interpreter for each submission, each
+ * builder thread reuses its interpreter, which is reset to an
+ * empty <code>__main__</code> namespace each time it is acquired.
+ * Its output is discarded until the {@link PythonKillableTaskManager}
+ * redirects it for the tests.
+ * Note that all interpreters share the same Jython system state
+ * (loaded modules, etc.), which is also the case for separately-created
+ * interpreters.
+ * 
+ * @author David Hovemeyer
+ */
+public class PythonInterpreterPool {
+	private static final ThreadLocal<PythonInterpreter> interpreter = new ThreadLocal<PythonInterpreter>() {
+		@Override
+		protected PythonInterpreter initialValue() {
+			return new PythonInterpreter();
+		}
+	};
+	
+	/**
+	 * Initialize the Jython runtime, so that the cost of doing so
+	 * is not paid by the first Python submission tested.
+	 */
+	public static void warmUp() {
+		PySystemState.initialize();
+	}
+	
+	/**
+	 * Get the current thread's {@link PythonInterpreter},
+	 * reset so that it has an empty <code>__main__</code> namespace
+	 * and discards its output.
+	 * 
+	 * @return the {@link PythonInterpreter}
+	 */
+	public static PythonInterpreter acquire() {
+		PythonInterpreter terp = interpreter.get();
+		PyStringMap namespace = new PyStringMap();
+		namespace.__setitem__("__name__", new PyString("__main__"));
+		namespace.__setitem__("__doc__", Py.None);
+		terp.setLocals(namespace);
+		terp.setOut(NullOutputStream.NULL_OUTPUT_STREAM);
+		terp.setErr(NullOutputStream.NULL_OUTPUT_STREAM);
+		return terp;
+	}
+}
@@ -19,6 +19,7 @@ package org.cloudcoder.builder2.pythonfunction;
 
 import java.util.List;
 
+import org.apache.commons.io.output.NullOutputStream;
 import org.cloudcoder.builder2.javasandbox.AbstractKillableTaskManager;
 import org.cloudcoder.builder2.javasandbox.IsolatedTask;
 import org.cloudcoder.builder2.javasandbox.ThreadedPrintStreamMonitor;
@@ -44,9 +45,11 @@ public class PythonKillableTaskManager<T> extends AbstractKillableTaskManager<T>
     
     @Override
     public void unredirectStandardOutputStreams() {
-     // Nothing to do here...
-        // We stop using the interpreter when we're done
-        // with the test cases
+        // The interpreter is reused for later submissions (see
+        // PythonInterpreterPool), so don't leave it writing to this
+        // submission's monitors: discard any further output
+        pythonInterpreter.setOut(NullOutputStream.NULL_OUTPUT_STREAM);
+        pythonInterpreter.setErr(NullOutputStream.NULL_OUTPUT_STREAM);
     }
 
     @Override
@@ -18,7 +18,6 @@
 
 package org.cloudcoder.builder2.pythonfunction;
 
-import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -39,6 +38,7 @@ import org.cloudcoder.builder2.model.IBuildStep;
 import org.cloudcoder.builder2.model.InternalBuilderException;
 import org.cloudcoder.builder2.model.ProgramSource;
 import org.cloudcoder.builder2.util.TestResultUtil;
+import org.python.core.PyCode;
 import org.python.core.PyException;
 import org.python.core.PyFunction;
 import org.python.core.PyObject;
@@ -61,6 +61,9 @@ public class TestPythonFunctionBuildStep implements IBuildStep {
 	static {
 		// Force preloading of classes needed by PythonTestCaseTask
 		new PythonUtil();
+		
+		// Initialize Jython now, rather than when the first submission is tested
+		PythonInterpreterPool.warmUp();
 	}
 
 	@Override
@@ -82,35 +85,30 @@ public class TestPythonFunctionBuildStep implements IBuildStep {
 		if (programSourceList.length > 1) {
 			throw new InternalBuilderException(TestPythonFunctionBuildStep.class, "Multiple source files not supported");
 		}
-		ProgramSource programSource = programSourceList[0];
-		
 		// Because AddPythonFunctionScaffoldingBuildStep has executed previously,
 		// the ProgramSource is the scaffolded source code (ready to execute test cases)
-		final String programText = programSource.getProgramText();
+		ProgramSource programSource = programSourceList[0];
 		
 		TestCase[] testCaseList_ = submission.requireArtifact(TestPythonFunctionBuildStep.class, TestCase[].class);
 		List<TestCase> testCaseList= Arrays.asList(testCaseList_);
 
-		final byte[] sBytes = programText.getBytes();
+		// Get this thread's Python interpreter (with an empty namespace)
+		final PythonInterpreter terp = PythonInterpreterPool.acquire();
 
-		// Check if the Python code is syntactically correct.
+		// Compile and execute the script in the interpreter, checking
+		// that the Python code is syntactically correct.
 		// Because Python is a dynamic language, this will only find invalid syntax,
 		// unknown imports, and similar issues.
-		CompilationResult compres = compilePythonScript(problem, programSource);
+		// Note that our script will have all statements outside of a function
+		// stripped out (except for import statements) so no global variables
+		CompilationResult compres = compilePythonScript(terp, problem, programSource);
 		if (compres.getOutcome() != CompilationOutcome.SUCCESS) {
 			compres.adjustDiagnosticLineNumbers(programSource.getPrologueLength(), programSource.getEpilogueLength());
 			return new SubmissionResult(compres);
 		}
 		
-		// Create a Python interpreter, load True from the interpreter
-		// then execute our script.
-		// Note that our script will have all statements outside of a function
-		// stripped out (except for import statements) so no global variables
-		final PythonInterpreter terp=new PythonInterpreter();
+		// Load True from the interpreter
 		final PyObject True=terp.eval("True");
-		// won't throw an exception because we checked it at the top of
-		// the method to make sure the code will compile
-		terp.execfile(new ByteArrayInputStream(sBytes));
 
 		// Create PythonTestCaseTasks, one to execute each test case function
 		List<PythonTestCaseTask> tasks=new ArrayList<PythonTestCaseTask>();
@@ -158,19 +156,22 @@ public class TestPythonFunctionBuildStep implements IBuildStep {
 
 	/**
 	 * "Compile" scaffolded python code to detect syntax errors, missing imports, and
-	 * other "static" errors.
+	 * other "static" errors.  The compiled code is executed in the given
+	 * interpreter, so if compilation succeeds, the test functions are
+	 * ready to be called.
 	 * 
+	 * @param terp          the {@link PythonInterpreter}
 	 * @param problem       the {@link Problem}
 	 * @param programSource the scaffolded code
 	 * @return the {@link CompilationResult}
 	 */
-	private CompilationResult compilePythonScript(Problem problem, ProgramSource programSource) {
+	private CompilationResult compilePythonScript(PythonInterpreter terp, Problem problem, ProgramSource programSource) {
 		String programText = programSource.getProgramText();
 		
 		try {
 		    logger.info("\n"+programText);
-			PythonInterpreter terp=new PythonInterpreter();
-			terp.execfile(new ByteArrayInputStream(programText.getBytes()));
+			PyCode code = terp.compile(programText);
+			terp.exec(code);
 			
 			// Check to see if the test code actually defines the required
 			// function.  If it doesn't, report this as a failed compilation
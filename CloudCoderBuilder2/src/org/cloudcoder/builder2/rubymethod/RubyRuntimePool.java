@@ -0,0 +1,443 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.rubymethod;
+
+import java.util.LinkedList;
+import java.util.Properties;
+
+import org.cloudcoder.builder2.util.SingletonHolder;
+import org.jruby.embed.AttributeName;
+import org.jruby.embed.LocalContextScope;
+import org.jruby.embed.ScriptingContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of pre-warmed JRuby runtimes used to test
+ * {@link org.cloudcoder.app.shared.model.ProblemType#RUBY_METHOD} submissions.
+ * Each submission checks out its own {@link RubyRuntime}, which has
+ * a separate JRuby runtime, so concurrent submissions don't share
+ * (and contend on) a single runtime.
+ * When a runtime is checked back in, the top-level methods, constants,
+ * instance variables, class variables, and global variables defined by
+ * the submission are removed, and the runtime is returned to the pool.
+ * A submission can also modify built-in classes and modules, which can't
+ * be undone: hooks installed after the runtime is warmed up detect
+ * methods being added to, removed from, or undefined in any class or
+ * module that existed at that point, and modules being included in or
+ * extending them.  A runtime modified in this way (or in which the
+ * submission loaded a library) is discarded rather than reused.
+ * A runtime is also discarded once it has been used a fixed
+ * number of times, which bounds the heap growth of each runtime.
+ *
+ * <p>The following configuration properties are supported:
+ * <ul>
+ * <li><code>cloudcoder.builder2.ruby.pool.size</code>: the maximum number
+ *     of idle runtimes kept in the pool (default 4)</li>
+ * <li><code>cloudcoder.builder2.ruby.pool.prewarm</code>: the number of
+ *     runtimes created when the builder starts (default 1); when a runtime
+ *     is discarded, a replacement is created in the background if there
+ *     are fewer idle runtimes than this</li>
+ * <li><code>cloudcoder.builder2.ruby.pool.maxuses</code>: the number of
+ *     submissions tested by a runtime before it is discarded (default 50)</li>
+ * </ul>
+ *
+ * @author David Hovemeyer
+ */
+public class RubyRuntimePool {
+	private static final Logger logger = LoggerFactory.getLogger(RubyRuntimePool.class);
+
+	/** Default maximum number of idle runtimes. */
+	public static final int DEFAULT_SIZE = 4;
+
+	/** Default number of runtimes to create at startup. */
+	public static final int DEFAULT_PREWARM = 1;
+
+	/** Default number of uses before a runtime is discarded. */
+	public static final int DEFAULT_MAX_USES = 50;
+
+	// Scriptlet evaluating to a lambda that removes everything defined
+	// at the top level since the lambda was created.
+	private static final String RESET_SCRIPTLET =
+			"_cc_methods = Object.public_instance_methods(false) + Object.private_instance_methods(false) + Object.protected_instance_methods(false)\n" +
+			"_cc_consts = Object.constants\n" +
+			"_cc_globals = global_variables\n" +
+			"_cc_cvars = Object.class_variables\n" +
+			"lambda {\n" +
+			"  (Object.public_instance_methods(false) + Object.private_instance_methods(false) + Object.protected_instance_methods(false) - _cc_methods).each { |m| Object.send(:remove_method, m) }\n" +
+			"  (Object.constants - _cc_consts).each { |c| Object.send(:remove_const, c) }\n" +
+			"  (global_variables - _cc_globals).each { |g| eval(\"#{g} = nil\") }\n" +
+			"  (Object.class_variables - _cc_cvars).each { |v| Object.send(:remove_class_variable, v) }\n" +
+			"  instance_variables.each { |v| remove_instance_variable(v) }\n" +
+			"  nil\n" +
+			"}\n";
+
+	// Scriptlet evaluating to a lambda that returns true if any class
+	// or module that exists when the scriptlet is evaluated has been
+	// modified since then (other than by adding top-level methods, which
+	// the reset lambda removes), or if any library has been loaded.
+	// Modifications are detected by hooks, and by checking that the hooks
+	// are still installed and that the ancestors of the existing classes
+	// and modules haven't changed.  The lambda should be called after
+	// the reset lambda.
+	private static final String CHECK_MODIFIED_SCRIPTLET =
+			"_cc_modified = [false]\n" +
+			"_cc_methods = Object.public_instance_methods(false) + Object.private_instance_methods(false) + Object.protected_instance_methods(false)\n" +
+			"_cc_core = {}.compare_by_identity\n" +
+			"_cc_todo = [Object]\n" +
+			"_cc_verbose = $VERBOSE\n" +
+			"$VERBOSE = nil\n" +
+			"until _cc_todo.empty?\n" +
+			"  _cc_m = _cc_todo.pop\n" +
+			"  next if _cc_core.include?(_cc_m)\n" +
+			"  _cc_core[_cc_m] = [_cc_m.ancestors.size, _cc_m.singleton_class.ancestors.size]\n" +
+			"  _cc_m.constants(false).each do |c|\n" +
+			"    next if _cc_m.autoload?(c)\n" +
+			"    v = (_cc_m.const_get(c) rescue nil)\n" +
+			"    _cc_todo.push(v) if Module === v\n" +
+			"  end\n" +
+			"end\n" +
+			"$VERBOSE = _cc_verbose\n" +
+			"_cc_hooks = []\n" +
+			"[:method_added, :method_removed, :method_undefined].each do |h|\n" +
+			"  Module.send(:define_method, h) do |name|\n" +
+			"    if _cc_core.include?(self) && (!equal?(Object) || _cc_methods.include?(name))\n" +
+			"      _cc_modified[0] = true\n" +
+			"    end\n" +
+			"  end\n" +
+			"  Module.send(:private, h)\n" +
+			"  _cc_hooks.push([Module, h, Module.instance_method(h)])\n" +
+			"end\n" +
+			"[:singleton_method_added, :singleton_method_removed, :singleton_method_undefined].each do |h|\n" +
+			"  BasicObject.send(:define_method, h) do |name|\n" +
+			"    _cc_modified[0] = true unless Module === self && !_cc_core.include?(self)\n" +
+			"  end\n" +
+			"  BasicObject.send(:private, h)\n" +
+			"  _cc_hooks.push([BasicObject, h, BasicObject.instance_method(h)])\n" +
+			"end\n" +
+			"_cc_features = $LOADED_FEATURES.size\n" +
+			"_cc_modified[0] = false\n" +
+			"lambda {\n" +
+			"  _cc_modified[0] ||\n" +
+			"    $LOADED_FEATURES.size != _cc_features ||\n" +
+			"    _cc_hooks.any? { |mod, h, m| mod.instance_method(h) != m } ||\n" +
+			"    _cc_core.any? { |m, a| [m.ancestors.size, m.singleton_class.ancestors.size] != a }\n" +
+			"}\n";
+
+	// Scriptlet defining a method that is called in the same way that
+	// RubyTester calls the scaffolding's _test method.
+	private static final String WARM_UP_SCRIPTLET =
+			"def _cc_warm_up(testname)\n" +
+			"  _output = testname.length\n" +
+			"  return Array.[](_output == 2, _output)\n" +
+			"end\n";
+
+	private static SingletonHolder<RubyRuntimePool, Properties> holder = new SingletonHolder<RubyRuntimePool, Properties>() {
+		protected RubyRuntimePool onCreate(Properties arg) {
+			return new RubyRuntimePool(arg);
+		}
+	};
+
+	/**
+	 * Get the singleton instance.
+	 *
+	 * @param config configuration properties
+	 * @return the singleton instance
+	 */
+	public static RubyRuntimePool getInstance(Properties config) {
+		return holder.get(config);
+	}
+
+	/**
+	 * Check whether the singleton instance has been created.
+	 *
+	 * @return true if the singleton instance has been created, false otherwise
+	 */
+	public static boolean isCreated() {
+		return holder.isCreated();
+	}
+
+	/**
+	 * A JRuby runtime checked out from the pool.
+	 */
+	public static class RubyRuntime {
+		private final ScriptingContainer container;
+		private final Object reset;
+		private final Object checkModified;
+		private int numUses;
+
+		private RubyRuntime(ScriptingContainer container, Object reset, Object checkModified) {
+			this.container = container;
+			this.reset = reset;
+			this.checkModified = checkModified;
+		}
+
+		/**
+		 * @return the {@link ScriptingContainer} for this runtime
+		 */
+		public ScriptingContainer getContainer() {
+			return container;
+		}
+	}
+
+	private final int size;
+	private final int prewarm;
+	private final int maxUses;
+	private Object lock;
+	private LinkedList<RubyRuntime> idle;
+	private long numHits;
+	private long numMisses;
+	private long numDiscarded;
+	private long numModified;
+	private long numCreated;
+	private int numReplacing;
+	private long totalWarmUpMillis;
+	private long totalHeapBytes;
+
+	private RubyRuntimePool(Properties config) {
+		this.size = Integer.parseInt(config.getProperty(
+				"cloudcoder.builder2.ruby.pool.size", String.valueOf(DEFAULT_SIZE)));
+		this.prewarm = Math.min(size, Integer.parseInt(config.getProperty(
+				"cloudcoder.builder2.ruby.pool.prewarm", String.valueOf(DEFAULT_PREWARM))));
+		this.maxUses = Integer.parseInt(config.getProperty(
+				"cloudcoder.builder2.ruby.pool.maxuses", String.valueOf(DEFAULT_MAX_USES)));
+		this.lock = new Object();
+		this.idle = new LinkedList<RubyRuntime>();
+		logger.info("Ruby runtime pool size is {}, runtimes are discarded after {} uses", size, maxUses);
+	}
+
+	/**
+	 * Create the configured number of runtimes ahead of time, so that
+	 * the first Ruby submissions don't pay for starting JRuby.
+	 */
+	public void warmUp() {
+		for (int i = 0; i < prewarm; i++) {
+			RubyRuntime runtime = createRuntime();
+			synchronized (lock) {
+				idle.add(runtime);
+			}
+		}
+	}
+
+	/**
+	 * Check out a runtime.  An idle runtime is used if one is available,
+	 * otherwise a new one is created.
+	 *
+	 * @return the {@link RubyRuntime}
+	 */
+	public RubyRuntime checkout() {
+		synchronized (lock) {
+			if (!idle.isEmpty()) {
+				numHits++;
+				return idle.removeFirst();
+			}
+			numMisses++;
+		}
+		// Create the new runtime without holding the lock,
+		// since it takes a while
+		return createRuntime();
+	}
+
+	/**
+	 * Return a runtime to the pool.  The runtime is discarded rather than
+	 * reused if it has reached the maximum number of uses, if the pool
+	 * is full, if it can't be reset, if the submission modified built-in
+	 * classes or modules, or if the caller indicates that it
+	 * is not reusable (for example, because a test thread was stopped
+	 * while executing Ruby code.)
+	 *
+	 * @param runtime   the {@link RubyRuntime} to return
+	 * @param reusable  true if the runtime is in a consistent state and may be reused
+	 */
+	public void checkin(RubyRuntime runtime, boolean reusable) {
+		runtime.numUses++;
+		boolean reuse = reusable && runtime.numUses < maxUses;
+		if (reuse) {
+			try {
+				runtime.container.callMethod(runtime.reset, "call");
+				if (!Boolean.FALSE.equals(runtime.container.callMethod(runtime.checkModified, "call", Boolean.class))) {
+					logger.debug("Submission modified built-in classes or modules, Ruby runtime will be discarded");
+					synchronized (lock) {
+						numModified++;
+					}
+					reuse = false;
+				}
+			} catch (RuntimeException e) {
+				logger.warn("Could not reset Ruby runtime", e);
+				reuse = false;
+			}
+		}
+		if (reuse) {
+			synchronized (lock) {
+				if (idle.size() < size) {
+					idle.addFirst(runtime);
+					runtime = null;
+				}
+			}
+		}
+		if (runtime != null) {
+			discard(runtime);
+		}
+		if (logger.isDebugEnabled()) {
+			synchronized (lock) {
+				logger.debug("Ruby runtime pool: hits={}, misses={}, discarded={}, modified={}, idle={}",
+						new Object[]{ numHits, numMisses, numDiscarded, numModified, idle.size() });
+			}
+		}
+	}
+
+	/**
+	 * Discard all idle runtimes.
+	 */
+	public void shutdown() {
+		synchronized (lock) {
+			for (RubyRuntime runtime : idle) {
+				runtime.container.terminate();
+			}
+			idle.clear();
+		}
+	}
+
+	/**
+	 * @return the number of checkouts satisfied by an idle runtime
+	 */
+	public long getNumHits() {
+		synchronized (lock) {
+			return numHits;
+		}
+	}
+
+	/**
+	 * @return the number of checkouts that required creating a new runtime
+	 */
+	public long getNumMisses() {
+		synchronized (lock) {
+			return numMisses;
+		}
+	}
+
+	/**
+	 * @return the number of runtimes discarded because a submission
+	 *         modified built-in classes or modules
+	 */
+	public long getNumModified() {
+		synchronized (lock) {
+			return numModified;
+		}
+	}
+
+	/**
+	 * @return the average time in milliseconds to create and warm up a runtime,
+	 *         or 0 if no runtimes have been created
+	 */
+	public long getAverageWarmUpMillis() {
+		synchronized (lock) {
+			return numCreated > 0 ? totalWarmUpMillis / numCreated : 0L;
+		}
+	}
+
+	/**
+	 * Get the average heap usage of a newly-created runtime.
+	 * This is estimated from the change in used heap memory while
+	 * the runtime is created, so it is only approximate.
+	 *
+	 * @return the estimated average heap usage in kilobytes,
+	 *         or 0 if no runtimes have been created
+	 */
+	public long getAverageHeapKb() {
+		synchronized (lock) {
+			return numCreated > 0 ? (totalHeapBytes / numCreated) / 1024 : 0L;
+		}
+	}
+
+	private RubyRuntime createRuntime() {
+		Runtime rt = Runtime.getRuntime();
+		long heapBefore = rt.totalMemory() - rt.freeMemory();
+		long start = System.currentTimeMillis();
+
+		// Code is run in the runtime here, before any submission's output
+		// is redirected.  That's fine: RubyKillableTaskManager redirects
+		// output for each submission using setOutput/setError, which
+		// reassign $stdout and $stderr of the already-initialized runtime.
+		// Note that the CONCURRENT and SINGLETON scopes use JRuby's global
+		// runtime, so SINGLETHREAD is needed for each container to have
+		// its own runtime.  Since the tests are executed by several threads,
+		// disable variable sharing, which isn't thread safe.
+		ScriptingContainer container = new ScriptingContainer(LocalContextScope.SINGLETHREAD);
+		container.setAttribute(AttributeName.SHARING_VARIABLES, false);
+		container.runScriptlet("true");
+		Object reset = container.runScriptlet(RESET_SCRIPTLET);
+		Object receiver = container.runScriptlet(WARM_UP_SCRIPTLET);
+		container.callMethod(receiver, "_cc_warm_up", "t0");
+		container.callMethod(reset, "call");
+		Object checkModified = container.runScriptlet(CHECK_MODIFIED_SCRIPTLET);
+
+		long warmUpMillis = System.currentTimeMillis() - start;
+		long heapBytes = Math.max(0L, (rt.totalMemory() - rt.freeMemory()) - heapBefore);
+		synchronized (lock) {
+			numCreated++;
+			totalWarmUpMillis += warmUpMillis;
+			totalHeapBytes += heapBytes;
+		}
+		logger.info("Created Ruby runtime in {} ms (approximately {} KB of heap)", warmUpMillis, heapBytes / 1024);
+		return new RubyRuntime(container, reset, checkModified);
+	}
+
+	private void discard(RubyRuntime runtime) {
+		logger.debug("Discarding Ruby runtime after {} uses", runtime.numUses);
+		boolean replace;
+		synchronized (lock) {
+			numDiscarded++;
+			replace = idle.size() + numReplacing < prewarm;
+			if (replace) {
+				numReplacing++;
+			}
+		}
+		runtime.container.terminate();
+		
+		// Create a replacement runtime in the background, so that
+		// the next submission doesn't have to wait for it
+		if (replace) {
+			Thread t = new Thread("RubyRuntimePool-replace") {
+				@Override
+				public void run() {
+					try {
+						RubyRuntime replacement = createRuntime();
+						synchronized (lock) {
+							if (idle.size() < size) {
+								idle.addLast(replacement);
+								replacement = null;
+							}
+						}
+						if (replacement != null) {
+							replacement.container.terminate();
+						}
+					} catch (RuntimeException e) {
+						logger.error("Could not create replacement Ruby runtime", e);
+					} finally {
+						synchronized (lock) {
+							numReplacing--;
+						}
+					}
+				}
+			};
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+}
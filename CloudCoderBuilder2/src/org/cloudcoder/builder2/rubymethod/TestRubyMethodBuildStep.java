@@ -27,6 +27,7 @@ import org.cloudcoder.app.shared.model.CompilerDiagnostic;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.ProblemType;
 import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestOutcome;
 import org.cloudcoder.app.shared.model.TestResult;
 import org.cloudcoder.builder2.javasandbox.SandboxUtil;
 import org.cloudcoder.builder2.javasandbox.TimeoutHandler;
@@ -34,10 +35,10 @@ import org.cloudcoder.builder2.model.BuilderSubmission;
 import org.cloudcoder.builder2.model.IBuildStep;
 import org.cloudcoder.builder2.model.InternalBuilderException;
 import org.cloudcoder.builder2.model.ProgramSource;
+import org.cloudcoder.builder2.rubymethod.RubyRuntimePool.RubyRuntime;
 import org.cloudcoder.builder2.util.ArrayUtil;
 import org.cloudcoder.builder2.util.TestResultUtil;
 import org.jruby.embed.EvalFailedException;
-import org.jruby.embed.LocalContextScope;
 import org.jruby.embed.ParseFailedException;
 import org.jruby.embed.ScriptingContainer;
 import org.jruby.exceptions.RaiseException;
@@ -58,16 +59,11 @@ public class TestRubyMethodBuildStep implements IBuildStep {
 	
 	public static final long TIMEOUT_LIMIT = 5000;
 	
-	private static ScriptingContainer container;
-	
 	// Preload classes that will be needed to test the Ruby submission in the
-	// IsolatedTask, and create the ScriptingContainer.
+	// IsolatedTask.
 	static {
 		TestResultUtil.createResultForTimeout();
-		//TODO cannot execute any code with ruby before redirecting
-		container = new ScriptingContainer(LocalContextScope.CONCURRENT);
-		container.runScriptlet("true");
-		new RubyTester(container, new Object(), new Problem(), new TestCase());
+		new RubyTester(null, new Object(), new Problem(), new TestCase());
 	}
 
 	@Override
@@ -77,7 +73,6 @@ public class TestRubyMethodBuildStep implements IBuildStep {
 			throw new InternalBuilderException(this.getClass(), "Only one source file is expected");
 		}
 		ProgramSource programSource = programSourceList[0];
-		final String testSource = programSource.getProgramText();
 
 		// Get Problem
 		final Problem problem = submission.requireArtifact(this.getClass(), Problem.class);
@@ -85,6 +80,27 @@ public class TestRubyMethodBuildStep implements IBuildStep {
 		// Get TestCase list
 		TestCase[] testCaseList = submission.requireArtifact(this.getClass(), TestCase[].class);
 		
+		// Check out a runtime to use for this submission
+		RubyRuntimePool runtimePool = RubyRuntimePool.getInstance(config);
+		RubyRuntime runtime = runtimePool.checkout();
+		boolean reusable = false;
+		try {
+			reusable = testSubmission(submission, programSource, problem, testCaseList, runtime.getContainer());
+		} finally {
+			runtimePool.checkin(runtime, reusable);
+		}
+	}
+
+	/**
+	 * Test the submission using given {@link ScriptingContainer}.
+	 * 
+	 * @return true if the runtime is still in a consistent state,
+	 *         false if a test thread had to be stopped
+	 */
+	private boolean testSubmission(BuilderSubmission submission, ProgramSource programSource,
+			Problem problem, TestCase[] testCaseList, ScriptingContainer container) {
+		String testSource = programSource.getProgramText();
+		
 		// Compile the test scriptlet
 		// TODO: do this in a sandbox?
 		final Object receiver;
@@ -96,17 +112,17 @@ public class TestRubyMethodBuildStep implements IBuildStep {
 		} catch (ParseFailedException e) {
 			CompilerDiagnostic diag = createRubyCompilerDiagnostic(e);
 			failedCompilation(submission, diag);
-			return;
+			return true;
 		} catch (EvalFailedException e) {
 			// >>>>>>>>>>>>> HERE <<<<<<<<<<<<<<<<
 			CompilerDiagnostic diag = createRubyCompilerDiagnostic(e);
 			failedCompilation(submission, diag);
-			return;
+			return true;
 		} catch (RuntimeException e) {
 			logger.info("Unexpected ruby compilation error", e);
 			CompilerDiagnostic diag = new CompilerDiagnostic(1, 1, 1, 1, "Unexpected compilation error");
 			failedCompilation(submission, diag);
-			return;
+			return true;
 		}
 		
 		// Create a RubyTester in an IsolatedTask for each TestCase
@@ -143,6 +159,15 @@ public class TestRubyMethodBuildStep implements IBuildStep {
 
 		// Add array of TestResults as submission artifact
 		submission.addArtifact(ArrayUtil.toArray(testResults, TestResult.class));
+		
+		// If any test thread was stopped, the runtime might be in an
+		// inconsistent state
+		for (TestResult testResult : testResults) {
+			if (testResult.getOutcome() == TestOutcome.FAILED_FROM_TIMEOUT) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	private void failedCompilation(BuilderSubmission submission,
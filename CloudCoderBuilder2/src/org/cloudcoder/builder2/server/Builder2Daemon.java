@@ -24,6 +24,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 
+import org.cloudcoder.app.shared.model.BuildStepStatistics;
+import org.cloudcoder.app.shared.model.LatencyHistogram;
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.builder2.model.Tester;
 import org.cloudcoder.builder2.util.DeleteDirectoryRecursively;
 import org.cloudcoder.daemon.IDaemon;
 import org.cloudcoder.daemon.Util;
@@ -44,9 +48,9 @@ public class Builder2Daemon implements IDaemon {
 	private File instanceTempDir;
 
 	private static class BuilderAndThread {
-		final Builder2Server builder;
+		final IBuilderServer builder;
 		final Thread thread;
-		public BuilderAndThread(Builder2Server builder, Thread thread) {
+		public BuilderAndThread(IBuilderServer builder, Thread thread) {
 			this.builder = builder;
 			this.thread = thread;
 		}
@@ -76,6 +80,10 @@ public class Builder2Daemon implements IDaemon {
 			return Integer.parseInt(config.getProperty("cloudcoder.submitsvc.oop.numThreads", "2"));
 		}
 		
+		public boolean useMultiplexedProtocol() {
+			return Boolean.parseBoolean(config.getProperty("cloudcoder.submitsvc.oop.multiplexed", "false"));
+		}
+		
 		public boolean useSSL() {
 			return Boolean.parseBoolean(config.getProperty("cloudcoder.submitsvc.oop.ssl.useSSL", "true"));
 		}
@@ -153,27 +161,56 @@ public class Builder2Daemon implements IDaemon {
 		logger.info("appHost={}", options.getAppHost());
 		logger.info("appPort={}", options.getAppPort());
 		logger.info("numThreads={}", options.getNumThreads());
+		logger.info("multiplexed={}", options.useMultiplexedProtocol());
 		
 		// Start Builder threads
 		this.builderAndThreadList = new ArrayList<BuilderAndThread>();
-		for (int i = 0; i < options.getNumThreads(); i++) {
-			Builder2Server builder_ = new Builder2Server(webappSocketFactory, config);
-			Thread thread_ = new Thread(builder_);
-		
-			BuilderAndThread builderAndThread = new BuilderAndThread(builder_, thread_);
-			builderAndThreadList.add(builderAndThread);
-			
-			builderAndThread.thread.start();
+		if (options.useMultiplexedProtocol()) {
+			// A single connection to the webapp is shared by all of the
+			// threads building and testing submissions
+			startBuilder(new Builder2MultiplexedServer(webappSocketFactory, config, options.getNumThreads()));
+		} else {
+			// Each thread has its own connection to the webapp
+			for (int i = 0; i < options.getNumThreads(); i++) {
+				startBuilder(new Builder2Server(webappSocketFactory, config));
+			}
 		}
 	}
 
+	private void startBuilder(IBuilderServer builder_) {
+		Thread thread_ = new Thread(builder_);
+		
+		BuilderAndThread builderAndThread = new BuilderAndThread(builder_, thread_);
+		builderAndThreadList.add(builderAndThread);
+		
+		builderAndThread.thread.start();
+	}
+
 	/* (non-Javadoc)
 	 * @see org.cloudcoder.daemon.IDaemon#handleCommand(java.lang.String)
 	 */
 	@Override
 	public void handleCommand(String command) {
-		// Right now the Builder has no runtime configuration commands
-		logger.warn("Builder received unknown command " + command);
+		if (command.equals("timings")) {
+			logBuildStepTimes();
+		} else {
+			logger.warn("Builder received unknown command " + command);
+		}
+	}
+
+	/**
+	 * Log the build step time percentiles for each {@link ProblemType}.
+	 */
+	private void logBuildStepTimes() {
+		BuildStepStatistics statistics = Tester.getStatistics();
+		for (ProblemType problemType : statistics.getProblemTypes()) {
+			for (String stepName : statistics.getStepNames(problemType)) {
+				LatencyHistogram histogram = statistics.getHistogram(problemType, stepName);
+				logger.info("{} {}: count={}, p50={} us, p95={} us, p99={} us", new Object[]{
+						problemType, stepName, histogram.getCount(),
+						histogram.getPercentile(50), histogram.getPercentile(95), histogram.getPercentile(99)});
+			}
+		}
 	}
 
 	/* (non-Javadoc)
@@ -0,0 +1,457 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.server;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudcoder.app.shared.model.BuilderProtocol;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.wire.IWireFormat;
+import org.cloudcoder.app.shared.model.wire.WireFormatFactory;
+import org.cloudcoder.daemon.IOUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A "Builder" server loop using the {@link BuilderProtocol#MULTIPLEXED}
+ * protocol.  A single connection to the webapp is used to receive
+ * submissions, which are built and tested by a pool of worker
+ * threads.  Results are sent back to the webapp as soon as they
+ * are available, so they may be sent in a different order
+ * than the submissions were received.
+ * 
+ * @author David Hovemeyer
+ */
+public class Builder2MultiplexedServer implements IBuilderServer {
+	private static final Logger logger = LoggerFactory.getLogger(Builder2MultiplexedServer.class);
+
+	/**
+	 * The maximum amount of time that the watchdog thread will
+	 * allow to pass without receiving a message from the webapp.
+	 * The webapp sends keepalive messages when it is idle, so if this
+	 * much time passes, we assume that the connection between the builder
+	 * and the webapp has been broken and force a reconnect.
+	 */
+	private static final long MAX_WAIT_MS = 60000L;
+
+	/**
+	 * The maximum amount of time to wait for queued messages
+	 * to be sent when shutting down.
+	 */
+	private static final long SEND_TIMEOUT_MS = 10000L;
+
+	/**
+	 * Runnable for watchdog thread.
+	 */
+	private class Watchdog implements Runnable {
+		@Override
+		public void run() {
+			try {
+				while (!shutdownRequested) {
+					Thread.sleep(10000L);
+
+					Connection c = conn;
+					if (c == null) {
+						continue;
+					}
+
+					long waitTime = System.currentTimeMillis() - lastReceiveTime;
+					if (waitTime > MAX_WAIT_MS) {
+						logger.warn("Watchdog: {} ms without message from webapp, forcing reconnect", waitTime);
+						c.forceClose();
+					}
+				}
+			} catch (InterruptedException e) {
+				logger.info("Watchdog interrupted, shutting down...");
+			}
+		}
+	}
+
+	/**
+	 * A message to be written to the webapp by a connection's sender thread.
+	 */
+	private interface Message {
+		public void write(IWireFormat wire) throws IOException;
+	}
+
+	/**
+	 * Message telling a connection's sender thread to exit.
+	 */
+	private static final Message STOP = new Message() {
+		@Override
+		public void write(IWireFormat wire) throws IOException {
+		}
+	};
+
+	/**
+	 * Connection to the webapp.  Messages are queued by the
+	 * receiving thread and the worker threads, and written
+	 * by a dedicated sender thread.  The receiving thread
+	 * never writes to the socket: otherwise, if both the builder
+	 * and the webapp were blocked writing large messages
+	 * (e.g., a result and a problem), neither would read,
+	 * and the connection would deadlock.
+	 */
+	private static class Connection implements Runnable {
+		private ISocket socket;
+		private ObjectInputStream in;
+		private ObjectOutputStream out;
+		private IWireFormat wire;
+		private LinkedBlockingQueue<Message> sendQueue;
+		private Thread senderThread;
+
+		public Connection(ISocket socket, ObjectInputStream in, ObjectOutputStream out, IWireFormat wire) {
+			this.socket = socket;
+			this.in = in;
+			this.out = out;
+			this.wire = wire;
+			this.sendQueue = new LinkedBlockingQueue<Message>();
+			this.senderThread = new Thread(this);
+			this.senderThread.start();
+		}
+
+		public IWireFormat getWire() {
+			return wire;
+		}
+
+		public void sendNeedProblem(final int requestId) {
+			sendQueue.add(new Message() {
+				@Override
+				public void write(IWireFormat wire) throws IOException {
+					writeHeader(wire, BuilderProtocol.MSG_NEED_PROBLEM, requestId);
+				}
+			});
+		}
+
+		public void sendResult(final int requestId, final SubmissionResult result) {
+			sendQueue.add(new Message() {
+				@Override
+				public void write(IWireFormat wire) throws IOException {
+					writeHeader(wire, BuilderProtocol.MSG_RESULT, requestId);
+					wire.writeSubmissionResult(result);
+				}
+			});
+		}
+
+		private static void writeHeader(IWireFormat wire, int msgType, int requestId) throws IOException {
+			wire.writeInt(msgType);
+			wire.writeInt(requestId);
+		}
+
+		/**
+		 * Sender thread: write queued messages until told to stop
+		 * or the connection fails.
+		 */
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					Message msg = sendQueue.take();
+					if (msg == STOP) {
+						break;
+					}
+					msg.write(wire);
+					wire.flush();
+				}
+			} catch (IOException e) {
+				// The webapp will re-queue any submissions whose results
+				// weren't sent when it notices that the connection is broken
+				logger.error("Error sending message to webapp", e);
+				forceClose();
+			} catch (InterruptedException e) {
+				logger.info("Sender thread interrupted");
+			}
+		}
+
+		/**
+		 * Send all queued messages, then close the connection.
+		 */
+		public void close() {
+			sendQueue.add(STOP);
+			try {
+				senderThread.join(SEND_TIMEOUT_MS);
+			} catch (InterruptedException e) {
+				logger.error("Interrupted waiting for queued messages to be sent");
+			}
+			forceClose();
+		}
+
+		public void forceClose() {
+			IOUtil.closeQuietly(socket);
+			IOUtil.closeQuietly(in);
+			IOUtil.closeQuietly(out);
+			if (Thread.currentThread() != senderThread) {
+				senderThread.interrupt();
+			}
+		}
+	}
+
+	/**
+	 * A submission waiting for the webapp to send its {@link Problem}
+	 * and {@link TestCase}s.
+	 */
+	private static class PendingRequest {
+		final int problemId;
+		final String problemHash;
+		final String programText;
+
+		public PendingRequest(int problemId, String problemHash, String programText) {
+			this.problemId = problemId;
+			this.problemHash = problemHash;
+			this.programText = programText;
+		}
+	}
+
+	/**
+	 * Task to build and test a submission and send the
+	 * {@link SubmissionResult} back to the webapp.
+	 */
+	private class TestSubmissionTask implements Runnable {
+		private Connection c;
+		private int requestId;
+		private Problem problem;
+		private List<TestCase> testCaseList;
+		private String programText;
+
+		public TestSubmissionTask(Connection c, int requestId, Problem problem, List<TestCase> testCaseList, String programText) {
+			this.c = c;
+			this.requestId = requestId;
+			this.problem = problem;
+			this.testCaseList = testCaseList;
+			this.programText = programText;
+		}
+
+		@Override
+		public void run() {
+			SubmissionResult result = builder2.testSubmission(problem, testCaseList, programText);
+			c.sendResult(requestId, result);
+		}
+	}
+
+	private volatile boolean shutdownRequested;
+	private NoConnectTimer noConnectTimer;
+	private WebappSocketFactory webappSocketFactory;
+	private Builder2 builder2;
+	private ProblemCache problemCache;
+	private int numThreads;
+	private ExecutorService executor;
+	private volatile Connection conn;
+	private volatile long lastReceiveTime;
+
+	private Thread watchdogThread;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param webappSocketFactory the {@link WebappSocketFactory} that will create socket
+	 *                            connections to the webapp
+	 * @param config              configuration properties: i.e., properties from cloudcoder.properties file
+	 * @param numThreads          number of submissions to build and test concurrently
+	 */
+	public Builder2MultiplexedServer(WebappSocketFactory webappSocketFactory, Properties config, int numThreads) {
+		this.shutdownRequested = false;
+		this.noConnectTimer = new NoConnectTimer();
+		this.webappSocketFactory = webappSocketFactory;
+		this.builder2 = new Builder2(config);
+		this.problemCache = ProblemCache.getInstance(config);
+		this.numThreads = numThreads;
+		this.executor = Executors.newFixedThreadPool(numThreads);
+	}
+
+	/**
+	 * The main server loop.
+	 */
+	@Override
+	public void run() {
+		try {
+			watchdogThread = new Thread(new Watchdog());
+			watchdogThread.start();
+			while (!shutdownRequested) {
+				Connection c = conn;
+				if (c == null) {
+					attemptToConnectToServer();
+				} else {
+					receiveMessages(c);
+				}
+			}
+		} catch (Throwable e) {
+			logger.error("Fatal exception in Builder2MultiplexedServer thread?", e);
+		}
+	}
+
+	/**
+	 * Receive and handle messages from the webapp until the connection
+	 * is closed.
+	 * 
+	 * @param c the {@link Connection} to the webapp
+	 */
+	private void receiveMessages(Connection c) {
+		// Requests waiting for the webapp to send the Problem and TestCases
+		Map<Integer, PendingRequest> pendingRequests = new HashMap<Integer, PendingRequest>();
+
+		try {
+			while (true) {
+				IWireFormat wire = c.getWire();
+				int msgType = wire.readInt();
+				int requestId = wire.readInt();
+				lastReceiveTime = System.currentTimeMillis();
+
+				switch (msgType) {
+				case BuilderProtocol.MSG_KEEPALIVE:
+					break;
+
+				case BuilderProtocol.MSG_REQUEST:
+					int problemId = wire.readInt();
+					String problemHash = wire.readString();
+					String programText = wire.readString();
+					ProblemAndTestCaseList cached = problemCache.get(problemId, problemHash);
+					if (cached != null) {
+						startTask(c, requestId, cached.getProblem(), cached.getTestCaseData(), programText);
+					} else {
+						pendingRequests.put(requestId, new PendingRequest(problemId, problemHash, programText));
+						c.sendNeedProblem(requestId);
+					}
+					break;
+
+				case BuilderProtocol.MSG_PROBLEM:
+					Problem problem = wire.readProblem();
+					List<TestCase> testCaseList = wire.readTestCaseList();
+					PendingRequest pending = pendingRequests.remove(requestId);
+					if (pending == null) {
+						throw new IOException("Received problem for unknown request " + requestId);
+					}
+					problemCache.put(pending.problemId, pending.problemHash, problem, testCaseList);
+					startTask(c, requestId, problem, testCaseList, pending.programText);
+					break;
+
+				default:
+					throw new IOException("Unknown message type " + msgType + " from webapp");
+				}
+			}
+		} catch (IOException e) {
+			// Quite possibly, this is a routine shutdown of the CloudCoder server.
+			// We'll try connecting again soon.
+			if (!shutdownRequested) {
+				logger.error("Error communicating with server", e);
+			}
+		} catch (ClassNotFoundException e) {
+			// This should not happen!
+			logger.error("Unexpected ClassNotFoundException reading message", e);
+		}
+		c.forceClose();
+		conn = null;
+	}
+
+	private void startTask(Connection c, int requestId, Problem problem, List<TestCase> testCaseList, String programText) {
+		try {
+			executor.execute(new TestSubmissionTask(c, requestId, problem, testCaseList, programText));
+		} catch (RejectedExecutionException e) {
+			// We're shutting down: the webapp will re-queue the submission
+			// when the connection is closed
+			logger.info("Not accepting request {}: shutting down", requestId);
+		}
+	}
+
+	private void attemptToConnectToServer() {
+		ISocket socket = null;
+		ObjectInputStream in = null;
+		ObjectOutputStream out = null;
+
+		try {
+			try {
+				socket = webappSocketFactory.connectToWebapp();
+			} catch (GeneralSecurityException e) {
+				logger.error("Unexpected GeneralSecurityException connecting to webapp", e);
+				throw new RuntimeException(e);
+			}
+			in = new ObjectInputStream(socket.getInputStream());
+			out = new ObjectOutputStream(socket.getOutputStream());
+
+			// Tell the webapp which protocol we're using, and how
+			// many submissions we can test concurrently, and negotiate
+			// the wire format
+			out.writeObject(Integer.valueOf(BuilderProtocol.MULTIPLEXED_NEGOTIATED));
+			out.writeObject(Integer.valueOf(numThreads));
+			IWireFormat wire = WireFormatFactory.offer(in, out);
+			logger.info("Using wire format {}", wire.getFormatVersion());
+
+			logger.info("Connected!");
+			noConnectTimer.connected();
+			lastReceiveTime = System.currentTimeMillis();
+			conn = new Connection(socket, in, out, wire);
+		} catch (IOException e) {
+			IOUtil.closeQuietly(socket);
+			IOUtil.closeQuietly(in);
+			IOUtil.closeQuietly(out);
+			logger.info("Failed attempt to connect to server at {}", System.currentTimeMillis());
+			noConnectTimer.notConnected(e);
+			try {
+				// Cool off for a bit
+				Thread.sleep(8000L);
+			} catch (InterruptedException ee) {
+				// ignore
+			}
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		shutdownRequested = true;
+
+		// Shut down the watchdog thread
+		watchdogThread.interrupt();
+		try {
+			watchdogThread.join();
+		} catch (InterruptedException e) {
+			logger.error("Interrupted waiting for watchdog thread to finish", e);
+		}
+
+		// Wait for building/testing of submissions in progress to finish,
+		// so that their results can be sent back to the webapp
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(2000L, TimeUnit.MILLISECONDS)) {
+				logger.info("shutdown(): waiting for building/testing of current submissions to complete");
+			}
+		} catch (InterruptedException e) {
+			logger.error("Interrupted waiting for submissions in progress to complete");
+		}
+
+		// Send the results, then close the connection to the webapp,
+		// which will cause the server loop to exit
+		Connection c = conn;
+		if (c != null) {
+			c.close();
+		}
+	}
+}
@@ -26,9 +26,13 @@ import java.security.GeneralSecurityException;
 import java.util.List;
 import java.util.Properties;
 
+import org.cloudcoder.app.shared.model.BuilderProtocol;
 import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
 import org.cloudcoder.app.shared.model.SubmissionResult;
 import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.wire.IWireFormat;
+import org.cloudcoder.app.shared.model.wire.WireFormatFactory;
 import org.cloudcoder.daemon.IOUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,7 +46,7 @@ import org.slf4j.LoggerFactory;
  * @author David Hovemeyer
  * @author Jaime Spacco
  */
-public class Builder2Server implements Runnable {
+public class Builder2Server implements IBuilderServer {
 	/**
 	 * The maximum amount of time that the watchdog thread will
 	 * allow a wait for a problem id or keepalive signal from 
@@ -167,11 +171,13 @@ public class Builder2Server implements Runnable {
 		private ISocket socket;
 		private ObjectInputStream in;
 		private ObjectOutputStream out;
+		private IWireFormat wire;
 		
-		public Connection(ISocket socket, ObjectInputStream in, ObjectOutputStream out) {
+		public Connection(ISocket socket, ObjectInputStream in, ObjectOutputStream out, IWireFormat wire) {
 			this.socket = socket;
 			this.in = in;
 			this.out = out;
+			this.wire = wire;
 		}
 
 		public ISocket getSocket() {
@@ -185,6 +191,10 @@ public class Builder2Server implements Runnable {
 		public ObjectOutputStream getOut() {
 			return out;
 		}
+		
+		public IWireFormat getWire() {
+			return wire;
+		}
 	}
 	
 	/**
@@ -244,6 +254,7 @@ public class Builder2Server implements Runnable {
 	private NoConnectTimer noConnectTimer;
 	private WebappSocketFactory webappSocketFactory;
 	private Builder2 builder2;
+	private ProblemCache problemCache;
 	private ConnectionManager connectionManager;
 	
 	private Thread watchdogThread;
@@ -261,6 +272,7 @@ public class Builder2Server implements Runnable {
 		this.noConnectTimer = new NoConnectTimer();
 		this.webappSocketFactory = webappSocketFactory;
 		this.builder2 = new Builder2(config);
+		this.problemCache = ProblemCache.getInstance(config);
 		this.connectionManager = new ConnectionManager();
 	}
 
@@ -299,7 +311,8 @@ public class Builder2Server implements Runnable {
 			// that the connection should be forcibly closed if the server
 			// loop gets hung up here.
 			stateManager.setState(State.WAITING_FOR_KEEPALIVE);
-			Integer problemId = safeReadObject(conn.getIn());
+			IWireFormat wire = conn.getWire();
+			int problemId = wire.readInt();
 			stateManager.setState(State.WORKING);
 
 			// The CloudCoder app will send us a negative problem id as
@@ -310,30 +323,39 @@ public class Builder2Server implements Runnable {
 				return;
 			}
 
-			// The protocol allows the builder to cache Problems and TestCases by their problem id,
-			// but this is a very bad idea, since the Problem and TestCases could change on the
+			// Receive the hash of the Problem and TestCases.  Problems and
+			// TestCases are cached by problem id, but they could change on the
 			// webapp side (for example, if an instructor is editing an exercise).
-			// For this reason, we ALWAYS claim not to have the Problem/TestCases, forcing
-			// the webapp to send the most up to date versions.  It's a small amount
-			// of data, and it's important for correct behavior.
-
-			// Tell the webapp we don't have this Problem/TestCases
-			conn.getOut().writeObject(Boolean.FALSE);
-			conn.getOut().flush();
-
-			// Receive the Problem and TestCases
-			Problem problem = safeReadObject(conn.getIn());
-			List<TestCase> testCaseList = safeReadObject(conn.getIn());
+			// Only use the cached version if its hash matches: otherwise,
+			// the webapp must send the most up to date versions.
+			String problemHash = wire.readString();
+			ProblemAndTestCaseList cached = problemCache.get(problemId, problemHash);
+
+			// Tell the webapp whether or not we have this Problem/TestCases
+			wire.writeBoolean(cached != null);
+			wire.flush();
+
+			Problem problem;
+			List<TestCase> testCaseList;
+			if (cached != null) {
+				problem = cached.getProblem();
+				testCaseList = cached.getTestCaseData();
+			} else {
+				// Receive the Problem and TestCases
+				problem = wire.readProblem();
+				testCaseList = wire.readTestCaseList();
+				problemCache.put(problemId, problemHash, problem, testCaseList);
+			}
 
 			// read program text
-			String programText = safeReadObject(conn.getIn());
+			String programText = wire.readString();
 
 			// Test the submission!
 			SubmissionResult result = builder2.testSubmission(problem, testCaseList, programText);
 
 			// Send the SubmissionResult back to the webapp
-			conn.getOut().writeObject(result);
-			conn.getOut().flush();
+			wire.writeSubmissionResult(result);
+			wire.flush();
 			
 			// Everything went well: return to the CONNECTED state
 			stateManager.setState(State.CONNECTED);
@@ -373,10 +395,17 @@ public class Builder2Server implements Runnable {
 			}
 			in = new ObjectInputStream(socket.getInputStream());
 			out = new ObjectOutputStream(socket.getOutputStream());
+
+			// Tell the webapp which protocol we're using,
+			// and negotiate the wire format
+			out.writeObject(Integer.valueOf(BuilderProtocol.LOCKSTEP_NEGOTIATED));
+			IWireFormat wire = WireFormatFactory.offer(in, out);
+			logger.info("Using wire format {}", wire.getFormatVersion());
+
 			logger.info("Connected!");
 			stateManager.setState(State.CONNECTED);
 			noConnectTimer.connected();
-			connectionManager.setConnection(new Connection(socket, in, out));
+			connectionManager.setConnection(new Connection(socket, in, out, wire));
 		} catch (IOException e) {
 			IOUtil.closeQuietly(socket);
 			IOUtil.closeQuietly(in);
@@ -393,15 +422,7 @@ public class Builder2Server implements Runnable {
 		}
 	}
 
-	@SuppressWarnings("unchecked")
-	private<E> E safeReadObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
-		Object o = in.readObject();
-		if (o == null) {
-			throw new IOException("Could not read!");
-		}
-		return (E) o;
-	}
-
+	@Override
 	public void shutdown() {
 		shutdownRequested = true;
 
@@ -20,11 +20,16 @@ package org.cloudcoder.builder2.server;
 
 import java.util.Properties;
 
+import org.cloudcoder.builder2.ccompiler.CompilerIdentity;
+import org.cloudcoder.builder2.cfunction.CFunctionTestHarness;
 import org.cloudcoder.builder2.csandbox.EasySandboxSharedLibrary;
 import org.cloudcoder.builder2.extlib.ExternalLibraryCache;
+import org.cloudcoder.builder2.javacompiler.JavaCompilerService;
 import org.cloudcoder.builder2.javasandbox.JVMKillableTaskManager;
+import org.cloudcoder.builder2.javasandbox.ThreadedPrintStreamMonitor;
 import org.cloudcoder.builder2.process.RunProcessNativeExe;
 import org.cloudcoder.builder2.pythonfunction.PythonKillableTaskManager;
+import org.cloudcoder.builder2.rubymethod.RubyRuntimePool;
 
 /**
  * Global setup and cleanup needed for before builders start and
@@ -43,6 +48,24 @@ public class Global {
 		// Install KillableTaskManager's security manager
 		JVMKillableTaskManager.installSecurityManager();
 		PythonKillableTaskManager.installSecurityManager();
+		
+		// Set the maximum amount of output buffered for each test
+		// of a Java, Python, or Ruby submission
+		ThreadedPrintStreamMonitor.setMaxBufferedBytes(Integer.parseInt(config.getProperty(
+				"cloudcoder.builder2.javasandbox.maxoutputbytes",
+				String.valueOf(ThreadedPrintStreamMonitor.DEFAULT_MAX_BUFFERED_BYTES))));
+		
+		// Load and warm up the Java compiler, so that the first
+		// Java submission doesn't pay for it
+		JavaCompilerService.getInstance().warmUp();
+		
+		// Identify the C/C++ compilers, which is part of the key of
+		// compiled C/C++ code in the CompilationCache
+		CompilerIdentity.getInstance();
+		
+		// Create the initial JRuby runtimes, so that the first
+		// Ruby submissions don't pay for starting JRuby
+		RubyRuntimePool.getInstance(config).warmUp();
 	}
 	
 	/**
@@ -57,10 +80,20 @@ public class Global {
 			EasySandboxSharedLibrary.getInstance(config).cleanup();
 		}
 		
+		// Likewise for the C_FUNCTION test harness launcher
+		if (CFunctionTestHarness.isCreated()) {
+			CFunctionTestHarness.getInstance(config).cleanup();
+		}
+		
 		// Delete directories/files used by the ExternalLibraryCache
 		ExternalLibraryCache.getInstance(config).cleanup();
 		
 		// Delete directories/files used by the RunProcessNativeExe
 		RunProcessNativeExe.getInstance(config).cleanup();
+		
+		// Shut down idle JRuby runtimes
+		if (RubyRuntimePool.isCreated()) {
+			RubyRuntimePool.getInstance(config).shutdown();
+		}
 	}
 }
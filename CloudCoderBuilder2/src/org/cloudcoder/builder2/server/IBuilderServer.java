@@ -0,0 +1,33 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.server;
+
+/**
+ * Interface for a builder server loop, which connects to the
+ * webapp and builds and tests the submissions it receives.
+ * The {@link #run()} method executes the server loop.
+ * 
+ * @author David Hovemeyer
+ */
+public interface IBuilderServer extends Runnable {
+	/**
+	 * Shut down the server loop.  Waits for the building and
+	 * testing of any submissions in progress to complete.
+	 */
+	public void shutdown();
+}
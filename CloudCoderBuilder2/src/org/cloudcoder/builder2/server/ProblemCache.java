@@ -0,0 +1,178 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.server;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.builder2.util.SingletonHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Singleton cache of {@link Problem}s and {@link TestCase}s, shared by
+ * all of the builder threads.  Entries are keyed by problem id, and
+ * each entry records the hash of the problem and test case data
+ * (as computed by {@link org.cloudcoder.app.shared.model.DigestProblemAndTestCases}).
+ * A lookup only succeeds if the hash sent by the webapp matches the
+ * hash of the cached entry, so if an instructor edits an exercise,
+ * the stale entry is discarded and the webapp will send the up to
+ * date version.
+ *
+ * <p>The maximum number of entries is set by the
+ * <code>cloudcoder.builder2.problemcache.maxsize</code> configuration
+ * property.  When the cache is full, the least-recently-used entry
+ * is evicted.  Setting the maximum size to 0 disables caching.
+ *
+ * @author David Hovemeyer
+ */
+public class ProblemCache {
+	private static final Logger logger = LoggerFactory.getLogger(ProblemCache.class);
+
+	/** Default maximum number of cached problems. */
+	public static final int DEFAULT_MAX_SIZE = 100;
+
+	private static SingletonHolder<ProblemCache, Properties> holder = new SingletonHolder<ProblemCache, Properties>() {
+		protected ProblemCache onCreate(Properties arg) {
+			return new ProblemCache(arg);
+		}
+	};
+
+	/**
+	 * Get the singleton instance.
+	 *
+	 * @param config configuration properties
+	 * @return the singleton instance
+	 */
+	public static ProblemCache getInstance(Properties config) {
+		return holder.get(config);
+	}
+
+	/**
+	 * Cache entry: the hash of the problem and test case data,
+	 * and the {@link ProblemAndTestCaseList} itself.
+	 */
+	private static class Entry {
+		final String hash;
+		final ProblemAndTestCaseList problemAndTestCaseList;
+
+		public Entry(String hash, ProblemAndTestCaseList problemAndTestCaseList) {
+			this.hash = hash;
+			this.problemAndTestCaseList = problemAndTestCaseList;
+		}
+	}
+
+	private final int maxSize;
+	private Object lock;
+	private Map<Integer, Entry> entryMap;
+	private long numHits;
+	private long numMisses;
+
+	private ProblemCache(Properties config) {
+		this.maxSize = Integer.parseInt(config.getProperty(
+				"cloudcoder.builder2.problemcache.maxsize", String.valueOf(DEFAULT_MAX_SIZE)));
+		this.lock = new Object();
+
+		// Access-ordered LinkedHashMap, so that the eldest entry is the
+		// least recently used
+		this.entryMap = new LinkedHashMap<Integer, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+				return size() > maxSize;
+			}
+		};
+		logger.info("Problem cache maximum size is {}", maxSize);
+	}
+
+	/**
+	 * Look up a cached {@link Problem} and its {@link TestCase}s.
+	 *
+	 * @param problemId  the problem id
+	 * @param hash       the hash of the current version of the problem and test case data
+	 * @return the cached {@link ProblemAndTestCaseList}, or null if there is no
+	 *         cached entry for the problem, or if the cached entry is out of date
+	 */
+	public ProblemAndTestCaseList get(int problemId, String hash) {
+		synchronized (lock) {
+			Entry entry = entryMap.get(problemId);
+			if (entry != null && !entry.hash.equals(hash)) {
+				// The problem has changed since it was cached
+				logger.info("Discarding out of date cache entry for problem {}", problemId);
+				entryMap.remove(problemId);
+				entry = null;
+			}
+			if (entry == null) {
+				numMisses++;
+				return null;
+			}
+			numHits++;
+			if (logger.isDebugEnabled()) {
+				logger.debug("Problem cache hit for problem {} (hits={}, misses={})",
+						new Object[]{ problemId, numHits, numMisses });
+			}
+			return entry.problemAndTestCaseList;
+		}
+	}
+
+	/**
+	 * Add a {@link Problem} and its {@link TestCase}s to the cache,
+	 * replacing any existing entry for the same problem id.
+	 * The objects must not be modified once they are added to the cache.
+	 *
+	 * @param problemId     the problem id
+	 * @param hash          the hash of the problem and test case data
+	 * @param problem       the {@link Problem}
+	 * @param testCaseList  the list of {@link TestCase}s
+	 */
+	public void put(int problemId, String hash, Problem problem, List<TestCase> testCaseList) {
+		if (maxSize <= 0) {
+			return;
+		}
+		ProblemAndTestCaseList problemAndTestCaseList = new ProblemAndTestCaseList();
+		problemAndTestCaseList.setProblem(problem);
+		problemAndTestCaseList.setTestCaseList(testCaseList);
+		synchronized (lock) {
+			entryMap.put(problemId, new Entry(hash, problemAndTestCaseList));
+		}
+	}
+
+	/**
+	 * @return number of successful lookups
+	 */
+	public long getNumHits() {
+		synchronized (lock) {
+			return numHits;
+		}
+	}
+
+	/**
+	 * @return number of unsuccessful lookups
+	 */
+	public long getNumMisses() {
+		synchronized (lock) {
+			return numMisses;
+		}
+	}
+}
@@ -27,6 +27,7 @@ import org.cloudcoder.builder2.cfunction.AddCFunctionScaffoldingBuildStep;
 import org.cloudcoder.builder2.cfunction.CheckCFunctionCommandResultsBuildStep;
 import org.cloudcoder.builder2.cfunction.CreateCFunctionTestCommandsBuildStep;
 import org.cloudcoder.builder2.cfunction.CreateSecretSuccessAndFailureCodesBuildStep;
+import org.cloudcoder.builder2.cfunction.ExecuteCFunctionTestsBuildStep;
 import org.cloudcoder.builder2.commandrunner.CheckCommandResultsUsingRegexBuildStep;
 import org.cloudcoder.builder2.commandrunner.CreateCommandInputsForEachTestCaseBuildStep;
 import org.cloudcoder.builder2.commandrunner.CreateLimitedCommandExecutionPreferencesBuildStep;
@@ -98,7 +99,7 @@ public abstract class TesterFactory {
 		new CreateSecretSuccessAndFailureCodesBuildStep(),
 		new CreateCFunctionTestCommandsBuildStep(),
 		new GCovNativeExecutableCommandModifierBuildStep(),
-		new ExecuteCommandForEachCommandInputBuildStep(),
+		new ExecuteCFunctionTestsBuildStep(),
 		new CheckCFunctionCommandResultsBuildStep(),
 		new GCovCoverageResultsCollectorBuildStep(),
 		new CreateSubmissionResultBuildStep(),
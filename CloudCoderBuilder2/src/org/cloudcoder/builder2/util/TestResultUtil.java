@@ -128,6 +128,8 @@ public class TestResultUtil {
 			return createTestResultForTimeout(p, problem, testCase);
 		case FILE_SIZE_LIMIT_EXCEEDED:
 			return createTestResultForLimitExceeded(p, problem, testCase);
+		case OUTPUT_LIMIT_EXCEEDED:
+			return createTestResultForOutputLimitExceeded(p, problem, testCase);
 		default:
 			throw new IllegalArgumentException("Invalid process status: " + p.getStatus());
 		}
@@ -150,6 +152,20 @@ public class TestResultUtil {
 				"");
 	}
 
+	/**
+	 * Create a {@link TestResult} for a test that was killed because
+	 * it produced too much output.  The (truncated) output is included,
+	 * since it is likely to show the student where the program went wrong.
+	 * 
+	 * @param p         the {@link CommandResult}
+	 * @param problem   the {@link Problem}
+	 * @param testCase  the {@link TestCase}
+	 * @return the {@link TestResult}
+	 */
+	public static TestResult createTestResultForOutputLimitExceeded(CommandResult p, Problem problem, TestCase testCase) {
+		return createTestResult(p, problem, TestOutcome.FAILED_BY_SECURITY_MANAGER, testCase);
+	}
+
 	/**
 	 * Create a generic {@link TestResult} for a passed test.
 	 * 
@@ -0,0 +1,95 @@
+package org.cloudcoder.builder2.ccompiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Properties;
+
+import org.cloudcoder.builder2.compilationcache.CompilationCache;
+import org.cloudcoder.builder2.model.WrapperMode;
+import org.cloudcoder.builder2.process.ProcessRunner;
+import org.cloudcoder.builder2.util.DeleteDirectoryRecursively;
+import org.cloudcoder.builder2.util.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompilerTest {
+	private Properties config;
+	private File dir1, dir2;
+	private String mainCode;
+
+	@Before
+	public void setUp() {
+		config = new Properties();
+		config.setProperty("cloudcoder.builder2.tmpdir", System.getProperty("java.io.tmpdir"));
+		dir1 = FileUtil.makeTempDir(config);
+		dir2 = FileUtil.makeTempDir(config);
+
+		// Make the invariant module unique, so that it isn't already cached
+		mainCode =
+				"/* " + System.nanoTime() + " */\n" +
+				"int f(int);\n" +
+				"int main(void) { return f(3); }\n";
+	}
+
+	@After
+	public void tearDown() {
+		new DeleteDirectoryRecursively(dir1).delete();
+		new DeleteDirectoryRecursively(dir2).delete();
+	}
+
+	private Compiler createCompiler(File dir, String code) {
+		Compiler compiler = new Compiler(code, dir, "prog", config);
+		compiler.setWrapperMode(WrapperMode.SCRIPT);
+		compiler.addFlag("-std=gnu99");
+		compiler.addInvariantModule("main.c", mainCode);
+		return compiler;
+	}
+
+	private int run(File dir) {
+		ProcessRunner runner = new ProcessRunner(config);
+		runner.setWrapperMode(WrapperMode.SCRIPT);
+		assertTrue(runner.runSynchronous(dir, new File(dir, "prog").getAbsolutePath()));
+		return runner.getExitCode();
+	}
+
+	@Test
+	public void testInvariantModuleObjectIsReused() {
+		CompilationCache cache = CompilationCache.getInstance(config);
+		if (!cache.isEnabled() || createCompiler(dir1, "").getCompilerIdentity() == null) {
+			return;
+		}
+
+		// First compilation compiles the invariant module
+		assertTrue(createCompiler(dir1, "int f(int x) { return x + 1; }\n").compile());
+		assertTrue(new File(dir1, "main.c").exists());
+		assertEquals(4, run(dir1));
+
+		// Second compilation (of different code) reuses its object file
+		long numHits = cache.getNumHits();
+		assertTrue(createCompiler(dir2, "int f(int x) { return x * 2; }\n").compile());
+		assertEquals(numHits + 1, cache.getNumHits());
+		assertFalse(new File(dir2, "main.c").exists());
+		assertTrue(new File(dir2, "main.o").exists());
+		assertEquals(6, run(dir2));
+	}
+
+	@Test
+	public void testInvariantModuleObjectDependsOnFlags() {
+		CompilationCache cache = CompilationCache.getInstance(config);
+		if (!cache.isEnabled() || createCompiler(dir1, "").getCompilerIdentity() == null) {
+			return;
+		}
+
+		assertTrue(createCompiler(dir1, "int f(int x) { return x; }\n").compile());
+
+		// Different compiler flags: the invariant module must be recompiled
+		Compiler compiler = createCompiler(dir2, "int f(int x) { return x; }\n");
+		compiler.addFlag("-O2");
+		assertTrue(compiler.compile());
+		assertTrue(new File(dir2, "main.c").exists());
+	}
+}
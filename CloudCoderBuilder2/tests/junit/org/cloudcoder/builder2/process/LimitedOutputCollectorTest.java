@@ -0,0 +1,64 @@
+package org.cloudcoder.builder2.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class LimitedOutputCollectorTest {
+	private static LimitedOutputCollector collect(String output, int maxBytes, final AtomicBoolean callbackRun) throws InterruptedException {
+		LimitedOutputCollector collector = new LimitedOutputCollector(new ByteArrayInputStream(output.getBytes()));
+		collector.setMaxBytesAllowed(maxBytes);
+		collector.setMaxLinesAllowed(3);
+		collector.setMaxCharactersPerLine(5);
+		collector.setLimitExceededCallback(new Runnable() {
+			@Override
+			public void run() {
+				callbackRun.set(true);
+			}
+		});
+		collector.start();
+		collector.join();
+		return collector;
+	}
+	
+	@Test
+	public void testCollectLines() throws InterruptedException {
+		AtomicBoolean callbackRun = new AtomicBoolean();
+		LimitedOutputCollector collector = collect("hello\nworld\npartial", 100, callbackRun);
+		assertEquals(Arrays.asList("hello", "world", "parti"), collector.getCollectedOutput());
+		assertFalse(collector.isLimitExceeded());
+		assertFalse(callbackRun.get());
+	}
+	
+	@Test
+	public void testMaxLines() throws InterruptedException {
+		AtomicBoolean callbackRun = new AtomicBoolean();
+		List<String> lines = collect("a\nb\nc\nd\ne\n", 100, callbackRun).getCollectedOutput();
+		assertEquals(Arrays.asList("a", "b", "c"), lines);
+	}
+	
+	@Test
+	public void testExactlyMaxBytes() throws InterruptedException {
+		AtomicBoolean callbackRun = new AtomicBoolean();
+		LimitedOutputCollector collector = collect("abc\n", 4, callbackRun);
+		assertEquals(Arrays.asList("abc"), collector.getCollectedOutput());
+		assertFalse(collector.isLimitExceeded());
+		assertFalse(callbackRun.get());
+	}
+	
+	@Test
+	public void testLimitExceeded() throws InterruptedException {
+		AtomicBoolean callbackRun = new AtomicBoolean();
+		LimitedOutputCollector collector = collect("abc\ndefgh\n", 6, callbackRun);
+		assertEquals(Arrays.asList("abc", "de"), collector.getCollectedOutput());
+		assertTrue(collector.isLimitExceeded());
+		assertTrue(callbackRun.get());
+	}
+}
@@ -0,0 +1,120 @@
+package org.cloudcoder.builder2.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+public class StatusTrailerInputStreamTest {
+	private static final String NONCE = "1234abcd";
+	private static final String MARKER = "\u0001CCSTAT " + NONCE + " ";
+
+	/**
+	 * InputStream returning the given chunks of data in separate reads,
+	 * with no data available between chunks.
+	 */
+	private static class ChunkedInputStream extends InputStream {
+		private String[] chunks;
+		private int chunk, pos;
+
+		public ChunkedInputStream(String... chunks) {
+			this.chunks = chunks;
+		}
+
+		@Override
+		public int read() throws IOException {
+			while (chunk < chunks.length && pos >= chunks[chunk].length()) {
+				chunk++;
+				pos = 0;
+			}
+			if (chunk >= chunks.length) {
+				return -1;
+			}
+			return chunks[chunk].charAt(pos++) & 0xff;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return chunk < chunks.length ? chunks[chunk].length() - pos : 0;
+		}
+	}
+
+	private static String readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[4];
+		int n;
+		while ((n = in.read(buf)) >= 0) {
+			out.write(buf, 0, n);
+		}
+		return new String(out.toByteArray(), "ISO-8859-1");
+	}
+
+	@Test
+	public void testStatusLine() throws IOException {
+		StatusTrailerInputStream in = new StatusTrailerInputStream(
+				new ChunkedInputStream("error\n" + MARKER + "exited 0 10 2048\n"), NONCE);
+		assertEquals("error\n", readAll(in));
+		assertEquals("exited 0 10 2048", in.getStatusLine());
+	}
+
+	@Test
+	public void testMarkerSplitAcrossReads() throws IOException {
+		StatusTrailerInputStream in = new StatusTrailerInputStream(
+				new ChunkedInputStream("out\n\u0001CC", "STAT " + NONCE.substring(0, 3), NONCE.substring(3) + " exi", "ted 1 0 0\n"), NONCE);
+		assertEquals("out\n", readAll(in));
+		assertEquals("exited 1 0 0", in.getStatusLine());
+	}
+
+	@Test
+	public void testFalsePartialMarkerFollowedByMarkerByte() throws IOException {
+		StatusTrailerInputStream in = new StatusTrailerInputStream(
+				new ChunkedInputStream("a\u0001CCST", "\u0001b\n" + MARKER + "exited 0 0 0\n"), NONCE);
+		assertEquals("a\u0001CCST\u0001b\n", readAll(in));
+		assertEquals("exited 0 0 0", in.getStatusLine());
+	}
+
+	@Test
+	public void testFalsePartialMarkerImmediatelyBeforeMarker() throws IOException {
+		StatusTrailerInputStream in = new StatusTrailerInputStream(
+				new ChunkedInputStream("\u0001CCSTAT 12", MARKER + "exited 0 0 0\n"), NONCE);
+		assertEquals("\u0001CCSTAT 12", readAll(in));
+		assertEquals("exited 0 0 0", in.getStatusLine());
+	}
+
+	@Test
+	public void testTrailerWithoutNewlineAtEOF() throws IOException {
+		// The status line is only accepted once it is complete
+		StatusTrailerInputStream in = new StatusTrailerInputStream(
+				new ChunkedInputStream("x\n" + MARKER + "exited 0 0 0"), NONCE);
+		assertEquals("x\n", readAll(in));
+		assertNull(in.getStatusLine());
+	}
+
+	@Test
+	public void testPartialMarkerAtEOF() throws IOException {
+		StatusTrailerInputStream in = new StatusTrailerInputStream(
+				new ChunkedInputStream("x\n\u0001CCSTAT " + NONCE), NONCE);
+		assertEquals("x\n\u0001CCSTAT " + NONCE, readAll(in));
+		assertNull(in.getStatusLine());
+	}
+
+	@Test
+	public void testStatusLineAfterStderrWithoutFinalNewline() throws IOException {
+		StatusTrailerInputStream in = new StatusTrailerInputStream(
+				new ChunkedInputStream("Segmentation fault", MARKER + "signaled 11 5 100\n"), NONCE);
+		assertEquals("Segmentation fault", readAll(in));
+		assertEquals("signaled 11 5 100", in.getStatusLine());
+	}
+
+	@Test
+	public void testWrongNonce() throws IOException {
+		String other = "\u0001CCSTAT ffffffff exited 0 0 0\n";
+		StatusTrailerInputStream in = new StatusTrailerInputStream(new ChunkedInputStream(other), NONCE);
+		assertEquals(other, readAll(in));
+		assertNull(in.getStatusLine());
+	}
+}
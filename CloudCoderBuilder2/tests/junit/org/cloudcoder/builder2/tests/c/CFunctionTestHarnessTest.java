@@ -0,0 +1,68 @@
+package org.cloudcoder.builder2.tests.c;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestOutcome;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.builder2.tests.BuilderTest;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+// C_FUNCTION tests executed using the single-process test harness.
+// The harness is only used when sandboxing is disabled.
+public class CFunctionTestHarnessTest extends BuilderTest {
+	private ProblemAndTestCaseList max3;
+	
+	@Override
+	protected Properties createConfig() {
+		Properties config = super.createConfig();
+		config.setProperty("cloudcoder.submitsvc.oop.easysandbox.enable", "false");
+		config.setProperty("cloudcoder.builder2.cfunction.harness", "true");
+		return config;
+	}
+	
+	@Before
+	public void start() {
+		if (createContext()) {
+			max3 = getContext().getExercise("max3");
+		}
+	}
+	
+	@Test
+	public void testMax3Pass() {
+		String source = getContext().getSourceText("max3_pass.c");
+		SubmissionResult result = getContext().testSubmission(source, max3);
+		assertAllTestsPassed(result, max3);
+		
+		// Output is reported separately for each test
+		TestResult[] testResults = result.getTestResults();
+		assertTrue(testResults[0].getStdout().contains("max3(3, 2, 1) is 3"));
+		assertTrue(testResults[3].getStdout().contains("max3(-4, -2, -9) is -2"));
+	}
+	
+	@Test
+	public void testMax3Mixed() {
+		String source = getContext().getSourceText("max3_mixed.c");
+		SubmissionResult result = getContext().testSubmission(source, max3);
+		assertAllTestCasesHaveTestResults(result, max3);
+		
+		// Each test is isolated from the others
+		TestResult[] testResults = result.getTestResults();
+		assertEquals(TestOutcome.PASSED, testResults[0].getOutcome());
+		assertEquals(TestOutcome.FAILED_ASSERTION, testResults[1].getOutcome());
+		assertEquals(TestOutcome.FAILED_ASSERTION, testResults[2].getOutcome());
+		assertEquals(TestOutcome.FAILED_WITH_EXCEPTION, testResults[3].getOutcome());
+		assertEquals(TestOutcome.FAILED_FROM_TIMEOUT, testResults[4].getOutcome());
+	}
+	
+	@AfterClass
+	public static void whenDone() {
+		BuilderTest.getInstance().destroyContext();
+	}
+}
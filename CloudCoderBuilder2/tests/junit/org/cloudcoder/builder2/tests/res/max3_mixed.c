@@ -0,0 +1,14 @@
+#include <stdlib.h>
+
+int max3(int a, int b, int c) {
+	if (a == 42) {
+		// infinite loop
+		for (;;) { }
+	}
+	if (a < 0) {
+		// crash
+		abort();
+	}
+	// Wrong if the first parameter isn't the max
+	return a;
+}
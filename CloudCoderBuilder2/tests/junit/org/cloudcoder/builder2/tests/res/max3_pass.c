@@ -0,0 +1,13 @@
+#include <stdio.h>
+
+int max3(int a, int b, int c) {
+	int max = a;
+	if (b > max) {
+		max = b;
+	}
+	if (c > max) {
+		max = c;
+	}
+	printf("max3(%d, %d, %d) is %d\n", a, b, c, max);
+	return max;
+}
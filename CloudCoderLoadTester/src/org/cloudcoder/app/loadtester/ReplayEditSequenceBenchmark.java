@@ -0,0 +1,157 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.loadtester;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.ApplyChangeToTextDocument;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.ITextDocument;
+import org.cloudcoder.app.shared.model.RopeTextDocument;
+import org.cloudcoder.app.shared.model.TextDocument;
+
+/**
+ * Benchmark replaying captured {@link EditSequence}s (as saved by
+ * {@link CaptureEditSequence} or {@link CaptureAllEditSequencesForProblem})
+ * into a {@link TextDocument} and a {@link RopeTextDocument}.
+ * Command line arguments are the names of edit sequence files:
+ * if there are none, the captured student data used for load testing
+ * is replayed.  Each sequence is also replayed with a large amount of
+ * extra text below the edits, to show how the cost of each change
+ * depends on the size of the document.
+ *
+ * @author David Hovemeyer
+ */
+public class ReplayEditSequenceBenchmark {
+	private static final int WARMUP_ITERATIONS = 5;
+	private static final int ITERATIONS = 20;
+	private static final int LARGE_DOCUMENT_LINES = 2000;
+
+	private interface DocumentFactory {
+		public ITextDocument create();
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<EditSequence> sequences = new ArrayList<EditSequence>();
+		if (args.length > 0) {
+			for (String fileName : args) {
+				EditSequence seq = new EditSequence();
+				seq.loadFromFile(fileName);
+				sequences.add(seq);
+			}
+		} else {
+			for (int userId = 4; userId <= 143; userId++) {
+				String resource = String.format("org/cloudcoder/app/loadtester/res/6c0ba8b618beb177ef68588777287a30da1b02b0/%03d.dat", userId);
+				InputStream in = ReplayEditSequenceBenchmark.class.getClassLoader().getResourceAsStream(resource);
+				if (in != null) {
+					EditSequence seq = new EditSequence();
+					seq.loadFromInputStream(in);
+					sequences.add(seq);
+				}
+			}
+		}
+
+		int numChanges = 0;
+		for (EditSequence seq : sequences) {
+			numChanges += seq.getChangeList().size();
+		}
+		System.out.println("Replaying " + sequences.size() + " edit sequences, " + numChanges + " changes");
+
+		DocumentFactory arrayList = new DocumentFactory() {
+			@Override
+			public ITextDocument create() {
+				return new TextDocument();
+			}
+		};
+		DocumentFactory rope = new DocumentFactory() {
+			@Override
+			public ITextDocument create() {
+				return new RopeTextDocument();
+			}
+		};
+
+		long[] ignored = new long[1];
+		String expected = replayAll(sequences, arrayList, 0, ignored);
+		String actual = replayAll(sequences, rope, 0, ignored);
+		if (!expected.equals(actual)) {
+			throw new IllegalStateException("TextDocument and RopeTextDocument produced different text");
+		}
+
+		run("TextDocument", sequences, numChanges, arrayList, 0);
+		run("RopeTextDocument", sequences, numChanges, rope, 0);
+		run("TextDocument (large)", sequences, numChanges, arrayList, LARGE_DOCUMENT_LINES);
+		run("RopeTextDocument (large)", sequences, numChanges, rope, LARGE_DOCUMENT_LINES);
+	}
+
+	private static void run(String name, List<EditSequence> sequences, int numChanges, DocumentFactory factory, int extraLines) {
+		long[] nanos = new long[1];
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			replayAll(sequences, factory, extraLines, nanos);
+		}
+		nanos[0] = 0L;
+		for (int i = 0; i < ITERATIONS; i++) {
+			replayAll(sequences, factory, extraLines, nanos);
+		}
+		System.out.printf("%-26s %10.1f ms/iteration %10.0f ns/change%n",
+				name, nanos[0] / 1e6 / ITERATIONS, (double) nanos[0] / ITERATIONS / numChanges);
+	}
+
+	/**
+	 * Replay each edit sequence into a new document.
+	 * 
+	 * @param nanos  the time spent applying changes (not including creating
+	 *               the documents) is added to nanos[0]
+	 * @return the lengths of the resulting documents' text
+	 */
+	private static String replayAll(List<EditSequence> sequences, DocumentFactory factory, int extraLines, long[] nanos) {
+		StringBuilder padding = new StringBuilder();
+		for (int i = 0; i < extraLines; i++) {
+			padding.append("// padding\n");
+		}
+		
+		ApplyChangeToTextDocument applicator = new ApplyChangeToTextDocument();
+		StringBuilder result = new StringBuilder();
+		for (EditSequence seq : sequences) {
+			ITextDocument doc = factory.create();
+			if (extraLines > 0) {
+				doc.setText(padding.toString());
+			}
+			long begin = System.nanoTime();
+			for (Change change : seq.getChangeList()) {
+				try {
+					if (extraLines > 0 && change.getType() == ChangeType.FULL_TEXT) {
+						// Keep the padding below the edits
+						doc.setText(change.getText() + "\n" + padding);
+					} else {
+						applicator.apply(change, doc);
+					}
+				} catch (RuntimeException e) {
+					// Some captured changes can't be applied: skip them
+				}
+			}
+			nanos[0] += System.nanoTime() - begin;
+			
+			// Check the text so the work can't be optimized away
+			result.append(doc.getText().length()).append(',');
+		}
+		return result.toString();
+	}
+}
@@ -19,18 +19,18 @@ package org.cloudcoder.app.shared.model;
 
 
 /**
- * Apply a Change object to a TextDocument.
+ * Apply a Change object to an {@link ITextDocument}.
  */
 public class ApplyChangeToTextDocument {
 	private static final boolean DEBUG = true;
 
 	/**
-	 * Apply a Change object to a TextDocument.
+	 * Apply a Change object to a text document.
 	 * 
 	 * @param change a Change object
-	 * @param doc    a TextDocument to which the Change should be applied
+	 * @param doc    a text document to which the Change should be applied
 	 */
-	public void apply(Change change, TextDocument doc) {
+	public void apply(Change change, ITextDocument doc) {
 		String s, up;
 		
 		switch (change.getType()) {
@@ -131,12 +131,14 @@ public class ApplyChangeToTextDocument {
 			
 			break;
 		case INSERT_LINES:
-			for (int i = 0; i < change.getNumLines(); i++) {
-				doc.insertLine(change.getStartRow() + i, change.getLine(i) + "\n");
+			// Split the lines once (same as Change.getLine()/getNumLines())
+			String[] lines = change.getText().split("\n");
+			for (int i = 0; i < lines.length; i++) {
+				doc.insertLine(change.getStartRow() + i, lines[i] + "\n");
 			}
 			break;
 		case REMOVE_LINES:
-			for (int i = 0; i < change.getNumLines(); i++) {
+			for (int i = 0, n = change.getNumLines(); i < n; i++) {
 				doc.removeLine(change.getStartRow());
 			}
 			break;
@@ -147,9 +149,12 @@ public class ApplyChangeToTextDocument {
 			throw new IllegalStateException("Not handled? " + change.getType());
 		}
 		
-		// check integrity of TextDocument
-		if (DEBUG) {
-			for (int i = 0; i < doc.getNumLines(); i++) {
+		// check integrity of the lines the change could have modified
+		// (checking the entire document would make applying a change
+		// take time proportional to the size of the document)
+		if (DEBUG && change.getType() != ChangeType.FULL_TEXT) {
+			int end = Math.min(doc.getNumLines(), change.getStartRow() + countNewlines(change.getText()) + 2);
+			for (int i = Math.max(0, change.getStartRow()); i < end; i++) {
 				String line = doc.getLine(i);
 				int nl = line.indexOf('\n');
 				if (nl >= 0 && nl != line.length() - 1) {
@@ -159,15 +164,27 @@ public class ApplyChangeToTextDocument {
 		}
 	}
 	
+	private static int countNewlines(String text) {
+		int count = 0;
+		if (text != null) {
+			for (int i = 0; i < text.length(); i++) {
+				if (text.charAt(i) == '\n') {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+	
 	/**
 	 * Change text at given line, inserting multiple lines as necessary
 	 * if text has embedded newlines.
 	 * 
-	 * @param doc   the TextDocument
+	 * @param doc   the text document
 	 * @param index index of line to change
 	 * @param text  text to put at given index
 	 */
-	private void changeLine(TextDocument doc, int index, String text) {
+	private void changeLine(ITextDocument doc, int index, String text) {
 		int nl = text.indexOf('\n');
 
 		if (nl < 0 || nl == text.length() - 1) {
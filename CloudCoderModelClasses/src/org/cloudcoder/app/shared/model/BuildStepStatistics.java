@@ -0,0 +1,157 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Latency statistics for the build steps used to build and test
+ * submissions, kept as one {@link LatencyHistogram} per
+ * {@link ProblemType} and build step.  The builder records the time
+ * taken by each build step, and attaches the times for each submission
+ * to its {@link SubmissionResult} as an annotation (see
+ * {@link #encodeStepTimes(Map)}), so that the webapp can keep the
+ * same statistics.  Methods are synchronized, so an instance may be
+ * shared by multiple threads.
+ * 
+ * @author David Hovemeyer
+ */
+public class BuildStepStatistics {
+	/**
+	 * Key of the {@link SubmissionResultAnnotation} containing the
+	 * build step times for a submission.
+	 */
+	public static final String ANNOTATION_KEY = "BuildStepTimes";
+	
+	/**
+	 * Name used for the total time taken by all build steps.
+	 */
+	public static final String TOTAL = "Total";
+	
+	private final Map<ProblemType, Map<String, LatencyHistogram>> histogramMap;
+	
+	/**
+	 * Constructor.
+	 */
+	public BuildStepStatistics() {
+		this.histogramMap = new HashMap<ProblemType, Map<String, LatencyHistogram>>();
+	}
+	
+	/**
+	 * Record the times taken by the build steps for one submission.
+	 * 
+	 * @param problemType the {@link ProblemType} of the submission
+	 * @param stepTimes   map of build step names to times in microseconds
+	 */
+	public void record(ProblemType problemType, Map<String, Long> stepTimes) {
+		for (Map.Entry<String, Long> entry : stepTimes.entrySet()) {
+			getHistogram(problemType, entry.getKey()).record(entry.getValue());
+		}
+	}
+	
+	/**
+	 * Get the {@link ProblemType}s for which build step times have been recorded.
+	 * 
+	 * @return list of {@link ProblemType}s
+	 */
+	public synchronized List<ProblemType> getProblemTypes() {
+		return new ArrayList<ProblemType>(histogramMap.keySet());
+	}
+	
+	/**
+	 * Get the names of the build steps for which times have been recorded
+	 * for given {@link ProblemType}, in the order in which they
+	 * were first recorded.
+	 * 
+	 * @param problemType the {@link ProblemType}
+	 * @return list of build step names
+	 */
+	public synchronized List<String> getStepNames(ProblemType problemType) {
+		Map<String, LatencyHistogram> stepMap = histogramMap.get(problemType);
+		return stepMap != null ? new ArrayList<String>(stepMap.keySet()) : new ArrayList<String>();
+	}
+	
+	/**
+	 * Get the {@link LatencyHistogram} for given {@link ProblemType} and
+	 * build step, creating it if necessary.
+	 * 
+	 * @param problemType the {@link ProblemType}
+	 * @param stepName    the build step name
+	 * @return the {@link LatencyHistogram}
+	 */
+	public synchronized LatencyHistogram getHistogram(ProblemType problemType, String stepName) {
+		Map<String, LatencyHistogram> stepMap = histogramMap.get(problemType);
+		if (stepMap == null) {
+			stepMap = new LinkedHashMap<String, LatencyHistogram>();
+			histogramMap.put(problemType, stepMap);
+		}
+		LatencyHistogram histogram = stepMap.get(stepName);
+		if (histogram == null) {
+			histogram = new LatencyHistogram();
+			stepMap.put(stepName, histogram);
+		}
+		return histogram;
+	}
+	
+	/**
+	 * Encode build step times as the value of a {@link SubmissionResultAnnotation}.
+	 * The format is a comma-separated list of <i>name</i>=<i>microseconds</i> pairs.
+	 * 
+	 * @param stepTimes map of build step names to times in microseconds
+	 * @return the encoded build step times
+	 */
+	public static String encodeStepTimes(Map<String, Long> stepTimes) {
+		StringBuilder buf = new StringBuilder();
+		for (Map.Entry<String, Long> entry : stepTimes.entrySet()) {
+			if (buf.length() > 0) {
+				buf.append(',');
+			}
+			buf.append(entry.getKey());
+			buf.append('=');
+			buf.append(entry.getValue());
+		}
+		return buf.toString();
+	}
+	
+	/**
+	 * Decode build step times encoded by {@link #encodeStepTimes(Map)}.
+	 * Invalid entries are ignored.
+	 * 
+	 * @param value the encoded build step times
+	 * @return map of build step names to times in microseconds
+	 */
+	public static Map<String, Long> decodeStepTimes(String value) {
+		Map<String, Long> stepTimes = new LinkedHashMap<String, Long>();
+		for (String entry : value.split(",")) {
+			int eq = entry.indexOf('=');
+			if (eq <= 0) {
+				continue;
+			}
+			try {
+				stepTimes.put(entry.substring(0, eq), Long.valueOf(entry.substring(eq + 1)));
+			} catch (NumberFormatException e) {
+				// Ignore
+			}
+		}
+		return stepTimes;
+	}
+}
@@ -0,0 +1,96 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+/**
+ * Constants describing the protocol used between the webapp and
+ * the builders.  When a builder connects to the webapp, it sends an
+ * Integer identifying the protocol version it will use.
+ *
+ * <ul>
+ * <li>{@link #LOCKSTEP}: the builder connection handles one submission
+ *     at a time.  The webapp sends the problem id (or a negative value
+ *     as a keepalive signal), followed by the hash of the
+ *     problem and test cases.  The builder replies with a Boolean
+ *     indicating whether it has an up to date copy of the problem:
+ *     if not, the webapp sends the {@link Problem} and list of {@link TestCase}s.
+ *     The webapp then sends the program text, and the builder replies
+ *     with the {@link SubmissionResult}.</li>
+ * <li>{@link #MULTIPLEXED}: the hello message is followed by an Integer
+ *     specifying the maximum number of submissions the builder
+ *     is willing to have in flight at once (its "credits").
+ *     All subsequent messages in both directions start with an
+ *     Integer message type and an Integer request id, followed by the
+ *     message payload.  Results may be sent back in any order: each
+ *     {@link #MSG_RESULT} message returns a credit to the webapp.</li>
+ * <li>{@link #LOCKSTEP_NEGOTIATED} and {@link #MULTIPLEXED_NEGOTIATED}:
+ *     the same as {@link #LOCKSTEP} and {@link #MULTIPLEXED}, except that
+ *     the hello message is followed by a byte containing the highest
+ *     wire format version the builder supports.  The webapp replies with
+ *     a byte containing the wire format version to be used for the rest
+ *     of the connection (0 for Java serialization, otherwise a
+ *     <code>BinaryConversion</code> format version).  See
+ *     <code>org.cloudcoder.app.shared.model.wire.WireFormatFactory</code>.</li>
+ * </ul>
+ *
+ * @author David Hovemeyer
+ */
+public class BuilderProtocol {
+	/** Protocol version: one submission in flight per connection. */
+	public static final int LOCKSTEP = 1;
+
+	/** Protocol version: multiple submissions in flight per connection. */
+	public static final int MULTIPLEXED = 2;
+
+	/** Protocol version: {@link #LOCKSTEP}, with a negotiated wire format. */
+	public static final int LOCKSTEP_NEGOTIATED = 3;
+
+	/** Protocol version: {@link #MULTIPLEXED}, with a negotiated wire format. */
+	public static final int MULTIPLEXED_NEGOTIATED = 4;
+
+	/**
+	 * Multiplexed message (webapp to builder): keepalive signal,
+	 * no payload.  The request id is ignored.
+	 */
+	public static final int MSG_KEEPALIVE = 0;
+
+	/**
+	 * Multiplexed message (webapp to builder): request to test a submission.
+	 * Payload is the problem id (Integer), the hash of the problem and test cases
+	 * (String), and the program text (String).
+	 */
+	public static final int MSG_REQUEST = 1;
+
+	/**
+	 * Multiplexed message (builder to webapp): the builder does not have
+	 * an up to date copy of the problem for the request, no payload.
+	 */
+	public static final int MSG_NEED_PROBLEM = 2;
+
+	/**
+	 * Multiplexed message (webapp to builder): reply to {@link #MSG_NEED_PROBLEM}.
+	 * Payload is the {@link Problem} and the list of {@link TestCase}s.
+	 */
+	public static final int MSG_PROBLEM = 3;
+
+	/**
+	 * Multiplexed message (builder to webapp): the {@link SubmissionResult}
+	 * for the request.
+	 */
+	public static final int MSG_RESULT = 4;
+}
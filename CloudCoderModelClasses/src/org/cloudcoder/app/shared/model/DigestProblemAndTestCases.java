@@ -0,0 +1,91 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+
+/**
+ * Compute a digest of a {@link Problem} and its {@link TestCase}s
+ * for checking whether cached copies (or results computed from them)
+ * are still valid.  Unlike {@link HashProblemAndTestCaseData}, which
+ * identifies an exercise by its "content", every field of the
+ * problem and test cases is digested exactly as it is: strings
+ * aren't trimmed, and each value is preceded by its length, so
+ * that any change to any field results in a different digest.
+ * 
+ * @author David Hovemeyer
+ */
+public class DigestProblemAndTestCases {
+	private final Problem problem;
+	private final List<TestCase> testCaseList;
+	private final SHA1 sha1;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param problem       the {@link Problem}
+	 * @param testCaseList  the {@link Problem}'s {@link TestCase}s
+	 */
+	public DigestProblemAndTestCases(Problem problem, List<TestCase> testCaseList) {
+		this.problem = problem;
+		this.testCaseList = testCaseList;
+		this.sha1 = new SHA1();
+	}
+
+	/**
+	 * Compute the digest.  The result is a 40-character hex string (160 bits of data).
+	 * 
+	 * @return the digest
+	 */
+	public String compute() {
+		digestModelObject(problem, Problem.SCHEMA);
+		updateInt(testCaseList.size());
+		for (TestCase testCase : testCaseList) {
+			digestModelObject(testCase, TestCase.SCHEMA);
+		}
+		return new ConvertBytesToHex(sha1.digest()).convert();
+	}
+
+	private <E> void digestModelObject(E obj, ModelObjectSchema<? super E> schema) {
+		for (ModelObjectField<? super E, ?> field : schema.getFieldList()) {
+			updateString(field.getName());
+			Object value = field.get(obj);
+			if (value == null) {
+				updateInt(-1);
+			} else {
+				updateString(String.valueOf(value));
+			}
+		}
+	}
+
+	private void updateString(String s) {
+		try {
+			byte[] data = s.getBytes("UTF-8");
+			updateInt(data.length);
+			sha1.update(data);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("Can't convert string to UTF-8 bytes?");
+		}
+	}
+
+	private void updateInt(int value) {
+		sha1.update(new byte[]{
+				(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value });
+	}
+}
@@ -28,6 +28,12 @@ public class HealthData implements IModelObject<HealthData> {
 	private int submissionQueueSizeCurrent;
 	private int submissionQueueSizeMaxLastFiveMinutes;
 	private int numConnectedBuilderThreads;
+	private long submissionResultCacheHits;
+	private long submissionResultCacheMisses;
+	private long dbConnectionCheckouts;
+	private long dbConnectionCheckoutTimeMillis;
+	private int dbConnectionsBusy;
+	private int dbConnectionsIdle;
 	
 	public static final ModelObjectField<HealthData, Integer> SUBMISSION_QUEUE_SIZE_CURRENT = new ModelObjectField<HealthData, Integer>("submissionQueueSizeCurrent", Integer.class, 0) {
 		public void set(HealthData obj, Integer value) { obj.setSubmissionQueueSizeCurrent(value); }
@@ -44,6 +50,36 @@ public class HealthData implements IModelObject<HealthData> {
 		public Integer get(HealthData obj) { return obj.getNumConnectedBuilderThreads(); }
 	};
 	
+	public static final ModelObjectField<HealthData, Long> SUBMISSION_RESULT_CACHE_HITS = new ModelObjectField<HealthData, Long>("submissionResultCacheHits", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setSubmissionResultCacheHits(value); }
+		public Long get(HealthData obj) { return obj.getSubmissionResultCacheHits(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> SUBMISSION_RESULT_CACHE_MISSES = new ModelObjectField<HealthData, Long>("submissionResultCacheMisses", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setSubmissionResultCacheMisses(value); }
+		public Long get(HealthData obj) { return obj.getSubmissionResultCacheMisses(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> DB_CONNECTION_CHECKOUTS = new ModelObjectField<HealthData, Long>("dbConnectionCheckouts", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setDbConnectionCheckouts(value); }
+		public Long get(HealthData obj) { return obj.getDbConnectionCheckouts(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> DB_CONNECTION_CHECKOUT_TIME_MILLIS = new ModelObjectField<HealthData, Long>("dbConnectionCheckoutTimeMillis", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setDbConnectionCheckoutTimeMillis(value); }
+		public Long get(HealthData obj) { return obj.getDbConnectionCheckoutTimeMillis(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> DB_CONNECTIONS_BUSY = new ModelObjectField<HealthData, Integer>("dbConnectionsBusy", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setDbConnectionsBusy(value); }
+		public Integer get(HealthData obj) { return obj.getDbConnectionsBusy(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> DB_CONNECTIONS_IDLE = new ModelObjectField<HealthData, Integer>("dbConnectionsIdle", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setDbConnectionsIdle(value); }
+		public Integer get(HealthData obj) { return obj.getDbConnectionsIdle(); }
+	};
+	
 	/**
 	 * Model object fields (schema version 0).
 	 */
@@ -52,10 +88,30 @@ public class HealthData implements IModelObject<HealthData> {
 			.add(SUBMISSION_QUEUE_SIZE_MAX_LAST_FIVE_MINUTES)
 			.add(NUM_CONNECTED_BUILDER_THREADS);
 	
+	/**
+	 * Model object fields (schema version 1).
+	 * Adds submission result cache hit and miss counts.
+	 */
+	public static final ModelObjectSchema<HealthData> SCHEMA_V1 = ModelObjectSchema.basedOn(SCHEMA_V0, HealthData.class)
+			.addAfter(NUM_CONNECTED_BUILDER_THREADS, SUBMISSION_RESULT_CACHE_HITS)
+			.addAfter(SUBMISSION_RESULT_CACHE_HITS, SUBMISSION_RESULT_CACHE_MISSES)
+			.finishDelta();
+	
+	/**
+	 * Model object fields (schema version 2).
+	 * Adds database connection pool statistics.
+	 */
+	public static final ModelObjectSchema<HealthData> SCHEMA_V2 = ModelObjectSchema.basedOn(SCHEMA_V1, HealthData.class)
+			.addAfter(SUBMISSION_RESULT_CACHE_MISSES, DB_CONNECTION_CHECKOUTS)
+			.addAfter(DB_CONNECTION_CHECKOUTS, DB_CONNECTION_CHECKOUT_TIME_MILLIS)
+			.addAfter(DB_CONNECTION_CHECKOUT_TIME_MILLIS, DB_CONNECTIONS_BUSY)
+			.addAfter(DB_CONNECTIONS_BUSY, DB_CONNECTIONS_IDLE)
+			.finishDelta();
+	
 	/**
 	 * Model object fields (current schema version).
 	 */
-	public static final ModelObjectSchema<HealthData> SCHEMA = SCHEMA_V0;
+	public static final ModelObjectSchema<HealthData> SCHEMA = SCHEMA_V2;
 	
 	/**
 	 * Constructor.
@@ -122,4 +178,112 @@ public class HealthData implements IModelObject<HealthData> {
 	public void setNumConnectedBuilderThreads(int numConnectedBuilderThreads) {
 		this.numConnectedBuilderThreads = numConnectedBuilderThreads;
 	}
+	
+	/**
+	 * Set the number of submissions for which a cached result was returned.
+	 * 
+	 * @param submissionResultCacheHits the number of submission result cache hits
+	 */
+	public void setSubmissionResultCacheHits(long submissionResultCacheHits) {
+		this.submissionResultCacheHits = submissionResultCacheHits;
+	}
+	
+	/**
+	 * Get the number of submissions for which a cached result was returned.
+	 * 
+	 * @return the number of submission result cache hits
+	 */
+	public long getSubmissionResultCacheHits() {
+		return submissionResultCacheHits;
+	}
+	
+	/**
+	 * Set the number of submissions for which no cached result was available.
+	 * 
+	 * @param submissionResultCacheMisses the number of submission result cache misses
+	 */
+	public void setSubmissionResultCacheMisses(long submissionResultCacheMisses) {
+		this.submissionResultCacheMisses = submissionResultCacheMisses;
+	}
+	
+	/**
+	 * Get the number of submissions for which no cached result was available.
+	 * 
+	 * @return the number of submission result cache misses
+	 */
+	public long getSubmissionResultCacheMisses() {
+		return submissionResultCacheMisses;
+	}
+	
+	/**
+	 * Set the number of times a database connection was checked out.
+	 * 
+	 * @param dbConnectionCheckouts the number of database connection checkouts
+	 */
+	public void setDbConnectionCheckouts(long dbConnectionCheckouts) {
+		this.dbConnectionCheckouts = dbConnectionCheckouts;
+	}
+	
+	/**
+	 * Get the number of times a database connection was checked out.
+	 * 
+	 * @return the number of database connection checkouts
+	 */
+	public long getDbConnectionCheckouts() {
+		return dbConnectionCheckouts;
+	}
+	
+	/**
+	 * Set the total time (in milliseconds) spent waiting to check out database connections.
+	 * 
+	 * @param dbConnectionCheckoutTimeMillis the total database connection checkout time
+	 */
+	public void setDbConnectionCheckoutTimeMillis(long dbConnectionCheckoutTimeMillis) {
+		this.dbConnectionCheckoutTimeMillis = dbConnectionCheckoutTimeMillis;
+	}
+	
+	/**
+	 * Get the total time (in milliseconds) spent waiting to check out database connections.
+	 * 
+	 * @return the total database connection checkout time
+	 */
+	public long getDbConnectionCheckoutTimeMillis() {
+		return dbConnectionCheckoutTimeMillis;
+	}
+	
+	/**
+	 * Set the number of database connections currently in use.
+	 * 
+	 * @param dbConnectionsBusy the number of busy database connections
+	 */
+	public void setDbConnectionsBusy(int dbConnectionsBusy) {
+		this.dbConnectionsBusy = dbConnectionsBusy;
+	}
+	
+	/**
+	 * Get the number of database connections currently in use.
+	 * 
+	 * @return the number of busy database connections
+	 */
+	public int getDbConnectionsBusy() {
+		return dbConnectionsBusy;
+	}
+	
+	/**
+	 * Set the number of idle pooled database connections.
+	 * 
+	 * @param dbConnectionsIdle the number of idle database connections
+	 */
+	public void setDbConnectionsIdle(int dbConnectionsIdle) {
+		this.dbConnectionsIdle = dbConnectionsIdle;
+	}
+	
+	/**
+	 * Get the number of idle pooled database connections.
+	 * 
+	 * @return the number of idle database connections
+	 */
+	public int getDbConnectionsIdle() {
+		return dbConnectionsIdle;
+	}
 }
@@ -0,0 +1,85 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+/**
+ * A text document treated as a sequence of lines.
+ * Each line (except possibly the last) includes its terminating newline.
+ * {@link ApplyChangeToTextDocument} applies {@link Change}s to any
+ * implementation.
+ * 
+ * @author David Hovemeyer
+ */
+public interface ITextDocument {
+	/**
+	 * Append a line to the document.
+	 * 
+	 * @param line line of text to append
+	 */
+	public void append(String line);
+
+	/**
+	 * @return number of lines of text in document
+	 */
+	public int getNumLines();
+
+	/**
+	 * Get line at given index (0 for first line).
+	 * 
+	 * @param index index of line (0 for first line)
+	 * @return line of text
+	 */
+	public String getLine(int index);
+
+	/**
+	 * Replace line at given index (0 for first line).
+	 * 
+	 * @param index index of line (0 for first line)
+	 * @param line text value to set as new value of line
+	 */
+	public void setLine(int index, String line);
+
+	/**
+	 * Insert a line in a text document,
+	 * pushing lines at or below index down one line.
+	 * 
+	 * @param index where to insert the line
+	 * @param line line of text to insert
+	 */
+	public void insertLine(int index, String line);
+
+	/**
+	 * Remove line at given index.
+	 * Lines below are moved up.
+	 * 
+	 * @param index index of line to remove
+	 */
+	public void removeLine(int index);
+
+	/**
+	 * @return complete text of document as string
+	 */
+	public String getText();
+
+	/**
+	 * Replace the contents of the document.
+	 * 
+	 * @param text the new text of the document
+	 */
+	public void setText(String text);
+}
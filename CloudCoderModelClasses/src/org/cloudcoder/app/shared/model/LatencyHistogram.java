@@ -0,0 +1,120 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+/**
+ * Histogram of latency values (e.g., in microseconds), from which
+ * percentiles can be estimated.  Values are counted in buckets
+ * whose width grows with the magnitude of the value (8 buckets
+ * per power of two), so percentiles are accurate to within
+ * 12.5%, and recording a value is just an array increment.
+ * Methods are synchronized, so a histogram may be shared by
+ * multiple threads.
+ * 
+ * @author David Hovemeyer
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+	
+	private final long[] counts;
+	private long count;
+	private long max;
+	
+	/**
+	 * Constructor.
+	 */
+	public LatencyHistogram() {
+		this.counts = new long[NUM_BUCKETS];
+	}
+	
+	/**
+	 * Record a value.  Negative values are recorded as 0.
+	 * 
+	 * @param value the value to record
+	 */
+	public synchronized void record(long value) {
+		if (value < 0L) {
+			value = 0L;
+		}
+		counts[getBucket(value)]++;
+		count++;
+		if (value > max) {
+			max = value;
+		}
+	}
+	
+	/**
+	 * @return the number of values recorded
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+	
+	/**
+	 * @return the largest value recorded
+	 */
+	public synchronized long getMax() {
+		return max;
+	}
+	
+	/**
+	 * Estimate a percentile of the recorded values.
+	 * 
+	 * @param percentile the percentile (e.g., 50, 95, 99)
+	 * @return an upper bound on the value at the percentile, or 0 if
+	 *         no values have been recorded
+	 */
+	public synchronized long getPercentile(double percentile) {
+		if (count == 0L) {
+			return 0L;
+		}
+		long rank = (long) Math.ceil(percentile / 100.0 * count);
+		if (rank < 1L) {
+			rank = 1L;
+		}
+		long seen = 0L;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(getBucketUpperBound(i), max);
+			}
+		}
+		return max;
+	}
+	
+	private static int getBucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exp = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) ((value >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+		return (exp - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+	
+	private static long getBucketUpperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		long lower = (SUB_BUCKETS + sub) << shift;
+		return lower + (1L << shift) - 1L;
+	}
+}
@@ -0,0 +1,238 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+/**
+ * {@link ITextDocument} storing lines in a balanced (AVL) tree
+ * ordered by line number, so that getting, setting, inserting,
+ * and removing a line at any index takes O(log n) time.
+ * Use this rather than {@link TextDocument} for large documents,
+ * or when replaying long sequences of {@link Change}s.
+ * Behaves identically to {@link TextDocument}.
+ * 
+ * @author David Hovemeyer
+ */
+public class RopeTextDocument implements ITextDocument {
+	/**
+	 * A tree node containing one line.
+	 */
+	private static class Node {
+		String line;
+		Node left, right;
+		int size;   // number of lines in subtree
+		int height; // height of subtree
+
+		Node(String line) {
+			this.line = line;
+			this.size = 1;
+			this.height = 1;
+		}
+	}
+
+	private Node root;
+
+	/**
+	 * Constructor: initialize empty text document.
+	 */
+	public RopeTextDocument() {
+	}
+
+	@Override
+	public void append(String line) {
+		root = insert(root, size(root), line);
+	}
+
+	@Override
+	public int getNumLines() {
+		return size(root);
+	}
+
+	@Override
+	public String getLine(int index) {
+		return find(index).line;
+	}
+
+	@Override
+	public void setLine(int index, String line) {
+		find(index).line = line;
+	}
+
+	@Override
+	public void insertLine(int index, String line) {
+		if (index < 0 || index > size(root)) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size(root));
+		}
+		root = insert(root, index, line);
+	}
+
+	@Override
+	public void removeLine(int index) {
+		checkIndex(index);
+		root = remove(root, index);
+	}
+
+	@Override
+	public String getText() {
+		StringBuilder buf = new StringBuilder();
+		appendText(root, buf);
+		return buf.toString();
+	}
+
+	@Override
+	public void setText(String text) {
+		// Split exactly as TextDocument does
+		String[] lines = text.split("\n");
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = lines[i] + "\n";
+		}
+		root = build(lines, 0, lines.length);
+	}
+
+	@Override
+	public String toString() {
+		return this.getText();
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size(root)) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size(root));
+		}
+	}
+
+	private Node find(int index) {
+		checkIndex(index);
+		Node node = root;
+		while (true) {
+			int leftSize = size(node.left);
+			if (index < leftSize) {
+				node = node.left;
+			} else if (index > leftSize) {
+				index -= leftSize + 1;
+				node = node.right;
+			} else {
+				return node;
+			}
+		}
+	}
+
+	private static Node insert(Node node, int index, String line) {
+		if (node == null) {
+			return new Node(line);
+		}
+		int leftSize = size(node.left);
+		if (index <= leftSize) {
+			node.left = insert(node.left, index, line);
+		} else {
+			node.right = insert(node.right, index - leftSize - 1, line);
+		}
+		return rebalance(node);
+	}
+
+	private static Node remove(Node node, int index) {
+		int leftSize = size(node.left);
+		if (index < leftSize) {
+			node.left = remove(node.left, index);
+		} else if (index > leftSize) {
+			node.right = remove(node.right, index - leftSize - 1);
+		} else {
+			if (node.left == null) {
+				return node.right;
+			}
+			if (node.right == null) {
+				return node.left;
+			}
+			// Replace with the first line of the right subtree
+			Node first = node.right;
+			while (first.left != null) {
+				first = first.left;
+			}
+			node.line = first.line;
+			node.right = remove(node.right, 0);
+		}
+		return rebalance(node);
+	}
+
+	private static Node build(String[] lines, int start, int end) {
+		if (start >= end) {
+			return null;
+		}
+		int mid = (start + end) >>> 1;
+		Node node = new Node(lines[mid]);
+		node.left = build(lines, start, mid);
+		node.right = build(lines, mid + 1, end);
+		update(node);
+		return node;
+	}
+
+	private static void appendText(Node node, StringBuilder buf) {
+		while (node != null) {
+			appendText(node.left, buf);
+			buf.append(node.line);
+			node = node.right;
+		}
+	}
+
+	private static int size(Node node) {
+		return node != null ? node.size : 0;
+	}
+
+	private static int height(Node node) {
+		return node != null ? node.height : 0;
+	}
+
+	private static void update(Node node) {
+		node.size = size(node.left) + size(node.right) + 1;
+		node.height = Math.max(height(node.left), height(node.right)) + 1;
+	}
+
+	private static Node rebalance(Node node) {
+		update(node);
+		int balance = height(node.left) - height(node.right);
+		if (balance > 1) {
+			if (height(node.left.left) < height(node.left.right)) {
+				node.left = rotateLeft(node.left);
+			}
+			return rotateRight(node);
+		}
+		if (balance < -1) {
+			if (height(node.right.right) < height(node.right.left)) {
+				node.right = rotateRight(node.right);
+			}
+			return rotateLeft(node);
+		}
+		return node;
+	}
+
+	private static Node rotateRight(Node node) {
+		Node left = node.left;
+		node.left = left.right;
+		left.right = node;
+		update(node);
+		update(left);
+		return left;
+	}
+
+	private static Node rotateLeft(Node node) {
+		Node right = node.right;
+		node.right = right.left;
+		right.left = node;
+		update(node);
+		update(right);
+		return right;
+	}
+}
@@ -22,8 +22,10 @@ import java.util.List;
 
 /**
  * Simple text document class; treats document as sequence of lines.
+ * Inserting and removing lines takes time proportional to the number
+ * of lines: see {@link RopeTextDocument} for large documents.
  */
-public class TextDocument {
+public class TextDocument implements ITextDocument {
 	private List<String> lineList;
 
 	/**
@@ -38,6 +40,7 @@ public class TextDocument {
 	 * 
 	 * @param line line of text to append
 	 */
+	@Override
 	public void append(String line) {
 		lineList.add(line);
 	}
@@ -45,6 +48,7 @@ public class TextDocument {
 	/**
 	 * @return number of lines of text in document
 	 */
+	@Override
 	public int getNumLines() {
 		return lineList.size();
 	}
@@ -55,6 +59,7 @@ public class TextDocument {
 	 * @param index index of line (0 for first line)
 	 * @return line of text
 	 */
+	@Override
 	public String getLine(int index) {
 		return lineList.get(index);
 	}
@@ -65,6 +70,7 @@ public class TextDocument {
 	 * @param index index of line (0 for first line)
 	 * @param line text value to set as new value of line
 	 */
+	@Override
 	public void setLine(int index, String line) {
 		lineList.set(index, line);
 	}
@@ -76,6 +82,7 @@ public class TextDocument {
 	 * @param index where to insert the line
 	 * @param line line of text to insert
 	 */
+	@Override
 	public void insertLine(int index, String line) {
 		lineList.add(index, line);
 	}
@@ -86,6 +93,7 @@ public class TextDocument {
 	 * 
 	 * @param index index of line to remove
 	 */
+	@Override
 	public void removeLine(int index) {
 		lineList.remove(index);
 	}
@@ -93,6 +101,7 @@ public class TextDocument {
 	/**
 	 * @return complete text of document as string
 	 */
+	@Override
 	public String getText() {
 		StringBuilder buf = new StringBuilder();
 
@@ -103,6 +112,7 @@ public class TextDocument {
 		return buf.toString();
 	}
 
+	@Override
 	public void setText(String text) {
 		lineList.clear();
 		String[] lines = text.split("\n");
@@ -110,6 +120,8 @@ public class TextDocument {
 			lineList.add(line + "\n");
 		}
 	}
+
+	@Override
 	public String toString() {
 	    return this.getText();
 	}
@@ -0,0 +1,412 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model.wire;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.CompilerDiagnostic;
+import org.cloudcoder.app.shared.model.IProblem;
+import org.cloudcoder.app.shared.model.ModelObjectField;
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionResultAnnotation;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestResult;
+
+/**
+ * Methods for converting CloudCoder model objects to and from a compact
+ * binary format.  Model objects with a {@link ModelObjectSchema}
+ * ({@link Problem}, {@link TestCase}, and {@link TestResult}) are
+ * encoded field by field, in schema order, using the field types
+ * described by the schema.  Model objects without a schema
+ * ({@link SubmissionResult}, {@link CompilationResult}, etc.)
+ * are encoded explicitly.
+ *
+ * <p>Because no type information is written, the writer and reader
+ * must agree on the model classes and on the format version
+ * ({@link #FORMAT_VERSION}).  The format version must be incremented
+ * whenever the encoding changes, including when fields are added to
+ * one of the schemas.
+ *
+ * <p>Lengths and counts are read from the peer, so they are checked
+ * against {@link #MAX_STRING_LENGTH} and {@link #MAX_COUNT} before
+ * anything is allocated: a corrupt or hostile message results in an
+ * IOException rather than an OutOfMemoryError.
+ *
+ * @author David Hovemeyer
+ */
+public class BinaryConversion {
+	/**
+	 * Version of the binary format.
+	 */
+	public static final int FORMAT_VERSION = 1;
+
+	/**
+	 * Maximum length (in bytes) of an encoded string.
+	 */
+	public static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+
+	/**
+	 * Maximum number of elements in an encoded array or list.
+	 */
+	public static final int MAX_COUNT = 1024 * 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Encoder/decoder for one field of a model object.
+	 */
+	private static abstract class FieldCodec<E> {
+		public abstract void write(DataOutput out, E obj) throws IOException;
+		public abstract void read(DataInput in, E obj) throws IOException;
+	}
+
+	/**
+	 * Encoder/decoder for model objects described by a {@link ModelObjectSchema}.
+	 * The {@link FieldCodec}s are determined once, when the
+	 * SchemaCodec is created, from the schema's field types.
+	 */
+	private static class SchemaCodec<E> {
+		private final List<FieldCodec<E>> fieldCodecList;
+
+		public SchemaCodec(ModelObjectSchema<E> schema) {
+			fieldCodecList = new ArrayList<FieldCodec<E>>();
+			for (ModelObjectField<? super E, ?> field : schema.getFieldList()) {
+				fieldCodecList.add(createFieldCodec(field));
+			}
+		}
+
+		public void write(DataOutput out, E obj) throws IOException {
+			for (FieldCodec<E> fieldCodec : fieldCodecList) {
+				fieldCodec.write(out, obj);
+			}
+		}
+
+		public void read(DataInput in, E obj) throws IOException {
+			for (FieldCodec<E> fieldCodec : fieldCodecList) {
+				fieldCodec.read(in, obj);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private static<E> FieldCodec<E> createFieldCodec(ModelObjectField<? super E, ?> field_) {
+			final ModelObjectField<? super E, Object> field = (ModelObjectField<? super E, Object>) field_;
+			Class<?> type = field.getType();
+			if (type == String.class) {
+				return new FieldCodec<E>() {
+					public void write(DataOutput out, E obj) throws IOException {
+						writeString(out, (String) field.get(obj));
+					}
+					public void read(DataInput in, E obj) throws IOException {
+						field.set(obj, readString(in));
+					}
+				};
+			} else if (type == Integer.class) {
+				return new FieldCodec<E>() {
+					public void write(DataOutput out, E obj) throws IOException {
+						Integer value = (Integer) field.get(obj);
+						out.writeBoolean(value != null);
+						if (value != null) {
+							out.writeInt(value.intValue());
+						}
+					}
+					public void read(DataInput in, E obj) throws IOException {
+						field.set(obj, in.readBoolean() ? Integer.valueOf(in.readInt()) : null);
+					}
+				};
+			} else if (type == Long.class) {
+				return new FieldCodec<E>() {
+					public void write(DataOutput out, E obj) throws IOException {
+						Long value = (Long) field.get(obj);
+						out.writeBoolean(value != null);
+						if (value != null) {
+							out.writeLong(value.longValue());
+						}
+					}
+					public void read(DataInput in, E obj) throws IOException {
+						field.set(obj, in.readBoolean() ? Long.valueOf(in.readLong()) : null);
+					}
+				};
+			} else if (type == Boolean.class) {
+				return new FieldCodec<E>() {
+					public void write(DataOutput out, E obj) throws IOException {
+						Boolean value = (Boolean) field.get(obj);
+						out.writeByte(value == null ? -1 : (value.booleanValue() ? 1 : 0));
+					}
+					public void read(DataInput in, E obj) throws IOException {
+						byte b = in.readByte();
+						field.set(obj, b < 0 ? null : Boolean.valueOf(b != 0));
+					}
+				};
+			} else if (Enum.class.isAssignableFrom(type)) {
+				final Object[] values = type.getEnumConstants();
+				return new FieldCodec<E>() {
+					public void write(DataOutput out, E obj) throws IOException {
+						writeEnum(out, (Enum<?>) field.get(obj));
+					}
+					public void read(DataInput in, E obj) throws IOException {
+						field.set(obj, readEnum(in, values));
+					}
+				};
+			} else {
+				throw new IllegalArgumentException("Field " + field.getName() + " has unsupported type " + type.getName());
+			}
+		}
+	}
+
+	private static final SchemaCodec<IProblem> PROBLEM_CODEC = new SchemaCodec<IProblem>(Problem.SCHEMA);
+	private static final SchemaCodec<TestCase> TEST_CASE_CODEC = new SchemaCodec<TestCase>(TestCase.SCHEMA);
+	private static final SchemaCodec<TestResult> TEST_RESULT_CODEC = new SchemaCodec<TestResult>(TestResult.SCHEMA);
+
+	/**
+	 * Write a (possibly null) string.  Unlike {@link DataOutput#writeUTF(String)},
+	 * there is no limit on the length of the string.
+	 *
+	 * @param out the DataOutput to write to
+	 * @param s   the string to write
+	 * @throws IOException
+	 */
+	public static void writeString(DataOutput out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = s.getBytes(UTF8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Read a string written by {@link #writeString(DataOutput, String)}.
+	 *
+	 * @param in the DataInput to read from
+	 * @return the string (which could be null)
+	 * @throws IOException
+	 */
+	public static String readString(DataInput in) throws IOException {
+		int len = in.readInt();
+		if (len == -1) {
+			return null;
+		}
+		if (len < 0 || len > MAX_STRING_LENGTH) {
+			throw new IOException("Invalid string length " + len);
+		}
+		byte[] bytes = new byte[len];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Write a {@link Problem}.
+	 *
+	 * @param out     the DataOutput to write to
+	 * @param problem the {@link Problem} to write
+	 * @throws IOException
+	 */
+	public static void writeProblem(DataOutput out, Problem problem) throws IOException {
+		PROBLEM_CODEC.write(out, problem);
+	}
+
+	/**
+	 * Read a {@link Problem}.
+	 *
+	 * @param in the DataInput to read from
+	 * @return the {@link Problem}
+	 * @throws IOException
+	 */
+	public static Problem readProblem(DataInput in) throws IOException {
+		Problem problem = new Problem();
+		PROBLEM_CODEC.read(in, problem);
+		return problem;
+	}
+
+	/**
+	 * Write a list of {@link TestCase}s.
+	 *
+	 * @param out          the DataOutput to write to
+	 * @param testCaseList the list of {@link TestCase}s to write
+	 * @throws IOException
+	 */
+	public static void writeTestCaseList(DataOutput out, List<TestCase> testCaseList) throws IOException {
+		out.writeInt(testCaseList.size());
+		for (TestCase testCase : testCaseList) {
+			TEST_CASE_CODEC.write(out, testCase);
+		}
+	}
+
+	/**
+	 * Read a list of {@link TestCase}s.
+	 *
+	 * @param in the DataInput to read from
+	 * @return the list of {@link TestCase}s
+	 * @throws IOException
+	 */
+	public static List<TestCase> readTestCaseList(DataInput in) throws IOException {
+		int n = readCount(in);
+		List<TestCase> result = new ArrayList<TestCase>(n);
+		for (int i = 0; i < n; i++) {
+			TestCase testCase = new TestCase();
+			TEST_CASE_CODEC.read(in, testCase);
+			result.add(testCase);
+		}
+		return result;
+	}
+
+	/**
+	 * Write a {@link SubmissionResult}, including its {@link TestResult}s,
+	 * {@link CompilationResult}, and {@link SubmissionResultAnnotation}s.
+	 *
+	 * @param out    the DataOutput to write to
+	 * @param result the {@link SubmissionResult} to write
+	 * @throws IOException
+	 */
+	public static void writeSubmissionResult(DataOutput out, SubmissionResult result) throws IOException {
+		// Compilation result
+		CompilationResult compilationResult = result.getCompilationResult();
+		out.writeBoolean(compilationResult != null);
+		if (compilationResult != null) {
+			writeEnum(out, compilationResult.getOutcome());
+			CompilerDiagnostic[] diagnosticList = compilationResult.getCompilerDiagnosticList();
+			out.writeInt(diagnosticList != null ? diagnosticList.length : -1);
+			if (diagnosticList != null) {
+				for (CompilerDiagnostic d : diagnosticList) {
+					out.writeLong(d.getStartLine());
+					out.writeLong(d.getEndLine());
+					out.writeLong(d.getStartColumn());
+					out.writeLong(d.getEndColumn());
+					writeString(out, d.getMessage());
+				}
+			}
+		}
+
+		// Test results
+		TestResult[] testResults = result.getTestResults();
+		out.writeInt(testResults != null ? testResults.length : -1);
+		if (testResults != null) {
+			for (TestResult testResult : testResults) {
+				TEST_RESULT_CODEC.write(out, testResult);
+			}
+		}
+
+		// Annotations
+		List<SubmissionResultAnnotation> annotationList = result.getAnnotationList();
+		out.writeInt(annotationList.size());
+		for (SubmissionResultAnnotation annotation : annotationList) {
+			writeString(out, annotation.getKey());
+			writeString(out, annotation.getValue());
+		}
+	}
+
+	/**
+	 * Read a {@link SubmissionResult}.
+	 *
+	 * @param in the DataInput to read from
+	 * @return the {@link SubmissionResult}
+	 * @throws IOException
+	 */
+	public static SubmissionResult readSubmissionResult(DataInput in) throws IOException {
+		SubmissionResult result = new SubmissionResult();
+
+		// Compilation result
+		if (in.readBoolean()) {
+			CompilationResult compilationResult =
+					new CompilationResult(readEnum(in, CompilationOutcome.values()));
+			int numDiagnostics = readNullableCount(in);
+			if (numDiagnostics < 0) {
+				compilationResult.setCompilerDiagnosticList(null);
+			} else {
+				CompilerDiagnostic[] diagnosticList = new CompilerDiagnostic[numDiagnostics];
+				for (int i = 0; i < numDiagnostics; i++) {
+					long startLine = in.readLong();
+					long endLine = in.readLong();
+					long startColumn = in.readLong();
+					long endColumn = in.readLong();
+					String message = readString(in);
+					diagnosticList[i] = new CompilerDiagnostic(startLine, endLine, startColumn, endColumn, message);
+				}
+				compilationResult.setCompilerDiagnosticList(diagnosticList);
+			}
+			result.setCompilationResult(compilationResult);
+		}
+
+		// Test results
+		int numTestResults = readNullableCount(in);
+		if (numTestResults >= 0) {
+			TestResult[] testResults = new TestResult[numTestResults];
+			for (int i = 0; i < numTestResults; i++) {
+				testResults[i] = new TestResult();
+				TEST_RESULT_CODEC.read(in, testResults[i]);
+			}
+			result.setTestResults(testResults);
+		}
+
+		// Annotations
+		int numAnnotations = readCount(in);
+		for (int i = 0; i < numAnnotations; i++) {
+			String key = readString(in);
+			String value = readString(in);
+			result.addAnnotation(new SubmissionResultAnnotation(key, value));
+		}
+
+		return result;
+	}
+
+	private static void writeEnum(DataOutput out, Enum<?> value) throws IOException {
+		out.writeInt(value != null ? value.ordinal() : -1);
+	}
+
+	private static<T> T readEnum(DataInput in, T[] values) throws IOException {
+		int ordinal = in.readInt();
+		if (ordinal < 0) {
+			return null;
+		}
+		if (ordinal >= values.length) {
+			throw new IOException("Invalid enumeration value " + ordinal);
+		}
+		return values[ordinal];
+	}
+
+	private static int readCount(DataInput in) throws IOException {
+		int n = in.readInt();
+		if (n < 0 || n > MAX_COUNT) {
+			throw new IOException("Invalid count " + n);
+		}
+		return n;
+	}
+
+	/**
+	 * Read a count written for an array that may be null.
+	 *
+	 * @return the count, or -1 if the array is null
+	 */
+	private static int readNullableCount(DataInput in) throws IOException {
+		int n = in.readInt();
+		if (n < -1 || n > MAX_COUNT) {
+			throw new IOException("Invalid count " + n);
+		}
+		return n;
+	}
+}
@@ -0,0 +1,122 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model.wire;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestCase;
+
+/**
+ * {@link IWireFormat} using {@link BinaryConversion}.  No objects are
+ * serialized, so there is no per-connection table of previously
+ * written objects, and no class descriptors are sent.
+ * 
+ * @author David Hovemeyer
+ */
+public class BinaryWireFormat implements IWireFormat {
+	private ObjectInput in;
+	private ObjectOutput out;
+
+	/**
+	 * Constructor.  If an ObjectInputStream and ObjectOutputStream
+	 * are used (as when the hello message is sent using Java serialization),
+	 * data is read and written using their block data mode.
+	 * 
+	 * @param in    the ObjectInput to read from
+	 * @param out   the ObjectOutput to write to
+	 */
+	public BinaryWireFormat(ObjectInput in, ObjectOutput out) {
+		this.in = in;
+		this.out = out;
+	}
+
+	@Override
+	public int getFormatVersion() {
+		return BinaryConversion.FORMAT_VERSION;
+	}
+
+	@Override
+	public void writeInt(int value) throws IOException {
+		out.writeInt(value);
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		return in.readInt();
+	}
+
+	@Override
+	public void writeBoolean(boolean value) throws IOException {
+		out.writeBoolean(value);
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return in.readBoolean();
+	}
+
+	@Override
+	public void writeString(String s) throws IOException {
+		BinaryConversion.writeString(out, s);
+	}
+
+	@Override
+	public String readString() throws IOException {
+		return BinaryConversion.readString(in);
+	}
+
+	@Override
+	public void writeProblem(Problem problem) throws IOException {
+		BinaryConversion.writeProblem(out, problem);
+	}
+
+	@Override
+	public Problem readProblem() throws IOException {
+		return BinaryConversion.readProblem(in);
+	}
+
+	@Override
+	public void writeTestCaseList(List<TestCase> testCaseList) throws IOException {
+		BinaryConversion.writeTestCaseList(out, testCaseList);
+	}
+
+	@Override
+	public List<TestCase> readTestCaseList() throws IOException {
+		return BinaryConversion.readTestCaseList(in);
+	}
+
+	@Override
+	public void writeSubmissionResult(SubmissionResult result) throws IOException {
+		BinaryConversion.writeSubmissionResult(out, result);
+	}
+
+	@Override
+	public SubmissionResult readSubmissionResult() throws IOException {
+		return BinaryConversion.readSubmissionResult(in);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+}
@@ -0,0 +1,74 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model.wire;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestCase;
+
+/**
+ * Encoding of the values exchanged between the webapp and a builder
+ * once the connection has been established.  Reading and writing
+ * may be done by different threads, but callers must ensure that
+ * only one thread at a time writes a message.
+ * 
+ * @author David Hovemeyer
+ * @see WireFormatFactory
+ */
+public interface IWireFormat {
+	/**
+	 * @return the format version: 0 for Java serialization, otherwise a
+	 *         {@link BinaryConversion} format version
+	 */
+	public int getFormatVersion();
+
+	public void writeInt(int value) throws IOException;
+
+	public int readInt() throws IOException, ClassNotFoundException;
+
+	public void writeBoolean(boolean value) throws IOException;
+
+	public boolean readBoolean() throws IOException, ClassNotFoundException;
+
+	public void writeString(String s) throws IOException;
+
+	public String readString() throws IOException, ClassNotFoundException;
+
+	public void writeProblem(Problem problem) throws IOException;
+
+	public Problem readProblem() throws IOException, ClassNotFoundException;
+
+	public void writeTestCaseList(List<TestCase> testCaseList) throws IOException;
+
+	public List<TestCase> readTestCaseList() throws IOException, ClassNotFoundException;
+
+	public void writeSubmissionResult(SubmissionResult result) throws IOException;
+
+	public SubmissionResult readSubmissionResult() throws IOException, ClassNotFoundException;
+
+	/**
+	 * Flush the data written so far.  This should be called
+	 * at the end of each message.
+	 * 
+	 * @throws IOException
+	 */
+	public void flush() throws IOException;
+}
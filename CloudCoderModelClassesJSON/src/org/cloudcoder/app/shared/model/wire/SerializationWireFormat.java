@@ -0,0 +1,136 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model.wire;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestCase;
+
+/**
+ * {@link IWireFormat} using Java serialization.  This is the original
+ * format, and is used with builders that don't support negotiating
+ * a {@link BinaryConversion} format.
+ * 
+ * @author David Hovemeyer
+ */
+public class SerializationWireFormat implements IWireFormat {
+	private ObjectInputStream in;
+	private ObjectOutputStream out;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param in   the ObjectInputStream to read from
+	 * @param out  the ObjectOutputStream to write to
+	 */
+	public SerializationWireFormat(ObjectInputStream in, ObjectOutputStream out) {
+		this.in = in;
+		this.out = out;
+	}
+
+	@Override
+	public int getFormatVersion() {
+		return 0;
+	}
+
+	@Override
+	public void writeInt(int value) throws IOException {
+		out.writeObject(Integer.valueOf(value));
+	}
+
+	@Override
+	public int readInt() throws IOException, ClassNotFoundException {
+		return safeReadObject(Integer.class).intValue();
+	}
+
+	@Override
+	public void writeBoolean(boolean value) throws IOException {
+		out.writeObject(Boolean.valueOf(value));
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException, ClassNotFoundException {
+		return safeReadObject(Boolean.class).booleanValue();
+	}
+
+	@Override
+	public void writeString(String s) throws IOException {
+		out.writeObject(s);
+	}
+
+	@Override
+	public String readString() throws IOException, ClassNotFoundException {
+		return safeReadObject(String.class);
+	}
+
+	@Override
+	public void writeProblem(Problem problem) throws IOException {
+		out.writeObject(problem);
+	}
+
+	@Override
+	public Problem readProblem() throws IOException, ClassNotFoundException {
+		return safeReadObject(Problem.class);
+	}
+
+	@Override
+	public void writeTestCaseList(List<TestCase> testCaseList) throws IOException {
+		out.writeObject(testCaseList);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<TestCase> readTestCaseList() throws IOException, ClassNotFoundException {
+		return safeReadObject(List.class);
+	}
+
+	@Override
+	public void writeSubmissionResult(SubmissionResult result) throws IOException {
+		out.writeObject(result);
+	}
+
+	@Override
+	public SubmissionResult readSubmissionResult() throws IOException, ClassNotFoundException {
+		return safeReadObject(SubmissionResult.class);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		// Reset after each message so that the stream's table of
+		// previously-written objects doesn't grow without bound
+		// over the lifetime of the connection
+		out.reset();
+		out.flush();
+	}
+
+	private<E> E safeReadObject(Class<E> type) throws IOException, ClassNotFoundException {
+		Object o = in.readObject();
+		if (o == null) {
+			throw new IOException("Could not read!");
+		}
+		if (!type.isInstance(o)) {
+			throw new IOException("Expected " + type.getName() + ", got " + o.getClass().getName());
+		}
+		return type.cast(o);
+	}
+}
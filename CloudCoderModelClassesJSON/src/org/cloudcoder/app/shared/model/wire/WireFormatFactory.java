@@ -0,0 +1,90 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model.wire;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Create and negotiate {@link IWireFormat}s.  A builder that supports
+ * negotiation sends a byte with the highest format version it supports
+ * (see {@link #offer(ObjectInputStream, ObjectOutputStream)}).  The webapp
+ * replies with a byte containing the format version that will be
+ * used for the rest of the connection, which is never higher than
+ * the version offered (see {@link #accept(ObjectInputStream, ObjectOutputStream)}).
+ * Format version 0 means Java serialization.
+ * 
+ * @author David Hovemeyer
+ */
+public class WireFormatFactory {
+	/** Format version meaning that Java serialization is used. */
+	public static final int SERIALIZATION = 0;
+
+	/**
+	 * Create an {@link IWireFormat}.
+	 * 
+	 * @param formatVersion the format version
+	 * @param in            the ObjectInputStream to read from
+	 * @param out           the ObjectOutputStream to write to
+	 * @return the {@link IWireFormat}
+	 * @throws IOException if the format version is not supported
+	 */
+	public static IWireFormat create(int formatVersion, ObjectInputStream in, ObjectOutputStream out) throws IOException {
+		switch (formatVersion) {
+		case SERIALIZATION:
+			return new SerializationWireFormat(in, out);
+		case BinaryConversion.FORMAT_VERSION:
+			return new BinaryWireFormat(in, out);
+		default:
+			throw new IOException("Unsupported wire format version " + formatVersion);
+		}
+	}
+
+	/**
+	 * Builder side of the negotiation: offer the highest supported format
+	 * version, and wait for the webapp to choose one.
+	 * 
+	 * @param in   the ObjectInputStream to read from
+	 * @param out  the ObjectOutputStream to write to
+	 * @return the {@link IWireFormat} chosen by the webapp
+	 * @throws IOException
+	 */
+	public static IWireFormat offer(ObjectInputStream in, ObjectOutputStream out) throws IOException {
+		out.writeByte(BinaryConversion.FORMAT_VERSION);
+		out.flush();
+		return create(in.readByte(), in, out);
+	}
+
+	/**
+	 * Webapp side of the negotiation: read the format version offered
+	 * by the builder, and reply with the format version that will be used.
+	 * 
+	 * @param in   the ObjectInputStream to read from
+	 * @param out  the ObjectOutputStream to write to
+	 * @return the chosen {@link IWireFormat}
+	 * @throws IOException
+	 */
+	public static IWireFormat accept(ObjectInputStream in, ObjectOutputStream out) throws IOException {
+		int offered = in.readByte();
+		int formatVersion = Math.max(SERIALIZATION, Math.min(offered, BinaryConversion.FORMAT_VERSION));
+		out.writeByte(formatVersion);
+		out.flush();
+		return create(formatVersion, in, out);
+	}
+}
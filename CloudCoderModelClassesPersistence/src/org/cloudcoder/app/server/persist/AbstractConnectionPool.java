@@ -20,6 +20,8 @@ package org.cloudcoder.app.server.persist;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Abstract base class for {@link IConnectionPool} implementations.
@@ -37,12 +39,18 @@ public abstract class AbstractConnectionPool implements IConnectionPool {
 	}
 
 	private ThreadLocal<ThreadLocalConnection> tlc;
+	private AtomicLong numCheckouts;
+	private AtomicLong totalCheckoutTimeMillis;
+	private AtomicInteger numBusyConnections;
 
 	/**
 	 * Constructor.
 	 */
 	public AbstractConnectionPool() {
 		tlc = new ThreadLocal<ThreadLocalConnection>();
+		numCheckouts = new AtomicLong();
+		totalCheckoutTimeMillis = new AtomicLong();
+		numBusyConnections = new AtomicInteger();
 	}
 
 	@Override
@@ -50,7 +58,11 @@ public abstract class AbstractConnectionPool implements IConnectionPool {
 		ThreadLocalConnection c = tlc.get();
 		if (c == null) {
 			c = new ThreadLocalConnection();
+			long begin = System.currentTimeMillis();
 			c.conn = createConnection();
+			totalCheckoutTimeMillis.addAndGet(System.currentTimeMillis() - begin);
+			numCheckouts.incrementAndGet();
+			numBusyConnections.incrementAndGet();
 			c.refCount = 0;
 			tlc.set(c);
 		}
@@ -67,9 +79,35 @@ public abstract class AbstractConnectionPool implements IConnectionPool {
 		c.refCount--;
 		if (c.refCount == 0) {
 			tlc.set(null);
+			numBusyConnections.decrementAndGet();
 			closeConnection(c.conn);
 		}
 	}
+	
+	@Override
+	public long getNumCheckouts() {
+		return numCheckouts.get();
+	}
+	
+	@Override
+	public long getTotalCheckoutTimeMillis() {
+		return totalCheckoutTimeMillis.get();
+	}
+	
+	@Override
+	public int getNumBusyConnections() {
+		return numBusyConnections.get();
+	}
+	
+	/**
+	 * Get the number of idle connections.  The default implementation
+	 * returns 0, which is appropriate for implementations that
+	 * don't keep connections open when they are not in use.
+	 */
+	@Override
+	public int getNumIdleConnections() {
+		return 0;
+	}
 
 	/**
 	 * Downcall method to create a new {@link Connection} to the database.
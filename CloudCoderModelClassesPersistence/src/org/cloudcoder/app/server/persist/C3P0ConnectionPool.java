@@ -21,15 +21,43 @@ package org.cloudcoder.app.server.persist;
 import java.sql.Connection;
 import java.sql.SQLException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.mchange.v2.c3p0.ComboPooledDataSource;
 
 /**
- * Implementation of {@link IConnectionPool} using the C3P0 library. 
+ * Implementation of {@link IConnectionPool} using the C3P0 library.
+ * Connections (and their prepared statements) are kept open and
+ * reused across transactions, so that a transaction doesn't have
+ * to pay the cost of establishing a new connection to the database.
+ * 
+ * <p>The pool is configured by the following optional database
+ * configuration properties (shown relative to the database property prefix,
+ * e.g., <code>cloudcoder.db</code>):
+ * <ul>
+ * <li><code>pool.minSize</code>: minimum number of open connections (default 10)</li>
+ * <li><code>pool.maxSize</code>: maximum number of open connections (default 150)</li>
+ * <li><code>pool.maxStatements</code>: maximum number of cached prepared
+ *     statements, 0 to disable statement caching (default 180)</li>
+ * <li><code>pool.idleTestPeriod</code>: how often (in seconds) idle
+ *     connections are tested, 0 to disable (default 300)</li>
+ * <li><code>pool.maxIdleTime</code>: how long (in seconds) a connection can be
+ *     idle before it is closed, 0 for no limit (default 3600)</li>
+ * <li><code>pool.checkoutTimeout</code>: how long (in milliseconds) to wait for a
+ *     connection when all connections are in use, 0 to wait indefinitely (default 0)</li>
+ * <li><code>pool.leakTimeout</code>: if nonzero, connections that are not
+ *     released within this many seconds are assumed to have been leaked:
+ *     they are closed, and the stack trace of the code that obtained them
+ *     is logged (default 0)</li>
+ * </ul>
  * 
  * @author David Hovemeyer
  * @see http://www.mchange.com/projects/c3p0/index.html
  */
 public class C3P0ConnectionPool extends AbstractConnectionPool {
+	private static final Logger logger = LoggerFactory.getLogger(C3P0ConnectionPool.class);
+	
 	private ComboPooledDataSource cpds;
 	
 	/**
@@ -53,12 +81,40 @@ public class C3P0ConnectionPool extends AbstractConnectionPool {
 		cpds.setPassword(config.getPasswd());
 		
 		// Turn on connection pooling
-		// TODO: these should be tunable based on CloudCoder config properties
-		cpds.setMinPoolSize(10);
-		cpds.setMaxPoolSize(150);
+		int minSize = getIntProperty(config, "pool.minSize", 10);
+		int maxSize = getIntProperty(config, "pool.maxSize", 150);
+		cpds.setMinPoolSize(minSize);
+		cpds.setInitialPoolSize(minSize);
+		cpds.setMaxPoolSize(maxSize);
+		cpds.setCheckoutTimeout(getIntProperty(config, "pool.checkoutTimeout", 0));
 		
 		// Turn on prepared statement pooling
-		cpds.setMaxStatements(180);
+		cpds.setMaxStatements(getIntProperty(config, "pool.maxStatements", 180));
+		
+		// Periodically test idle connections, so that connections closed
+		// by the server (e.g., because of MySQL's wait_timeout) are discarded
+		// rather than handed out
+		cpds.setPreferredTestQuery("SELECT 1");
+		cpds.setIdleConnectionTestPeriod(getIntProperty(config, "pool.idleTestPeriod", 300));
+		cpds.setMaxIdleTime(getIntProperty(config, "pool.maxIdleTime", 3600));
+		
+		// Optional leak detection
+		int leakTimeout = getIntProperty(config, "pool.leakTimeout", 0);
+		if (leakTimeout > 0) {
+			cpds.setUnreturnedConnectionTimeout(leakTimeout);
+			cpds.setDebugUnreturnedConnectionStackTraces(true);
+		}
+		
+		logger.info("Database connection pool: minSize={}, maxSize={}", minSize, maxSize);
+	}
+	
+	private static int getIntProperty(JDBCDatabaseConfig.ConfigProperties config, String name, int defaultValue) throws SQLException {
+		String value = config.getProperty(name, String.valueOf(defaultValue));
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new SQLException("Invalid value for database property " + name + ": " + value);
+		}
 	}
 	
 	@Override
@@ -77,4 +133,14 @@ public class C3P0ConnectionPool extends AbstractConnectionPool {
 		// to the connection pool
 		conn.close();
 	}
+	
+	@Override
+	public int getNumIdleConnections() {
+		try {
+			return cpds.getNumIdleConnectionsDefaultUser();
+		} catch (SQLException e) {
+			logger.warn("Could not get number of idle connections", e);
+			return 0;
+		}
+	}
 }
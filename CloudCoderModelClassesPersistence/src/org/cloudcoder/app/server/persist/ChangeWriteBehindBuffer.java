@@ -0,0 +1,270 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.Change;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-behind buffer for {@link Change}s.  Rather than storing each
+ * batch of changes sent by a client in its own transaction, changes
+ * from all users are queued and periodically stored by a background
+ * thread, using one transaction per (large) batch.  Changes are stored
+ * in the order they were added, so each user's changes are assigned
+ * event ids in the correct order.
+ * 
+ * <p>Durability: a client's changes are acknowledged before they are
+ * stored.  Queued changes are stored when the buffer is shut down,
+ * but if the webapp crashes, up to one flush interval worth of changes
+ * may be lost.  If a batch fails to be stored, the changes added by each
+ * call to {@link #add(Change[])} are retried in separate transactions,
+ * so that only the changes that can't be stored (i.e., the changes that
+ * would have failed without buffering) are discarded; the number of
+ * discarded changes is available from {@link #getNumDroppedChanges()}.
+ * 
+ * <p>Storing a change sets its event id.  Because a failed transaction
+ * may already have assigned event ids, the event ids of the changes in
+ * a failed transaction are reset to 0, so a discarded change always has
+ * event id 0.  Event ids are only final once {@link #flush()} returns.
+ * Code that needs to read a user's changes from the
+ * database (for example, to determine the full text of a submission)
+ * should call {@link #flush()} first.
+ * 
+ * <p>Configuration properties:
+ * <ul>
+ * <li><code>cloudcoder.db.changebuffer.flushInterval</code>: milliseconds
+ *     between flushes (default 250)</li>
+ * <li><code>cloudcoder.db.changebuffer.maxQueued</code>: maximum number of
+ *     queued changes (default 10000).  When the buffer is full, the thread adding
+ *     changes flushes the buffer itself, which slows down clients until
+ *     the database catches up.</li>
+ * <li><code>cloudcoder.db.changebuffer.maxBatchSize</code>: maximum number
+ *     of changes stored in a single transaction (default 1000)</li>
+ * </ul>
+ * 
+ * @author David Hovemeyer
+ */
+public class ChangeWriteBehindBuffer {
+	private static final Logger logger = LoggerFactory.getLogger(ChangeWriteBehindBuffer.class);
+	
+	private static volatile ChangeWriteBehindBuffer instance;
+	
+	/**
+	 * Set the singleton instance.
+	 * 
+	 * @param buffer the singleton instance, or null if changes should not be buffered
+	 */
+	public static void setInstance(ChangeWriteBehindBuffer buffer) {
+		instance = buffer;
+	}
+	
+	/**
+	 * Get the singleton instance.
+	 * 
+	 * @return the singleton instance, or null if changes should not be buffered
+	 */
+	public static ChangeWriteBehindBuffer getInstance() {
+		return instance;
+	}
+	
+	private class Flusher implements Runnable {
+		@Override
+		public void run() {
+			while (!shutdownRequested) {
+				try {
+					Thread.sleep(flushInterval);
+				} catch (InterruptedException e) {
+					// Shutdown requested
+				}
+				flush();
+			}
+		}
+	}
+	
+	private final long flushInterval;
+	private final int maxQueued;
+	private final int maxBatchSize;
+	private Object lock;
+	private List<Change[]> pending;
+	private int numPending;
+	private long numDroppedChanges;
+	private Object flushLock;
+	private Thread flusherThread;
+	private volatile boolean shutdownRequested;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param config configuration properties
+	 */
+	public ChangeWriteBehindBuffer(Properties config) {
+		this.flushInterval = Long.parseLong(config.getProperty("cloudcoder.db.changebuffer.flushInterval", "250"));
+		this.maxQueued = Integer.parseInt(config.getProperty("cloudcoder.db.changebuffer.maxQueued", "10000"));
+		this.maxBatchSize = Integer.parseInt(config.getProperty("cloudcoder.db.changebuffer.maxBatchSize", "1000"));
+		this.lock = new Object();
+		this.pending = new ArrayList<Change[]>();
+		this.flushLock = new Object();
+		logger.info("Change write-behind buffer: flushInterval={}ms, maxQueued={}, maxBatchSize={}",
+				new Object[]{ flushInterval, maxQueued, maxBatchSize });
+	}
+	
+	/**
+	 * Start the background thread that flushes the buffer.
+	 */
+	public void start() {
+		flusherThread = new Thread(new Flusher(), "ChangeWriteBehindBuffer");
+		flusherThread.setDaemon(true);
+		flusherThread.start();
+	}
+	
+	/**
+	 * Stop the background thread, and store any remaining queued changes.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void shutdown() throws InterruptedException {
+		shutdownRequested = true;
+		flusherThread.interrupt();
+		flusherThread.join();
+		flush();
+	}
+	
+	/**
+	 * Add changes to be stored.
+	 * 
+	 * @param changeList the changes to store
+	 */
+	public void add(Change[] changeList) {
+		synchronized (lock) {
+			if (numPending + changeList.length <= maxQueued) {
+				pending.add(changeList);
+				numPending += changeList.length;
+				return;
+			}
+		}
+		
+		// The buffer is full: store the queued changes and these changes
+		// in this thread, so that the client waits for the database
+		logger.warn("Change write-behind buffer is full, storing changes synchronously");
+		flush();
+		Database.getInstance().storeChanges(changeList);
+	}
+	
+	/**
+	 * Store all queued changes.  When this method returns, all changes
+	 * added before it was called have been stored (or discarded
+	 * because of an error).
+	 */
+	public void flush() {
+		// Only one thread can store changes at a time, so that
+		// changes are stored in the order they were added
+		synchronized (flushLock) {
+			List<Change[]> toStore;
+			int numToStore;
+			synchronized (lock) {
+				if (pending.isEmpty()) {
+					return;
+				}
+				toStore = pending;
+				numToStore = numPending;
+				pending = new ArrayList<Change[]>();
+				numPending = 0;
+			}
+			
+			// Each batch consists of the changes from one or more calls to add()
+			int start = 0;
+			while (start < toStore.size()) {
+				int end = start + 1;
+				int batchSize = toStore.get(start).length;
+				while (end < toStore.size() && batchSize + toStore.get(end).length <= maxBatchSize) {
+					batchSize += toStore.get(end).length;
+					end++;
+				}
+				storeBatch(toStore.subList(start, end), batchSize);
+				start = end;
+			}
+			
+			if (logger.isDebugEnabled()) {
+				logger.debug("Stored {} buffered changes", numToStore);
+			}
+		}
+	}
+	
+	/**
+	 * Store a batch of changes in a single transaction.  If the transaction fails,
+	 * the changes from each call to add() are stored in separate transactions.
+	 * 
+	 * @param changeLists the changes from one or more calls to add()
+	 * @param batchSize   the total number of changes
+	 */
+	private void storeBatch(List<Change[]> changeLists, int batchSize) {
+		if (changeLists.size() > 1) {
+			List<Change> batch = new ArrayList<Change>(batchSize);
+			for (Change[] changeList : changeLists) {
+				batch.addAll(Arrays.asList(changeList));
+			}
+			Change[] batchList = batch.toArray(new Change[batch.size()]);
+			try {
+				Database.getInstance().storeChanges(batchList);
+				return;
+			} catch (RuntimeException e) {
+				logger.warn("Could not store " + batchSize + " buffered changes, retrying separately", e);
+				clearEventIds(batchList);
+			}
+		}
+		
+		for (Change[] changeList : changeLists) {
+			try {
+				Database.getInstance().storeChanges(changeList);
+			} catch (RuntimeException e) {
+				logger.error("Could not store " + changeList.length + " buffered changes, discarding them", e);
+				clearEventIds(changeList);
+				synchronized (lock) {
+					numDroppedChanges += changeList.length;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Reset the event ids of changes that weren't stored to 0.
+	 * 
+	 * @param changeList the changes
+	 */
+	private static void clearEventIds(Change[] changeList) {
+		for (Change change : changeList) {
+			change.setEventId(0);
+		}
+	}
+	
+	/**
+	 * @return number of buffered changes that were discarded because they
+	 *         could not be stored
+	 */
+	public long getNumDroppedChanges() {
+		synchronized (lock) {
+			return numDroppedChanges;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.util.Properties;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Servlet context listener to create and start the {@link ChangeWriteBehindBuffer}
+ * if the <code>cloudcoder.db.changebuffer.enable</code> context parameter
+ * is true, and to store any remaining buffered changes when the webapp
+ * is shut down.
+ * 
+ * @author David Hovemeyer
+ */
+public class ChangeWriteBehindBufferServletContextListener implements ServletContextListener {
+	private static final Logger logger = LoggerFactory.getLogger(ChangeWriteBehindBufferServletContextListener.class);
+	
+	private static final String[] PROPERTIES = {
+		"cloudcoder.db.changebuffer.flushInterval",
+		"cloudcoder.db.changebuffer.maxQueued",
+		"cloudcoder.db.changebuffer.maxBatchSize",
+	};
+	
+	@Override
+	public void contextInitialized(ServletContextEvent e) {
+		ServletContext ctx = e.getServletContext();
+		if (!Boolean.parseBoolean(ctx.getInitParameter("cloudcoder.db.changebuffer.enable"))) {
+			return;
+		}
+		
+		Properties config = new Properties();
+		for (String name : PROPERTIES) {
+			String value = ctx.getInitParameter(name);
+			if (value != null) {
+				config.setProperty(name, value);
+			}
+		}
+		
+		ChangeWriteBehindBuffer buffer = new ChangeWriteBehindBuffer(config);
+		buffer.start();
+		ChangeWriteBehindBuffer.setInstance(buffer);
+	}
+	
+	@Override
+	public void contextDestroyed(ServletContextEvent e) {
+		ChangeWriteBehindBuffer buffer = ChangeWriteBehindBuffer.getInstance();
+		if (buffer != null) {
+			ChangeWriteBehindBuffer.setInstance(null);
+			try {
+				buffer.shutdown();
+			} catch (InterruptedException ex) {
+				logger.error("Interrupted while storing buffered changes", ex);
+			}
+		}
+	}
+}
@@ -0,0 +1,696 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudcoder.app.shared.model.ApplyChangeToTextDocument;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.ITextDocument;
+import org.cloudcoder.app.shared.model.RopeTextDocument;
+import org.cloudcoder.app.shared.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded in-memory cache of the current program text of each
+ * (user, problem), reconstructed from the user's stored {@link Change}s.
+ * Each entry records the event id of the last stored change reflected
+ * in the text, so when the database has newer changes
+ * (e.g., a full-text change stored on submission), only those changes
+ * need to be replayed.  Changes logged by the client are applied to the
+ * cached text as they are stored, so normally no replay is needed at all.
+ *
+ * <p>Changes logged through {@link #storeChanges(User, Change[])} may be queued
+ * in the {@link ChangeWriteBehindBuffer}.  They are applied to the cached
+ * text immediately, but aren't considered stored until the buffer has been
+ * flushed, at which point each stored change has its final event id,
+ * and each change the buffer failed to store has event id 0.
+ * If any change failed to be stored, the entry is discarded and rebuilt
+ * from the database.
+ *
+ * <p>Checkpoints: after enough changes have been applied to the cached text
+ * of a (user, problem) since its last full-text change, a synthetic
+ * {@link ChangeType#FULL_TEXT} change containing the cached text is stored.
+ * This bounds the number of changes that must be replayed to reconstruct
+ * the text, both here and in tools that replay the change log.
+ * Checkpoints are stored by a background thread, so logging changes
+ * isn't slowed down.  The text of a checkpoint always comes from a fresh
+ * replay of the stored changes, never from the incrementally updated
+ * cached text, so an error in the cached text can't be made permanent
+ * in the change log.  If the cached text doesn't match the replay, the
+ * entry is replaced by the replayed text.
+ *
+ * <p>Configuration properties:
+ * <ul>
+ * <li><code>cloudcoder.db.currenttext.maxEntries</code>: maximum number of
+ *     cached (user, problem) entries (default 2000)</li>
+ * <li><code>cloudcoder.db.checkpoint.maxChanges</code>: store a checkpoint
+ *     after this many changes (default 500, 0 to disable)</li>
+ * <li><code>cloudcoder.db.checkpoint.maxBytes</code>: store a checkpoint
+ *     after this many characters of inserted/removed text (default 32768,
+ *     0 to disable)</li>
+ * </ul>
+ *
+ * @author David Hovemeyer
+ */
+public class CurrentTextCache {
+	private static final Logger logger = LoggerFactory.getLogger(CurrentTextCache.class);
+
+	private static volatile CurrentTextCache instance = new CurrentTextCache(new Properties());
+
+	/**
+	 * Set the singleton instance.
+	 *
+	 * @param cache the singleton instance
+	 */
+	public static void setInstance(CurrentTextCache cache) {
+		instance = cache;
+	}
+
+	/**
+	 * Get the singleton instance.
+	 *
+	 * @return the singleton instance
+	 */
+	public static CurrentTextCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Cached text for one (user, problem).
+	 * All fields are protected by the Entry's monitor.
+	 */
+	private static class Entry {
+		/** True if the text has been reconstructed from the database. */
+		boolean valid;
+
+		/** The current text. */
+		ITextDocument doc;
+
+		/** Event id of the last stored change reflected in the text. */
+		int lastEventId;
+
+		/** Changes applied to the text that may not have been stored yet, in order. */
+		List<Change> unstored = new ArrayList<Change>();
+
+		/** Number of changes applied since the last full-text change. */
+		int numChangesSinceCheckpoint;
+
+		/** Amount of text inserted/removed since the last full-text change. */
+		long numBytesSinceCheckpoint;
+
+		/** True if a checkpoint task has been scheduled but hasn't run yet. */
+		boolean checkpointPending;
+
+		void reset() {
+			valid = false;
+			doc = null;
+			unstored.clear();
+			numChangesSinceCheckpoint = 0;
+			numBytesSinceCheckpoint = 0L;
+		}
+
+		/**
+		 * Keep track of the changes applied since the last full-text change.
+		 */
+		void countChange(Change change) {
+			if (change.getType() == ChangeType.FULL_TEXT) {
+				numChangesSinceCheckpoint = 0;
+				numBytesSinceCheckpoint = 0L;
+			} else {
+				numChangesSinceCheckpoint++;
+				if (change.getText() != null) {
+					numBytesSinceCheckpoint += change.getText().length();
+				}
+			}
+		}
+
+		/**
+		 * Advance lastEventId past the changes applied to the text.
+		 * Must only be called once all of the changes have been
+		 * stored or discarded (e.g., after the {@link ChangeWriteBehindBuffer}
+		 * has been flushed), since event ids aren't final until then.
+		 *
+		 * @return true if successful, false if some change could not be stored
+		 *         (i.e., its event id is 0)
+		 */
+		boolean advance() {
+			for (Change change : unstored) {
+				if (change.getEventId() <= 0) {
+					return false;
+				}
+				lastEventId = change.getEventId();
+			}
+			unstored.clear();
+			return true;
+		}
+	}
+
+	/**
+	 * Store a checkpoint of the cached text of a (user, problem).
+	 */
+	private class CheckpointTask implements Runnable {
+		private final Entry entry;
+		private final String key;
+		private final User user;
+		private final int problemId;
+
+		public CheckpointTask(Entry entry, String key, User user, int problemId) {
+			this.entry = entry;
+			this.key = key;
+			this.user = user;
+			this.problemId = problemId;
+		}
+
+		@Override
+		public void run() {
+			try {
+				synchronized (entry) {
+					entry.checkpointPending = false;
+
+					// Bring the cached text up to date with the database,
+					// so that the checkpoint follows all stored changes
+					String text = doGetCurrentText(entry, key, user, problemId, false);
+					if (text == null || !entry.valid || !needsCheckpoint(entry)) {
+						return;
+					}
+
+					// Build the checkpoint from a fresh replay of the stored changes,
+					// and check the cached text against it
+					Change mostRecent = getDatabase().getMostRecentChange(user, problemId);
+					if (mostRecent == null) {
+						entry.reset();
+						return;
+					}
+					String replayed = rebuild(entry, user, problemId, mostRecent);
+					if (!entry.valid) {
+						return;
+					}
+					if (!replayed.equals(text)) {
+						logger.warn("Cached text for {} did not match the stored changes, replaced it", key);
+						countMismatch();
+					}
+					text = replayed;
+
+					// Store the checkpoint directly: all of this user's changes
+					// for this problem have been stored, and no more can be
+					// added while we hold the entry's lock.  It has the
+					// timestamp of the most recent change it includes.
+					Change checkpoint = new Change(
+							ChangeType.FULL_TEXT,
+							0, 0, 0, 0,
+							mostRecent.getEvent().getTimestamp(),
+							user.getId(), problemId,
+							text);
+					getDatabase().storeChanges(new Change[]{checkpoint});
+					// Apply the checkpoint like any other full-text change,
+					// so that the cached text matches a replay from it
+					new ApplyChangeToTextDocument().apply(checkpoint, entry.doc);
+					entry.lastEventId = checkpoint.getEventId();
+					entry.countChange(checkpoint);
+					countCheckpoint();
+				}
+			} catch (RuntimeException e) {
+				logger.error("Could not store checkpoint for " + key, e);
+			}
+		}
+	}
+
+	private final int maxEntries;
+	private final int maxChanges;
+	private final long maxBytes;
+	private final Object lock;
+	private final Map<String, Entry> entryMap;
+	private final ExecutorService checkpointExecutor;
+	private final IDatabase db;
+	private long numHits;
+	private long numPartialReplays;
+	private long numMisses;
+	private long numCheckpoints;
+	private long numMismatches;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param config configuration properties
+	 */
+	public CurrentTextCache(Properties config) {
+		this(config, null);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param config configuration properties
+	 * @param db     the database to use, or null to use the default
+	 *               ({@link Database#getInstance()})
+	 */
+	CurrentTextCache(Properties config, IDatabase db) {
+		this.db = db;
+		this.maxEntries = Integer.parseInt(config.getProperty("cloudcoder.db.currenttext.maxEntries", "2000"));
+		this.maxChanges = Integer.parseInt(config.getProperty("cloudcoder.db.checkpoint.maxChanges", "500"));
+		this.maxBytes = Long.parseLong(config.getProperty("cloudcoder.db.checkpoint.maxBytes", "32768"));
+		this.lock = new Object();
+		this.entryMap = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > CurrentTextCache.this.maxEntries;
+			}
+		};
+		this.checkpointExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "CurrentTextCacheCheckpoint");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		logger.info("Current text cache: maxEntries={}, checkpoint maxChanges={}, maxBytes={}",
+				new Object[]{ maxEntries, maxChanges, maxBytes });
+	}
+
+	private IDatabase getDatabase() {
+		return db != null ? db : Database.getInstance();
+	}
+
+	/**
+	 * Stop the background thread, waiting for pending checkpoints to be stored.
+	 *
+	 * @throws InterruptedException
+	 */
+	public void shutdown() throws InterruptedException {
+		checkpointExecutor.shutdown();
+		if (!checkpointExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+			logger.warn("Timed out waiting for checkpoints to be stored");
+		}
+	}
+
+	/**
+	 * Store changes logged by a client, using the {@link ChangeWriteBehindBuffer}
+	 * if it is enabled, and apply them to the cached text of the
+	 * (user, problem) they belong to.  A checkpoint is scheduled
+	 * if enough changes have been applied since the last full-text change.
+	 *
+	 * @param user       the authenticated user whose changes these are
+	 * @param changeList the changes to store
+	 */
+	public void storeChanges(User user, Change[] changeList) {
+		// Event ids are assigned when changes are stored
+		for (Change change : changeList) {
+			change.setEventId(0);
+		}
+
+		String key = getKey(changeList);
+		if (key == null) {
+			// Changes for more than one (user, problem): forget about them.
+			// The entries are invalidated after the changes are stored,
+			// so that they can't be rebuilt without them.
+			doStoreChanges(changeList);
+			for (Change change : changeList) {
+				invalidate(change.getEvent().getUserId(), change.getEvent().getProblemId());
+			}
+			return;
+		}
+
+		Entry entry = getEntry(key);
+		try {
+			doStoreAndApplyChanges(entry, key, user, changeList);
+		} finally {
+			// If the entry was evicted or invalidated while the changes were
+			// being stored, a new entry for the same (user, problem) might have
+			// been brought up to date with the database before they were stored
+			boolean current;
+			synchronized (lock) {
+				current = entryMap.get(key) == entry;
+			}
+			if (!current) {
+				invalidate(key);
+			}
+		}
+	}
+
+	/**
+	 * Store changes and apply them to the cached text in given entry.
+	 */
+	private void doStoreAndApplyChanges(Entry entry, String key, User user, Change[] changeList) {
+		// Store and apply changes while holding the entry's lock, so that
+		// changes are applied in the same order they are stored, and so that
+		// the entry can't be brought up to date with the database while
+		// the changes are being stored.  (This is done even if the cached
+		// text isn't valid yet.)
+		synchronized (entry) {
+			boolean buffered = doStoreChanges(changeList);
+			if (!entry.valid) {
+				// The changes can't be applied until the entry is rebuilt
+				// from the database, but count them, so that a checkpoint
+				// (which rebuilds the entry first) is still scheduled
+				for (Change change : changeList) {
+					entry.countChange(change);
+				}
+			} else {
+				try {
+					ApplyChangeToTextDocument applicator = new ApplyChangeToTextDocument();
+					for (Change change : changeList) {
+						applicator.apply(change, entry.doc);
+						entry.unstored.add(change);
+						entry.countChange(change);
+					}
+					// Buffered changes are accounted for when the entry is next
+					// brought up to date with the database (after a flush)
+					if (!buffered && !entry.advance()) {
+						logger.warn("Changes were not stored, discarding cached text for {}", key);
+						entry.reset();
+						return;
+					}
+				} catch (RuntimeException e) {
+					logger.warn("Exception applying changes to cached text for " + key, e);
+					entry.reset();
+					return;
+				}
+			}
+
+			if (!entry.checkpointPending && needsCheckpoint(entry)) {
+				try {
+					checkpointExecutor.execute(new CheckpointTask(
+							entry, key, user, changeList[0].getEvent().getProblemId()));
+					entry.checkpointPending = true;
+				} catch (RejectedExecutionException e) {
+					// Shutting down
+				}
+			}
+		}
+	}
+
+	private boolean needsCheckpoint(Entry entry) {
+		return (maxChanges > 0 && entry.numChangesSinceCheckpoint >= maxChanges)
+				|| (maxBytes > 0L && entry.numBytesSinceCheckpoint >= maxBytes);
+	}
+
+	/**
+	 * Get the current text for given user and problem.
+	 * Any changes queued in the {@link ChangeWriteBehindBuffer} are stored first.
+	 *
+	 * @param user      the user
+	 * @param problemId the problem id
+	 * @return the current text, or null if the user has no changes for the problem
+	 */
+	public String getCurrentText(User user, int problemId) {
+		String key = getKey(user.getId(), problemId);
+		Entry entry = getEntry(key);
+		synchronized (entry) {
+			return doGetCurrentText(entry, key, user, problemId, true);
+		}
+	}
+
+	/**
+	 * Get the entry with given key, creating it if necessary.
+	 */
+	private Entry getEntry(String key) {
+		synchronized (lock) {
+			Entry entry = entryMap.get(key);
+			if (entry == null) {
+				entry = new Entry();
+				entryMap.put(key, entry);
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * Bring the cached text in given entry up to date with the database.
+	 * The caller must hold the entry's lock.
+	 *
+	 * @param count true if the cache hit/miss counters should be updated
+	 * @return the current text, or null if the user has no changes for the problem
+	 */
+	private String doGetCurrentText(Entry entry, String key, User user, int problemId, boolean count) {
+		// Make sure that any buffered changes have been stored.
+		// Because changes for this entry are only added while
+		// holding its lock, all of them will have been stored
+		// (or discarded) after the flush.
+		ChangeWriteBehindBuffer changeBuffer = ChangeWriteBehindBuffer.getInstance();
+		if (changeBuffer != null) {
+			changeBuffer.flush();
+		}
+		if (entry.valid && !entry.advance()) {
+			logger.warn("Buffered changes were not stored, discarding cached text for {}", key);
+			entry.reset();
+		}
+
+		Change mostRecent = getDatabase().getMostRecentChange(user, problemId);
+		if (mostRecent == null) {
+			// Presumably, user has never worked on this problem.
+			// The text is empty until the first change is stored,
+			// which can then be applied to it.
+			if (!entry.valid || entry.lastEventId != -1) {
+				entry.reset();
+				entry.doc = new RopeTextDocument();
+				entry.lastEventId = -1;
+				entry.valid = true;
+			}
+			return null;
+		}
+
+		if (entry.valid && mostRecent.getEventId() == entry.lastEventId) {
+			// Cached text is up to date
+			if (count) {
+				countHit();
+			}
+			return entry.doc.getText();
+		}
+
+		if (entry.valid && mostRecent.getEventId() > entry.lastEventId) {
+			// Only replay the changes newer than the cached text
+			if (count) {
+				countPartialReplay();
+			}
+			List<Change> deltaList = getDatabase().getAllChangesNewerThan(user, problemId, entry.lastEventId);
+			try {
+				applyDeltas(entry, deltaList);
+				return entry.doc.getText();
+			} catch (RuntimeException e) {
+				logger.warn("Exception applying deltas to cached program text", e);
+			}
+		} else if (count) {
+			countMiss();
+		}
+
+		return rebuild(entry, user, problemId, mostRecent);
+	}
+
+	/**
+	 * Reconstruct the current text from the most recent full-text change
+	 * (if any) and all later changes.
+	 */
+	private String rebuild(Entry entry, User user, int problemId, Change mostRecent) {
+		entry.reset();
+		entry.doc = new RopeTextDocument();
+
+		Change fullText;
+		if (mostRecent.getType() == ChangeType.FULL_TEXT) {
+			// If the most recent Change is a full text change, great
+			fullText = mostRecent;
+		} else {
+			// Otherwise, find the most recent full-text change (if any)
+			fullText = getDatabase().getMostRecentFullTextChange(user, problemId);
+		}
+
+		// Find the base revision (event id) that the deltas are relative to, if any.
+		if (fullText != null) {
+			// found a full-text change to use as a base revision
+			entry.doc.setText(fullText.getText());
+			entry.lastEventId = fullText.getEventId();
+		} else {
+			// no full-text change exists: base revision is implicitly the empty document
+			entry.lastEventId = -1;
+		}
+
+		// Apply all deltas that follow the base revision.
+		try {
+			if (fullText != mostRecent) {
+				applyDeltas(entry, getDatabase().getAllChangesNewerThan(user, problemId, entry.lastEventId));
+			}
+			entry.valid = true;
+			return entry.doc.getText();
+		} catch (RuntimeException e) {
+			// FIXME: should do something smarter than this
+			logger.warn("Exception applying deltas to program text", e);
+			entry.reset();
+			return fullText != null ? fullText.getText() : "";
+		}
+	}
+
+	private static void applyDeltas(Entry entry, List<Change> deltaList) {
+		ApplyChangeToTextDocument applicator = new ApplyChangeToTextDocument();
+		for (Change delta : deltaList) {
+			applicator.apply(delta, entry.doc);
+			entry.lastEventId = delta.getEventId();
+			entry.countChange(delta);
+		}
+	}
+
+	/**
+	 * Discard the cached text for given user and problem.
+	 *
+	 * @param userId    the user id
+	 * @param problemId the problem id
+	 */
+	public void invalidate(int userId, int problemId) {
+		invalidate(getKey(userId, problemId));
+	}
+
+	private void invalidate(String key) {
+		Entry entry;
+		synchronized (lock) {
+			entry = entryMap.remove(key);
+		}
+		if (entry != null) {
+			synchronized (entry) {
+				entry.reset();
+			}
+		}
+	}
+
+	/**
+	 * @return number of requests for which the cached text was up to date
+	 */
+	public long getNumHits() {
+		synchronized (lock) {
+			return numHits;
+		}
+	}
+
+	/**
+	 * @return number of requests for which newer changes were applied to the cached text
+	 */
+	public long getNumPartialReplays() {
+		synchronized (lock) {
+			return numPartialReplays;
+		}
+	}
+
+	/**
+	 * @return number of requests for which the text had to be reconstructed
+	 */
+	public long getNumMisses() {
+		synchronized (lock) {
+			return numMisses;
+		}
+	}
+
+	/**
+	 * @return number of checkpoints stored
+	 */
+	public long getNumCheckpoints() {
+		synchronized (lock) {
+			return numCheckpoints;
+		}
+	}
+
+	/**
+	 * @return number of times the cached text did not match a replay of the
+	 *         stored changes when a checkpoint was built
+	 */
+	public long getNumMismatches() {
+		synchronized (lock) {
+			return numMismatches;
+		}
+	}
+
+	private void countHit() {
+		synchronized (lock) {
+			numHits++;
+		}
+	}
+
+	private void countPartialReplay() {
+		synchronized (lock) {
+			numPartialReplays++;
+		}
+	}
+
+	private void countMiss() {
+		synchronized (lock) {
+			numMisses++;
+		}
+	}
+
+	private void countCheckpoint() {
+		synchronized (lock) {
+			numCheckpoints++;
+		}
+	}
+
+	private void countMismatch() {
+		synchronized (lock) {
+			numMismatches++;
+		}
+	}
+
+	/**
+	 * Insert changes, or add them to the write-behind buffer if it is enabled.
+	 *
+	 * @return true if the changes were added to the write-behind buffer,
+	 *         false if they were stored
+	 */
+	private boolean doStoreChanges(Change[] changeList) {
+		ChangeWriteBehindBuffer changeBuffer = ChangeWriteBehindBuffer.getInstance();
+		if (changeBuffer != null) {
+			changeBuffer.add(changeList);
+			return true;
+		} else {
+			getDatabase().storeChanges(changeList);
+			return false;
+		}
+	}
+
+	private static String getKey(int userId, int problemId) {
+		return userId + ":" + problemId;
+	}
+
+	/**
+	 * Get the key of the (user, problem) that all of given changes belong to.
+	 *
+	 * @return the key, or null if the changes belong to more than one (user, problem)
+	 */
+	private static String getKey(Change[] changeList) {
+		String key = null;
+		for (Change change : changeList) {
+			String changeKey = getKey(change.getEvent().getUserId(), change.getEvent().getProblemId());
+			if (key == null) {
+				key = changeKey;
+			} else if (!key.equals(changeKey)) {
+				return null;
+			}
+		}
+		return key;
+	}
+}
@@ -0,0 +1,74 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.util.Properties;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Servlet context listener to configure the {@link CurrentTextCache}
+ * (including the checkpoint policy) from context parameters,
+ * and to store any pending checkpoints when the webapp is shut down.
+ * 
+ * @author David Hovemeyer
+ */
+public class CurrentTextCacheServletContextListener implements ServletContextListener {
+	private static final Logger logger = LoggerFactory.getLogger(CurrentTextCacheServletContextListener.class);
+	
+	private static final String[] PROPERTIES = {
+		"cloudcoder.db.currenttext.maxEntries",
+		"cloudcoder.db.checkpoint.maxChanges",
+		"cloudcoder.db.checkpoint.maxBytes",
+	};
+	
+	@Override
+	public void contextInitialized(ServletContextEvent e) {
+		ServletContext ctx = e.getServletContext();
+		
+		Properties config = new Properties();
+		for (String name : PROPERTIES) {
+			String value = ctx.getInitParameter(name);
+			if (value != null) {
+				config.setProperty(name, value);
+			}
+		}
+		
+		CurrentTextCache old = CurrentTextCache.getInstance();
+		CurrentTextCache.setInstance(new CurrentTextCache(config));
+		shutdown(old);
+	}
+	
+	@Override
+	public void contextDestroyed(ServletContextEvent e) {
+		shutdown(CurrentTextCache.getInstance());
+	}
+
+	private void shutdown(CurrentTextCache cache) {
+		try {
+			cache.shutdown();
+		} catch (InterruptedException ex) {
+			logger.error("Interrupted while storing checkpoints", ex);
+		}
+	}
+}
@@ -47,6 +47,29 @@ public interface IConnectionPool {
 	 */
 	public void releaseConnection() throws SQLException;
 	
+	/**
+	 * @return the number of times a thread has obtained a new connection
+	 *         (nested calls to {@link #getConnection()} by a thread
+	 *         that already has a connection are not counted)
+	 */
+	public long getNumCheckouts();
+	
+	/**
+	 * @return the total number of milliseconds threads have spent
+	 *         waiting to obtain a new connection
+	 */
+	public long getTotalCheckoutTimeMillis();
+	
+	/**
+	 * @return the number of connections currently in use
+	 */
+	public int getNumBusyConnections();
+	
+	/**
+	 * @return the number of connections that are open but not in use
+	 */
+	public int getNumIdleConnections();
+	
 	/**
 	 * Clean up all resources associated with this connection pool.
 	 * @throws SQLException 
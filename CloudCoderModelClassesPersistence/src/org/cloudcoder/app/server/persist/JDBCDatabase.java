@@ -154,8 +154,26 @@ public class JDBCDatabase implements IDatabase {
 	
 	public JDBCDatabase() throws SQLException {
 		JDBCDatabaseConfig.ConfigProperties config = JDBCDatabaseConfig.getInstance().getConfigProperties();
-		this.connectionPool = new MysqlConnectionPool(config);
-//		this.connectionPool = new C3P0ConnectionPool(config);
+		
+		// The "pool" property selects the connection pool implementation:
+		// "c3p0" (the default) keeps connections open and reuses them,
+		// while "none" opens a new connection for each transaction
+		String pool = config.getProperty("pool", "c3p0");
+		if (pool.equals("c3p0")) {
+			this.connectionPool = new C3P0ConnectionPool(config);
+		} else if (pool.equals("none")) {
+			this.connectionPool = new MysqlConnectionPool(config);
+		} else {
+			throw new SQLException("Unknown connection pool type: " + pool);
+		}
+		logger.info("Using {} database connection pool", pool);
+	}
+	
+	/**
+	 * @return the {@link IConnectionPool} used by this database
+	 */
+	public IConnectionPool getConnectionPool() {
+		return connectionPool;
 	}
 	
 	@Override
@@ -314,7 +332,11 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public void addTestCases(final Problem problem, final List<TestCase> testCaseList) {
-		databaseRun(new AddTestCasesToProblem(problem, testCaseList));
+		try {
+			databaseRun(new AddTestCasesToProblem(problem, testCaseList));
+		} finally {
+			invalidateCachedProblem(problem);
+		}
 	}
 	
 	@Override
@@ -341,7 +363,11 @@ public class JDBCDatabase implements IDatabase {
 	public ProblemAndTestCaseList storeProblemAndTestCaseList(
 			final ProblemAndTestCaseList problemAndTestCaseList, final Course course, final User user)
 			throws CloudCoderAuthenticationException {
-		return databaseRunAuth(new StoreProblemAndTestCaseList(problemAndTestCaseList, course, user));
+		try {
+			return databaseRunAuth(new StoreProblemAndTestCaseList(problemAndTestCaseList, course, user));
+		} finally {
+			invalidateCachedProblem(problemAndTestCaseList.getProblem());
+		}
 	}
 	
 	@Override
@@ -384,7 +410,11 @@ public class JDBCDatabase implements IDatabase {
 	@Override
 	public boolean deleteProblem(final User user, final Course course, final Problem problem)
 			throws CloudCoderAuthenticationException {
-		return databaseRunAuth(new DeleteProblem(user, problem, course));
+		try {
+			return databaseRunAuth(new DeleteProblem(user, problem, course));
+		} finally {
+			invalidateCachedProblem(problem);
+		}
 	}
 
 	@Override
@@ -444,7 +474,11 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public Module setModule(final User user, final Problem problem, final String moduleName) throws CloudCoderAuthenticationException {
-		return databaseRunAuth(new SetModuleForProblem(moduleName, user, problem));
+		try {
+			return databaseRunAuth(new SetModuleForProblem(moduleName, user, problem));
+		} finally {
+			invalidateCachedProblem(problem);
+		}
 	}
 	
 	@Override
@@ -489,7 +523,13 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public OperationResult updateProblemDates(User authenticatedUser, Problem[] problems) {
-		return databaseRun(new SetProblemDates(authenticatedUser, problems));
+		try {
+			return databaseRun(new SetProblemDates(authenticatedUser, problems));
+		} finally {
+			for (Problem problem : problems) {
+				invalidateCachedProblem(problem);
+			}
+		}
 	}
 	
 	@Override
@@ -547,6 +587,18 @@ public class JDBCDatabase implements IDatabase {
 		return databaseRun(new RegisterExistingUser(spec));
 	}
 
+	/**
+	 * Discard the {@link ProblemCache} entry for a {@link Problem}
+	 * that may have been changed by a transaction.
+	 *
+	 * @param problem the {@link Problem}
+	 */
+	private static void invalidateCachedProblem(Problem problem) {
+		if (problem != null && problem.getProblemId() != null) {
+			ProblemCache.getInstance().invalidate(problem.getProblemId());
+		}
+	}
+
 	/**
 	 * Run a database transaction and return the result.
 	 * This method is for transactions that extend {@link AbstractDatabaseRunnableNoAuthException}
@@ -55,6 +55,17 @@ public class JDBCDatabaseConfig {
 		 * @return the database port string (e.g., ":8889" if using MAMP, empty string if MySQL is listening on its default port)
 		 */
 		public String getPortStr();
+		
+		/**
+		 * Get an optional database configuration property, such as
+		 * a connection pool setting.
+		 * 
+		 * @param name          the property name, relative to the database property
+		 *                      prefix (e.g., "pool.maxSize" for "cloudcoder.db.pool.maxSize")
+		 * @param defaultValue  the value to return if the property is not set
+		 * @return the property value
+		 */
+		public String getProperty(String name, String defaultValue);
 	}
 	
 	private static JDBCDatabaseConfig instance;
@@ -122,6 +133,11 @@ public class JDBCDatabaseConfig {
 			public String getDatabaseName() {
 				return config.getProperty("cloudcoder.db.databaseName", "cloudcoderdb");
 			}
+			
+			@Override
+			public String getProperty(String name, String defaultValue) {
+				return config.getProperty("cloudcoder.db." + name, defaultValue);
+			}
 		});
 	}
 	
@@ -0,0 +1,185 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.TestCase;
+
+/**
+ * Read-through cache of {@link Problem}s and their {@link TestCase}s,
+ * so that submissions don't need to reload the same test cases from the
+ * database.  The {@link JDBCDatabase} methods that store or edit problems
+ * and test cases call {@link #invalidate(int)} when their transactions
+ * complete.
+ *
+ * <p>Problems don't have a version number in the database, so the cache
+ * keeps its own: each cached entry is tagged with the version of its
+ * problem that was current when loading started, and invalidating
+ * a problem increments its version.  An entry loaded concurrently with
+ * an edit therefore can't be installed, since its version would be
+ * out of date.
+ *
+ * <p>The cached {@link Problem} and {@link TestCase} objects are shared,
+ * and must not be modified by callers.
+ *
+ * @author David Hovemeyer
+ */
+public class ProblemCache {
+	private static final int MAX_ENTRIES = 500;
+
+	private static final ProblemCache instance = new ProblemCache();
+
+	/**
+	 * Get the singleton instance.
+	 *
+	 * @return the singleton instance
+	 */
+	public static ProblemCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * A cached {@link Problem} and its {@link TestCase}s.
+	 */
+	private static class Entry {
+		final int version;
+		final Problem problem;
+		final List<TestCase> testCaseList;
+
+		Entry(int version, Problem problem, List<TestCase> testCaseList) {
+			this.version = version;
+			this.problem = problem;
+			this.testCaseList = testCaseList;
+		}
+	}
+
+	private final Object lock;
+	private final Map<Integer, Entry> entryMap;
+	private final Map<Integer, Integer> versionMap;
+	private long numHits;
+	private long numMisses;
+
+	private ProblemCache() {
+		this.lock = new Object();
+		this.entryMap = new LinkedHashMap<Integer, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+				return size() > MAX_ENTRIES;
+			}
+		};
+		this.versionMap = new HashMap<Integer, Integer>();
+	}
+
+	/**
+	 * Get a {@link Problem}.
+	 *
+	 * @param problemId the problem id
+	 * @return the {@link Problem}, or null if there is no such problem
+	 */
+	public Problem getProblem(int problemId) {
+		Entry entry = getEntry(problemId);
+		return entry != null ? entry.problem : null;
+	}
+
+	/**
+	 * Get the {@link TestCase}s for a {@link Problem}.
+	 *
+	 * @param problemId the problem id
+	 * @return list of {@link TestCase}s (empty if there is no such problem);
+	 *         the list (but not the test cases) may be modified by the caller
+	 */
+	public List<TestCase> getTestCasesForProblem(int problemId) {
+		Entry entry = getEntry(problemId);
+		return entry != null ? new ArrayList<TestCase>(entry.testCaseList) : new ArrayList<TestCase>();
+	}
+
+	private Entry getEntry(int problemId) {
+		int version;
+		synchronized (lock) {
+			Entry entry = entryMap.get(problemId);
+			if (entry != null) {
+				numHits++;
+				return entry;
+			}
+			numMisses++;
+			version = getVersion(problemId);
+		}
+
+		// Load without holding the lock, so that a slow query doesn't
+		// hold up requests for other problems
+		Problem problem = Database.getInstance().getProblem(problemId);
+		if (problem == null) {
+			return null;
+		}
+		List<TestCase> testCaseList = Database.getInstance().getTestCasesForProblem(problemId);
+		Entry entry = new Entry(version, problem, Collections.unmodifiableList(testCaseList));
+
+		synchronized (lock) {
+			if (getVersion(problemId) == version && !entryMap.containsKey(problemId)) {
+				entryMap.put(problemId, entry);
+			}
+		}
+		return entry;
+	}
+
+	private int getVersion(int problemId) {
+		Integer version = versionMap.get(problemId);
+		return version != null ? version : 0;
+	}
+
+	/**
+	 * Discard the cached {@link Problem} and {@link TestCase}s
+	 * for given problem id.  This should be called after
+	 * the problem or its test cases are changed in the database.
+	 *
+	 * @param problemId the problem id
+	 */
+	public void invalidate(int problemId) {
+		synchronized (lock) {
+			versionMap.put(problemId, getVersion(problemId) + 1);
+			entryMap.remove(problemId);
+		}
+	}
+
+	/**
+	 * @return number of requests served from the cache
+	 */
+	public long getNumHits() {
+		synchronized (lock) {
+			return numHits;
+		}
+	}
+
+	/**
+	 * @return number of requests that loaded the problem from the database
+	 */
+	public long getNumMisses() {
+		synchronized (lock) {
+			return numMisses;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package org.cloudcoder.app.server.persist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CurrentTextCacheTest {
+	private static final int USER_ID = 1;
+	private static final int PROBLEM_ID = 2;
+
+	/**
+	 * In-memory {@link IDatabase} with just the methods used
+	 * by {@link CurrentTextCache}.
+	 */
+	private static class FakeDatabase implements InvocationHandler {
+		private List<Change> changes = new ArrayList<Change>();
+		private int nextEventId = 1;
+
+		public IDatabase getProxy() {
+			return (IDatabase) Proxy.newProxyInstance(
+					IDatabase.class.getClassLoader(), new Class<?>[]{ IDatabase.class }, this);
+		}
+
+		public synchronized List<Change> getChanges() {
+			return new ArrayList<Change>(changes);
+		}
+
+		@Override
+		public synchronized Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.equals("storeChanges")) {
+				for (Change change : (Change[]) args[0]) {
+					change.setEventId(nextEventId++);
+					changes.add(change);
+				}
+				return null;
+			}
+			int problemId = (Integer) args[1];
+			if (name.equals("getMostRecentChange")) {
+				return findMostRecent(problemId, false);
+			} else if (name.equals("getMostRecentFullTextChange")) {
+				return findMostRecent(problemId, true);
+			} else if (name.equals("getAllChangesNewerThan")) {
+				int baseRev = (Integer) args[2];
+				List<Change> result = new ArrayList<Change>();
+				for (Change change : changes) {
+					if (change.getEvent().getProblemId() == problemId && change.getEventId() > baseRev) {
+						result.add(change);
+					}
+				}
+				return result;
+			}
+			throw new UnsupportedOperationException(name);
+		}
+
+		private Change findMostRecent(int problemId, boolean fullText) {
+			Change result = null;
+			for (Change change : changes) {
+				if (change.getEvent().getProblemId() == problemId
+						&& (!fullText || change.getType() == ChangeType.FULL_TEXT)) {
+					result = change;
+				}
+			}
+			return result;
+		}
+	}
+
+	private FakeDatabase db;
+	private User user;
+	private CurrentTextCache cache;
+
+	@Before
+	public void setUp() {
+		db = new FakeDatabase();
+		user = new User();
+		user.setId(USER_ID);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		if (cache != null) {
+			cache.shutdown();
+		}
+	}
+
+	private void createCache(int maxChanges) {
+		Properties config = new Properties();
+		config.setProperty("cloudcoder.db.checkpoint.maxChanges", String.valueOf(maxChanges));
+		config.setProperty("cloudcoder.db.checkpoint.maxBytes", "0");
+		cache = new CurrentTextCache(config, db.getProxy());
+	}
+
+	private void insert(int col, String text) {
+		Change change = new Change(ChangeType.INSERT_TEXT, 0, col, 0, col + text.length(),
+				1000L + col, USER_ID, PROBLEM_ID, text);
+		cache.storeChanges(user, new Change[]{ change });
+	}
+
+	@Test
+	public void testHitFromNoChanges() {
+		createCache(0);
+
+		// User hasn't worked on the problem yet
+		assertNull(cache.getCurrentText(user, PROBLEM_ID));
+
+		// Changes are applied to the (empty) cached text,
+		// so it doesn't need to be replayed from the database
+		insert(0, "a");
+		insert(1, "b");
+		assertEquals("ab", cache.getCurrentText(user, PROBLEM_ID));
+		insert(2, "c");
+		assertEquals("abc", cache.getCurrentText(user, PROBLEM_ID));
+
+		assertEquals(2L, cache.getNumHits());
+		assertEquals(0L, cache.getNumPartialReplays());
+		assertEquals(0L, cache.getNumMisses());
+	}
+
+	@Test
+	public void testCheckpointFromNoChanges() throws InterruptedException {
+		createCache(3);
+
+		// User hasn't worked on the problem yet
+		assertNull(cache.getCurrentText(user, PROBLEM_ID));
+
+		insert(0, "a");
+		insert(1, "b");
+		insert(2, "c");
+		cache.shutdown();
+
+		assertEquals(1L, cache.getNumCheckpoints());
+		List<Change> changes = db.getChanges();
+		assertEquals(4, changes.size());
+		Change checkpoint = changes.get(3);
+		assertEquals(ChangeType.FULL_TEXT, checkpoint.getType());
+		assertEquals("abc", checkpoint.getText());
+		assertEquals(changes.get(2).getEvent().getTimestamp(), checkpoint.getEvent().getTimestamp());
+	}
+}
@@ -0,0 +1,173 @@
+package org.cloudcoder.app.shared.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.wire.BinaryConversion;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BinaryConversionTest {
+	private Problem problem;
+	private List<TestCase> testCaseList;
+	private SubmissionResult result;
+	
+	@Before
+	public void setUp() {
+		problem = new Problem();
+		problem.setProblemId(42);
+		problem.setCourseId(3);
+		problem.setProblemType(ProblemType.C_FUNCTION);
+		problem.setTestname("addInts");
+		problem.setBriefDescription("Add two integers");
+		problem.setDescription("<p>Return the sum of a and b: é中</p>");
+		problem.setSkeleton("int addInts(int a, int b) {\n}\n");
+		problem.setWhenAssigned(1000L);
+		problem.setWhenDue(2000L);
+		problem.setVisible(true);
+		problem.setLicense(ProblemLicense.CC_ATTRIB_SHAREALIKE_3_0);
+		problem.setProblemAuthorship(ProblemAuthorship.ORIGINAL);
+		problem.setModuleId(7);
+		
+		testCaseList = new ArrayList<TestCase>();
+		for (int i = 0; i < 3; i++) {
+			TestCase testCase = new TestCase();
+			testCase.setTestCaseId(100 + i);
+			testCase.setProblemId(42);
+			testCase.setTestCaseName("test" + i);
+			testCase.setInput(i + ", " + i);
+			testCase.setOutput(String.valueOf(i + i));
+			testCase.setSecret(i == 2);
+			testCaseList.add(testCase);
+		}
+		
+		CompilationResult compilationResult = new CompilationResult(CompilationOutcome.SUCCESS);
+		compilationResult.setCompilerDiagnosticList(new CompilerDiagnostic[]{
+				new CompilerDiagnostic(1, 2, 3, 4, "warning: unused variable")
+		});
+		result = new SubmissionResult(compilationResult);
+		result.setTestResults(new TestResult[]{
+				new TestResult(TestOutcome.PASSED, "Passed", "hello\n", ""),
+				new TestResult(TestOutcome.FAILED_FROM_TIMEOUT, "Timed out", null, null),
+		});
+		result.addAnnotation(new SubmissionResultAnnotation("key", "value"));
+	}
+	
+	@Test
+	public void testProblemRoundTrip() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryConversion.writeProblem(new DataOutputStream(bytes), problem);
+		Problem copy = BinaryConversion.readProblem(input(bytes));
+		
+		assertEquals(problem.getProblemId(), copy.getProblemId());
+		assertEquals(problem.getCourseId(), copy.getCourseId());
+		assertEquals(ProblemType.C_FUNCTION, copy.getProblemType());
+		assertEquals(problem.getTestname(), copy.getTestname());
+		assertEquals(problem.getDescription(), copy.getDescription());
+		assertEquals(problem.getSkeleton(), copy.getSkeleton());
+		assertEquals(1000L, copy.getWhenAssigned());
+		assertEquals(2000L, copy.getWhenDue());
+		assertEquals(true, copy.isVisible());
+		assertEquals(ProblemLicense.CC_ATTRIB_SHAREALIKE_3_0, copy.getLicense());
+		assertEquals(ProblemAuthorship.ORIGINAL, copy.getProblemAuthorship());
+		assertEquals(7, copy.getModuleId());
+	}
+	
+	@Test
+	public void testTestCaseListRoundTrip() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryConversion.writeTestCaseList(new DataOutputStream(bytes), testCaseList);
+		List<TestCase> copy = BinaryConversion.readTestCaseList(input(bytes));
+		
+		assertEquals(3, copy.size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(100 + i, copy.get(i).getTestCaseId());
+			assertEquals(42, copy.get(i).getProblemId());
+			assertEquals("test" + i, copy.get(i).getTestCaseName());
+			assertEquals(i + ", " + i, copy.get(i).getInput());
+			assertEquals(String.valueOf(i + i), copy.get(i).getOutput());
+			assertEquals(i == 2, copy.get(i).isSecret());
+		}
+	}
+	
+	@Test
+	public void testSubmissionResultRoundTrip() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryConversion.writeSubmissionResult(new DataOutputStream(bytes), result);
+		SubmissionResult copy = BinaryConversion.readSubmissionResult(input(bytes));
+		
+		assertEquals(CompilationOutcome.SUCCESS, copy.getCompilationResult().getOutcome());
+		assertArrayEquals(result.getCompilationResult().getCompilerDiagnosticList(),
+				copy.getCompilationResult().getCompilerDiagnosticList());
+		
+		assertEquals(2, copy.getTestResults().length);
+		assertEquals(TestOutcome.PASSED, copy.getTestResults()[0].getOutcome());
+		assertEquals("Passed", copy.getTestResults()[0].getMessage());
+		assertEquals("hello\n", copy.getTestResults()[0].getStdout());
+		assertEquals("", copy.getTestResults()[0].getStderr());
+		assertEquals(TestOutcome.FAILED_FROM_TIMEOUT, copy.getTestResults()[1].getOutcome());
+		assertNull(copy.getTestResults()[1].getStdout());
+		assertNull(copy.getTestResults()[1].getStderr());
+		
+		assertEquals(1, copy.getAnnotationList().size());
+		assertEquals("key", copy.getAnnotationList().get(0).getKey());
+		assertEquals("value", copy.getAnnotationList().get(0).getValue());
+	}
+	
+	@Test
+	public void testLargeString() throws IOException {
+		// DataOutput.writeUTF can't handle strings longer than 65535 bytes
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			buf.append((char) ('a' + (i % 26)));
+		}
+		String s = buf.toString();
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryConversion.writeString(new DataOutputStream(bytes), s);
+		assertEquals(s, BinaryConversion.readString(input(bytes)));
+	}
+	
+	@Test(expected = IOException.class)
+	public void testNegativeStringLength() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new DataOutputStream(bytes).writeInt(-2);
+		BinaryConversion.readString(input(bytes));
+	}
+	
+	@Test(expected = IOException.class)
+	public void testHugeStringLength() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new DataOutputStream(bytes).writeInt(Integer.MAX_VALUE);
+		BinaryConversion.readString(input(bytes));
+	}
+	
+	@Test(expected = IOException.class)
+	public void testHugeTestCaseCount() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new DataOutputStream(bytes).writeInt(Integer.MAX_VALUE);
+		BinaryConversion.readTestCaseList(input(bytes));
+	}
+	
+	@Test(expected = IOException.class)
+	public void testHugeTestResultCount() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeBoolean(false); // no compilation result
+		out.writeInt(Integer.MAX_VALUE);
+		BinaryConversion.readSubmissionResult(input(bytes));
+	}
+	
+	private static DataInputStream input(ByteArrayOutputStream bytes) {
+		return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+	}
+}
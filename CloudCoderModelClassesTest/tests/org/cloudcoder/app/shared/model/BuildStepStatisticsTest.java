@@ -0,0 +1,68 @@
+package org.cloudcoder.app.shared.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class BuildStepStatisticsTest {
+	@Test
+	public void testEmptyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0L, histogram.getCount());
+		assertEquals(0L, histogram.getPercentile(50));
+	}
+	
+	@Test
+	public void testSmallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1; i <= 5; i++) {
+			histogram.record(i);
+		}
+		assertEquals(5L, histogram.getCount());
+		assertEquals(3L, histogram.getPercentile(50));
+		assertEquals(5L, histogram.getPercentile(99));
+	}
+	
+	@Test
+	public void testPercentileAccuracy() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		long p50 = histogram.getPercentile(50);
+		long p99 = histogram.getPercentile(99);
+		assertTrue(p50 >= 500000L && p50 <= 500000L * 9 / 8);
+		assertTrue(p99 >= 990000L && p99 <= 1000000L);
+		assertEquals(1000000L, histogram.getPercentile(100));
+	}
+	
+	@Test
+	public void testRecordStepTimes() {
+		BuildStepStatistics statistics = new BuildStepStatistics();
+		Map<String, Long> stepTimes = new LinkedHashMap<String, Long>();
+		stepTimes.put("CompileStep", 1200L);
+		stepTimes.put("RunStep", 300L);
+		statistics.record(ProblemType.C_FUNCTION, stepTimes);
+		statistics.record(ProblemType.C_FUNCTION, stepTimes);
+		
+		assertEquals(Arrays.asList(ProblemType.C_FUNCTION), statistics.getProblemTypes());
+		assertEquals(Arrays.asList("CompileStep", "RunStep"), statistics.getStepNames(ProblemType.C_FUNCTION));
+		assertEquals(2L, statistics.getHistogram(ProblemType.C_FUNCTION, "RunStep").getCount());
+	}
+	
+	@Test
+	public void testEncodeDecodeStepTimes() {
+		Map<String, Long> stepTimes = new LinkedHashMap<String, Long>();
+		stepTimes.put("CompileStep", 1200L);
+		stepTimes.put(BuildStepStatistics.TOTAL, 1500L);
+		String encoded = BuildStepStatistics.encodeStepTimes(stepTimes);
+		assertEquals("CompileStep=1200,Total=1500", encoded);
+		assertEquals(stepTimes, BuildStepStatistics.decodeStepTimes(encoded));
+		assertEquals(1, BuildStepStatistics.decodeStepTimes("bogus,Step=12,Other=x").size());
+	}
+}
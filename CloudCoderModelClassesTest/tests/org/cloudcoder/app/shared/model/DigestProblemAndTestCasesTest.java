@@ -0,0 +1,68 @@
+package org.cloudcoder.app.shared.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DigestProblemAndTestCasesTest {
+	private static Problem createProblem() {
+		Problem problem = new Problem();
+		problem.setProblemId(42);
+		problem.setCourseId(1);
+		problem.setProblemType(ProblemType.C_FUNCTION);
+		problem.setTestname("sum");
+		problem.setBriefDescription("Add two numbers");
+		problem.setDescription("Return the sum of a and b");
+		problem.setSkeleton("int sum(int a, int b) {\n}\n");
+		problem.setSchemaVersion(Problem.SCHEMA.getVersion());
+		problem.setProblemAuthorship(ProblemAuthorship.ORIGINAL);
+		problem.setLicense(ProblemLicense.NOT_REDISTRIBUTABLE);
+		return problem;
+	}
+
+	private static TestCase createTestCase(String name, String input, String output) {
+		TestCase testCase = new TestCase();
+		testCase.setProblemId(42);
+		testCase.setTestCaseName(name);
+		testCase.setInput(input);
+		testCase.setOutput(output);
+		return testCase;
+	}
+
+	private static String digest(Problem problem, TestCase... testCases) {
+		List<TestCase> testCaseList = new ArrayList<TestCase>();
+		for (TestCase testCase : testCases) {
+			testCaseList.add(testCase);
+		}
+		return new DigestProblemAndTestCases(problem, testCaseList).compute();
+	}
+
+	@Test
+	public void testSameData() {
+		assertEquals(
+				digest(createProblem(), createTestCase("t1", "1, 2", "3")),
+				digest(createProblem(), createTestCase("t1", "1, 2", "3")));
+	}
+
+	@Test
+	public void testWhitespaceChange() {
+		assertFalse(digest(createProblem(), createTestCase("t1", "1, 2", "3")).equals(
+				digest(createProblem(), createTestCase("t1", "1, 2", "3 "))));
+	}
+
+	@Test
+	public void testTextMovedBetweenFields() {
+		assertFalse(digest(createProblem(), createTestCase("t1", "1, 2", "3")).equals(
+				digest(createProblem(), createTestCase("t1", "1, ", "23"))));
+	}
+
+	@Test
+	public void testTestCaseAdded() {
+		assertFalse(digest(createProblem(), createTestCase("t1", "1, 2", "3")).equals(
+				digest(createProblem(), createTestCase("t1", "1, 2", "3"), createTestCase("t2", "", ""))));
+	}
+}
@@ -0,0 +1,172 @@
+package org.cloudcoder.app.shared.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Check that {@link RopeTextDocument} behaves identically to
+ * {@link TextDocument} for random sequences of operations and {@link Change}s.
+ */
+public class RopeTextDocumentTest {
+	private static final String ALPHABET = "ab \t{};\n";
+
+	@Test
+	public void testSetText() {
+		String[] texts = { "", "a", "a\n", "a\nb", "a\n\nb\n", "\n\n", "x\n\n\n" };
+		for (String text : texts) {
+			TextDocument expected = new TextDocument();
+			RopeTextDocument actual = new RopeTextDocument();
+			expected.setText(text);
+			actual.setText(text);
+			assertSameContents(expected, actual);
+		}
+	}
+
+	@Test
+	public void testRandomLineOperations() {
+		Random rng = new Random(12345L);
+		for (int trial = 0; trial < 20; trial++) {
+			TextDocument expected = new TextDocument();
+			RopeTextDocument actual = new RopeTextDocument();
+			for (int i = 0; i < 2000; i++) {
+				int numLines = expected.getNumLines();
+				String line = randomText(rng, 10) + "\n";
+				switch (rng.nextInt(6)) {
+				case 0:
+					expected.append(line);
+					actual.append(line);
+					break;
+				case 1:
+				case 2:
+					int insertIndex = rng.nextInt(numLines + 1);
+					expected.insertLine(insertIndex, line);
+					actual.insertLine(insertIndex, line);
+					break;
+				case 3:
+					if (numLines > 0) {
+						int removeIndex = rng.nextInt(numLines);
+						expected.removeLine(removeIndex);
+						actual.removeLine(removeIndex);
+					}
+					break;
+				case 4:
+					if (numLines > 0) {
+						int setIndex = rng.nextInt(numLines);
+						expected.setLine(setIndex, line);
+						actual.setLine(setIndex, line);
+					}
+					break;
+				case 5:
+					if (rng.nextInt(50) == 0) {
+						String text = randomText(rng, 200);
+						expected.setText(text);
+						actual.setText(text);
+					}
+					break;
+				}
+				assertEquals(expected.getNumLines(), actual.getNumLines());
+			}
+			assertSameContents(expected, actual);
+		}
+	}
+
+	@Test
+	public void testRandomChanges() {
+		Random rng = new Random(67890L);
+		ApplyChangeToTextDocument applicator = new ApplyChangeToTextDocument();
+		for (int trial = 0; trial < 20; trial++) {
+			TextDocument expected = new TextDocument();
+			RopeTextDocument actual = new RopeTextDocument();
+			String initial = randomText(rng, 100);
+			expected.setText(initial);
+			actual.setText(initial);
+
+			for (int i = 0; i < 1000; i++) {
+				Change change = randomChange(rng, expected);
+
+				// Malformed changes must fail the same way for both documents
+				RuntimeException expectedException = null, actualException = null;
+				try {
+					applicator.apply(change, expected);
+				} catch (RuntimeException e) {
+					expectedException = e;
+				}
+				try {
+					applicator.apply(change, actual);
+				} catch (RuntimeException e) {
+					actualException = e;
+				}
+				assertEquals(change.toString(), expectedException != null, actualException != null);
+				assertEquals(change.toString(), expected.getText(), actual.getText());
+			}
+			assertSameContents(expected, actual);
+		}
+	}
+
+	private static Change randomChange(Random rng, TextDocument doc) {
+		int numLines = doc.getNumLines();
+		int row = numLines > 0 ? rng.nextInt(numLines) : 0;
+		String line = numLines > 0 ? doc.getLine(row) : "";
+		int lineLength = line.endsWith("\n") ? line.length() - 1 : line.length();
+
+		switch (rng.nextInt(7)) {
+		case 0:
+		case 1:
+			// Insert text (possibly with embedded newlines) within a line
+			int col = rng.nextInt(lineLength + 1);
+			return createChange(ChangeType.INSERT_TEXT, row, col, row, col, randomText(rng, 5));
+		case 2:
+			// Remove text within a line
+			int start = rng.nextInt(lineLength + 1);
+			int end = start + rng.nextInt(lineLength - start + 1);
+			return createChange(ChangeType.REMOVE_TEXT, row, start, row, end, line.substring(start, end));
+		case 3:
+			// Remove a newline, joining two lines
+			return createChange(ChangeType.REMOVE_TEXT, row, lineLength, row + 1, 0, "\n");
+		case 4:
+			// Insert whole lines
+			int insertRow = rng.nextInt(numLines + 1);
+			String lines = "x" + randomText(rng, 20);
+			int numInserted = lines.split("\n").length;
+			return createChange(ChangeType.INSERT_LINES, insertRow, 0, insertRow + numInserted, 0, lines);
+		case 5:
+			// Remove whole lines
+			int numRemoved = 1 + rng.nextInt(Math.max(1, Math.min(3, numLines - row)));
+			StringBuilder removed = new StringBuilder();
+			for (int i = 0; i < numRemoved; i++) {
+				removed.append("y\n");
+			}
+			return createChange(ChangeType.REMOVE_LINES, row, 0, row + numRemoved, 0, removed.toString());
+		default:
+			// Occasionally replace the entire text
+			if (rng.nextInt(20) == 0) {
+				return createChange(ChangeType.FULL_TEXT, 0, 0, 0, 0, randomText(rng, 100));
+			}
+			return createChange(ChangeType.INSERT_TEXT, row, 0, row, 0, "z");
+		}
+	}
+
+	private static Change createChange(ChangeType type, int sr, int sc, int er, int ec, String text) {
+		return new Change(type, sr, sc, er, ec, 0L, 1, 1, text);
+	}
+
+	private static String randomText(Random rng, int maxLength) {
+		int length = rng.nextInt(maxLength + 1);
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			buf.append(ALPHABET.charAt(rng.nextInt(ALPHABET.length())));
+		}
+		return buf.toString();
+	}
+
+	private static void assertSameContents(ITextDocument expected, ITextDocument actual) {
+		assertEquals(expected.getNumLines(), actual.getNumLines());
+		for (int i = 0; i < expected.getNumLines(); i++) {
+			assertEquals(expected.getLine(i), actual.getLine(i));
+		}
+		assertEquals(expected.getText(), actual.getText());
+	}
+}
@@ -0,0 +1,90 @@
+package org.cloudcoder.app.shared.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.cloudcoder.app.shared.model.wire.IWireFormat;
+import org.cloudcoder.app.shared.model.wire.WireFormatFactory;
+
+/**
+ * Compare the time and space required to send {@link SubmissionResult}s
+ * using Java serialization and using the binary wire format.
+ * Run as a Java application: not a JUnit test.
+ */
+public class WireFormatBenchmark {
+	private static final int WARMUP_ITERATIONS = 2000;
+	private static final int ITERATIONS = 10000;
+	
+	public static void main(String[] args) throws Exception {
+		// Typical: a handful of tests with a small amount of output
+		SubmissionResult typical = createResult(5, 64);
+		
+		// Worst case: many tests producing a large amount of output
+		SubmissionResult worstCase = createResult(20, 64*1024);
+		
+		for (int formatVersion : new int[]{ WireFormatFactory.SERIALIZATION, 1 }) {
+			run("typical", formatVersion, typical, ITERATIONS);
+			run("worst case", formatVersion, worstCase, ITERATIONS / 100);
+		}
+	}
+
+	private static SubmissionResult createResult(int numTests, int outputSize) {
+		StringBuilder buf = new StringBuilder();
+		while (buf.length() < outputSize) {
+			buf.append("Line ").append(buf.length()).append(" of output\n");
+		}
+		String stdout = buf.toString();
+		
+		SubmissionResult result = new SubmissionResult(new CompilationResult(CompilationOutcome.SUCCESS));
+		TestResult[] testResults = new TestResult[numTests];
+		for (int i = 0; i < numTests; i++) {
+			// Each test's output is a distinct string, since otherwise Java
+			// serialization would only write it once
+			testResults[i] = new TestResult(TestOutcome.FAILED_ASSERTION, "input" + i, "actual" + i, "expected" + i, stdout + i, "");
+			testResults[i].setMessage("Test failed for input " + i);
+		}
+		result.setTestResults(testResults);
+		return result;
+	}
+
+	private static void run(String name, int formatVersion, SubmissionResult result, int iterations) throws IOException, ClassNotFoundException {
+		// As in the webapp/builder protocol, many messages are
+		// written to a single long-lived stream
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		IWireFormat writer = WireFormatFactory.create(formatVersion, null, out);
+		
+		int warmup = Math.min(WARMUP_ITERATIONS, iterations);
+		for (int i = 0; i < warmup; i++) {
+			writer.writeSubmissionResult(result);
+			writer.flush();
+		}
+		int warmupSize = bytes.size();
+		
+		long begin = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			writer.writeSubmissionResult(result);
+			writer.flush();
+		}
+		long writeNanos = System.nanoTime() - begin;
+		int messageSize = (bytes.size() - warmupSize) / iterations;
+		
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		IWireFormat reader = WireFormatFactory.create(formatVersion, in, null);
+		for (int i = 0; i < warmup; i++) {
+			reader.readSubmissionResult();
+		}
+		begin = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			reader.readSubmissionResult();
+		}
+		long readNanos = System.nanoTime() - begin;
+		
+		System.out.printf("%-10s format=%d: %8d bytes/message, write %8.1f us/message, read %8.1f us/message%n",
+				name, formatVersion, messageSize,
+				writeNanos / 1000.0 / iterations, readNanos / 1000.0 / iterations);
+	}
+}
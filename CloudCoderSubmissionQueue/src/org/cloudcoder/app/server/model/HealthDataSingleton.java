@@ -20,9 +20,15 @@ package org.cloudcoder.app.server.model;
 
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Map;
 
+import org.cloudcoder.app.server.submitsvc.CachingSubmitService;
 import org.cloudcoder.app.server.submitsvc.oop.OutOfProcessSubmitService;
+import org.cloudcoder.app.shared.model.BuildStepStatistics;
 import org.cloudcoder.app.shared.model.HealthData;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionResultAnnotation;
 
 /**
  * Singleton storing health data for the CloudCoder webapp.
@@ -55,9 +61,11 @@ public class HealthDataSingleton {
 	private LinkedList<SubmissionQueueSizeSample> submissionQueueSizeSampleList;
 	private volatile int submissionQueueSizeCurrent;
 	private volatile int submissionQueueSizeMaxLastFiveMinutes;
+	private final BuildStepStatistics buildStepStatistics;
 	
 	private HealthDataSingleton() {
 		this.submissionQueueSizeSampleList = new LinkedList<SubmissionQueueSizeSample>();
+		this.buildStepStatistics = new BuildStepStatistics();
 	}
 	
 	/**
@@ -108,6 +116,35 @@ public class HealthDataSingleton {
 		return submissionQueueSizeMaxLastFiveMinutes;
 	}
 
+	/**
+	 * Record the build step times reported by a builder
+	 * for a tested submission (if it reported them).
+	 * This method is thread-safe.
+	 * 
+	 * @param problem the {@link Problem} the submission was for
+	 * @param result  the {@link SubmissionResult} returned by the builder
+	 */
+	public void recordBuildStepTimes(Problem problem, SubmissionResult result) {
+		if (problem == null || result == null || problem.getProblemType() == null) {
+			return;
+		}
+		for (SubmissionResultAnnotation annotation : result.getAnnotationList()) {
+			if (BuildStepStatistics.ANNOTATION_KEY.equals(annotation.getKey()) && annotation.getValue() != null) {
+				Map<String, Long> stepTimes = BuildStepStatistics.decodeStepTimes(annotation.getValue());
+				buildStepStatistics.record(problem.getProblemType(), stepTimes);
+			}
+		}
+	}
+	
+	/**
+	 * Get the {@link BuildStepStatistics} for submissions tested by builders.
+	 * 
+	 * @return the {@link BuildStepStatistics}
+	 */
+	public BuildStepStatistics getBuildStepStatistics() {
+		return buildStepStatistics;
+	}
+
 	/**
 	 * Get current {@link HealthData}.
 	 * 
@@ -118,6 +155,11 @@ public class HealthDataSingleton {
 		healthData.setSubmissionQueueSizeCurrent(submissionQueueSizeCurrent);
 		healthData.setSubmissionQueueSizeMaxLastFiveMinutes(submissionQueueSizeMaxLastFiveMinutes);
 		healthData.setNumConnectedBuilderThreads(OutOfProcessSubmitService.getInstance().getNumBuilderThreads());
+		CachingSubmitService cachingSubmitService = CachingSubmitService.getInstance();
+		if (cachingSubmitService != null) {
+			healthData.setSubmissionResultCacheHits(cachingSubmitService.getNumHits());
+			healthData.setSubmissionResultCacheMisses(cachingSubmitService.getNumMisses());
+		}
 		return healthData;
 	}
 }
@@ -0,0 +1,297 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.ConvertBytesToHex;
+import org.cloudcoder.app.shared.model.DigestProblemAndTestCases;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SHA1;
+import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestOutcome;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.app.shared.model.wire.BinaryConversion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link ISubmitService} that remembers the {@link SubmissionResult}s
+ * produced by another {@link ISubmitService}.  When the same program text
+ * is submitted for the same exercise (as identified by a digest of the
+ * {@link Problem} and {@link TestCase}s), the remembered result is returned
+ * immediately, without the submission being queued for testing.
+ * 
+ * <p>Only results that are expected to be deterministic are remembered:
+ * results where compilation did not complete normally, or where a
+ * test timed out or had an internal error, are not.  Exercises whose tests
+ * are nondeterministic for other reasons can be excluded by listing their
+ * problem ids (comma-separated) in the
+ * <code>cloudcoder.submitsvc.resultcache.excludeProblems</code>
+ * configuration property.  The maximum number of remembered results
+ * is set by <code>cloudcoder.submitsvc.resultcache.maxsize</code>.
+ * 
+ * <p>Results are stored in encoded form, and each lookup decodes a new copy,
+ * since callers may modify the {@link SubmissionResult}s they receive.
+ * 
+ * @author David Hovemeyer
+ */
+public class CachingSubmitService implements ISubmitService {
+	private static final Logger logger = LoggerFactory.getLogger(CachingSubmitService.class);
+
+	/** Default maximum number of remembered results. */
+	public static final int DEFAULT_MAX_SIZE = 1000;
+
+	private static volatile CachingSubmitService instance;
+
+	/**
+	 * Set the singleton instance of CachingSubmitService.
+	 * 
+	 * @param instance the instance to set (null if results should not be cached)
+	 */
+	public static void setInstance(CachingSubmitService instance) {
+		CachingSubmitService.instance = instance;
+	}
+
+	/**
+	 * Get the singleton instance of CachingSubmitService.
+	 * 
+	 * @return the singleton instance, or null if results are not being cached
+	 */
+	public static CachingSubmitService getInstance() {
+		return instance;
+	}
+
+	/**
+	 * {@link IFutureSubmissionResult} for a remembered result.
+	 */
+	private static class CachedFutureSubmissionResult implements IFutureSubmissionResult {
+		private final SubmissionResult result;
+
+		public CachedFutureSubmissionResult(SubmissionResult result) {
+			this.result = result;
+		}
+
+		@Override
+		public SubmissionResult waitFor(long timeoutMs) throws SubmissionException, InterruptedException {
+			return result;
+		}
+
+		@Override
+		public void addCompletionListener(Runnable listener) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * {@link IFutureSubmissionResult} that remembers the result
+	 * produced by the underlying {@link ISubmitService}.
+	 */
+	private class CachingFutureSubmissionResult implements IFutureSubmissionResult {
+		private final String key;
+		private final IFutureSubmissionResult future;
+		private volatile boolean done;
+
+		public CachingFutureSubmissionResult(String key, IFutureSubmissionResult future) {
+			this.key = key;
+			this.future = future;
+		}
+
+		@Override
+		public SubmissionResult waitFor(long timeoutMs) throws SubmissionException, InterruptedException {
+			SubmissionResult result = future.waitFor(timeoutMs);
+			if (result != null && !done) {
+				done = true;
+				put(key, result);
+			}
+			return result;
+		}
+
+		@Override
+		public void addCompletionListener(Runnable listener) {
+			future.addCompletionListener(listener);
+		}
+	}
+
+	private final ISubmitService delegate;
+	private final int maxSize;
+	private final Set<Integer> excludedProblemIds;
+	private Object lock;
+	private Map<String, byte[]> resultMap;
+	private long numHits;
+	private long numMisses;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param delegate the {@link ISubmitService} that will test submissions
+	 * @param config   configuration properties
+	 */
+	public CachingSubmitService(ISubmitService delegate, Properties config) {
+		this.delegate = delegate;
+		this.maxSize = Integer.parseInt(config.getProperty(
+				"cloudcoder.submitsvc.resultcache.maxsize", String.valueOf(DEFAULT_MAX_SIZE)));
+		this.excludedProblemIds = new HashSet<Integer>();
+		for (String problemId : config.getProperty("cloudcoder.submitsvc.resultcache.excludeProblems", "").split(",")) {
+			problemId = problemId.trim();
+			if (!problemId.equals("")) {
+				excludedProblemIds.add(Integer.parseInt(problemId));
+			}
+		}
+		this.lock = new Object();
+
+		// Access-ordered LinkedHashMap, so that the eldest entry is the
+		// least recently used
+		this.resultMap = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+				return size() > maxSize;
+			}
+		};
+		logger.info("Submission result cache maximum size is {}, excluded problems are {}", maxSize, excludedProblemIds);
+	}
+
+	@Override
+	public IFutureSubmissionResult submitAsync(Problem problem, List<TestCase> testCaseList, String programText)
+			throws SubmissionException {
+		String key = null;
+		if (maxSize > 0 && !excludedProblemIds.contains(problem.getProblemId())) {
+			key = computeKey(problem, testCaseList, programText);
+		}
+		if (key == null) {
+			return delegate.submitAsync(problem, testCaseList, programText);
+		}
+
+		SubmissionResult result = get(key);
+		if (result != null) {
+			return new CachedFutureSubmissionResult(result);
+		}
+		return new CachingFutureSubmissionResult(key, delegate.submitAsync(problem, testCaseList, programText));
+	}
+
+	/**
+	 * @return number of submissions for which a remembered result was returned
+	 */
+	public long getNumHits() {
+		synchronized (lock) {
+			return numHits;
+		}
+	}
+
+	/**
+	 * @return number of submissions for which there was no remembered result
+	 */
+	public long getNumMisses() {
+		synchronized (lock) {
+			return numMisses;
+		}
+	}
+
+	private SubmissionResult get(String key) {
+		byte[] encoded;
+		synchronized (lock) {
+			encoded = resultMap.get(key);
+			if (encoded == null) {
+				numMisses++;
+				return null;
+			}
+			numHits++;
+		}
+		try {
+			return BinaryConversion.readSubmissionResult(new DataInputStream(new ByteArrayInputStream(encoded)));
+		} catch (IOException e) {
+			logger.error("Could not decode cached submission result", e);
+			return null;
+		}
+	}
+
+	private void put(String key, SubmissionResult result) {
+		if (!isDeterministic(result)) {
+			return;
+		}
+		byte[] encoded;
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			BinaryConversion.writeSubmissionResult(out, result);
+			out.flush();
+			encoded = bytes.toByteArray();
+		} catch (IOException e) {
+			logger.error("Could not encode submission result", e);
+			return;
+		}
+		synchronized (lock) {
+			resultMap.put(key, encoded);
+		}
+	}
+
+	private static boolean isDeterministic(SubmissionResult result) {
+		CompilationResult compilationResult = result.getCompilationResult();
+		if (compilationResult == null) {
+			return false;
+		}
+		CompilationOutcome outcome = compilationResult.getOutcome();
+		if (outcome != CompilationOutcome.SUCCESS && outcome != CompilationOutcome.FAILURE) {
+			return false;
+		}
+		if (result.getTestResults() != null) {
+			for (TestResult testResult : result.getTestResults()) {
+				TestOutcome testOutcome = testResult.getOutcome();
+				if (testOutcome == TestOutcome.FAILED_FROM_TIMEOUT || testOutcome == TestOutcome.INTERNAL_ERROR) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static String computeKey(Problem problem, List<TestCase> testCaseList, String programText) {
+		String problemHash;
+		try {
+			problemHash = new DigestProblemAndTestCases(problem, testCaseList).compute();
+		} catch (RuntimeException e) {
+			logger.warn("Could not compute hash of problem and test cases", e);
+			return null;
+		}
+
+		SHA1 sha1 = new SHA1();
+		try {
+			sha1.update(programText.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is not supported", e);
+		}
+		return problemHash + ":" + new ConvertBytesToHex(sha1.digest()).convert();
+	}
+}
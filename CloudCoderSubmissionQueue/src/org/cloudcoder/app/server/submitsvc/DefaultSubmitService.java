@@ -21,6 +21,11 @@ import org.cloudcoder.app.server.submitsvc.oop.OutOfProcessSubmitService;
 
 public class DefaultSubmitService {
 	public static ISubmitService getInstance() {
+		// If submission results are being cached, use the caching submit service
+		CachingSubmitService cachingSubmitService = CachingSubmitService.getInstance();
+		if (cachingSubmitService != null) {
+			return cachingSubmitService;
+		}
 		return OutOfProcessSubmitService.getInstance();
 	}
 }
@@ -37,6 +37,13 @@ public interface IFutureSubmissionResult {
 	 */
 	public long STANDARD_POLL_WAIT_MS = 1000L;
 
+	/**
+	 * Maximum time in milliseconds that a client's long-poll request
+	 * should be held waiting for a result before it is told to ask again.
+	 * This is kept well under typical proxy idle timeouts.
+	 */
+	public long LONG_POLL_WAIT_MS = 25000L;
+
 	/**
 	 * Synchronous timed wait for compilation/testing to complete.
 	 * 
@@ -46,4 +53,15 @@ public interface IFutureSubmissionResult {
 	 * @throws InterruptedException 
 	 */
 	public SubmissionResult waitFor(long timeoutMs) throws SubmissionException, InterruptedException;
+
+	/**
+	 * Register a listener to be notified when compilation/testing completes
+	 * (successfully or not).  If it has already completed, the listener is
+	 * run immediately in the calling thread.  Otherwise it is run
+	 * in whatever thread completes the submission, so it should do
+	 * very little work (e.g., resume a suspended request).
+	 * 
+	 * @param listener the listener to run when the result is available
+	 */
+	public void addCompletionListener(Runnable listener);
 }
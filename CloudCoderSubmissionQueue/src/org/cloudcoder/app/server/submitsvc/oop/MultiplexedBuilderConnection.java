@@ -0,0 +1,326 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2015, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2015, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudcoder.app.shared.model.BuilderProtocol;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.wire.IWireFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Webapp side of a connection to a remote Builder process using the
+ * {@link BuilderProtocol#MULTIPLEXED} protocol.  Up to "maxInFlight"
+ * submissions are sent to the Builder without waiting for results,
+ * and results are matched to submissions using request ids, so they
+ * may arrive in any order.  The thread calling {@link #run()} takes
+ * submissions from the submission queue, messages from the Builder are
+ * handled by a receiver thread, and all messages to the Builder are
+ * written by a sender thread.  The receiver never writes to the socket:
+ * otherwise, if both sides were blocked writing large messages
+ * (e.g., a problem and a result), neither would read, and the connection
+ * would deadlock.
+ *
+ * @author David Hovemeyer
+ */
+public class MultiplexedBuilderConnection {
+	private static final Logger logger = LoggerFactory.getLogger(MultiplexedBuilderConnection.class);
+
+	/**
+	 * Number of milliseconds between attempts to poll the
+	 * submission queue.
+	 */
+	private static final long POLL_INTERVAL_MILLIS = 1000L;
+
+	/**
+	 * Maximum number of milliseconds that can elapse without
+	 * sending a message to the Builder before a keepalive signal
+	 * is sent.
+	 */
+	private static final long MAX_IDLE_TIME_MILLIS = 5000L;
+
+	/**
+	 * A message to be written to the Builder by the sender thread.
+	 */
+	private interface Message {
+		public void write() throws IOException;
+	}
+
+	/**
+	 * Message telling the sender thread to exit.
+	 */
+	private static final Message STOP = new Message() {
+		@Override
+		public void write() throws IOException {
+		}
+	};
+
+	private class Sender implements Runnable {
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					Message msg = sendQueue.poll(MAX_IDLE_TIME_MILLIS, TimeUnit.MILLISECONDS);
+					if (msg == STOP) {
+						break;
+					}
+					if (msg == null) {
+						writeHeader(BuilderProtocol.MSG_KEEPALIVE, -1);
+					} else {
+						msg.write();
+					}
+					wire.flush();
+				}
+			} catch (IOException e) {
+				if (!shutdownRequested) {
+					logger.error("Error sending message to Builder", e);
+				}
+			} catch (InterruptedException e) {
+				if (!shutdownRequested) {
+					logger.error("Sender thread interrupted unexpectedly", e);
+				}
+			} finally {
+				connectionBroken = true;
+			}
+		}
+	}
+
+	private class Receiver implements Runnable {
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					int msgType = wire.readInt();
+					int requestId = wire.readInt();
+					switch (msgType) {
+					case BuilderProtocol.MSG_NEED_PROBLEM:
+						sendProblem(requestId);
+						break;
+					case BuilderProtocol.MSG_RESULT:
+						SubmissionResult result = wire.readSubmissionResult();
+						onResult(requestId, result);
+						break;
+					default:
+						throw new IOException("Unknown message type " + msgType + " from Builder");
+					}
+				}
+			} catch (IOException e) {
+				if (!shutdownRequested) {
+					logger.error("Error reading message from Builder", e);
+				}
+			} catch (ClassNotFoundException e) {
+				logger.error("ClassNotFoundException reading message from Builder", e);
+			} catch (ClassCastException e) {
+				logger.error("Invalid message from Builder", e);
+			} finally {
+				connectionBroken = true;
+			}
+		}
+	}
+
+	private Socket clientSocket;
+	private IWireFormat wire;
+	private LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue;
+	private LinkedBlockingQueue<Message> sendQueue;
+	private Semaphore credits;
+	private Object lock;
+	private Map<Integer, OOPBuildServiceSubmission> inFlight;
+	private int nextRequestId;
+	private volatile boolean shutdownRequested;
+	private volatile boolean connectionBroken;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param clientSocket     the socket connected to the Builder
+	 * @param wire             the {@link IWireFormat} used to read and write messages
+	 * @param submissionQueue  queue of submissions requiring compilation and testing
+	 * @param maxInFlight      maximum number of submissions the Builder will accept at once
+	 */
+	public MultiplexedBuilderConnection(Socket clientSocket, IWireFormat wire,
+			LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue, int maxInFlight) {
+		this.clientSocket = clientSocket;
+		this.wire = wire;
+		this.submissionQueue = submissionQueue;
+		this.sendQueue = new LinkedBlockingQueue<Message>();
+		this.credits = new Semaphore(maxInFlight);
+		this.lock = new Object();
+		this.inFlight = new HashMap<Integer, OOPBuildServiceSubmission>();
+		this.nextRequestId = 0;
+	}
+
+	/**
+	 * Request that the connection shut down.
+	 * Submissions that are in flight will be put back in the submission queue.
+	 */
+	public void shutdown() {
+		shutdownRequested = true;
+	}
+
+	/**
+	 * Send submissions to the Builder until either shutdown is requested
+	 * or the connection fails.  When this method returns, any submissions
+	 * for which no result was received have been put back in the
+	 * submission queue.
+	 */
+	public void run() {
+		Thread senderThread = new Thread(new Sender());
+		senderThread.start();
+		Thread receiverThread = new Thread(new Receiver());
+		receiverThread.start();
+
+		try {
+			while (!shutdownRequested && !connectionBroken) {
+				// Wait until the Builder can accept another submission,
+				// then try to get a submission to send
+				OOPBuildServiceSubmission submission = null;
+				if (credits.tryAcquire(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+					submission = submissionQueue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+					if (submission == null) {
+						credits.release();
+					}
+				}
+
+				if (submission == null) {
+					continue;
+				}
+
+				// Check to make sure there isn't some kind of persistent error
+				// affecting the testing of this submission
+				if (submission.getNumAttempts() >= 10) {
+					// Too many testing failures for this submission!
+					submission.setReady();
+					credits.release();
+					continue;
+				}
+				submission.setNumAttempts(submission.getNumAttempts() + 1);
+
+				sendRequest(submission);
+			}
+		} catch (InterruptedException e) {
+			if (!shutdownRequested) {
+				logger.error("Unexpected interruption", e);
+			}
+		}
+
+		// Closing the socket forces the sender and receiver threads to exit
+		// (even if they are blocked writing or reading)
+		sendQueue.add(STOP);
+		try {
+			clientSocket.close();
+		} catch (IOException e) {
+			logger.warn("Exception closing client socket", e);
+		}
+		try {
+			// Clear the interrupted status (which is set if the WorkerTaskSet
+			// is shutting down) so that we really do wait for the threads
+			Thread.interrupted();
+			senderThread.join();
+			receiverThread.join();
+		} catch (InterruptedException e) {
+			logger.error("Interrupted waiting for sender and receiver threads to exit", e);
+		}
+
+		// Place submissions that weren't completed back in the queue
+		// so they have an opportunity to be re-tested
+		List<OOPBuildServiceSubmission> incomplete;
+		synchronized (lock) {
+			incomplete = new ArrayList<OOPBuildServiceSubmission>(inFlight.values());
+			inFlight.clear();
+		}
+		for (OOPBuildServiceSubmission submission : incomplete) {
+			try {
+				submissionQueue.put(submission);
+			} catch (InterruptedException e) {
+				logger.error("Failed to put submission back in submission queue", e);
+				submission.setError(e);
+				submission.setReady();
+			}
+		}
+	}
+
+	private void sendRequest(final OOPBuildServiceSubmission submission) {
+		final int requestId;
+		synchronized (lock) {
+			requestId = nextRequestId++;
+			inFlight.put(requestId, submission);
+		}
+
+		sendQueue.add(new Message() {
+			@Override
+			public void write() throws IOException {
+				writeHeader(BuilderProtocol.MSG_REQUEST, requestId);
+				wire.writeInt(submission.getProblem().getProblemId());
+				wire.writeString(submission.getProblemHash());
+				wire.writeString(submission.getProgramText());
+			}
+		});
+	}
+
+	private void sendProblem(final int requestId) throws IOException {
+		final OOPBuildServiceSubmission submission;
+		synchronized (lock) {
+			submission = inFlight.get(requestId);
+		}
+		if (submission == null) {
+			throw new IOException("Builder requested problem for unknown request " + requestId);
+		}
+
+		// The receiver thread must not write: the sender thread will send the problem
+		sendQueue.add(new Message() {
+			@Override
+			public void write() throws IOException {
+				writeHeader(BuilderProtocol.MSG_PROBLEM, requestId);
+				wire.writeProblem(submission.getProblem());
+				wire.writeTestCaseList(submission.getTestCaseList());
+			}
+		});
+	}
+
+	private void onResult(int requestId, SubmissionResult result) throws IOException {
+		OOPBuildServiceSubmission submission;
+		synchronized (lock) {
+			submission = inFlight.remove(requestId);
+		}
+		if (submission == null) {
+			throw new IOException("Builder sent result for unknown request " + requestId);
+		}
+
+		submission.setSubmissionResult(result);
+		submission.setReady();
+
+		// The Builder can accept another submission
+		credits.release();
+	}
+
+	// Must only be called by the sender thread.
+	private void writeHeader(int msgType, int requestId) throws IOException {
+		wire.writeInt(msgType);
+		wire.writeInt(requestId);
+	}
+}
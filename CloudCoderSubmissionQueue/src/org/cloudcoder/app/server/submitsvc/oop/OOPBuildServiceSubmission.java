@@ -17,14 +17,20 @@
 
 package org.cloudcoder.app.server.submitsvc.oop;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
+import org.cloudcoder.app.server.model.HealthDataSingleton;
 import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.shared.model.DigestProblemAndTestCases;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.Submission;
 import org.cloudcoder.app.shared.model.SubmissionException;
 import org.cloudcoder.app.shared.model.SubmissionResult;
 import org.cloudcoder.app.shared.model.TestCase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A Submission (Problem, TestCases, and program text)
@@ -33,12 +39,16 @@ import org.cloudcoder.app.shared.model.TestCase;
  * @author David Hovemeyer
  */
 public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
+	private static final Logger logger = LoggerFactory.getLogger(OOPBuildServiceSubmission.class);
+	
 	private Object lock = new Object();
 	private Submission submission;
 	private boolean ready;
 	private SubmissionResult submissionResult;
 	private Exception error;
 	private int numAttempts;
+	private String problemHash;
+	private List<Runnable> completionListeners;
 	
 	public OOPBuildServiceSubmission(Submission submission) {
 		this.submission = submission;
@@ -60,6 +70,21 @@ public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
 		}
 	}
 	
+	@Override
+	public void addCompletionListener(Runnable listener) {
+		synchronized (lock) {
+			if (!ready) {
+				if (completionListeners == null) {
+					completionListeners = new ArrayList<Runnable>();
+				}
+				completionListeners.add(listener);
+				return;
+			}
+		}
+		// Already complete
+		listener.run();
+	}
+	
 	public Problem getProblem() {
 		synchronized (lock) {
 			return submission.getProblem();
@@ -72,6 +97,31 @@ public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
 		}
 	}
 	
+	/**
+	 * Get the hash of the {@link Problem} and {@link TestCase}s.
+	 * The builder uses the hash to check whether its cached
+	 * copy of the Problem and TestCases is up to date.
+	 * The hash is computed the first time this method is called.
+	 * If the hash can't be computed (e.g., because of missing fields
+	 * in the Problem), a unique value is returned, which guarantees
+	 * that the builder won't use a cached copy.
+	 * 
+	 * @return the hash of the Problem and TestCases
+	 */
+	public String getProblemHash() {
+		synchronized (lock) {
+			if (problemHash == null) {
+				try {
+					problemHash = new DigestProblemAndTestCases(submission.getProblem(), submission.getTestCaseList()).compute();
+				} catch (RuntimeException e) {
+					logger.warn("Could not compute hash of problem and test cases", e);
+					problemHash = "unhashable-" + UUID.randomUUID().toString();
+				}
+			}
+			return problemHash;
+		}
+	}
+	
 	public String getProgramText() {
 		synchronized (lock) {
 			return submission.getProgramText();
@@ -80,6 +130,9 @@ public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
 	
 	public void setSubmissionResult(SubmissionResult result) {
 		this.submissionResult = result;
+		
+		// Keep track of how long the builder took for each build step
+		HealthDataSingleton.getInstance().recordBuildStepTimes(getProblem(), result);
 	}
 
 	public void setError(Exception e) {
@@ -94,9 +147,23 @@ public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
 	 * must be called before setting ready to true.
 	 */
 	public void setReady() {
+		List<Runnable> listeners;
 		synchronized (lock) {
 			this.ready = true;
 			lock.notifyAll();
+			listeners = completionListeners;
+			completionListeners = null;
+		}
+		
+		// Notify listeners outside the lock, since they may call back into waitFor()
+		if (listeners != null) {
+			for (Runnable listener : listeners) {
+				try {
+					listener.run();
+				} catch (RuntimeException e) {
+					logger.error("Submission completion listener failed", e);
+				}
+			}
 		}
 	}
 	
@@ -105,7 +105,7 @@ public class OutOfProcessSubmitService implements ISubmitService {
 			logger.warn("getNumBuilderThreads() called, but there is no server task");
 			return 0;
 		}
-		return theServerTask.getNumWorkerTasks();
+		return theServerTask.getNumBuilderThreads();
 	}
 	
 	private String getOptionalProperty(Properties config, String propName, String defVal) {
@@ -88,6 +88,10 @@ public class ServerTask implements Runnable {
 		return workerTaskSet.getNumWorkerTasks();
 	}
 	
+	public int getNumBuilderThreads() {
+		return workerTaskSet.getNumBuilderThreads();
+	}
+	
 	public void submit(OOPBuildServiceSubmission submission) throws SubmissionException {
 		// add it to the queue so a worker can grab it	
 	    submissionQueue.add(submission);
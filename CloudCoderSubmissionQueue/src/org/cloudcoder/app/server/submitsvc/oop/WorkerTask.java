@@ -26,15 +26,22 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.IOUtils;
+import org.cloudcoder.app.shared.model.BuilderProtocol;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.SubmissionResult;
 import org.cloudcoder.app.shared.model.SubmissionResultAnnotation;
 import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.wire.IWireFormat;
+import org.cloudcoder.app.shared.model.wire.WireFormatFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Worker task to communicate with a remote Builder process.
+ * Depending on the protocol requested by the Builder, either
+ * one submission at a time is tested (the {@link BuilderProtocol#LOCKSTEP}
+ * protocol), or the connection is handed off to a
+ * {@link MultiplexedBuilderConnection}.
  * 
  * @author David Hovemeyer
  */
@@ -61,12 +68,15 @@ public class WorkerTask implements Runnable {
 	
 	private ObjectOutputStream out;
 	private ObjectInputStream in;
+	private volatile int numBuilderThreads;
+	private volatile MultiplexedBuilderConnection multiplexedConn;
 
 	public WorkerTask(Socket clientSocket, LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue, WorkerTaskSet workerTaskSet) throws IOException {
 		this.shutdownRequested = false;
 		this.clientSocket = clientSocket;
 		this.submissionQueue = submissionQueue;
 		this.workerTaskSet = workerTaskSet;
+		this.numBuilderThreads = 1;
 		
 		this.out = new ObjectOutputStream(clientSocket.getOutputStream());
 		this.in = new ObjectInputStream(clientSocket.getInputStream());
@@ -74,12 +84,88 @@ public class WorkerTask implements Runnable {
 
 	public void shutdown() {
 		shutdownRequested = true;
+		MultiplexedBuilderConnection conn = multiplexedConn;
+		if (conn != null) {
+			conn.shutdown();
+		}
+	}
+
+	/**
+	 * Get the number of builder threads served by this task: i.e., the
+	 * number of submissions the remote Builder can test concurrently.
+	 * 
+	 * @return the number of builder threads served by this task
+	 */
+	public int getNumBuilderThreads() {
+		return numBuilderThreads;
 	}
 
 	@Override
 	public void run() {
 		logger.info("oop buildsvc WorkerTask starting");
 		
+		try {
+			// The Builder starts by telling us which protocol it will use
+			Integer protocol = (Integer) in.readObject();
+			switch (protocol.intValue()) {
+			case BuilderProtocol.MULTIPLEXED:
+			case BuilderProtocol.MULTIPLEXED_NEGOTIATED:
+				Integer maxInFlight = (Integer) in.readObject();
+				IWireFormat wire = negotiateWireFormat(protocol.intValue() == BuilderProtocol.MULTIPLEXED_NEGOTIATED);
+				logger.info("Builder is using multiplexed protocol, maxInFlight={}, wire format={}",
+						maxInFlight, wire.getFormatVersion());
+				numBuilderThreads = maxInFlight.intValue();
+				MultiplexedBuilderConnection conn =
+						new MultiplexedBuilderConnection(clientSocket, wire, submissionQueue, numBuilderThreads);
+				multiplexedConn = conn;
+				if (shutdownRequested) {
+					conn.shutdown();
+				}
+				conn.run();
+				break;
+			case BuilderProtocol.LOCKSTEP:
+			case BuilderProtocol.LOCKSTEP_NEGOTIATED:
+				runLockstep(negotiateWireFormat(protocol.intValue() == BuilderProtocol.LOCKSTEP_NEGOTIATED));
+				break;
+			default:
+				logger.error("Builder requested unknown protocol {}", protocol);
+				break;
+			}
+		} catch (IOException e) {
+			logger.error("IOException reading protocol version from Builder", e);
+		} catch (ClassNotFoundException e) {
+			logger.error("ClassNotFoundException reading protocol version from Builder", e);
+		} catch (ClassCastException e) {
+			logger.error("Builder sent invalid protocol version", e);
+		}
+
+		// End the connection with the Builder
+		IOUtils.closeQuietly(in);
+		IOUtils.closeQuietly(out);
+		try {
+			clientSocket.close();
+		} catch (IOException e) {
+			logger.warn("Exception closing client socket", e);
+		}
+		
+		workerTaskSet.onWorkerExit(this);
+		
+		logger.info("oop buildsvc WorkerTask exiting");
+	}
+
+	private IWireFormat negotiateWireFormat(boolean negotiated) throws IOException {
+		// Builders that predate wire format negotiation use Java serialization
+		return negotiated
+				? WireFormatFactory.accept(in, out)
+				: WireFormatFactory.create(WireFormatFactory.SERIALIZATION, in, out);
+	}
+
+	/**
+	 * Test submissions using the {@link BuilderProtocol#LOCKSTEP} protocol.
+	 * 
+	 * @param wire the {@link IWireFormat} to use to communicate with the Builder
+	 */
+	private void runLockstep(IWireFormat wire) {
 		OOPBuildServiceSubmission submission = null;
 		
 		// Keep track of how long it has been since we sent
@@ -112,7 +198,8 @@ public class WorkerTask implements Runnable {
 					// The Builder will ignore this.
 					try {
 						//logger.debug("Sending keepalive signal to Builder");
-						out.writeObject(Integer.valueOf(-1));
+						wire.writeInt(-1);
+						wire.flush();
 						idleTimeMillis = 0L;
 					} catch (IOException e) {
 						logger.error("Error sending keepalive signal to Builder", e);
@@ -136,7 +223,7 @@ public class WorkerTask implements Runnable {
 				
 				// Attempt to test the submission
 				try {
-					sendSubmissionForTesting(submission);
+					sendSubmissionForTesting(wire, submission);
 					// Submission successfully tested!
 					submission = null; // We're done with this Submission
 				} catch (IOException e) {
@@ -162,45 +249,35 @@ public class WorkerTask implements Runnable {
 				submission.setReady();
 			}
 		}
-
-		// End the connection with the Builder
-		IOUtils.closeQuietly(in);
-		IOUtils.closeQuietly(out);
-		try {
-			clientSocket.close();
-		} catch (IOException e) {
-			logger.warn("Exception closing client socket", e);
-		}
-		
-		workerTaskSet.onWorkerExit(this);
-		
-		logger.info("oop buildsvc WorkerTask exiting");
 	}
 
-	private void sendSubmissionForTesting(OOPBuildServiceSubmission submission) throws IOException, ClassNotFoundException {
+	private void sendSubmissionForTesting(IWireFormat wire, OOPBuildServiceSubmission submission) throws IOException, ClassNotFoundException {
 		Problem problem = submission.getProblem();
 		List<TestCase> testCaseList = submission.getTestCaseList();
 		String programText = submission.getProgramText();
 		
-		// Tell client which Problem to test
-		out.writeObject((Integer) problem.getProblemId());
-		out.flush();
+		// Tell client which Problem to test, and the hash of the Problem
+		// and TestCases (so it can tell whether its cached copy is up to date)
+		wire.writeInt(problem.getProblemId());
+		wire.writeString(submission.getProblemHash());
+		wire.flush();
 		
 		// Client will send back a boolean indicating whether or not it
-		// has this problem already: if not, send it (and its test cases).
-		Boolean response = (Boolean) in.readObject();
+		// has an up to date copy of this problem already: if not,
+		// send it (and its test cases).
+		boolean response = wire.readBoolean();
 		if (!response) {
-			out.writeObject(problem);
-			out.writeObject(testCaseList);
-			out.flush();
+			wire.writeProblem(problem);
+			wire.writeTestCaseList(testCaseList);
+			wire.flush();
 		}
 		
 		// Send the program text
-		out.writeObject(programText);
-		out.flush();
+		wire.writeString(programText);
+		wire.flush();
 		
 		// Read list of TestResults
-		SubmissionResult result= (SubmissionResult) in.readObject();
+		SubmissionResult result = wire.readSubmissionResult();
 		
 //		logger.info("Received submission results");
 //		for (SubmissionResultAnnotation annotation : result.getAnnotationList()) {
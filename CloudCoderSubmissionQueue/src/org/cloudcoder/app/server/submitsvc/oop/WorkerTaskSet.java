@@ -74,6 +74,24 @@ public class WorkerTaskSet {
 		}
 	}
 
+	/**
+	 * Get the number of remote Builder threads served by the
+	 * active worker tasks.  This can be larger than the number of
+	 * worker tasks, since a Builder using the multiplexed protocol
+	 * can test multiple submissions over a single connection.
+	 * 
+	 * @return number of remote Builder threads
+	 */
+	public int getNumBuilderThreads() {
+		synchronized (lock) {
+			int count = 0;
+			for (WorkerThreadAndTaskPair pair : workerThreadAndTaskPairList) {
+				count += pair.task.getNumBuilderThreads();
+			}
+			return count;
+		}
+	}
+
 	/**
 	 * Create a {@link WorkerTask} to communicate with a remote
 	 * Builder thread.
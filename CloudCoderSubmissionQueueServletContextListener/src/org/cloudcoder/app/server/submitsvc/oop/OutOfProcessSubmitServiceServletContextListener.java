@@ -24,6 +24,7 @@ import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
+import org.cloudcoder.app.server.submitsvc.CachingSubmitService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,11 +70,19 @@ public class OutOfProcessSubmitServiceServletContextListener implements ServletC
 				setPropertyFromContextParameter(servletContext, config, "cloudcoder.submitsvc.ssl.keystore.password", null);
 			}
 			setPropertyFromContextParameter(servletContext, config, "cloudcoder.submitsvc.oop.port", String.valueOf(OutOfProcessSubmitService.DEFAULT_PORT));
+			setPropertyFromContextParameter(servletContext, config, "cloudcoder.submitsvc.resultcache.enable", "false");
+			setPropertyFromContextParameter(servletContext, config, "cloudcoder.submitsvc.resultcache.maxsize", String.valueOf(CachingSubmitService.DEFAULT_MAX_SIZE));
+			setPropertyFromContextParameter(servletContext, config, "cloudcoder.submitsvc.resultcache.excludeProblems", "");
 
 			// Initialize and start the OutOfProcessSubmitService
 			svc.initFromConfigProperties(config);
 			svc.start();
 			
+			// If enabled, remember submission results so that identical
+			// submissions don't need to be tested again
+			if (Boolean.valueOf(config.getProperty("cloudcoder.submitsvc.resultcache.enable"))) {
+				CachingSubmitService.setInstance(new CachingSubmitService(svc, config));
+			}
 		} catch (IOException e) {
 			throw new IllegalStateException("Could not create server thread for oop submit service", e);
 		}
@@ -82,6 +91,7 @@ public class OutOfProcessSubmitServiceServletContextListener implements ServletC
 	@Override
 	public void contextDestroyed(ServletContextEvent event) {
 		try {
+			CachingSubmitService.setInstance(null);
 			OutOfProcessSubmitService.getInstance().shutdown();
 			OutOfProcessSubmitService.setInstance(null);
 		} catch (InterruptedException e) {
@@ -83,6 +83,12 @@ if (useFeature('webapp')) {
 	askprop("If MySQL is running on a non-standard port, enter :XXXX (e.g, :8889 for MAMP).\n" .
 		"Just hit enter if MySQL is running on the standard port.",
 		"cloudcoder.db.portStr", undef);
+	askprop("What is the maximum number of database connections the webapp should keep open?\n" .
+		"(Must not exceed MySQL's max_connections setting)",
+		"cloudcoder.db.pool.maxSize", "150");
+	askprop("Should the webapp buffer students' edits and store them in large batches?\n" .
+		"(Reduces database load, but a crash could lose the last fraction of a second of edits)",
+		"cloudcoder.db.changebuffer.enable", "false");
 	
 	section("Login service properties");
 	
@@ -115,6 +121,9 @@ askprop("How many threads should the Builder use? (suggestion: 1 per core)",
 askprop("What port will the CloudCoder webapp use to listen for connections from\n" .
 	"Builders?",
 	"cloudcoder.submitsvc.oop.port", "47374");
+askprop("Should the Builder use a single multiplexed connection to the webapp\n" .
+	"for all of its threads? (Otherwise, each thread has its own connection.)",
+	"cloudcoder.submitsvc.oop.multiplexed", "false");
 askprop("Should the builder use EasySandbox for C/C++ submissions? (recommended)",
 	"cloudcoder.submitsvc.oop.easysandbox.enable", "true");
 if ((lc $properties{"cloudcoder.submitsvc.oop.easysandbox.enable"}) eq 'true') {
@@ -160,6 +169,10 @@ if (useFeature('webapp')) {
 	askprop("How many request handling threads should the webapp use?\n" .
 		"(Suggestion: 1/2 expected number of concurrent users)",
 		"cloudcoder.webserver.numThreads", "80");
+	askprop("Should the webapp reuse test results when the same code is resubmitted\n" .
+		"for the same exercise? (Don't enable this if any exercises have\n" .
+		"nondeterministic tests)",
+		"cloudcoder.submitsvc.resultcache.enable", "false");
 }
 
 if (useFeature('repoWebApp')) {